@@ -0,0 +1,84 @@
+package com.example.weatherapi;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares two JMH JSON result files (e.g. a committed baseline and a fresh run) benchmark by benchmark.
+ *
+ * Prints the score and gc.alloc.rate.norm of both runs with the relative change, and exits with 1
+ * when any benchmark got slower or allocates more by more than the threshold (default 10%).
+ *
+ * Usage: java -cp benchmarks.jar com.example.weatherapi.BaselineDiff baseline.json current.json [threshold%]
+ */
+public final class BaselineDiff {
+
+    private static final String ALLOC = "gc.alloc.rate.norm";
+
+    private BaselineDiff() { }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineDiff <baseline.json> <current.json> [threshold%]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+        Map<String, Result> baseline = read(new File(args[0]));
+        Map<String, Result> current = read(new File(args[1]));
+
+        boolean regressed = false;
+        System.out.printf("%-70s %14s %14s %8s %12s %12s %8s%n",
+                "benchmark", "base score", "score", "change", "base B/op", "B/op", "change");
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+            Result now = entry.getValue();
+            Result base = baseline.get(entry.getKey());
+            if (base == null) {
+                System.out.printf("%-70s %14s %14.3f %8s%n", entry.getKey(), "-", now.score(), "new");
+                continue;
+            }
+            // Lower is better for time-per-op modes, higher for throughput
+            double scoreChange = change(base.score(), now.score());
+            double slower = now.higherIsBetter() ? -scoreChange : scoreChange;
+            double allocChange = change(base.alloc(), now.alloc());
+            boolean bad = slower > threshold || allocChange > threshold;
+            regressed |= bad;
+            System.out.printf("%-70s %14.3f %14.3f %7.1f%% %12.1f %12.1f %7.1f%%%s%n",
+                    entry.getKey(), base.score(), now.score(), scoreChange,
+                    base.alloc(), now.alloc(), allocChange, bad ? "  REGRESSED" : "");
+        }
+        System.exit(regressed ? 1 : 0);
+    }
+
+    private static double change(double before, double after) {
+        if (Double.isNaN(before) || Double.isNaN(after) || before == 0) {
+            return 0;
+        }
+        return (after - before) / before * 100;
+    }
+
+    private static Map<String, Result> read(File file) throws IOException {
+        Map<String, Result> out = new LinkedHashMap<>();
+        for (JsonNode run : new ObjectMapper().readTree(file)) {
+            StringBuilder key = new StringBuilder(run.get("benchmark").asText());
+            run.path("params").fields().forEachRemaining(p -> key.append(' ').append(p.getKey()).append('=').append(p.getValue().asText()));
+            double alloc = Double.NaN;
+            // Older JMH versions prefix secondary metric names with a middle dot
+            for (var it = run.path("secondaryMetrics").fields(); it.hasNext(); ) {
+                var metric = it.next();
+                if (metric.getKey().endsWith(ALLOC)) {
+                    alloc = metric.getValue().get("score").asDouble();
+                }
+            }
+            out.put(key.toString(), new Result(run.get("primaryMetric").get("score").asDouble(), alloc,
+                    "thrpt".equals(run.get("mode").asText())));
+        }
+        return out;
+    }
+
+    private record Result(double score, double alloc, boolean higherIsBetter) { }
+}
@@ -0,0 +1,79 @@
+package com.example.weatherapi;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ingest dedup screening of a 1000-reading chunk against the recent-keys filter at the default
+ * sizing (1M readings an hour in 4 slices, 0.1% false positives), holding a full window of keys
+ * written slice by slice. "fresh" chunks are new readings, "retried" ones were all written before.
+ * This is the per-chunk cost that stands in for a Mongo lookup of every reading.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class DedupBenchmark {
+
+    static final int WINDOW = 1_000_000;
+    static final int CHUNK = 1000;
+    static final Instant START = Instant.parse("2025-08-01T00:00:00Z");
+
+    @Param({"fresh", "retried"})
+    String chunk;
+
+    SlidingBloomFilter filter;
+    List<SensorData> readings;
+
+    @Setup
+    public void setUp() {
+        AtomicLong now = new AtomicLong();
+        filter = new SlidingBloomFilter(3_600_000, 4, WINDOW, 0.001, now::get);
+        for (int i = 0; i < WINDOW; i++) {
+            now.set(i / (WINDOW / 4) * 900_000L);
+            filter.put(key(i));
+        }
+        readings = "fresh".equals(chunk) ? readings(WINDOW, CHUNK) : readings(WINDOW - CHUNK, CHUNK);
+        int falsePositives = 0;
+        for (int i = WINDOW; i < 2 * WINDOW; i++) {
+            falsePositives += filter.mightContain(key(i)) ? 1 : 0;
+        }
+        System.out.printf("%n%d of %d readings screened out; %d of %d new keys were false positives; filter takes %d bytes%n",
+            screen(), CHUNK, falsePositives, WINDOW, filter.bytes());
+    }
+
+    @Benchmark
+    public int screen() {
+        int positives = 0;
+        for (SensorData d : readings) {
+            long key = IngestDeduplicator.key(d.getSensorId(), d.getMetric(), d.getTimestamp().toEpochMilli());
+            positives += filter.mightContain(key) ? 1 : 0;
+        }
+        return positives;
+    }
+
+    private static long key(int i) {
+        return IngestDeduplicator.key("sensor-" + (i % 1000), "temperature", START.plusSeconds(i / 1000).toEpochMilli());
+    }
+
+    // 1000 sensors, one reading a second each
+    private static List<SensorData> readings(int from, int n) {
+        List<SensorData> out = new ArrayList<>(n);
+        for (int i = from; i < from + n; i++) {
+            SensorData d = new SensorData();
+            d.setSensorId("sensor-" + (i % 1000));
+            d.setMetric("temperature");
+            d.setValue(i);
+            d.setTimestamp(START.plusSeconds(i / 1000));
+            out.add(d);
+        }
+        return out;
+    }
+}
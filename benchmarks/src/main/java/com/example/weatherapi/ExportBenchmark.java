@@ -0,0 +1,67 @@
+package com.example.weatherapi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding side of /sensors/export: 100k readings written as CSV (5.0 MB) or NDJSON (9.8 MB)
+ * to a discarding stream. Divide those sizes by the time per op for MB/s.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ExportBenchmark {
+
+    private static final int READINGS = 100_000;
+
+    @Param({"csv", "ndjson"})
+    String format;
+
+    ExportFormat exportFormat;
+    ReadingExporter exporter;
+    List<SensorData> readings;
+
+    @Setup
+    public void setUp() {
+        exportFormat = ExportFormat.from(format);
+        exporter = new ReadingExporter(null, new MongoBulkheads(new SimpleMeterRegistry(), 1, 1, Duration.ofSeconds(1)),
+            new SensorMetrics(new SimpleMeterRegistry()), new ObjectMapper(), 5000);
+        Instant start = Instant.parse("2025-08-01T00:00:00Z");
+        String[] metrics = {"temperature", "humidity", "wind_speed"};
+        readings = new ArrayList<>(READINGS);
+        for (int i = 0; i < READINGS; i++) {
+            readings.add(SensorData.of("sensor-" + (i % 500), metrics[i % 3], 10 + (i % 2000) / 100.0,
+                start.plusSeconds(i)));
+        }
+    }
+
+    @Benchmark
+    public long write() throws IOException {
+        CountingStream out = new CountingStream();
+        exporter.write(exportFormat, readings.stream(), out);
+        return out.bytes;
+    }
+
+    /** Discards everything, counting bytes. */
+    static final class CountingStream extends OutputStream {
+        long bytes;
+
+        @Override
+        public void write(int b) { bytes++; }
+
+        @Override
+        public void write(byte[] b, int off, int len) { bytes += len; }
+    }
+}
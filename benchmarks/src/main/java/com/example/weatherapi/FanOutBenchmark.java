@@ -0,0 +1,79 @@
+package com.example.weatherapi;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Latency of queryData's partials step for a wide window: one aggregation over the whole window
+ * against per-day chunks run concurrently. The store is simulated: each aggregation waits for
+ * one round trip plus a server-side scan time proportional to the days it covers, and returns
+ * one partial per metric. This measures the fan-out's own cost (splitting, virtual threads,
+ * merging) and its best case when the server scans chunks in parallel.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FanOutBenchmark {
+
+    private static final long ROUND_TRIP_NANOS = 500_000;    // 0.5ms
+    private static final long SCAN_NANOS_PER_DAY = 2_000_000; // 2ms per day of readings
+
+    @Param({"single", "fan-out"})
+    String path;
+
+    @Param({"7", "31"})
+    int days;
+
+    @Param({"4", "8"})
+    int parallelism;
+
+    AggregateSource source;
+    Instant from = Instant.parse("2025-08-01T00:00:00Z");
+    Instant to;
+
+    @Setup
+    public void setUp() {
+        to = from.plus(Duration.ofDays(days));
+        AggregateSource store = new SimulatedStore();
+        source = path.equals("single")
+            ? store
+            : new FanOutAggregateSource(store, new QueryFanOut(true, Duration.ofDays(1), parallelism));
+    }
+
+    @Benchmark
+    public Map<String, MetricAggregate> aggregate() {
+        return source.aggregate(List.of("1"), null, from, to);
+    }
+
+    /** Waits like a Mongo aggregation would, then returns count/sum/min/max per metric. */
+    static final class SimulatedStore implements AggregateSource {
+
+        @Override
+        public Map<String, MetricAggregate> aggregate(List<String> sensorIds, List<String> metrics, List<TimeRange> ranges) {
+            long millis = 0;
+            for (TimeRange range : ranges) {
+                millis += Duration.between(range.from(), range.to()).toMillis() + 1;
+            }
+            LockSupport.parkNanos(ROUND_TRIP_NANOS + SCAN_NANOS_PER_DAY * millis / Duration.ofDays(1).toMillis());
+            long count = millis / 60_000;
+            return Map.of(
+                "temperature", new MetricAggregate(count, count * 20.0, 10.0, 30.0),
+                "humidity", new MetricAggregate(count, count * 60.0, 40.0, 80.0),
+                "wind_speed", new MetricAggregate(count, count * 10.0, 2.0, 18.0));
+        }
+
+        @Override
+        public List<PlannedAggregation> plan(List<String> sensorIds, List<String> metrics, List<TimeRange> ranges) {
+            return List.of();
+        }
+    }
+}
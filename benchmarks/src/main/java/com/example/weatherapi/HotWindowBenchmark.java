@@ -0,0 +1,66 @@
+package com.example.weatherapi;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * queryData's default window (last 24h) answered by the hot window: 1000 sensors x 3 metrics
+ * with one reading per minute for 25h (4.5M readings). "sensor" asks for one sensor, "fleet" for
+ * every sensor. Setup prints the heap held by the ring buffers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class HotWindowBenchmark {
+
+    static final int SENSORS = 1000;
+    static final int MINUTES = 25 * 60;
+
+    @Param({"sensor", "fleet"})
+    String scope;
+
+    HotWindow window;
+    List<String> sensorIds;
+    Instant from;
+    Instant to;
+
+    @Setup
+    public void setUp() {
+        window = new HotWindow((sensorIds, metrics, range, batchSize) -> Stream.empty(), new SimpleMeterRegistry(),
+            true, Duration.ofHours(26), 5000);
+        window.warmUp();
+        to = Instant.now();
+        from = to.minus(Duration.ofHours(24));
+        Instant start = to.minus(Duration.ofMinutes(MINUTES));
+        String[] metrics = {"temperature", "humidity", "wind_speed"};
+        for (int minute = 0; minute < MINUTES; minute++) {
+            List<SensorData> batch = new ArrayList<>(SENSORS * metrics.length);
+            for (int s = 0; s < SENSORS; s++) {
+                for (int m = 0; m < metrics.length; m++) {
+                    batch.add(SensorData.of("sensor-" + s, metrics[m], 10 + (minute + s + m) % 200 / 10.0,
+                        start.plus(Duration.ofMinutes(minute))));
+                }
+            }
+            window.onIngest(batch);
+        }
+        sensorIds = scope.equals("sensor") ? List.of("sensor-42") : null;
+        System.out.printf("%n%d readings in %.1f MB (%.0f bytes per sensor)%n", window.readings(),
+            window.bytes() / 1e6, (double) window.bytes() / SENSORS);
+    }
+
+    @Benchmark
+    public Map<String, MetricAggregate> defaultWindow() {
+        return window.aggregate(sensorIds, null, from, to);
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.weatherapi;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request-to-document mapping in saveSensorData and saveSensorDataBatch (validation included, no I/O).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class IngestMappingBenchmark {
+
+    @Param({"100"})
+    int batchSize;
+
+    SensorDataRequest single;
+    List<SensorDataRequest> batch;
+
+    @Setup
+    public void setUp() {
+        single = request("1", "temperature", 21.5);
+        batch = new ArrayList<>(batchSize);
+        String[] metrics = {"temperature", "humidity", "windSpeed"};
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(request(String.valueOf(i % 10), metrics[i % metrics.length], i * 0.5));
+        }
+    }
+
+    @Benchmark
+    public SensorData toSensorData() {
+        return SensorService.toSensorData(single);
+    }
+
+    @Benchmark
+    public SensorService.ValidatedBatch validateBatch() {
+        return SensorService.ValidatedBatch.of(batch, Integer.MAX_VALUE);
+    }
+
+    private static SensorDataRequest request(String sensorId, String metric, double value) {
+        SensorDataRequest req = new SensorDataRequest();
+        req.setSensorId(sensorId);
+        req.setMetric(metric);
+        req.setValue(value);
+        req.setTimestamp(Instant.parse("2025-08-01T10:00:00Z"));
+        return req;
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.weatherapi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON request/response bodies, with an ObjectMapper configured like the one Spring Boot builds.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+
+    ObjectReader requestReader;
+    ObjectWriter resultWriter;
+    byte[] requestBody;
+    QueryResult singleStat;
+    MultiStatQueryResult multiStat;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+        requestReader = mapper.readerFor(SensorDataRequest.class);
+        resultWriter = mapper.writer();
+        requestBody = "{\"sensorId\":\"42\",\"metric\":\"temperature\",\"value\":21.5,\"timestamp\":\"2025-08-01T10:00:00Z\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+        Instant from = Instant.parse("2025-08-01T00:00:00Z");
+        Instant to = Instant.parse("2025-08-08T00:00:00Z");
+        Map<String, Double> results = new LinkedHashMap<>();
+        Map<String, Map<String, Double>> stats = new LinkedHashMap<>();
+        for (String metric : List.of("temperature", "humidity", "wind_speed")) {
+            results.put(metric, 20.5);
+            stats.put(metric, new LinkedHashMap<>(Map.of("min", 10.0, "max", 30.0, "avg", 20.5)));
+        }
+        singleStat = new QueryResult(List.of("1", "2"), null, "avg", from, to, results);
+        multiStat = new MultiStatQueryResult(List.of("1", "2"), null, List.of("min", "max", "avg"),
+            from, to, results, stats);
+    }
+
+    @Benchmark
+    public SensorDataRequest readSensorDataRequest() throws Exception {
+        return requestReader.readValue(requestBody);
+    }
+
+    @Benchmark
+    public byte[] writeQueryResult() throws Exception {
+        return resultWriter.writeValueAsBytes(singleStat);
+    }
+
+    @Benchmark
+    public byte[] writeMultiStatQueryResult() throws Exception {
+        return resultWriter.writeValueAsBytes(multiStat);
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.weatherapi;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request parameter parsing done on every ingest and query: metric names, statistics and timestamps.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ParsingBenchmark {
+
+    // Fields rather than literals so the JIT cannot constant-fold the parse
+    String canonicalMetric = "temperature";
+    String aliasMetric = "Wind-Speed";
+    String statistic = "avg";
+    String statisticList = "min,max,avg";
+    String withPercentile = "avg,p95";
+    String timestamp = "2025-08-01T10:15:30Z";
+
+    @Benchmark
+    public Metric metricCanonical() {
+        return Metric.from(canonicalMetric);
+    }
+
+    @Benchmark
+    public Metric metricAlias() {
+        return Metric.from(aliasMetric);
+    }
+
+    @Benchmark
+    public Statistic statistic() {
+        return Statistic.from(statistic);
+    }
+
+    @Benchmark
+    public List<Statistic> statisticList() {
+        return Statistic.listFrom(statisticList);
+    }
+
+    @Benchmark
+    public StatSelection statSelectionWithPercentile() {
+        return StatSelection.from(withPercentile);
+    }
+
+    @Benchmark
+    public Instant instantParse() {
+        return Instant.parse(timestamp);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.weatherapi;
+
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * What queryData does with the aggregation output of each storage layout: decode the BSON
+ * documents the driver receives, fold them into per-metric partials and build the response.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class QueryResultBenchmark {
+
+    private static final DocumentCodec CODEC = new DocumentCodec();
+
+    @Param({"raw", "bucketed", "compact"})
+    String layout;
+
+    List<byte[]> encoded;
+    BiConsumer<Document, Map<String, MetricAggregate>> collect;
+    List<Statistic> statistics = List.of(Statistic.MIN, Statistic.MAX, Statistic.AVG);
+    TimeRange window = new TimeRange(Instant.parse("2025-08-01T00:00:00Z"), Instant.parse("2025-08-08T00:00:00Z"));
+
+    @Setup
+    public void setUp() {
+        encoded = new ArrayList<>();
+        for (Metric metric : Metric.values()) {
+            Document doc = new Document("count", 10_080L).append("sum", 206_640.0).append("min", 10.0).append("max", 30.0);
+            switch (StorageLayout.from(layout)) {
+                case BUCKETED -> doc.append("_id", metric.dbValue());
+                case COMPACT -> doc.append("_id", metric.code());
+                default -> doc.append("metric", metric.dbValue());
+            }
+            encoded.add(encode(doc));
+        }
+        collect = switch (StorageLayout.from(layout)) {
+            case BUCKETED -> BucketStore::collect;
+            case COMPACT -> CompactReadingStore::collect;
+            default -> RawAggregateSource::collect;
+        };
+    }
+
+    @Benchmark
+    public QueryResult decodeAndBuildResult() {
+        Map<String, MetricAggregate> partials = new LinkedHashMap<>();
+        for (byte[] bytes : encoded) {
+            collect.accept(decode(bytes), partials);
+        }
+        return SensorService.toQueryResult(List.of("1"), null, statistics, window, partials);
+    }
+
+    private static byte[] encode(Document doc) {
+        BasicOutputBuffer out = new BasicOutputBuffer();
+        CODEC.encode(new BsonBinaryWriter(out), doc, EncoderContext.builder().build());
+        return out.toByteArray();
+    }
+
+    private static Document decode(byte[] bytes) {
+        return CODEC.decode(new BsonBinaryReader(ByteBuffer.wrap(bytes)), DecoderContext.builder().build());
+    }
+}
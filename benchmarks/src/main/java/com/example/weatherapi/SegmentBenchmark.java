@@ -0,0 +1,100 @@
+package com.example.weatherapi;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Segment format over one day of minute readings for 100 sensors x 3 metrics (432k readings):
+ * - encode: Gorilla-encoding every series
+ * - scan: aggregating 23 hours of every series from the mapped file, decoding all of it
+ * - summary: aggregating the whole day, answered from the directory without decoding
+ * "smooth" values change by 0.1 steps on exact minutes; "noisy" ones are full-precision random
+ * doubles on timestamps jittered by up to a second. Setup prints the bytes per reading of each.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class SegmentBenchmark {
+
+    static final int SENSORS = 100;
+    static final int PER_SERIES = 1440;
+    static final String[] METRICS = {"temperature", "humidity", "wind_speed"};
+    static final long START = Instant.parse("2025-08-01T00:00:00Z").toEpochMilli();
+
+    @Param({"smooth", "noisy"})
+    String data;
+
+    long[][] timestamps;
+    double[][] values;
+    Path file;
+    SegmentFile segment;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(7);
+        int series = SENSORS * METRICS.length;
+        timestamps = new long[series][PER_SERIES];
+        values = new double[series][PER_SERIES];
+        for (int s = 0; s < series; s++) {
+            double v = 10 + random.nextInt(20);
+            for (int i = 0; i < PER_SERIES; i++) {
+                if (data.equals("smooth")) {
+                    timestamps[s][i] = START + i * 60_000L;
+                    v = Math.round((v + (random.nextInt(3) - 1) * 0.1) * 10) / 10.0;
+                    values[s][i] = v;
+                } else {
+                    timestamps[s][i] = START + i * 60_000L + random.nextInt(1000);
+                    values[s][i] = 20 + random.nextGaussian() * 5;
+                }
+            }
+        }
+        file = Files.createTempFile("segment", ".seg");
+        try (SegmentFile.Writer writer = SegmentFile.writer(file, START)) {
+            for (int s = 0; s < series; s++) {
+                writer.add("sensor-" + s / METRICS.length, METRICS[s % METRICS.length], timestamps[s], values[s], PER_SERIES);
+            }
+        }
+        segment = SegmentFile.open(file);
+        System.out.printf("%n%s: %.2f bytes/reading%n", data, (double) Files.size(file) / (series * PER_SERIES));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long encode() {
+        long bytes = 0;
+        for (int s = 0; s < timestamps.length; s++) {
+            bytes += SegmentCodec.encode(timestamps[s], values[s], PER_SERIES).length;
+        }
+        return bytes;
+    }
+
+    @Benchmark
+    public Map<String, MetricAggregate> scan() {
+        Map<String, MetricAggregate> out = new HashMap<>();
+        segment.aggregate(null, List.of(METRICS), START + 3_600_000, START + 86_399_999, out);
+        return out;
+    }
+
+    @Benchmark
+    public Map<String, MetricAggregate> summary() {
+        Map<String, MetricAggregate> out = new HashMap<>();
+        segment.aggregate(null, List.of(METRICS), START, START + 86_399_999, out);
+        return out;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.weatherapi;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+
+/**
+ * When the open-loop generator sends: Poisson arrivals at the target rate, with a burst at
+ * the end of every burst-every period during which the ingest rate is multiplied by burst-factor.
+ *
+ * Send times are fixed by the schedule, not by when earlier responses come back, which is
+ * what keeps the measured latency free of coordinated omission.
+ */
+final class ArrivalSchedule {
+
+    private final double rate;
+    private final double burstRate;
+    private final long burstEveryNanos;
+    private final long burstLengthNanos;
+
+    ArrivalSchedule(LoadTestOptions options) {
+        this.rate = options.rate();
+        this.burstRate = options.rate() * (options.ingestRatio() * options.burstFactor() + (1 - options.ingestRatio()));
+        this.burstEveryNanos = options.burstEvery().toNanos();
+        this.burstLengthNanos = options.burstFactor() > 1 ? options.burstLength().toNanos() : 0;
+    }
+
+    /** Whether {@code elapsedNanos} after the start falls into a burst (the last burst-length of each period). */
+    boolean inBurst(long elapsedNanos) {
+        return burstLengthNanos > 0 && elapsedNanos % burstEveryNanos >= burstEveryNanos - burstLengthNanos;
+    }
+
+    /** Requests per second at {@code elapsedNanos} after the start. */
+    double rateAt(long elapsedNanos) {
+        return inBurst(elapsedNanos) ? burstRate : rate;
+    }
+
+    /** Gap to the next send after one at {@code elapsedNanos}: exponential with the current rate. */
+    long nextGapNanos(SplittableRandom random, long elapsedNanos) {
+        double u = 1 - random.nextDouble(); // (0, 1]
+        return Math.max(1, (long) (-Math.log(u) / rateAt(elapsedNanos) * 1e9));
+    }
+
+    /** Requests the schedule sends between {@code from} and {@code to} after the start, on average. */
+    double expectedRequests(Duration from, Duration to) {
+        long nanos = to.toNanos() - from.toNanos();
+        long burstNanos = burstNanosUntil(to.toNanos()) - burstNanosUntil(from.toNanos());
+        return (rate * (nanos - burstNanos) + burstRate * burstNanos) / 1e9;
+    }
+
+    // Time spent in bursts from the start up to elapsedNanos
+    private long burstNanosUntil(long elapsedNanos) {
+        if (burstLengthNanos == 0) {
+            return 0;
+        }
+        long rest = elapsedNanos % burstEveryNanos;
+        return elapsedNanos / burstEveryNanos * burstLengthNanos + Math.max(0, rest - (burstEveryNanos - burstLengthNanos));
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.weatherapi;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram and response counts for one endpoint. Latencies are recorded in
+ * microseconds and cover every completed request, errors included.
+ */
+final class EndpointStats {
+
+    private final Workload.Endpoint endpoint;
+    private final Recorder recorder = new Recorder(3);
+    private final Histogram total = new Histogram(3);
+    private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+    private final LongAdder failures = new LongAdder(); // no HTTP response at all
+    private Histogram interval;
+
+    EndpointStats(Workload.Endpoint endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    Workload.Endpoint endpoint() { return endpoint; }
+
+    void record(long latencyNanos, int status) {
+        recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+        statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+    }
+
+    void fail(long latencyNanos) {
+        recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+        failures.increment();
+    }
+
+    /** Latencies since the previous call; also folded into the run total. Called from the reporter thread only. */
+    Histogram intervalHistogram() {
+        interval = recorder.getIntervalHistogram(interval);
+        total.add(interval);
+        return interval;
+    }
+
+    Histogram total() { return total; }
+
+    long ok() {
+        return statuses.entrySet().stream().filter(e -> e.getKey() < 400).mapToLong(e -> e.getValue().sum()).sum();
+    }
+
+    long errors() {
+        return statuses.entrySet().stream().filter(e -> e.getKey() >= 400).mapToLong(e -> e.getValue().sum()).sum()
+            + failures.sum();
+    }
+
+    Map<String, Long> breakdown() {
+        Map<String, Long> out = new TreeMap<>();
+        statuses.forEach((status, n) -> out.put(String.valueOf(status), n.sum()));
+        if (failures.sum() > 0) {
+            out.put("no-response", failures.sum());
+        }
+        return out;
+    }
+
+    /** Full percentile distribution in milliseconds, HdrHistogram's .hgrm format. */
+    void writeDistribution(PrintStream out) {
+        total.outputPercentileDistribution(out, 1000.0);
+    }
+}
@@ -0,0 +1,278 @@
+package com.example.weatherapi;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generator for POST /sensors/data and GET /sensors/query.
+ *
+ * Open loop (default): requests go out on a fixed Poisson schedule whether or not earlier
+ * ones have answered, and latency is measured from the scheduled send time. A stalled server
+ * therefore shows up as queueing in the percentiles instead of as fewer, faster samples
+ * (coordinated omission). Closed loop: a fixed number of workers send back-to-back, which
+ * measures service time at saturation but hides queueing.
+ *
+ * Prints per-endpoint throughput and latency every 5s and a percentile summary at the end.
+ */
+public final class LoadTest {
+
+    private static final Duration REPORT_EVERY = Duration.ofSeconds(5);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final LoadTestOptions options;
+    private final URI url;
+    private final HttpClient client;
+    private final Workload workload;
+    private final Map<Workload.Endpoint, EndpointStats> stats = new EnumMap<>(Workload.Endpoint.class);
+
+    LoadTest(LoadTestOptions options, URI url, HttpClient client) {
+        this.options = options;
+        this.url = url;
+        this.client = client;
+        this.workload = new Workload(options);
+        for (Workload.Endpoint endpoint : Workload.Endpoint.values()) {
+            stats.put(endpoint, new EndpointStats(endpoint));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options;
+        try {
+            options = LoadTestOptions.parse(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(LoadTestOptions.USAGE);
+            System.exit(2);
+            return;
+        }
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+             HttpClient client = HttpClient.newBuilder()
+                 .version(HttpClient.Version.HTTP_1_1)
+                 .connectTimeout(Duration.ofSeconds(5))
+                 .executor(executor)
+                 .build();
+             LocalStack stack = options.launch() ? LocalStack.start(options) : null) {
+            URI url = stack != null ? stack.url() : options.url();
+            new LoadTest(options, url, client).run();
+        }
+    }
+
+    void run() throws InterruptedException, IOException {
+        if (options.preloadHours() > 0) {
+            preload();
+        }
+        System.out.printf(Locale.ROOT, "%s loop against %s: %s, ingest ratio %.2f, %d sensors, warmup %ds, duration %ds, seed %d%n",
+            options.openLoop() ? "Open" : "Closed", url,
+            options.openLoop() ? options.rate() + " req/s" : options.concurrency() + " workers",
+            options.ingestRatio(), options.sensors(), options.warmup().toSeconds(), options.duration().toSeconds(), options.seed());
+
+        long start = System.nanoTime();
+        long measureFrom = start + options.warmup().toNanos();
+        long end = measureFrom + options.duration().toNanos();
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        reporter.scheduleAtFixedRate(() -> reportInterval(start, measureFrom),
+            REPORT_EVERY.toNanos(), REPORT_EVERY.toNanos(), TimeUnit.NANOSECONDS);
+        try {
+            if (options.openLoop()) {
+                runOpenLoop(start, measureFrom, end);
+            } else {
+                runClosedLoop(start, measureFrom, end);
+            }
+        } finally {
+            reporter.shutdown();
+            reporter.awaitTermination(REPORT_EVERY.toSeconds() + 1, TimeUnit.SECONDS);
+        }
+        stats.values().forEach(EndpointStats::intervalHistogram); // whatever arrived after the last tick
+        report();
+    }
+
+    private void runOpenLoop(long start, long measureFrom, long end) throws InterruptedException {
+        ArrivalSchedule schedule = new ArrivalSchedule(options);
+        SplittableRandom random = new SplittableRandom(options.seed());
+        Semaphore inFlight = new Semaphore(options.maxInFlight());
+        long maxLag = 0;
+        long next = start;
+        while (next < end) {
+            long now;
+            while ((now = System.nanoTime()) < next) {
+                LockSupport.parkNanos(next - now);
+            }
+            maxLag = Math.max(maxLag, now - next);
+            long intended = next;
+            boolean measured = intended >= measureFrom;
+            Workload.Call call = workload.next(random, Instant.now(), schedule.inBurst(intended - start));
+            // Waiting here delays the send but not the measurement start: latency still counts from "intended"
+            inFlight.acquire();
+            client.sendAsync(request(call), HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, ex) -> {
+                    long latency = System.nanoTime() - intended;
+                    if (measured) {
+                        EndpointStats s = stats.get(call.endpoint());
+                        if (ex != null) {
+                            s.fail(latency);
+                        } else {
+                            s.record(latency, response.statusCode());
+                        }
+                    }
+                    inFlight.release();
+                });
+            next += schedule.nextGapNanos(random, intended - start);
+        }
+        if (!inFlight.tryAcquire(options.maxInFlight(), REQUEST_TIMEOUT.toSeconds() + 5, TimeUnit.SECONDS)) {
+            System.out.println("Warning: some requests were still in flight when the run ended");
+        }
+        if (maxLag > TimeUnit.MILLISECONDS.toNanos(100)) {
+            System.out.printf(Locale.ROOT, "Warning: the generator fell up to %d ms behind schedule (client-side limit: "
+                + "raise --max-in-flight or lower --rate). Latencies are still measured from the schedule.%n",
+                TimeUnit.NANOSECONDS.toMillis(maxLag));
+        }
+    }
+
+    private void runClosedLoop(long start, long measureFrom, long end) throws InterruptedException {
+        SplittableRandom seed = new SplittableRandom(options.seed());
+        List<Thread> workers = new ArrayList<>();
+        for (int w = 0; w < options.concurrency(); w++) {
+            SplittableRandom random = seed.split();
+            workers.add(Thread.ofVirtual().name("load-worker-" + w).start(() -> {
+                ArrivalSchedule schedule = new ArrivalSchedule(options);
+                long sent;
+                while ((sent = System.nanoTime()) < end) {
+                    Workload.Call call = workload.next(random, Instant.now(), schedule.inBurst(sent - start));
+                    try {
+                        int status = client.send(request(call), HttpResponse.BodyHandlers.discarding()).statusCode();
+                        if (sent >= measureFrom) {
+                            stats.get(call.endpoint()).record(System.nanoTime() - sent, status);
+                        }
+                    } catch (IOException ex) {
+                        if (sent >= measureFrom) {
+                            stats.get(call.endpoint()).fail(System.nanoTime() - sent);
+                        }
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }));
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    // Loads --preload-hours of hourly history through the batch endpoint so long query windows find data
+    private void preload() throws IOException, InterruptedException {
+        List<String> batches = workload.preloadBatches(new SplittableRandom(options.seed() ^ 0x5EED), Instant.now(), options.preloadHours());
+        System.out.printf(Locale.ROOT, "Preloading %d hours of history in %d batches...%n", options.preloadHours(), batches.size());
+        AtomicLong failed = new AtomicLong();
+        Semaphore parallel = new Semaphore(8);
+        List<Thread> senders = new ArrayList<>();
+        for (String body : batches) {
+            parallel.acquire();
+            senders.add(Thread.ofVirtual().start(() -> {
+                try {
+                    HttpResponse<Void> response = client.send(request(
+                        new Workload.Call(Workload.Endpoint.INGEST, "/sensors/data/batch", body)), HttpResponse.BodyHandlers.discarding());
+                    if (response.statusCode() >= 400) {
+                        failed.incrementAndGet();
+                    }
+                } catch (IOException ex) {
+                    failed.incrementAndGet();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    parallel.release();
+                }
+            }));
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        if (failed.get() > 0) {
+            System.out.printf("Warning: %d preload batches failed%n", failed.get());
+        }
+    }
+
+    private HttpRequest request(Workload.Call call) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(url.resolve(call.path())).timeout(REQUEST_TIMEOUT);
+        if (call.body() == null) {
+            return builder.GET().build();
+        }
+        return builder.header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(call.body()))
+            .build();
+    }
+
+    private void reportInterval(long start, long measureFrom) {
+        long now = System.nanoTime();
+        StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "[%4ds]", TimeUnit.NANOSECONDS.toSeconds(now - start)));
+        if (now < measureFrom) {
+            System.out.println(line.append(" warming up"));
+            return;
+        }
+        for (EndpointStats s : stats.values()) {
+            Histogram h = s.intervalHistogram();
+            line.append(String.format(Locale.ROOT, "  %s: %6.0f/s p50 %7.2f p99 %8.2f max %8.2f ms",
+                s.endpoint().label, h.getTotalCount() / (double) REPORT_EVERY.toSeconds(),
+                h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(99) / 1000.0, h.getMaxValue() / 1000.0));
+        }
+        System.out.println(line);
+    }
+
+    private void report() throws IOException {
+        double seconds = options.duration().toNanos() / 1e9;
+        System.out.println();
+        System.out.printf("%-20s %9s %10s %8s %9s %9s %9s %9s %9s %9s%n",
+            "endpoint (ms)", "requests", "ok/s", "errors", "p50", "p90", "p99", "p99.9", "p99.99", "max");
+        for (EndpointStats s : stats.values()) {
+            Histogram h = s.total();
+            System.out.printf(Locale.ROOT, "%-20s %9d %10.1f %8d %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                s.endpoint().label, h.getTotalCount(), s.ok() / seconds, s.errors(),
+                h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(90) / 1000.0,
+                h.getValueAtPercentile(99) / 1000.0, h.getValueAtPercentile(99.9) / 1000.0,
+                h.getValueAtPercentile(99.99) / 1000.0, h.getMaxValue() / 1000.0);
+        }
+        for (EndpointStats s : stats.values()) {
+            if (s.errors() > 0) {
+                System.out.println(s.endpoint().label + " responses: " + s.breakdown());
+            }
+        }
+        if (options.openLoop()) {
+            double expected = new ArrivalSchedule(options)
+                .expectedRequests(options.warmup(), options.warmup().plus(options.duration()));
+            long sent = stats.values().stream().mapToLong(s -> s.total().getTotalCount()).sum();
+            System.out.printf(Locale.ROOT, "Target %.0f requests in the measured window, completed %d%n", expected, sent);
+        }
+        if (options.output() != null) {
+            Files.createDirectories(options.output());
+            for (EndpointStats s : stats.values()) {
+                String name = s.endpoint().name().toLowerCase(Locale.ROOT) + ".hgrm";
+                try (PrintStream out = new PrintStream(Files.newOutputStream(options.output().resolve(name)))) {
+                    s.writeDistribution(out);
+                }
+            }
+            System.out.println("Percentile distributions written to " + options.output());
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.weatherapi;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command line of the load test: {@code --name=value} pairs, all optional.
+ * See {@link #USAGE} for the list and defaults.
+ */
+public record LoadTestOptions(URI url,
+                              boolean openLoop,
+                              double rate,
+                              int concurrency,
+                              double ingestRatio,
+                              int sensors,
+                              List<WindowWeight> windows,
+                              List<String> stats,
+                              double burstFactor,
+                              Duration burstEvery,
+                              Duration burstLength,
+                              Duration warmup,
+                              Duration duration,
+                              int maxInFlight,
+                              int preloadHours,
+                              long seed,
+                              boolean launch,
+                              Path appJar,
+                              List<String> appArgs,
+                              Path output) {
+
+    static final String USAGE = """
+        Usage: java -jar loadtest.jar [--name=value ...]
+
+          --url=http://localhost:8080   app under test (ignored with --launch)
+          --mode=open                   open (fixed arrival rate, coordinated-omission safe) or closed
+          --rate=500                    open: target requests/s outside bursts
+          --concurrency=64              closed: number of workers, each sending back-to-back
+          --ingest-ratio=0.8            share of POST /sensors/data; the rest is GET /sensors/query
+          --sensors=1000                fleet size; every sensor reports all 3 metrics
+          --windows=1:60,7:25,31:15     query window mix, days:weight (1 to 31 days)
+          --stats=avg,min,max,sum,count,p95   statistics picked uniformly for queries
+          --burst-factor=5              ingest rate multiplier during a burst (1 = no bursts)
+          --burst-every=30s             time between burst starts
+          --burst-length=5s             burst duration
+          --warmup=10s                  traffic sent but not recorded
+          --duration=60s                recorded run
+          --max-in-flight=10000         open: outstanding requests before the generator waits
+          --preload-hours=0             before warmup, batch-load this many hours of hourly history
+          --seed=42                     random seed: same seed, same request sequence
+          --launch=false                start MongoDB (Testcontainers) and the app jar, then stop them
+          --app-jar=target/weather-metrics-api-0.0.1-SNAPSHOT-exec.jar
+          --app-args=                   extra app arguments, space-separated (e.g. --spring.profiles.active=virtual)
+          --output=                     directory for per-endpoint .hgrm percentile files
+        """;
+
+    /** One entry of the window mix: a window of {@code days} is picked with relative weight {@code weight}. */
+    public record WindowWeight(int days, int weight) { }
+
+    public static LoadTestOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            values.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        Args a = new Args(values);
+        String mode = a.string("mode", "open");
+        if (!mode.equals("open") && !mode.equals("closed")) {
+            throw new IllegalArgumentException("--mode must be open or closed");
+        }
+        LoadTestOptions options = new LoadTestOptions(
+            URI.create(a.string("url", "http://localhost:8080")),
+            mode.equals("open"),
+            a.number("rate", 500),
+            (int) a.number("concurrency", 64),
+            a.number("ingest-ratio", 0.8),
+            (int) a.number("sensors", 1000),
+            windows(a.string("windows", "1:60,7:25,31:15")),
+            List.of(a.string("stats", "avg,min,max,sum,count,p95").split(",")),
+            a.number("burst-factor", 5),
+            a.duration("burst-every", "30s"),
+            a.duration("burst-length", "5s"),
+            a.duration("warmup", "10s"),
+            a.duration("duration", "60s"),
+            (int) a.number("max-in-flight", 10_000),
+            (int) a.number("preload-hours", 0),
+            (long) a.number("seed", 42),
+            Boolean.parseBoolean(a.string("launch", "false")),
+            Path.of(a.string("app-jar", "target/weather-metrics-api-0.0.1-SNAPSHOT-exec.jar")),
+            a.string("app-args", "").isBlank() ? List.of() : List.of(a.string("app-args", "").trim().split("\\s+")),
+            a.string("output", "").isBlank() ? null : Path.of(a.string("output", "")));
+        a.rejectUnknown();
+        options.validate();
+        return options;
+    }
+
+    private void validate() {
+        if (rate <= 0 || concurrency < 1 || sensors < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("--rate, --concurrency, --sensors and --max-in-flight must be positive");
+        }
+        if (ingestRatio < 0 || ingestRatio > 1) {
+            throw new IllegalArgumentException("--ingest-ratio must be between 0 and 1");
+        }
+        if (burstFactor < 1) {
+            throw new IllegalArgumentException("--burst-factor must be at least 1");
+        }
+        if (burstFactor > 1 && burstLength.compareTo(burstEvery) >= 0) {
+            throw new IllegalArgumentException("--burst-length must be shorter than --burst-every");
+        }
+    }
+
+    // "1:60,7:25,31:15" -> window mix
+    static List<WindowWeight> windows(String raw) {
+        List<WindowWeight> out = new ArrayList<>();
+        for (String part : raw.split(",")) {
+            String[] dw = part.trim().split(":");
+            int days = Integer.parseInt(dw[0]);
+            int weight = dw.length > 1 ? Integer.parseInt(dw[1]) : 1;
+            if (days < 1 || days > 31 || weight < 1) {
+                throw new IllegalArgumentException("Window " + part + ": days must be 1 to 31 and weight positive");
+            }
+            out.add(new WindowWeight(days, weight));
+        }
+        return List.copyOf(out);
+    }
+
+    // Durations as 500ms, 30s, 5m, 1h
+    static Duration duration(String raw) {
+        String s = raw.trim().toLowerCase();
+        if (s.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(s.substring(0, s.length() - 2)));
+        }
+        long n = Long.parseLong(s.substring(0, s.length() - 1));
+        return switch (s.charAt(s.length() - 1)) {
+            case 's' -> Duration.ofSeconds(n);
+            case 'm' -> Duration.ofMinutes(n);
+            case 'h' -> Duration.ofHours(n);
+            default -> throw new IllegalArgumentException("Invalid duration: " + raw + " (use ms, s, m or h)");
+        };
+    }
+
+    private static final class Args {
+        private final Map<String, String> values;
+        private final Map<String, String> unused;
+
+        Args(Map<String, String> values) {
+            this.values = values;
+            this.unused = new HashMap<>(values);
+        }
+
+        String string(String name, String fallback) {
+            unused.remove(name);
+            return values.getOrDefault(name, fallback);
+        }
+
+        double number(String name, double fallback) {
+            String raw = string(name, null);
+            try {
+                return raw == null ? fallback : Double.parseDouble(raw);
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("--" + name + " must be a number, got: " + raw);
+            }
+        }
+
+        Duration duration(String name, String fallback) {
+            return LoadTestOptions.duration(string(name, fallback));
+        }
+
+        void rejectUnknown() {
+            if (!unused.isEmpty()) {
+                throw new IllegalArgumentException("Unknown option(s): " + unused.keySet());
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.weatherapi;
+
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A throwaway environment for --launch: MongoDB in a Testcontainers container (same image as
+ * docker-compose.yml) and the application jar in its own JVM on a free port. Both are stopped on close.
+ * The app's output goes to loadtest-app.log.
+ */
+final class LocalStack implements AutoCloseable {
+
+    private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(120);
+
+    private final MongoDBContainer mongo;
+    private final Process app;
+    private final URI url;
+
+    private LocalStack(MongoDBContainer mongo, Process app, URI url) {
+        this.mongo = mongo;
+        this.app = app;
+        this.url = url;
+    }
+
+    URI url() { return url; }
+
+    static LocalStack start(LoadTestOptions options) throws IOException, InterruptedException {
+        if (!Files.isRegularFile(options.appJar())) {
+            throw new IllegalArgumentException("App jar not found: " + options.appJar()
+                + " (run \"mvn package -DskipTests\" in the project root, or pass --app-jar)");
+        }
+        MongoDBContainer mongo = new MongoDBContainer(DockerImageName.parse("mongo:7"));
+        mongo.start();
+        Process app = null;
+        try {
+            int port = freePort();
+            List<String> command = new ArrayList<>(List.of(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-jar", options.appJar().toString(),
+                "--server.port=" + port,
+                "--spring.data.mongodb.uri=" + mongo.getReplicaSetUrl("weatherdb")));
+            command.addAll(options.appArgs());
+            System.out.println("Starting app: " + String.join(" ", command));
+            app = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(Path.of("loadtest-app.log").toFile())
+                .start();
+            URI url = URI.create("http://localhost:" + port);
+            awaitHealthy(app, url);
+            return new LocalStack(mongo, app, url);
+        } catch (IOException | InterruptedException | RuntimeException ex) {
+            if (app != null) {
+                app.destroyForcibly();
+            }
+            mongo.stop();
+            throw ex;
+        }
+    }
+
+    private static void awaitHealthy(Process app, URI url) throws InterruptedException {
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest health = HttpRequest.newBuilder(url.resolve("/actuator/health")).timeout(Duration.ofSeconds(2)).build();
+        long deadline = System.nanoTime() + STARTUP_TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!app.isAlive()) {
+                throw new IllegalStateException("App exited with " + app.exitValue() + "; see loadtest-app.log");
+            }
+            try {
+                if (client.send(health, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return;
+                }
+            } catch (IOException notYet) {
+                // Still starting
+            }
+            Thread.sleep(500);
+        }
+        throw new IllegalStateException("App not healthy after " + STARTUP_TIMEOUT.toSeconds() + "s; see loadtest-app.log");
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        app.destroy();
+        if (!app.waitFor(30, TimeUnit.SECONDS)) {
+            app.destroyForcibly();
+        }
+        mongo.stop();
+    }
+}
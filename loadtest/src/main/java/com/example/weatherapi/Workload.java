@@ -0,0 +1,142 @@
+package com.example.weatherapi;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * The request mix: which endpoint, which sensor/metric, which window, with what body.
+ *
+ * Fleet shape: sensors "sensor-0" .. "sensor-(N-1)", each reporting all three metrics with
+ * plausible values stamped a few seconds in the past. Queries end now and span a window
+ * drawn from the configured mix; half filter on 1-5 sensors, half on one metric.
+ *
+ * Everything random comes from the caller's {@link SplittableRandom}, so a seed fixes the sequence.
+ */
+final class Workload {
+
+    static final List<String> METRICS = List.of("temperature", "humidity", "wind_speed");
+    static final int PRELOAD_BATCH = 1000;
+
+    enum Endpoint {
+        INGEST("POST /sensors/data"),
+        QUERY("GET /sensors/query");
+
+        final String label;
+
+        Endpoint(String label) {
+            this.label = label;
+        }
+    }
+
+    /** One request to send: a path with query string, and a JSON body for POSTs (else null). */
+    record Call(Endpoint endpoint, String path, String body) { }
+
+    private final int sensors;
+    private final double ingestRatio;
+    private final double burstIngestRatio;
+    private final List<LoadTestOptions.WindowWeight> windows;
+    private final int totalWindowWeight;
+    private final List<String> stats;
+
+    Workload(LoadTestOptions options) {
+        this.sensors = options.sensors();
+        this.ingestRatio = options.ingestRatio();
+        // Bursts multiply the ingest rate only, so ingests take a larger share of a burst
+        double ingest = options.ingestRatio() * options.burstFactor();
+        this.burstIngestRatio = ingest / (ingest + (1 - options.ingestRatio()));
+        this.windows = options.windows();
+        this.totalWindowWeight = windows.stream().mapToInt(LoadTestOptions.WindowWeight::weight).sum();
+        this.stats = options.stats();
+    }
+
+    Call next(SplittableRandom random, Instant now, boolean inBurst) {
+        double ratio = inBurst ? burstIngestRatio : ingestRatio;
+        return random.nextDouble() < ratio ? ingest(random, now) : query(random, now);
+    }
+
+    Call ingest(SplittableRandom random, Instant now) {
+        String metric = METRICS.get(random.nextInt(METRICS.size()));
+        Instant timestamp = now.minusMillis(random.nextInt(5_000)).truncatedTo(ChronoUnit.MILLIS);
+        return new Call(Endpoint.INGEST, "/sensors/data",
+            reading("sensor-" + random.nextInt(sensors), metric, value(random, metric), timestamp));
+    }
+
+    Call query(SplittableRandom random, Instant now) {
+        Instant to = now.truncatedTo(ChronoUnit.SECONDS);
+        Instant from = to.minus(Duration.ofDays(windowDays(random)));
+        StringBuilder path = new StringBuilder("/sensors/query?stat=")
+            .append(stats.get(random.nextInt(stats.size())))
+            .append("&from=").append(from)
+            .append("&to=").append(to);
+        if (random.nextBoolean()) {
+            int count = 1 + random.nextInt(Math.min(5, sensors));
+            path.append("&sensorIds=");
+            for (int i = 0; i < count; i++) {
+                path.append(i == 0 ? "" : ",").append("sensor-").append(random.nextInt(sensors));
+            }
+        }
+        if (random.nextBoolean()) {
+            path.append("&metrics=").append(METRICS.get(random.nextInt(METRICS.size())));
+        }
+        return new Call(Endpoint.QUERY, path.toString(), null);
+    }
+
+    int windowDays(SplittableRandom random) {
+        int pick = random.nextInt(totalWindowWeight);
+        for (LoadTestOptions.WindowWeight w : windows) {
+            pick -= w.weight();
+            if (pick < 0) {
+                return w.days();
+            }
+        }
+        throw new IllegalStateException("Window weights changed");
+    }
+
+    /**
+     * History for the query windows: one reading per sensor, metric and hour for the last
+     * {@code hours} hours, as /sensors/data/batch bodies of {@link #PRELOAD_BATCH} readings.
+     */
+    List<String> preloadBatches(SplittableRandom random, Instant now, int hours) {
+        List<String> batches = new ArrayList<>();
+        StringBuilder batch = new StringBuilder("[");
+        int inBatch = 0;
+        Instant top = now.truncatedTo(ChronoUnit.HOURS);
+        for (int h = hours; h >= 1; h--) {
+            Instant timestamp = top.minus(Duration.ofHours(h));
+            for (int s = 0; s < sensors; s++) {
+                for (String metric : METRICS) {
+                    batch.append(inBatch == 0 ? "" : ",")
+                        .append(reading("sensor-" + s, metric, value(random, metric), timestamp));
+                    if (++inBatch == PRELOAD_BATCH) {
+                        batches.add(batch.append(']').toString());
+                        batch = new StringBuilder("[");
+                        inBatch = 0;
+                    }
+                }
+            }
+        }
+        if (inBatch > 0) {
+            batches.add(batch.append(']').toString());
+        }
+        return batches;
+    }
+
+    private static double value(SplittableRandom random, String metric) {
+        return switch (metric) {
+            case "temperature" -> 15 + random.nextDouble(-20, 20);
+            case "humidity" -> random.nextDouble(20, 100);
+            default -> random.nextDouble(0, 25);
+        };
+    }
+
+    private static String reading(String sensorId, String metric, double value, Instant timestamp) {
+        return String.format(Locale.ROOT,
+            "{\"sensorId\":\"%s\",\"metric\":\"%s\",\"value\":%.2f,\"timestamp\":\"%s\"}",
+            sensorId, metric, value, timestamp);
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.weatherapi;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for load test command line parsing.
+ */
+class LoadTestOptionsTest {
+
+    @Test
+    void parse_appliesDefaults() {
+        LoadTestOptions options = LoadTestOptions.parse(new String[0]);
+
+        assertTrue(options.openLoop());
+        assertEquals(500, options.rate());
+        assertEquals(0.8, options.ingestRatio());
+        assertEquals(List.of(new LoadTestOptions.WindowWeight(1, 60),
+            new LoadTestOptions.WindowWeight(7, 25), new LoadTestOptions.WindowWeight(31, 15)), options.windows());
+        assertEquals(Duration.ofSeconds(60), options.duration());
+        assertFalse(options.launch());
+        assertNull(options.output());
+    }
+
+    @Test
+    void parse_readsEveryKindOfValue() {
+        LoadTestOptions options = LoadTestOptions.parse(new String[] {
+            "--mode=closed", "--concurrency=8", "--windows=3:1,31:2", "--warmup=500ms", "--duration=2m",
+            "--app-args=--spring.profiles.active=virtual --sensors.rollups.enabled=true"});
+
+        assertFalse(options.openLoop());
+        assertEquals(8, options.concurrency());
+        assertEquals(3, options.windows().get(0).days());
+        assertEquals(Duration.ofMillis(500), options.warmup());
+        assertEquals(Duration.ofMinutes(2), options.duration());
+        assertEquals(2, options.appArgs().size());
+    }
+
+    @Test
+    void parse_rejectsUnknownAndOutOfRangeOptions() {
+        assertThrows(IllegalArgumentException.class, () -> LoadTestOptions.parse(new String[] {"--rates=10"}));
+        assertThrows(IllegalArgumentException.class, () -> LoadTestOptions.parse(new String[] {"--windows=32:1"}));
+        assertThrows(IllegalArgumentException.class, () -> LoadTestOptions.parse(new String[] {"--ingest-ratio=1.5"}));
+        assertThrows(IllegalArgumentException.class, () -> LoadTestOptions.parse(new String[] {"--mode=fast"}));
+        assertThrows(IllegalArgumentException.class,
+            () -> LoadTestOptions.parse(new String[] {"--burst-every=5s", "--burst-length=5s"}));
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.weatherapi;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the request mix and the open-loop arrival schedule.
+ */
+class WorkloadTest {
+
+    private static final Instant NOW = Instant.parse("2025-08-20T10:00:00Z");
+    private static final Pattern WINDOW = Pattern.compile("from=([^&]+)&to=([^&]+)");
+
+    @Test
+    void next_sameSeedGivesSameSequence() {
+        Workload workload = new Workload(LoadTestOptions.parse(new String[0]));
+
+        List<Workload.Call> first = calls(workload, new SplittableRandom(7), 50, false);
+        List<Workload.Call> second = calls(workload, new SplittableRandom(7), 50, false);
+
+        assertEquals(first, second);
+    }
+
+    @Test
+    void next_followsIngestRatioAndShiftsTowardsIngestInBursts() {
+        Workload workload = new Workload(LoadTestOptions.parse(new String[] {"--ingest-ratio=0.5", "--burst-factor=3"}));
+
+        double normal = ingestShare(calls(workload, new SplittableRandom(1), 20_000, false));
+        double burst = ingestShare(calls(workload, new SplittableRandom(1), 20_000, true));
+
+        assertEquals(0.5, normal, 0.02);
+        assertEquals(0.75, burst, 0.02); // 3x the ingests against the same queries
+    }
+
+    @Test
+    void query_windowsComeFromTheMix() {
+        Workload workload = new Workload(LoadTestOptions.parse(new String[] {"--windows=1:1,31:1"}));
+        SplittableRandom random = new SplittableRandom(3);
+
+        int longWindows = 0;
+        for (int i = 0; i < 2_000; i++) {
+            Matcher m = WINDOW.matcher(workload.query(random, NOW).path());
+            assertTrue(m.find());
+            long days = Duration.between(Instant.parse(m.group(1)), Instant.parse(m.group(2))).toDays();
+            assertTrue(days == 1 || days == 31, "days " + days);
+            longWindows += days == 31 ? 1 : 0;
+        }
+        assertEquals(1_000, longWindows, 100);
+    }
+
+    @Test
+    void ingest_usesFleetSensorsAndApiMetricNames() {
+        Workload workload = new Workload(LoadTestOptions.parse(new String[] {"--sensors=3"}));
+
+        Workload.Call call = workload.ingest(new SplittableRandom(5), NOW);
+
+        assertEquals("/sensors/data", call.path());
+        assertTrue(call.body().matches(
+            "\\{\"sensorId\":\"sensor-[0-2]\",\"metric\":\"(temperature|humidity|wind_speed)\",\"value\":-?[0-9.]+,\"timestamp\":\"[^\"]+Z\"}"),
+            call.body());
+    }
+
+    @Test
+    void preloadBatches_coverEverySensorMetricAndHour() {
+        Workload workload = new Workload(LoadTestOptions.parse(new String[] {"--sensors=500"}));
+
+        List<String> batches = workload.preloadBatches(new SplittableRandom(9), NOW, 2);
+
+        // 500 sensors x 3 metrics x 2 hours = 3000 readings = 3 full batches
+        assertEquals(3, batches.size());
+        assertEquals(Workload.PRELOAD_BATCH, batches.get(0).split("\\{").length - 1);
+    }
+
+    @Test
+    void arrivalSchedule_burstsAtTheEndOfEachPeriod() {
+        ArrivalSchedule schedule = new ArrivalSchedule(LoadTestOptions.parse(new String[] {
+            "--rate=100", "--ingest-ratio=0.5", "--burst-factor=3", "--burst-every=10s", "--burst-length=2s"}));
+
+        assertFalse(schedule.inBurst(Duration.ofSeconds(1).toNanos()));
+        assertTrue(schedule.inBurst(Duration.ofSeconds(9).toNanos()));
+        assertFalse(schedule.inBurst(Duration.ofSeconds(11).toNanos()));
+        assertEquals(200, schedule.rateAt(Duration.ofSeconds(9).toNanos()));
+        // 8s at 100/s + 2s at 200/s
+        assertEquals(1200, schedule.expectedRequests(Duration.ZERO, Duration.ofSeconds(10)), 1e-6);
+        // 9s..15s: 1s of one burst, 5s outside
+        assertEquals(700, schedule.expectedRequests(Duration.ofSeconds(9), Duration.ofSeconds(15)), 1e-6);
+    }
+
+    @Test
+    void arrivalSchedule_gapsAverageToTheTargetRate() {
+        ArrivalSchedule schedule = new ArrivalSchedule(LoadTestOptions.parse(new String[] {"--rate=1000", "--burst-factor=1"}));
+        SplittableRandom random = new SplittableRandom(11);
+
+        long total = 0;
+        for (int i = 0; i < 100_000; i++) {
+            total += schedule.nextGapNanos(random, 0);
+        }
+
+        assertEquals(1_000_000, total / 100_000.0, 20_000); // 1 ms on average
+    }
+
+    private static List<Workload.Call> calls(Workload workload, SplittableRandom random, int n, boolean inBurst) {
+        return java.util.stream.IntStream.range(0, n).mapToObj(i -> workload.next(random, NOW, inBurst)).toList();
+    }
+
+    private static double ingestShare(List<Workload.Call> calls) {
+        return calls.stream().filter(c -> c.endpoint() == Workload.Endpoint.INGEST).count() / (double) calls.size();
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.weatherapi;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Something that can compute per-metric partial aggregates over time ranges.
+ *
+ * Implementations differ in where the readings live (raw documents, hour buckets,
+ * rollups, ...) but must agree on the answer for the same readings.
+ * Null/empty sensorIds or metrics mean "all".
+ */
+public interface AggregateSource {
+
+    /**
+     * Aggregates readings falling in any of the given (non-overlapping) ranges.
+     *
+     * @return partials keyed by metric; metrics without readings are absent
+     */
+    Map<String, MetricAggregate> aggregate(List<String> sensorIds, List<String> metrics, List<TimeRange> ranges);
+
+    /**
+     * The aggregations {@link #aggregate} sends to Mongo for the same arguments, in order,
+     * without running them. Used to explain a query.
+     */
+    List<PlannedAggregation> plan(List<String> sensorIds, List<String> metrics, List<TimeRange> ranges);
+
+    /** Aggregates readings in the single window [from, to]. */
+    default Map<String, MetricAggregate> aggregate(List<String> sensorIds, List<String> metrics,
+                                                   Instant from, Instant to) {
+        return aggregate(sensorIds, metrics, List.of(new TimeRange(from, to)));
+    }
+}
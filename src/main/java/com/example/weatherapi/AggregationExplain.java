@@ -0,0 +1,85 @@
+package com.example.weatherapi;
+
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What Mongo reported for one explained aggregation: the winning plan (as a stage chain
+ * and in full), the indexes it used and its execution stats.
+ *
+ * Handles both explain shapes: classic plans nest the $match part under stages[0].$cursor,
+ * slot-based (SBE) plans report at the top level and wrap the plan in "queryPlan".
+ */
+public record AggregationExplain(String collection,
+                                 String plan,
+                                 List<String> indexes,
+                                 Long keysExamined,
+                                 Long docsExamined,
+                                 Long returned,
+                                 Long executionTimeMillis,
+                                 Document winningPlan) {
+
+    /** Reads the output of an explain command at executionStats verbosity. */
+    static AggregationExplain parse(String collection, Document explain) {
+        Document cursor = explain;
+        if (!explain.containsKey("queryPlanner") && explain.get("stages") instanceof List<?> stages
+                && !stages.isEmpty() && stages.get(0) instanceof Document first && first.containsKey("$cursor")) {
+            cursor = first.get("$cursor", Document.class);
+        }
+        Document planner = cursor.get("queryPlanner", Document.class);
+        Document winning = planner == null ? null : planner.get("winningPlan", Document.class);
+        if (winning != null && winning.containsKey("queryPlan")) {
+            winning = winning.get("queryPlan", Document.class);
+        }
+        Document stats = cursor.get("executionStats", new Document());
+
+        List<String> indexes = new ArrayList<>();
+        return new AggregationExplain(collection,
+                winning == null ? null : describe(winning, indexes),
+                indexes,
+                number(stats, "totalKeysExamined"),
+                number(stats, "totalDocsExamined"),
+                number(stats, "nReturned"),
+                number(stats, "executionTimeMillis"),
+                winning);
+    }
+
+    /** One line for logs: the plan, indexes and counts, without the full plan document. */
+    public String summary() {
+        return collection + ": " + plan
+                + (indexes.isEmpty() ? ", no index" : ", index " + String.join(",", indexes))
+                + ", keysExamined=" + keysExamined + ", docsExamined=" + docsExamined
+                + ", returned=" + returned + ", " + executionTimeMillis + " ms";
+    }
+
+    // Stage chain from the root down, e.g. "PROJECTION_COVERED <- IXSCAN"; collects index names on the way
+    private static String describe(Document stage, List<String> indexes) {
+        String name = stage.getString("stage");
+        String index = stage.getString("indexName");
+        if (index != null && !indexes.contains(index)) {
+            indexes.add(index);
+        }
+        StringBuilder out = new StringBuilder(name == null ? "?" : name);
+        if (index != null) {
+            out.append('[').append(index).append(']');
+        }
+        if (stage.get("inputStage") instanceof Document input) {
+            out.append(" <- ").append(describe(input, indexes));
+        } else if (stage.get("inputStages") instanceof List<?> inputs) {
+            List<String> parts = new ArrayList<>();
+            for (Object input : inputs) {
+                if (input instanceof Document d) {
+                    parts.add(describe(d, indexes));
+                }
+            }
+            out.append(" <- (").append(String.join(", ", parts)).append(')');
+        }
+        return out.toString();
+    }
+
+    private static Long number(Document stats, String key) {
+        return stats.get(key) instanceof Number n ? n.longValue() : null;
+    }
+}
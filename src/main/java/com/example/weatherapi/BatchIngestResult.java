@@ -0,0 +1,35 @@
+package com.example.weatherapi;
+
+import java.util.List;
+
+/**
+ * DTO summarizing a multi-reading ingest.
+ *
+ * Readings are identified by their zero-based position in the request.
+ * Every position not listed in {@code rejections} was accepted. Streaming uploads
+ * report only the first N rejections; {@code rejected} always holds the full count.
+ */
+public class BatchIngestResult {
+    private final long received;              // readings in the request
+    private final long accepted;              // readings written
+    private final long rejected;              // readings refused (validation or write error)
+    private final List<Rejection> rejections; // per-item reasons, in request order (may be capped)
+
+    public BatchIngestResult(long received, long accepted, long rejected, List<Rejection> rejections) {
+        this.received = received;
+        this.accepted = accepted;
+        this.rejected = rejected;
+        this.rejections = rejections;
+    }
+
+    // Getters
+    public long getReceived() { return received; }
+    public long getAccepted() { return accepted; }
+    public long getRejected() { return rejected; }
+    public List<Rejection> getRejections() { return rejections; }
+
+    /**
+     * A single refused reading and why.
+     */
+    public record Rejection(long index, String error) { }
+}
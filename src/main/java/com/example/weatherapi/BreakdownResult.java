@@ -0,0 +1,44 @@
+package com.example.weatherapi;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * One page of a per-sensor breakdown. The header fields mirror {@link QueryResult};
+ * the rows are an open cursor holding up to limit + 1 rows, the extra one only
+ * signalling that another page exists.
+ */
+public class BreakdownResult {
+    private final GroupBy groupBy;
+    private final List<String> sensorIds;      // sensors included in the query (null = all)
+    private final List<String> metrics;        // metrics included in the query (null = all)
+    private final List<Statistic> statistics;  // values reported per row
+    private final Instant from;
+    private final Instant to;
+    private final int limit;                   // rows per page
+    private final Stream<BreakdownRow> rows;
+
+    public BreakdownResult(GroupBy groupBy, List<String> sensorIds, List<String> metrics,
+                           List<Statistic> statistics, Instant from, Instant to,
+                           int limit, Stream<BreakdownRow> rows) {
+        this.groupBy = groupBy;
+        this.sensorIds = sensorIds;
+        this.metrics = metrics;
+        this.statistics = statistics;
+        this.from = from;
+        this.to = to;
+        this.limit = limit;
+        this.rows = rows;
+    }
+
+    // Getters
+    public GroupBy getGroupBy() { return groupBy; }
+    public List<String> getSensorIds() { return sensorIds; }
+    public List<String> getMetrics() { return metrics; }
+    public List<Statistic> getStatistics() { return statistics; }
+    public Instant getFrom() { return from; }
+    public Instant getTo() { return to; }
+    public int getLimit() { return limit; }
+    public Stream<BreakdownRow> getRows() { return rows; }
+}
@@ -0,0 +1,121 @@
+package com.example.weatherapi;
+
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
+
+/**
+ * One row of a per-sensor breakdown: partials per metric for a single sensor.
+ * With {@link GroupBy#SENSOR_METRIC} every row holds exactly one metric.
+ *
+ * A page is read in two steps. {@link #keysQuery} walks the (sensor, metric, time) index from
+ * the page start and {@link #pageSensors} stops at the first row past the page, which gives the
+ * page's sensors; {@link #groupStages} then only aggregates the readings of those sensors. So a
+ * page costs the readings on it, however many sensors come after it.
+ */
+public record BreakdownRow(String sensorId, Map<String, MetricAggregate> byMetric) {
+
+    /** The (sensor, metric) of a row; metric is null when grouping by sensor. */
+    record Key(String sensorId, Object metric) { }
+
+    /** Keyset position of this row, for the continuation token. */
+    ContinuationToken position(GroupBy groupBy) {
+        String metric = groupBy == GroupBy.SENSOR_METRIC ? byMetric.keySet().iterator().next() : null;
+        return new ContinuationToken(sensorId, metric);
+    }
+
+    /**
+     * Readings matching {@code criteria} in index order, projected to (sensor, metric) so the index
+     * covers the query. {@code hint} names that index, or is null for none.
+     */
+    static Query keysQuery(Criteria criteria, String sensorField, String metricField, String timeField, String hint) {
+        Query query = new Query(criteria).with(Sort.by(sensorField, metricField, timeField));
+        query.fields().include(sensorField, metricField).exclude("_id");
+        if (hint != null) {
+            query.withHint(hint);
+        }
+        return query;
+    }
+
+    static Key key(Document d, GroupBy groupBy, String sensorField, String metricField) {
+        return new Key(d.getString(sensorField), groupBy == GroupBy.SENSOR_METRIC ? d.get(metricField) : null);
+    }
+
+    /**
+     * Sensors of the first {@code limit} rows, from {@link #keysQuery} results. Reads up to the first
+     * reading of the last row only, then closes {@code keys}.
+     */
+    static List<String> pageSensors(Stream<Document> keys, GroupBy groupBy, String sensorField, String metricField,
+                                    int limit) {
+        try (keys) {
+            return keys.map(d -> key(d, groupBy, sensorField, metricField))
+                .distinct() // keys arrive grouped, so this holds one page of them
+                .limit(limit)
+                .map(Key::sensorId)
+                .distinct()
+                .toList();
+        }
+    }
+
+    /**
+     * Shared pipeline tail over rows already sorted in (sensor, metric) index order and narrowed
+     * to the page's sensors: groups per (sensor, metric), folds to one row per sensor when
+     * grouping by sensor, and keeps the first {@code limit} rows in key order.
+     */
+    static List<AggregationOperation> groupStages(GroupBy groupBy, String sensorField, String metricField,
+                                                  String valueField, int limit) {
+        List<AggregationOperation> ops = new ArrayList<>();
+        ops.add(group(sensorField, metricField)
+            .count().as("count")
+            .sum(valueField).as("sum")
+            .min(valueField).as("min")
+            .max(valueField).as("max"));
+        if (groupBy == GroupBy.SENSOR_METRIC) {
+            ops.add(sort(Sort.by("_id." + sensorField, "_id." + metricField)));
+        } else {
+            ops.add(context -> new Document("$group", new Document("_id", "$_id." + sensorField)
+                .append("metrics", new Document("$push", new Document("metric", "$_id." + metricField)
+                    .append("count", "$count")
+                    .append("sum", "$sum")
+                    .append("min", "$min")
+                    .append("max", "$max")))));
+            ops.add(context -> new Document("$sort", new Document("_id", 1)));
+        }
+        ops.add(limit(limit));
+        return ops;
+    }
+
+    /** Reads a row produced by {@link #groupStages}; {@code metricName} decodes the stored metric. */
+    static BreakdownRow of(Document d, GroupBy groupBy, String sensorField, String metricField,
+                           Function<Object, String> metricName) {
+        Map<String, MetricAggregate> byMetric = new LinkedHashMap<>();
+        if (groupBy == GroupBy.SENSOR_METRIC) {
+            Document id = d.get("_id", Document.class);
+            byMetric.put(metricName.apply(id.get(metricField)), partial(d));
+            return new BreakdownRow(id.getString(sensorField), byMetric);
+        }
+        for (Document m : d.getList("metrics", Document.class)) {
+            byMetric.put(metricName.apply(m.get("metric")), partial(m));
+        }
+        return new BreakdownRow(d.getString("_id"), byMetric);
+    }
+
+    private static MetricAggregate partial(Document d) {
+        return new MetricAggregate(
+            ((Number) d.get("count")).longValue(),
+            ((Number) d.get("sum")).doubleValue(),
+            ((Number) d.get("min")).doubleValue(),
+            ((Number) d.get("max")).doubleValue());
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.weatherapi;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Something that can compute per-sensor partial aggregates a page at a time.
+ * Null/empty sensorIds or metrics mean "all".
+ */
+public interface BreakdownSource {
+
+    /**
+     * Streams up to {@code limit} rows in (sensorId, metric) order, starting strictly after
+     * {@code after} (null = from the start). Callers must close the stream.
+     */
+    Stream<BreakdownRow> breakdown(List<String> sensorIds, List<String> metrics, TimeRange window,
+                                   GroupBy groupBy, ContinuationToken after, int limit);
+}
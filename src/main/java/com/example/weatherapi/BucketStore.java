@@ -0,0 +1,397 @@
+package com.example.weatherapi;
+
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.Document;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.aggregation.ArrayOperators;
+import org.springframework.data.mongodb.core.aggregation.DateOperators;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
+
+/**
+ * Hour-bucketed storage for sensor readings ("sensor_buckets").
+ *
+ * Writes: readings are grouped by (sensorId, metric, hour) and each group becomes one
+ * upsert that $push-es the timestamps/values and $inc/$min/$max-es the running summary.
+ *
+ * Reads: buckets lying entirely inside [from, to] are answered from their summaries;
+ * only the (at most two) partially covered hours at the window edges have their
+ * arrays unwound and filtered reading by reading.
+ *
+ * Series unwind every bucket overlapping the window, since series buckets need not line
+ * up with storage hours.
+ */
+@Component
+public class BucketStore implements AggregateSource, SeriesSource, BreakdownSource, SketchSource, ExportSource {
+
+    static final String COLLECTION = "sensor_buckets";
+    static final Duration BUCKET_SPAN = Duration.ofHours(1);
+
+    private final MongoTemplate mongoTemplate;
+    private final StorageLayout layout;
+
+    public BucketStore(MongoTemplate mongoTemplate, StorageLayout layout) {
+        this.mongoTemplate = mongoTemplate;
+        this.layout = layout;
+    }
+
+    /**
+     * Spring Boot does not auto-create indexes; the unique key keeps concurrent
+     * upserts for a new hour from creating two buckets.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        if (layout != StorageLayout.BUCKETED) {
+            return;
+        }
+        mongoTemplate.indexOps(SensorBucket.class).createIndex(
+            new Index()
+                .on("sensorId", Sort.Direction.ASC)
+                .on("metric", Sort.Direction.ASC)
+                .on("start", Sort.Direction.ASC)
+                .unique()
+                .named("bucket_sensor_metric_start_idx")
+        );
+    }
+
+    /**
+     * Appends readings to their hour buckets with one unordered bulk of upserts.
+     *
+     * @return write errors keyed by the reading's index in {@code readings} (empty = all written)
+     */
+    public Map<Integer, String> append(List<SensorData> readings) {
+        Map<BucketKey, List<Integer>> groups = groupByBucket(readings);
+
+        BulkOperations ops = mongoTemplate.bulkOps(BulkMode.UNORDERED, SensorBucket.class, COLLECTION);
+        List<List<Integer>> opMembers = new ArrayList<>(groups.size());
+        groups.forEach((key, members) -> {
+            ops.upsert(bucketQuery(key), appendUpdate(readings, members));
+            opMembers.add(members);
+        });
+
+        Map<Integer, String> failures = new LinkedHashMap<>();
+        try {
+            ops.execute();
+        } catch (BulkOperationException ex) {
+            // An upsert failure rejects every reading that was folded into it
+            for (BulkWriteError error : ex.getErrors()) {
+                for (int i : opMembers.get(error.getIndex())) {
+                    failures.put(i, error.getMessage());
+                }
+            }
+        }
+        return failures;
+    }
+
+    @Override
+    public Map<String, MetricAggregate> aggregate(List<String> sensorIds,
+                                                  List<String> metrics,
+                                                  List<TimeRange> ranges) {
+        Map<String, MetricAggregate> results = new LinkedHashMap<>();
+        for (PlannedAggregation planned : plan(sensorIds, metrics, ranges)) {
+            for (Document d : mongoTemplate.aggregate(planned.aggregation(), planned.collection(), Document.class)) {
+                collect(d, results);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public List<PlannedAggregation> plan(List<String> sensorIds, List<String> metrics, List<TimeRange> ranges) {
+        List<PlannedAggregation> planned = new ArrayList<>();
+        for (TimeRange range : ranges) {
+            for (List<AggregationOperation> pipeline : aggregatePipelines(sensorIds, metrics, range)) {
+                planned.add(new PlannedAggregation(COLLECTION, newAggregation(pipeline)));
+            }
+        }
+        return planned;
+    }
+
+    /**
+     * Pipelines aggregating readings in {@code range} per metric: one over the summaries of whole
+     * buckets (omitted when none fit) and one over the readings of the edge buckets.
+     */
+    static List<List<AggregationOperation>> aggregatePipelines(List<String> sensorIds,
+                                                               List<String> metrics,
+                                                               TimeRange range) {
+        Instant from = range.from();
+        Instant to = range.to();
+        Instant firstFull = firstFullBucket(from);
+        Instant lastFull = to.minus(BUCKET_SPAN); // a bucket is full when start + 1h <= to
+        List<List<AggregationOperation>> pipelines = new ArrayList<>(2);
+
+        // 1) Whole buckets: merge their running summaries
+        if (!firstFull.isAfter(lastFull)) {
+            Criteria full = filter(sensorIds, metrics).and("start").gte(firstFull).lte(lastFull);
+            pipelines.add(List.of(
+                match(full),
+                group("metric")
+                    .sum("count").as("count")
+                    .sum("sum").as("sum")
+                    .min("min").as("min")
+                    .max("max").as("max")
+            ));
+        }
+
+        // 2) Edge buckets: open the arrays and keep only readings inside the window
+        Criteria edge = filter(sensorIds, metrics).andOperator(
+            Criteria.where("start").gte(bucketStart(from)).lte(to),
+            new Criteria().orOperator(
+                Criteria.where("start").lt(firstFull),
+                Criteria.where("start").gt(lastFull)));
+        pipelines.add(List.of(
+            match(edge),
+            unwind("timestamps", "i"),
+            project("metric")
+                .and("timestamps").as("t")
+                .and(ArrayOperators.ArrayElemAt.arrayOf("values").elementAt("i")).as("v"),
+            match(Criteria.where("t").gte(from).lte(to)),
+            group("metric")
+                .count().as("count")
+                .sum("v").as("sum")
+                .min("v").as("min")
+                .max("v").as("max")
+        ));
+        return pipelines;
+    }
+
+    @Override
+    public Stream<SeriesPoint> series(List<String> sensorIds,
+                                      List<String> metrics,
+                                      TimeRange window,
+                                      SeriesInterval interval) {
+        Aggregation agg = newAggregation(seriesPipeline(sensorIds, metrics, window, interval))
+            .withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+        return mongoTemplate.aggregateStream(agg, COLLECTION, Document.class)
+            .map(d -> SeriesPoint.of(d, d.get("_id", Document.class).getString("metric")));
+    }
+
+    static List<AggregationOperation> seriesPipeline(List<String> sensorIds,
+                                                     List<String> metrics,
+                                                     TimeRange window,
+                                                     SeriesInterval interval) {
+        List<AggregationOperation> ops = new ArrayList<>();
+        ops.add(match(filter(sensorIds, metrics).and("start").gte(bucketStart(window.from())).lte(window.to())));
+        ops.add(unwind("timestamps", "i"));
+        ops.add(project("metric")
+            .and("timestamps").as("t")
+            .and(ArrayOperators.ArrayElemAt.arrayOf("values").elementAt("i")).as("v"));
+        ops.add(match(Criteria.where("t").gte(window.from()).lte(window.to())));
+        ops.add(project("metric", "v")
+            .and(DateOperators.dateOf("t").truncate(interval.mongoUnit()).binSize(interval.amount()))
+            .as("start"));
+        ops.addAll(SeriesPoint.groupStages("metric", "v"));
+        return ops;
+    }
+
+    @Override
+    public Stream<BreakdownRow> breakdown(List<String> sensorIds,
+                                          List<String> metrics,
+                                          TimeRange window,
+                                          GroupBy groupBy,
+                                          ContinuationToken after,
+                                          int limit) {
+        List<String> page = BreakdownRow.pageSensors(
+            mongoTemplate.stream(breakdownKeys(sensorIds, metrics, window, groupBy, after), Document.class, COLLECTION),
+            groupBy, "sensorId", "metric", limit);
+        if (page.isEmpty()) {
+            return Stream.empty();
+        }
+        Aggregation agg = newAggregation(breakdownPipeline(page, metrics, window, groupBy, after, limit))
+            .withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+        return mongoTemplate.aggregateStream(agg, COLLECTION, Document.class)
+            .map(d -> BreakdownRow.of(d, groupBy, "sensorId", "metric", String::valueOf));
+    }
+
+    // First step of a page: buckets holding a reading in the window, in unique bucket index order
+    static Query breakdownKeys(List<String> sensorIds,
+                               List<String> metrics,
+                               TimeRange window,
+                               GroupBy groupBy,
+                               ContinuationToken after) {
+        // An edge bucket can lie in the window by start yet hold no reading in it
+        Criteria criteria = new Criteria().andOperator(breakdownCriteria(sensorIds, metrics, window, groupBy, after),
+            Criteria.where("timestamps").elemMatch(new Criteria().gte(window.from()).lte(window.to())));
+        return BreakdownRow.keysQuery(criteria, "sensorId", "metric", "start", null);
+    }
+
+    // Second step over the sensors breakdownKeys found
+    static List<AggregationOperation> breakdownPipeline(List<String> pageSensors,
+                                                        List<String> metrics,
+                                                        TimeRange window,
+                                                        GroupBy groupBy,
+                                                        ContinuationToken after,
+                                                        int limit) {
+        List<AggregationOperation> ops = new ArrayList<>();
+        ops.add(match(breakdownCriteria(pageSensors, metrics, window, groupBy, after)));
+        ops.add(sort(Sort.by("sensorId", "metric", "start"))); // unique bucket index order
+        ops.add(unwind("timestamps", "i"));
+        ops.add(project("sensorId", "metric")
+            .and("timestamps").as("t")
+            .and(ArrayOperators.ArrayElemAt.arrayOf("values").elementAt("i")).as("v"));
+        ops.add(match(Criteria.where("t").gte(window.from()).lte(window.to())));
+        ops.addAll(BreakdownRow.groupStages(groupBy, "sensorId", "metric", "v", limit));
+        return ops;
+    }
+
+    private static Criteria breakdownCriteria(List<String> sensorIds, List<String> metrics, TimeRange window,
+                                              GroupBy groupBy, ContinuationToken after) {
+        Criteria criteria = filter(sensorIds, metrics).and("start").gte(bucketStart(window.from())).lte(window.to());
+        if (after != null) {
+            criteria = new Criteria().andOperator(criteria, after.after(groupBy, "sensorId", "metric", after.metric()));
+        }
+        return criteria;
+    }
+
+    @Override
+    public Map<String, QuantileSketch> sketches(List<String> sensorIds,
+                                                List<String> metrics,
+                                                List<TimeRange> ranges,
+                                                double relativeAccuracy) {
+        Map<String, QuantileSketch> results = new LinkedHashMap<>();
+        for (TimeRange range : ranges) {
+            Aggregation agg = newAggregation(sketchPipeline(sensorIds, metrics, range, relativeAccuracy))
+                .withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+            for (Document d : mongoTemplate.aggregate(agg, COLLECTION, Document.class)) {
+                results.merge(d.getString("_id"), SketchStages.read(d, relativeAccuracy), QuantileSketch::merge);
+            }
+        }
+        return results;
+    }
+
+    // Buckets keep raw arrays, so every reading in range is opened and binned
+    static List<AggregationOperation> sketchPipeline(List<String> sensorIds,
+                                                     List<String> metrics,
+                                                     TimeRange range,
+                                                     double relativeAccuracy) {
+        List<AggregationOperation> ops = new ArrayList<>();
+        ops.add(match(filter(sensorIds, metrics).and("start").gte(bucketStart(range.from())).lte(range.to())));
+        ops.add(unwind("timestamps", "i"));
+        ops.add(project("metric")
+            .and("timestamps").as("t")
+            .and(ArrayOperators.ArrayElemAt.arrayOf("values").elementAt("i")).as("v"));
+        ops.add(match(Criteria.where("t").gte(range.from()).lte(range.to())));
+        ops.addAll(SketchStages.readingStages("metric", "v", new QuantileSketch(relativeAccuracy).getLogGamma()));
+        return ops;
+    }
+
+    @Override
+    public Stream<SensorData> export(List<String> sensorIds, List<String> metrics, TimeRange window, int batchSize) {
+        Aggregation agg = newAggregation(exportPipeline(sensorIds, metrics, window))
+            .withOptions(AggregationOptions.builder().cursorBatchSize(batchSize).build());
+        return mongoTemplate.aggregateStream(agg, COLLECTION, Document.class)
+            .map(d -> SensorData.of(d.getString("sensorId"), d.getString("metric"),
+                ((Number) d.get("v")).doubleValue(), d.getDate("t").toInstant()));
+    }
+
+    // Opens the arrays of the buckets overlapping the window, one output document per reading
+    static List<AggregationOperation> exportPipeline(List<String> sensorIds, List<String> metrics, TimeRange window) {
+        return List.of(
+            match(filter(sensorIds, metrics).and("start").gte(bucketStart(window.from())).lte(window.to())),
+            unwind("timestamps", "i"),
+            project("sensorId", "metric")
+                .and("timestamps").as("t")
+                .and(ArrayOperators.ArrayElemAt.arrayOf("values").elementAt("i")).as("v")
+                .andExclude("_id"),
+            match(Criteria.where("t").gte(window.from()).lte(window.to())));
+    }
+
+    /** Start of the hour bucket containing {@code timestamp}. */
+    static Instant bucketStart(Instant timestamp) {
+        return timestamp.truncatedTo(ChronoUnit.HOURS);
+    }
+
+    /** Start of the first bucket that begins at or after {@code from}. */
+    static Instant firstFullBucket(Instant from) {
+        Instant start = bucketStart(from);
+        return start.equals(from) ? start : start.plus(BUCKET_SPAN);
+    }
+
+    private static Criteria filter(List<String> sensorIds, List<String> metrics) {
+        Criteria c = new Criteria();
+        if (sensorIds != null && !sensorIds.isEmpty()) {
+            c = c.and("sensorId").in(sensorIds);
+        }
+        if (metrics != null && !metrics.isEmpty()) {
+            c = c.and("metric").in(metrics);
+        }
+        return c;
+    }
+
+    /** Groups readings by bucket, remembering which input positions landed in each. */
+    static Map<BucketKey, List<Integer>> groupByBucket(List<SensorData> readings) {
+        Map<BucketKey, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < readings.size(); i++) {
+            SensorData r = readings.get(i);
+            BucketKey key = new BucketKey(r.getSensorId(), r.getMetric(), bucketStart(r.getTimestamp()));
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+        }
+        return groups;
+    }
+
+    static Query bucketQuery(BucketKey key) {
+        return Query.query(Criteria.where("sensorId").is(key.sensorId())
+                .and("metric").is(key.metric())
+                .and("start").is(key.start()));
+    }
+
+    static Update appendUpdate(List<SensorData> readings, List<Integer> members) {
+        Object[] timestamps = new Object[members.size()];
+        Object[] values = new Object[members.size()];
+        MetricAggregate summary = new MetricAggregate();
+        for (int j = 0; j < members.size(); j++) {
+            SensorData r = readings.get(members.get(j));
+            timestamps[j] = r.getTimestamp();
+            values[j] = r.getValue();
+            summary.add(r.getValue());
+        }
+        Update update = new Update();
+        update.push("timestamps").each(timestamps);
+        update.push("values").each(values);
+        return update
+            .inc("count", summary.getCount())
+            .inc("sum", summary.getSum())
+            .min("min", summary.getMin())
+            .max("max", summary.getMax());
+    }
+
+    /** Merges one {@link #aggregatePipelines} output document into {@code results}. */
+    static void collect(Document d, Map<String, MetricAggregate> results) {
+        String metric = d.getString("_id");
+        Number count = (Number) d.get("count");
+        if (metric == null || count == null || count.longValue() == 0) {
+            return;
+        }
+        MetricAggregate partial = new MetricAggregate(
+            count.longValue(),
+            ((Number) d.get("sum")).doubleValue(),
+            ((Number) d.get("min")).doubleValue(),
+            ((Number) d.get("max")).doubleValue());
+        results.computeIfAbsent(metric, m -> new MetricAggregate()).merge(partial);
+    }
+
+    record BucketKey(String sensorId, String metric, Instant start) { }
+}
@@ -0,0 +1,165 @@
+package com.example.weatherapi;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes already-normalized readings with unordered bulk operations.
+ *
+ * Readings are split into chunks of a configurable size; each chunk is a single
+ * round trip. Unordered mode lets Mongo keep going past a failed document, so
+ * one bad write only rejects that reading.
+ *
+ * With the raw layout each chunk is an insertMany into "sensor_data"; with the
+ * bucketed layout it becomes bucket upserts via {@link BucketStore}, and with the
+ * compact layout an insertMany of short-field documents via {@link CompactReadingStore}.
+ *
+ * With sensors.ingest.dedup.enabled each chunk is first screened by {@link IngestDeduplicator};
+ * readings already stored are skipped, and ones the unique key refuses are duplicates rather
+ * than failures. Neither reaches the ingest listeners. Readings before the {@link IngestGate}
+ * floor (archived days) are failures.
+ */
+@Component
+public class BulkSensorWriter {
+
+    private final MongoTemplate mongoTemplate;
+    private final StorageLayout layout;
+    private final BucketStore bucketStore;
+    private final CompactReadingStore compactStore;
+    private final IngestDeduplicator deduplicator;
+    private final List<IngestListener> listeners;
+    private final MongoBulkheads.Bulkhead bulkhead;
+    private final IngestGate gate;
+    private final SensorMetrics sensorMetrics;
+    private final int chunkSize;
+
+    public BulkSensorWriter(MongoTemplate mongoTemplate,
+                            StorageLayout layout,
+                            BucketStore bucketStore,
+                            CompactReadingStore compactStore,
+                            IngestDeduplicator deduplicator,
+                            List<IngestListener> listeners,
+                            MongoBulkheads bulkheads,
+                            IngestGate gate,
+                            SensorMetrics sensorMetrics,
+                            @Value("${sensors.ingest.bulk.chunk-size:1000}") int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("sensors.ingest.bulk.chunk-size must be at least 1");
+        }
+        this.mongoTemplate = mongoTemplate;
+        this.layout = layout;
+        this.bucketStore = bucketStore;
+        this.compactStore = compactStore;
+        this.deduplicator = deduplicator;
+        this.listeners = listeners;
+        this.bulkhead = bulkheads.ingest();
+        this.gate = gate;
+        this.sensorMetrics = sensorMetrics;
+        this.chunkSize = chunkSize;
+    }
+
+    public int getChunkSize() { return chunkSize; }
+
+    /** True when writes are insert-if-absent on (sensorId, metric, timestamp). */
+    public boolean isDeduplicating() { return deduplicator != null && deduplicator.isEnabled(); }
+
+    /**
+     * Inserts all readings, chunk by chunk, and notifies ingest listeners of what was written.
+     *
+     * @return write errors keyed by the reading's index in {@code readings} (empty = all written)
+     */
+    public Map<Integer, String> insert(List<SensorData> readings) {
+        Map<Integer, String> failures = new LinkedHashMap<>();
+        for (int offset = 0; offset < readings.size(); offset += chunkSize) {
+            List<SensorData> chunk = readings.subList(offset, Math.min(offset + chunkSize, readings.size()));
+            // One ingest permit per chunk, covering the listeners' writes (rollups) too
+            Map<Integer, String> chunkFailures = bulkhead.call(() -> gate.call(() -> sensorMetrics.timeWrite("bulk", layout, () -> {
+                Set<Integer> duplicates = new HashSet<>();
+                Map<Integer, String> failed = writeChunk(chunk, duplicates);
+                notifyListeners(chunk, failed, duplicates);
+                return failed;
+            })));
+            int base = offset;
+            chunkFailures.forEach((i, error) -> failures.put(base + i, error));
+        }
+        return failures;
+    }
+
+    // Writes one chunk; failures, and duplicates skipped or refused, are positions within the chunk
+    private Map<Integer, String> writeChunk(List<SensorData> chunk, Set<Integer> duplicates) {
+        Map<Integer, String> archived = gate.belowFloor(chunk);
+        if (!archived.isEmpty()) {
+            // Refused inside the gate, so none of them can land in a day being archived
+            IngestDeduplicator.Remaining rest = IngestDeduplicator.remaining(chunk, archived.keySet());
+            Map<Integer, String> failures = new LinkedHashMap<>(archived);
+            if (!rest.readings().isEmpty()) {
+                Set<Integer> restDuplicates = new HashSet<>();
+                writeChunk(rest.readings(), restDuplicates).forEach((i, error) -> failures.put(rest.position(i), error));
+                restDuplicates.forEach(i -> duplicates.add(rest.position(i)));
+            }
+            return failures;
+        }
+        if (!isDeduplicating()) {
+            return write(chunk, null);
+        }
+        Set<Integer> screened = deduplicator.screen(chunk);
+        IngestDeduplicator.Remaining rest = IngestDeduplicator.remaining(chunk, screened);
+        Map<Integer, String> failures = new LinkedHashMap<>();
+        Set<Integer> refused = new HashSet<>();
+        if (!rest.readings().isEmpty()) {
+            Set<Integer> refusedRest = new HashSet<>();
+            write(rest.readings(), refusedRest).forEach((i, error) -> failures.put(rest.position(i), error));
+            refusedRest.forEach(i -> refused.add(rest.position(i)));
+        }
+        deduplicator.recordWrite(chunk, screened, refused, failures.keySet());
+        duplicates.addAll(screened);
+        duplicates.addAll(refused);
+        return failures;
+    }
+
+    // One unordered bulk; duplicate keys go to refused when it is given, otherwise they are failures
+    private Map<Integer, String> write(List<SensorData> readings, Set<Integer> refused) {
+        if (layout == StorageLayout.BUCKETED) {
+            return bucketStore.append(readings);
+        }
+        if (layout == StorageLayout.COMPACT) {
+            return compactStore.insert(readings, refused);
+        }
+        try {
+            mongoTemplate.bulkOps(BulkMode.UNORDERED, SensorData.class)
+                    .insert(readings)
+                    .execute();
+        } catch (BulkOperationException ex) {
+            return IngestDeduplicator.failures(ex.getErrors(), refused);
+        }
+        return Map.of();
+    }
+
+    private void notifyListeners(List<SensorData> chunk, Map<Integer, String> chunkFailures, Set<Integer> duplicates) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        List<SensorData> written = chunk;
+        if (!chunkFailures.isEmpty() || !duplicates.isEmpty()) {
+            written = new ArrayList<>(chunk.size() - chunkFailures.size() - duplicates.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                if (!chunkFailures.containsKey(i) && !duplicates.contains(i)) {
+                    written.add(chunk.get(i));
+                }
+            }
+        }
+        for (IngestListener listener : listeners) {
+            listener.onIngest(written);
+        }
+    }
+}
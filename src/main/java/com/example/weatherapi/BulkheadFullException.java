@@ -0,0 +1,12 @@
+package com.example.weatherapi;
+
+/**
+ * Thrown when no Mongo permit frees up within the bulkhead's max wait, and by the
+ * {@link IngestGate} while ingest is paused for a rollup rebuild or repair.
+ * Mapped to 503 Service Unavailable with a Retry-After header.
+ */
+public class BulkheadFullException extends RuntimeException {
+    public BulkheadFullException(String message) {
+        super(message);
+    }
+}
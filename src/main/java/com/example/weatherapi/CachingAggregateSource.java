@@ -0,0 +1,32 @@
+package com.example.weatherapi;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves aggregates from {@link QueryCache}, delegating to the wrapped source on a miss.
+ */
+public class CachingAggregateSource implements AggregateSource {
+
+    private final AggregateSource delegate;
+    private final QueryCache cache;
+
+    public CachingAggregateSource(AggregateSource delegate, QueryCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public Map<String, MetricAggregate> aggregate(List<String> sensorIds,
+                                                  List<String> metrics,
+                                                  List<TimeRange> ranges) {
+        return cache.get(QueryCache.QueryKey.of(sensorIds, metrics, ranges),
+                () -> delegate.aggregate(sensorIds, metrics, ranges));
+    }
+
+    // What a cache miss would send
+    @Override
+    public List<PlannedAggregation> plan(List<String> sensorIds, List<String> metrics, List<TimeRange> ranges) {
+        return delegate.plan(sensorIds, metrics, ranges);
+    }
+}
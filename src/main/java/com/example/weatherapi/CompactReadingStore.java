@@ -0,0 +1,354 @@
+package com.example.weatherapi;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.aggregation.ComparisonOperators;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators.Switch.CaseOperator;
+import org.springframework.data.mongodb.core.aggregation.DateOperators;
+import org.springframework.data.mongodb.core.aggregation.MergeOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
+
+/**
+ * Compact one-document-per-reading storage ("sensor_readings").
+ *
+ * Documents are written as plain BSON with one-letter field names and no _class:
+ * {_id, s: sensorId, m: metric code (see {@link Metric#code()}), t: timestamp, v: value}.
+ * The metric is stored as a small int instead of a string, which also shrinks every
+ * entry of its indexes (see {@link ReadingIndexes}).
+ *
+ * Existing "sensor_data" documents are copied over server-side with
+ * sensors.storage.compact.migrate-on-startup=true (idempotent: keyed on the original _id).
+ */
+@Component
+public class CompactReadingStore implements AggregateSource, SeriesSource, BreakdownSource, SketchSource, ExportSource {
+
+    private static final Logger log = LoggerFactory.getLogger(CompactReadingStore.class);
+
+    static final String COLLECTION = "sensor_readings";
+
+    // Field names on disk
+    static final String SENSOR = "s";
+    static final String METRIC = "m";
+    static final String TIME = "t";
+    static final String VALUE = "v";
+
+    private final MongoTemplate mongoTemplate;
+    private final StorageLayout layout;
+    private final ReadingIndexes indexes;
+    private final boolean migrateOnStartup;
+
+    public CompactReadingStore(MongoTemplate mongoTemplate,
+                               StorageLayout layout,
+                               ReadingIndexes indexes,
+                               @Value("${sensors.storage.compact.migrate-on-startup:false}") boolean migrateOnStartup) {
+        this.mongoTemplate = mongoTemplate;
+        this.layout = layout;
+        this.indexes = indexes;
+        this.migrateOnStartup = migrateOnStartup;
+    }
+
+    /**
+     * If configured, migrates "sensor_data". Query indexes are created by {@link ReadingIndexes}.
+     * Runs ahead of other startup listeners so a rollup rebuild sees the migrated data.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(0)
+    public void init() {
+        if (layout != StorageLayout.COMPACT) {
+            return;
+        }
+        if (migrateOnStartup) {
+            migrateFromRaw();
+        }
+    }
+
+    /**
+     * Inserts readings with one unordered bulk.
+     *
+     * @return write errors keyed by the reading's index in {@code readings} (empty = all written)
+     */
+    public Map<Integer, String> insert(List<SensorData> readings) {
+        return insert(readings, null);
+    }
+
+    /**
+     * Inserts readings with one unordered bulk; with {@code duplicates} given, readings the unique
+     * key refused are added to it instead of being reported as failures (see {@link IngestDeduplicator}).
+     */
+    public Map<Integer, String> insert(List<SensorData> readings, Set<Integer> duplicates) {
+        List<Document> docs = new ArrayList<>(readings.size());
+        for (SensorData r : readings) {
+            docs.add(toDocument(r));
+        }
+        try {
+            mongoTemplate.bulkOps(BulkMode.UNORDERED, COLLECTION).insert(docs).execute();
+        } catch (BulkOperationException ex) {
+            return IngestDeduplicator.failures(ex.getErrors(), duplicates);
+        }
+        return Map.of();
+    }
+
+    @Override
+    public Map<String, MetricAggregate> aggregate(List<String> sensorIds,
+                                                  List<String> metrics,
+                                                  List<TimeRange> ranges) {
+        PlannedAggregation planned = plan(sensorIds, metrics, ranges).get(0);
+
+        Map<String, MetricAggregate> results = new LinkedHashMap<>();
+        for (Document d : mongoTemplate.aggregate(planned.aggregation(), planned.collection(), Document.class)) {
+            collect(d, results);
+        }
+        return results;
+    }
+
+    @Override
+    public List<PlannedAggregation> plan(List<String> sensorIds, List<String> metrics, List<TimeRange> ranges) {
+        return List.of(new PlannedAggregation(COLLECTION, newAggregation(aggregatePipeline(sensorIds, metrics, ranges))
+            .withOptions(indexes.options(COLLECTION, sensorIds, metrics, false))));
+    }
+
+    static List<AggregationOperation> aggregatePipeline(List<String> sensorIds,
+                                                        List<String> metrics,
+                                                        List<TimeRange> ranges) {
+        return List.of(
+            match(matchCriteria(sensorIds, metrics, ranges)),
+            group(METRIC)
+                .count().as("count")
+                .sum(VALUE).as("sum")
+                .min(VALUE).as("min")
+                .max(VALUE).as("max"));
+    }
+
+    /** Adds one {@link #aggregatePipeline} output document to {@code results}, decoding the metric code. */
+    static void collect(Document d, Map<String, MetricAggregate> results) {
+        Number code = (Number) d.get("_id");
+        Number count = (Number) d.get("count");
+        if (code != null && count != null && count.longValue() > 0) {
+            results.put(Metric.fromCode(code.intValue()).dbValue(), new MetricAggregate(
+                count.longValue(),
+                ((Number) d.get("sum")).doubleValue(),
+                ((Number) d.get("min")).doubleValue(),
+                ((Number) d.get("max")).doubleValue()));
+        }
+    }
+
+    @Override
+    public Stream<SeriesPoint> series(List<String> sensorIds,
+                                      List<String> metrics,
+                                      TimeRange window,
+                                      SeriesInterval interval) {
+        Aggregation agg = newAggregation(seriesPipeline(sensorIds, metrics, window, interval))
+            .withOptions(indexes.options(COLLECTION, sensorIds, metrics, true));
+        return mongoTemplate.aggregateStream(agg, COLLECTION, Document.class)
+            .map(d -> SeriesPoint.of(d, Metric.fromCode(d.get("_id", Document.class).getInteger(METRIC)).dbValue()));
+    }
+
+    static List<AggregationOperation> seriesPipeline(List<String> sensorIds,
+                                                     List<String> metrics,
+                                                     TimeRange window,
+                                                     SeriesInterval interval) {
+        List<AggregationOperation> ops = new ArrayList<>();
+        ops.add(match(matchCriteria(sensorIds, metrics, List.of(window))));
+        ops.add(project(METRIC, VALUE)
+            .and(DateOperators.dateOf(TIME).truncate(interval.mongoUnit()).binSize(interval.amount()))
+            .as("start"));
+        ops.addAll(SeriesPoint.groupStages(METRIC, VALUE));
+        return ops;
+    }
+
+    @Override
+    public Stream<BreakdownRow> breakdown(List<String> sensorIds,
+                                          List<String> metrics,
+                                          TimeRange window,
+                                          GroupBy groupBy,
+                                          ContinuationToken after,
+                                          int limit) {
+        Query keys = breakdownKeys(sensorIds, metrics, window, groupBy, after,
+            indexes.hint(COLLECTION, ReadingIndexes.QueryShape.SENSORS));
+        List<String> page = BreakdownRow.pageSensors(mongoTemplate.stream(keys, Document.class, COLLECTION),
+            groupBy, SENSOR, METRIC, limit);
+        if (page.isEmpty()) {
+            return Stream.empty();
+        }
+        Aggregation agg = newAggregation(breakdownPipeline(page, metrics, window, groupBy, after, limit))
+            .withOptions(indexes.options(COLLECTION, ReadingIndexes.QueryShape.SENSORS, true));
+        return mongoTemplate.aggregateStream(agg, COLLECTION, Document.class)
+            .map(d -> BreakdownRow.of(d, groupBy, SENSOR, METRIC,
+                code -> Metric.fromCode(((Number) code).intValue()).dbValue()));
+    }
+
+    // First step of a page: the row keys from its start, in (s, m, t) index order
+    static Query breakdownKeys(List<String> sensorIds,
+                               List<String> metrics,
+                               TimeRange window,
+                               GroupBy groupBy,
+                               ContinuationToken after,
+                               String hint) {
+        return BreakdownRow.keysQuery(breakdownCriteria(sensorIds, metrics, window, groupBy, after),
+            SENSOR, METRIC, TIME, hint);
+    }
+
+    // Second step over the sensors breakdownKeys found
+    static List<AggregationOperation> breakdownPipeline(List<String> pageSensors,
+                                                        List<String> metrics,
+                                                        TimeRange window,
+                                                        GroupBy groupBy,
+                                                        ContinuationToken after,
+                                                        int limit) {
+        List<AggregationOperation> ops = new ArrayList<>();
+        ops.add(match(breakdownCriteria(pageSensors, metrics, window, groupBy, after)));
+        ops.add(sort(Sort.by(SENSOR, METRIC, TIME))); // (s, m, t, v) index order
+        ops.addAll(BreakdownRow.groupStages(groupBy, SENSOR, METRIC, VALUE, limit));
+        return ops;
+    }
+
+    // Rows come out in (sensor, metric code) order, so tokens compare codes rather than names
+    private static Criteria breakdownCriteria(List<String> sensorIds, List<String> metrics, TimeRange window,
+                                              GroupBy groupBy, ContinuationToken after) {
+        Criteria criteria = matchCriteria(sensorIds, metrics, List.of(window));
+        if (after != null) {
+            Object code = after.metric() == null ? null : Metric.from(after.metric()).code();
+            criteria = new Criteria().andOperator(criteria, after.after(groupBy, SENSOR, METRIC, code));
+        }
+        return criteria;
+    }
+
+    @Override
+    public Map<String, QuantileSketch> sketches(List<String> sensorIds,
+                                                List<String> metrics,
+                                                List<TimeRange> ranges,
+                                                double relativeAccuracy) {
+        Aggregation agg = newAggregation(sketchPipeline(sensorIds, metrics, ranges, relativeAccuracy))
+            .withOptions(indexes.options(COLLECTION, sensorIds, metrics, true));
+        Map<String, QuantileSketch> results = new LinkedHashMap<>();
+        for (Document d : mongoTemplate.aggregate(agg, COLLECTION, Document.class)) {
+            Number code = (Number) d.get("_id");
+            results.put(Metric.fromCode(code.intValue()).dbValue(), SketchStages.read(d, relativeAccuracy));
+        }
+        return results;
+    }
+
+    static List<AggregationOperation> sketchPipeline(List<String> sensorIds,
+                                                     List<String> metrics,
+                                                     List<TimeRange> ranges,
+                                                     double relativeAccuracy) {
+        List<AggregationOperation> ops = new ArrayList<>();
+        ops.add(match(matchCriteria(sensorIds, metrics, ranges)));
+        ops.addAll(SketchStages.readingStages(METRIC, VALUE, new QuantileSketch(relativeAccuracy).getLogGamma()));
+        return ops;
+    }
+
+    @Override
+    public Stream<SensorData> export(List<String> sensorIds, List<String> metrics, TimeRange window, int batchSize) {
+        Aggregation agg = newAggregation(exportPipeline(sensorIds, metrics, window))
+            .withOptions(indexes.optionsBuilder(COLLECTION, ReadingIndexes.QueryShape.of(sensorIds, metrics))
+                .cursorBatchSize(batchSize).build());
+        return mongoTemplate.aggregateStream(agg, COLLECTION, Document.class)
+            .map(d -> SensorData.of(d.getString(SENSOR), Metric.fromCode(d.getInteger(METRIC)).dbValue(),
+                ((Number) d.get(VALUE)).doubleValue(), d.getDate(TIME).toInstant()));
+    }
+
+    static List<AggregationOperation> exportPipeline(List<String> sensorIds, List<String> metrics, TimeRange window) {
+        return List.of(
+            match(matchCriteria(sensorIds, metrics, List.of(window))),
+            project(SENSOR, METRIC, TIME, VALUE).andExclude("_id"));
+    }
+
+    /**
+     * Copies every "sensor_data" reading into the compact collection with $project + $merge.
+     * Re-running only overwrites documents already copied, so an interrupted migration can be resumed.
+     */
+    public void migrateFromRaw() {
+        long started = System.nanoTime();
+        Aggregation agg = newAggregation(migrationPipeline()).withOptions(
+            AggregationOptions.builder().allowDiskUse(true).build());
+        mongoTemplate.aggregate(agg, RawAggregateSource.COLLECTION, Document.class);
+        log.info("Migrated {} into {} in {} ms",
+            RawAggregateSource.COLLECTION, COLLECTION, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    List<AggregationOperation> migrationPipeline() {
+        List<String> known = Arrays.stream(Metric.values()).map(Metric::dbValue).toList();
+        return List.of(
+            match(Criteria.where("metric").in(known)),
+            project()
+                .and("sensorId").as(SENSOR)
+                .and(metricCode("metric")).as(METRIC)
+                .and("timestamp").as(TIME)
+                .and("value").as(VALUE),
+            MergeOperation.builder()
+                .intoCollection(COLLECTION) // matches on _id by default
+                .whenMatched(MergeOperation.WhenDocumentsMatch.replaceDocument())
+                .whenDocumentsDontMatch(MergeOperation.WhenDocumentsDontMatch.insertNewDocument())
+                .build());
+    }
+
+    static Document toDocument(SensorData r) {
+        Document d = new Document();
+        d.put(SENSOR, r.getSensorId());
+        d.put(METRIC, Metric.from(r.getMetric()).code());
+        d.put(TIME, Date.from(r.getTimestamp()));
+        d.put(VALUE, r.getValue());
+        return d;
+    }
+
+    /** $match over the compact fields; metric names are translated to their codes. */
+    static Criteria matchCriteria(List<String> sensorIds, List<String> metrics, List<TimeRange> ranges) {
+        List<Criteria> and = new ArrayList<>();
+        and.add(new Criteria().orOperator(ranges.stream()
+            .map(r -> Criteria.where(TIME).gte(r.from()).lte(r.to()))
+            .toArray(Criteria[]::new)));
+        if (sensorIds != null && !sensorIds.isEmpty()) {
+            and.add(Criteria.where(SENSOR).in(sensorIds));
+        }
+        if (metrics != null && !metrics.isEmpty()) {
+            and.add(Criteria.where(METRIC).in(metrics.stream().map(m -> Metric.from(m).code()).toList()));
+        }
+        return new Criteria().andOperator(and.toArray(new Criteria[0]));
+    }
+
+    /** Server-side metric name to code, for pipelines reading the raw layout. */
+    static AggregationExpression metricCode(String nameField) {
+        List<CaseOperator> cases = new ArrayList<>();
+        for (Metric m : Metric.values()) {
+            cases.add(CaseOperator.when(ComparisonOperators.valueOf(nameField).equalToValue(m.dbValue())).then(m.code()));
+        }
+        return ConditionalOperators.switchCases(cases);
+    }
+
+    /** Server-side metric code to name, for pipelines reading the compact layout. */
+    static AggregationExpression metricName(String codeField) {
+        List<CaseOperator> cases = new ArrayList<>();
+        for (Metric m : Metric.values()) {
+            cases.add(CaseOperator.when(ComparisonOperators.valueOf(codeField).equalToValue(m.code())).then(m.dbValue()));
+        }
+        return ConditionalOperators.switchCases(cases);
+    }
+}
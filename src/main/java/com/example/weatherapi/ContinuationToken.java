@@ -0,0 +1,55 @@
+package com.example.weatherapi;
+
+import org.bson.Document;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Keyset position of a breakdown page: the last (sensorId, metric) returned.
+ *
+ * The next page resumes strictly after it, so paging never re-reads or skips rows
+ * no matter how many pages came before. The token is opaque to clients
+ * (base64url of a small JSON document) and only valid with the same query parameters.
+ */
+public record ContinuationToken(String sensorId, String metric) {
+
+    public String encode() {
+        Document d = new Document("s", sensorId);
+        if (metric != null) {
+            d.append("m", metric);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(d.toJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Null/blank means "first page". */
+    public static ContinuationToken decode(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        try {
+            Document d = Document.parse(new String(Base64.getUrlDecoder().decode(token.trim()), StandardCharsets.UTF_8));
+            if (!(d.get("s") instanceof String sensor)) {
+                throw new IllegalArgumentException("missing sensor");
+            }
+            return new ContinuationToken(sensor, d.getString("m"));
+        } catch (RuntimeException ex) {
+            throw new IllegalArgumentException("Invalid continuation token: " + token);
+        }
+    }
+
+    /**
+     * Rows strictly after this position in (sensor, metric) order.
+     *
+     * @param metricValue the stored form of {@link #metric()} (name or code, depending on the layout)
+     */
+    Criteria after(GroupBy groupBy, String sensorField, String metricField, Object metricValue) {
+        if (groupBy == GroupBy.SENSOR || metric == null) {
+            return Criteria.where(sensorField).gt(sensorId);
+        }
+        return new Criteria().orOperator(
+            Criteria.where(sensorField).gt(sensorId),
+            Criteria.where(sensorField).is(sensorId).and(metricField).gt(metricValue));
+    }
+}
@@ -2,9 +2,7 @@ package com.example.weatherapi;
 
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Profile;
-import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
-import org.springframework.data.mongodb.core.index.Index;
 import org.springframework.stereotype.Component;
 
 import java.time.Instant;
@@ -21,12 +19,14 @@ import java.util.concurrent.ThreadLocalRandom;
 @Profile("demo")
 public class DemoDataSeeder implements CommandLineRunner {
 
-    private final SensorDataRepository repo;
+    private final BulkSensorWriter writer;
     private final MongoTemplate mongoTemplate;
+    private final ReadingIndexes indexes;
 
-    public DemoDataSeeder(SensorDataRepository repo, MongoTemplate mongoTemplate) {
-        this.repo = repo;
+    public DemoDataSeeder(BulkSensorWriter writer, MongoTemplate mongoTemplate, ReadingIndexes indexes) {
+        this.writer = writer;
         this.mongoTemplate = mongoTemplate;
+        this.indexes = indexes;
     }
 
     @Override
@@ -35,15 +35,15 @@ public class DemoDataSeeder implements CommandLineRunner {
         if (mongoTemplate.collectionExists(SensorData.class)) {
             mongoTemplate.dropCollection(SensorData.class);
         }
+        if (mongoTemplate.collectionExists(SensorBucket.class)) {
+            mongoTemplate.dropCollection(SensorBucket.class);
+        }
+        if (mongoTemplate.collectionExists(CompactReadingStore.COLLECTION)) {
+            mongoTemplate.dropCollection(CompactReadingStore.COLLECTION);
+        }
 
-        // 2) Recreate indexes (compound index for query efficiency)
-        mongoTemplate.indexOps(SensorData.class).createIndex(
-            new Index()
-                .on("sensorId", Sort.Direction.ASC)
-                .on("metric", Sort.Direction.ASC)
-                .on("timestamp", Sort.Direction.ASC)
-                .named("idx_sensor_metric_ts")
-        );
+        // 2) Recreate the per-shape query indexes of the configured layout
+        indexes.ensureIndexes();
 
         // 3) Generate 7 days of data, every 6 hours, for 3 sensors x 3 metrics
         List<String> sensors = List.of("1", "2", "3");
@@ -60,7 +60,8 @@ public class DemoDataSeeder implements CommandLineRunner {
             }
         }
 
-        repo.saveAll(batch);
+        // Goes through the bulk writer so the configured storage layout is honored
+        writer.insert(batch);
         System.out.println("DemoDataSeeder: fresh seed complete; inserted " + batch.size() + " docs");
     }
 
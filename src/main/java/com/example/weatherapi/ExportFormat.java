@@ -0,0 +1,37 @@
+package com.example.weatherapi;
+
+import java.util.Locale;
+
+/**
+ * Output formats of GET /sensors/export.
+ */
+public enum ExportFormat {
+    /** Header line, then sensorId,metric,timestamp,value per reading. */
+    CSV("text/csv", "csv"),
+    /** One JSON object per line. */
+    NDJSON(SensorController.APPLICATION_NDJSON, "ndjson");
+
+    private final String contentType;
+    private final String extension;
+
+    ExportFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public static ExportFormat from(String raw) {
+        if (raw == null) {
+            throw new IllegalArgumentException("format is required");
+        }
+        switch (raw.trim().toLowerCase(Locale.ROOT)) {
+            case "csv": return CSV;
+            case "ndjson":
+            case "jsonl": return NDJSON;
+            default: throw new IllegalArgumentException(
+                "Invalid format: " + raw + ". Must be one of: csv, ndjson");
+        }
+    }
+
+    public String contentType() { return contentType; }
+    public String extension() { return extension; }
+}
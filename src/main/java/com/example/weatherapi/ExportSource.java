@@ -0,0 +1,17 @@
+package com.example.weatherapi;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Something that can stream the stored readings of a window, one by one.
+ * Null/empty sensorIds or metrics mean "all".
+ */
+public interface ExportSource {
+
+    /**
+     * Streams every reading in {@code window}, in the order of the index that serves the filters
+     * (not sorted). The cursor fetches batchSize documents per round trip. Callers must close the stream.
+     */
+    Stream<SensorData> export(List<String> sensorIds, List<String> metrics, TimeRange window, int batchSize);
+}
@@ -0,0 +1,57 @@
+package com.example.weatherapi;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Runs one aggregation per chunk of the window (see {@link QueryFanOut}) and merges their partials.
+ *
+ * Count/sum/min/max partials of disjoint chunks merge exactly, so the result is the same as
+ * one aggregation over the whole window. If no range spans a chunk boundary (a short window, or
+ * the small raw edges of a rollup plan) the ranges go straight to the delegate in one call.
+ */
+public class FanOutAggregateSource implements AggregateSource {
+
+    private final AggregateSource delegate;
+    private final QueryFanOut fanOut;
+
+    public FanOutAggregateSource(AggregateSource delegate, QueryFanOut fanOut) {
+        this.delegate = delegate;
+        this.fanOut = fanOut;
+    }
+
+    @Override
+    public Map<String, MetricAggregate> aggregate(List<String> sensorIds,
+                                                  List<String> metrics,
+                                                  List<TimeRange> ranges) {
+        List<TimeRange> chunks = fanOut.split(ranges);
+        if (chunks.size() == ranges.size()) {
+            return delegate.aggregate(sensorIds, metrics, ranges);
+        }
+
+        List<Supplier<Map<String, MetricAggregate>>> tasks = chunks.stream()
+            .<Supplier<Map<String, MetricAggregate>>>map(chunk -> () -> delegate.aggregate(sensorIds, metrics, List.of(chunk)))
+            .toList();
+        Map<String, MetricAggregate> results = new LinkedHashMap<>();
+        for (Map<String, MetricAggregate> partials : fanOut.invokeAll(tasks)) {
+            partials.forEach((metric, agg) -> results.computeIfAbsent(metric, m -> new MetricAggregate()).merge(agg));
+        }
+        return results;
+    }
+
+    @Override
+    public List<PlannedAggregation> plan(List<String> sensorIds, List<String> metrics, List<TimeRange> ranges) {
+        List<TimeRange> chunks = fanOut.split(ranges);
+        if (chunks.size() == ranges.size()) {
+            return delegate.plan(sensorIds, metrics, ranges);
+        }
+        List<PlannedAggregation> planned = new ArrayList<>();
+        for (TimeRange chunk : chunks) {
+            planned.addAll(delegate.plan(sensorIds, metrics, List.of(chunk)));
+        }
+        return planned;
+    }
+}
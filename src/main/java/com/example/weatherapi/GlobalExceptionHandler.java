@@ -1,9 +1,11 @@
 package com.example.weatherapi;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.bind.support.WebExchangeBindException;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -37,4 +39,41 @@ public class GlobalExceptionHandler {
         body.put("details", ex.getBindingResult().toString());
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(body);
     }
+
+    /**
+     * Same as above for the reactive (WebFlux) controllers.
+     */
+    @ExceptionHandler(WebExchangeBindException.class)
+    public ResponseEntity<Map<String, Object>> handleReactiveValidation(WebExchangeBindException ex) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("error", "Validation failed");
+        body.put("details", ex.getBindingResult().toString());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(body);
+    }
+
+    /**
+     * Handles a full asynchronous ingest buffer.
+     * Returns 503 Service Unavailable so clients back off and retry.
+     */
+    @ExceptionHandler(IngestBufferFullException.class)
+    public ResponseEntity<Map<String, Object>> handleIngestBufferFull(IngestBufferFullException ex) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("error", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(body);
+    }
+
+    /**
+     * Handles a Mongo bulkhead with no free permit after its max wait.
+     * Returns 503 Service Unavailable so clients back off and retry.
+     */
+    @ExceptionHandler(BulkheadFullException.class)
+    public ResponseEntity<Map<String, Object>> handleBulkheadFull(BulkheadFullException ex) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("error", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(body);
+    }
 }
@@ -0,0 +1,31 @@
+package com.example.weatherapi;
+
+import java.util.Locale;
+
+/**
+ * Breakdown dimensions for /sensors/query?groupBy=...
+ */
+public enum GroupBy {
+    /** One row per sensor, holding every metric of that sensor. */
+    SENSOR,
+    /** One row per (sensor, metric). */
+    SENSOR_METRIC;
+
+    public static GroupBy from(String raw) {
+        if (raw == null) {
+            throw new IllegalArgumentException("groupBy is required");
+        }
+        switch (raw.trim().toLowerCase(Locale.ROOT).replace(" ", "")) {
+            case "sensor": return SENSOR;
+            case "sensor,metric":
+            case "metric,sensor": return SENSOR_METRIC;
+            default: throw new IllegalArgumentException(
+                "Invalid groupBy: " + raw + ". Must be one of: sensor, sensor,metric");
+        }
+    }
+
+    /** Label as accepted by {@link #from(String)}. */
+    public String label() {
+        return this == SENSOR ? "sensor" : "sensor,metric";
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.weatherapi;
+
+/**
+ * The recent readings of one (sensorId, metric) in time order, in primitive ring buffers.
+ *
+ * Readings are addressed by a logical index that only grows (tail on append, head on eviction);
+ * the slot of index i is i & mask. Every aligned block of {@link #BLOCK} indices keeps its
+ * count/sum/min/max, so a range aggregate scans at most two partial blocks and merges the
+ * summaries of the full blocks in between.
+ *
+ * Appends in time order are O(1). A late reading is inserted in place, shifting the newer ones,
+ * and the summaries of the blocks it touched are recomputed. Capacity doubles when full.
+ * All methods lock the series; each holds it for a bounded, short time.
+ */
+final class HotSeries {
+
+    static final int BLOCK = 64;
+    private static final int BLOCK_SHIFT = 6;
+
+    private long[] timestamps;
+    private double[] values;
+    private double[] blockSum;
+    private double[] blockMin;
+    private double[] blockMax;
+    private int mask;
+    private long head; // oldest live reading
+    private long tail; // one past the newest
+
+    HotSeries() {
+        allocate(BLOCK);
+    }
+
+    /** Adds a reading at its place in time order. */
+    synchronized void add(long timestamp, double value) {
+        if (tail - head == timestamps.length) {
+            grow();
+        }
+        if (tail == head || timestamp >= timestamps[slot(tail - 1)]) {
+            long i = tail++;
+            timestamps[slot(i)] = timestamp;
+            values[slot(i)] = value;
+            int b = block(i);
+            if ((i & (BLOCK - 1)) == 0) {
+                blockSum[b] = value;
+                blockMin[b] = value;
+                blockMax[b] = value;
+            } else {
+                blockSum[b] += value;
+                blockMin[b] = Math.min(blockMin[b], value);
+                blockMax[b] = Math.max(blockMax[b], value);
+            }
+            return;
+        }
+        long at = upperBound(timestamp);
+        for (long i = tail; i > at; i--) {
+            timestamps[slot(i)] = timestamps[slot(i - 1)];
+            values[slot(i)] = values[slot(i - 1)];
+        }
+        timestamps[slot(at)] = timestamp;
+        values[slot(at)] = value;
+        tail++;
+        summarize(at & -BLOCK);
+    }
+
+    /** How many readings with exactly this timestamp and value are held. */
+    synchronized int count(long timestamp, double value) {
+        int count = 0;
+        for (long i = lowerBound(timestamp); i < tail && timestamps[slot(i)] == timestamp; i++) {
+            if (Double.compare(values[slot(i)], value) == 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Drops readings older than {@code timestamp}. */
+    synchronized void evictBefore(long timestamp) {
+        head = lowerBound(timestamp);
+    }
+
+    /** Folds the readings in [from, to] into {@code into}. */
+    synchronized void aggregate(long from, long to, MetricAggregate into) {
+        long i = lowerBound(from);
+        long j = upperBound(to);
+        if (i >= j) {
+            return;
+        }
+        long firstFull = (i + BLOCK - 1) & -BLOCK;
+        long lastFull = j & -BLOCK;
+        if (firstFull >= lastFull) {
+            scan(i, j, into);
+            return;
+        }
+        scan(i, firstFull, into);
+        for (long b = firstFull; b < lastFull; b += BLOCK) {
+            int s = block(b);
+            into.merge(new MetricAggregate(BLOCK, blockSum[s], blockMin[s], blockMax[s]));
+        }
+        scan(lastFull, j, into);
+    }
+
+    synchronized int size() {
+        return (int) (tail - head);
+    }
+
+    /** Heap held by the arrays: 16 bytes per slot plus 24 per block. */
+    synchronized long bytes() {
+        return timestamps.length * 16L + (timestamps.length / BLOCK) * 24L;
+    }
+
+    private void scan(long from, long to, MetricAggregate into) {
+        for (long i = from; i < to; i++) {
+            into.add(values[slot(i)]);
+        }
+    }
+
+    // First index whose timestamp is >= t (tail if none)
+    private long lowerBound(long t) {
+        long lo = head;
+        long hi = tail;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (timestamps[slot(mid)] < t) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // First index whose timestamp is > t (tail if none)
+    private long upperBound(long t) {
+        long lo = head;
+        long hi = tail;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (timestamps[slot(mid)] <= t) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Recomputes the summaries of the blocks from the one starting at blockStart up to the tail's
+    private void summarize(long blockStart) {
+        for (long b = blockStart; b < tail; b += BLOCK) {
+            int s = block(b);
+            long end = Math.min(b + BLOCK, tail);
+            // Indices below head are evicted; such a head block is never merged as a whole
+            long i = Math.max(b, head);
+            blockSum[s] = 0;
+            blockMin[s] = Double.POSITIVE_INFINITY;
+            blockMax[s] = Double.NEGATIVE_INFINITY;
+            for (; i < end; i++) {
+                double v = values[slot(i)];
+                blockSum[s] += v;
+                blockMin[s] = Math.min(blockMin[s], v);
+                blockMax[s] = Math.max(blockMax[s], v);
+            }
+        }
+    }
+
+    private void grow() {
+        long[] oldTimestamps = timestamps;
+        double[] oldValues = values;
+        int oldMask = mask;
+        allocate(timestamps.length * 2);
+        for (long i = head; i < tail; i++) {
+            timestamps[slot(i)] = oldTimestamps[(int) (i & oldMask)];
+            values[slot(i)] = oldValues[(int) (i & oldMask)];
+        }
+        summarize(head & -BLOCK);
+    }
+
+    private void allocate(int capacity) {
+        timestamps = new long[capacity];
+        values = new double[capacity];
+        blockSum = new double[capacity / BLOCK];
+        blockMin = new double[capacity / BLOCK];
+        blockMax = new double[capacity / BLOCK];
+        mask = capacity - 1;
+    }
+
+    private int slot(long i) {
+        return (int) (i & mask);
+    }
+
+    private int block(long i) {
+        return (int) ((i >>> BLOCK_SHIFT) & (mask >>> BLOCK_SHIFT));
+    }
+}
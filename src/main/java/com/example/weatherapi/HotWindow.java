@@ -0,0 +1,245 @@
+package com.example.weatherapi;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * The most recent readings of every (sensorId, metric) in memory (sensors.hot-window.enabled=true),
+ * so queries within the last sensors.hot-window.duration are answered without Mongo.
+ *
+ * Readings are held in {@link HotSeries} ring buffers: primitive arrays, no SensorData objects.
+ * They are fed by every ingest path as an {@link IngestListener} and loaded from the export source
+ * of the layout at startup. Until that warm-up has finished nothing is answered from memory; readings
+ * ingested meanwhile are applied afterwards, skipping one copy for each copy the warm-up read already.
+ *
+ * Readings are evicted a grace period after they leave the window, and a query never evicts inside its
+ * own ranges, so a query split at {@link #coveredFrom()} still finds the readings at the start of its part.
+ *
+ * Only this instance's ingest is seen, so it suits single-instance deployments.
+ */
+@Component
+@Order(IngestListener.ORDER_DERIVED_STORAGE)
+public class HotWindow implements IngestListener, AggregateSource {
+
+    private static final Logger log = LoggerFactory.getLogger(HotWindow.class);
+
+    private static final Metric[] METRICS = Metric.values();
+
+    /** How long readings are kept after leaving the window, for queries split before they were evicted. */
+    static final Duration EVICTION_GRACE = Duration.ofMinutes(1);
+
+    private final ExportSource exportSource;
+    private final boolean enabled;
+    private final Duration duration;
+    private final int batchSize;
+    private final Map<String, AtomicReferenceArray<HotSeries>> series = new ConcurrentHashMap<>();
+
+    private volatile boolean ready;
+    private List<SensorData> pending = new ArrayList<>(); // ingested during warm-up, guarded by this
+
+    public HotWindow(@Qualifier(StorageConfig.EXPORT_SOURCE) ExportSource exportSource,
+                     MeterRegistry meterRegistry,
+                     @Value("${sensors.hot-window.enabled:false}") boolean enabled,
+                     @Value("${sensors.hot-window.duration:25h}") Duration duration,
+                     @Value("${sensors.export.batch-size:5000}") int batchSize) {
+        if (duration.compareTo(Duration.ofMinutes(1)) < 0) {
+            throw new IllegalArgumentException("sensors.hot-window.duration must be at least 1m");
+        }
+        this.exportSource = exportSource;
+        this.enabled = enabled;
+        this.duration = duration;
+        this.batchSize = batchSize;
+        if (enabled) {
+            Gauge.builder("sensors.hot-window.readings", this, HotWindow::readings)
+                    .description("Readings held in memory by the hot window")
+                    .register(meterRegistry);
+            Gauge.builder("sensors.hot-window.bytes", this, HotWindow::bytes)
+                    .description("Heap held by the hot window's ring buffers")
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+        }
+    }
+
+    public boolean isEnabled() { return enabled; }
+
+    /** Start of the window answered from memory, or Instant.MAX until the warm-up has finished. */
+    public Instant coveredFrom() {
+        return ready ? Instant.now().minus(duration) : Instant.MAX;
+    }
+
+    /** Loads the last duration of readings from the stored readings. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        Instant now = Instant.now();
+        long loaded = 0;
+        try (Stream<SensorData> readings = exportSource.export(null, null,
+                new TimeRange(now.minus(duration), now), batchSize)) {
+            for (SensorData d : (Iterable<SensorData>) readings::iterator) {
+                add(d);
+                loaded++;
+            }
+        }
+        List<SensorData> ingested;
+        synchronized (this) {
+            ingested = pending;
+            pending = null;
+            // Each exported copy of a reading stands for at most one copy ingested meanwhile: real repeats are kept
+            Map<List<Object>, Integer> absorbed = new HashMap<>();
+            List<SensorData> missing = new ArrayList<>();
+            for (SensorData d : ingested) {
+                HotSeries s = get(d.getSensorId(), d.getMetric());
+                long ts = d.getTimestamp().toEpochMilli();
+                int exported = s == null ? 0 : s.count(ts, d.getValue());
+                if (absorbed.merge(List.of(d.getSensorId(), d.getMetric(), ts, d.getValue()), 1, Integer::sum) > exported) {
+                    missing.add(d);
+                }
+            }
+            missing.forEach(this::add);
+            ready = true;
+        }
+        log.info("Hot window warmed up with {} readings of {} sensors ({} ingested meanwhile) in {} ms",
+                loaded, series.size(), ingested.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @Override
+    public void onIngest(List<SensorData> readings) {
+        if (!enabled) {
+            return;
+        }
+        if (!ready) {
+            synchronized (this) {
+                if (pending != null) {
+                    pending.addAll(readings);
+                    return;
+                }
+            }
+        }
+        long cutoff = evictBefore();
+        for (SensorData d : readings) {
+            if (d.getTimestamp().toEpochMilli() >= cutoff) {
+                HotSeries s = add(d);
+                s.evictBefore(cutoff);
+            }
+        }
+    }
+
+    @Override
+    public Map<String, MetricAggregate> aggregate(List<String> sensorIds, List<String> metrics, List<TimeRange> ranges) {
+        // Never evict what the ranges ask for, whenever the caller split them
+        long cutoff = evictBefore();
+        for (TimeRange range : ranges) {
+            cutoff = Math.min(cutoff, range.from().toEpochMilli());
+        }
+        boolean[] wanted = new boolean[METRICS.length];
+        for (Metric m : METRICS) {
+            wanted[m.ordinal()] = metrics == null || metrics.isEmpty() || metrics.contains(m.dbValue());
+        }
+        // A sensor listed twice is counted once, as in Mongo's $in
+        Collection<String> sensors = sensorIds == null || sensorIds.isEmpty() ? series.keySet() : new LinkedHashSet<>(sensorIds);
+
+        MetricAggregate[] partials = new MetricAggregate[METRICS.length];
+        for (String sensorId : sensors) {
+            AtomicReferenceArray<HotSeries> bySensor = series.get(sensorId);
+            if (bySensor == null) {
+                continue;
+            }
+            for (int m = 0; m < METRICS.length; m++) {
+                HotSeries s = bySensor.get(m);
+                if (!wanted[m] || s == null) {
+                    continue;
+                }
+                s.evictBefore(cutoff);
+                if (partials[m] == null) {
+                    partials[m] = new MetricAggregate();
+                }
+                for (TimeRange range : ranges) {
+                    s.aggregate(range.from().toEpochMilli(), range.to().toEpochMilli(), partials[m]);
+                }
+            }
+        }
+        Map<String, MetricAggregate> results = new LinkedHashMap<>();
+        for (Metric m : METRICS) {
+            MetricAggregate agg = partials[m.ordinal()];
+            if (agg != null && agg.getCount() > 0) {
+                results.put(m.dbValue(), agg);
+            }
+        }
+        return results;
+    }
+
+    /** Answered from memory; nothing goes to Mongo. */
+    @Override
+    public List<PlannedAggregation> plan(List<String> sensorIds, List<String> metrics, List<TimeRange> ranges) {
+        return List.of();
+    }
+
+    // Readings before this are dropped: the window start, less the grace period
+    private long evictBefore() {
+        return Instant.now().minus(duration).minus(EVICTION_GRACE).toEpochMilli();
+    }
+
+    long readings() {
+        return sum(HotSeries::size);
+    }
+
+    long bytes() {
+        return sum(HotSeries::bytes);
+    }
+
+    private long sum(ToLongFunction<HotSeries> f) {
+        long total = 0;
+        for (AtomicReferenceArray<HotSeries> bySensor : series.values()) {
+            for (int m = 0; m < METRICS.length; m++) {
+                HotSeries s = bySensor.get(m);
+                if (s != null) {
+                    total += f.applyAsLong(s);
+                }
+            }
+        }
+        return total;
+    }
+
+    private HotSeries add(SensorData d) {
+        int m = Metric.from(d.getMetric()).ordinal();
+        AtomicReferenceArray<HotSeries> bySensor =
+                series.computeIfAbsent(d.getSensorId(), id -> new AtomicReferenceArray<>(METRICS.length));
+        HotSeries s = bySensor.get(m);
+        if (s == null) {
+            bySensor.compareAndSet(m, null, new HotSeries());
+            s = bySensor.get(m);
+        }
+        s.add(d.getTimestamp().toEpochMilli(), d.getValue());
+        return s;
+    }
+
+    private HotSeries get(String sensorId, String metric) {
+        AtomicReferenceArray<HotSeries> bySensor = series.get(sensorId);
+        return bySensor == null ? null : bySensor.get(Metric.from(metric).ordinal());
+    }
+}
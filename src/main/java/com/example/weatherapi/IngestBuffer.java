@@ -0,0 +1,245 @@
+package com.example.weatherapi;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind ingest buffer (opt-in via sensors.ingest.async.enabled=true).
+ *
+ * Validated readings go into a bounded in-memory queue and the caller returns
+ * immediately. Background flushers drain the queue into bulk writes, flushing
+ * when a batch is full or when the oldest reading in it has waited max-delay.
+ * A full queue rejects new readings instead of growing the heap.
+ *
+ * Readings still queued when the process dies are lost; stop() drains the queue
+ * on a clean shutdown.
+ *
+ * A flush refused for lack of an ingest permit (or while ingest is paused) is retried with
+ * exponential backoff for up to retry-timeout, and not at all once the buffer is stopping;
+ * after that its readings are dropped.
+ *
+ * Metrics:
+ * - sensors.ingest.buffer.depth      readings waiting in the queue
+ * - sensors.ingest.buffer.capacity   queue capacity
+ * - sensors.ingest.buffer.flush      bulk write latency per flush
+ * - sensors.ingest.buffer.flushed    readings written
+ * - sensors.ingest.buffer.rejected   readings refused because the queue was full
+ * - sensors.ingest.buffer.dropped    accepted readings that failed to write
+ * - sensors.ingest.buffer.retries    flushes retried after a refused permit
+ */
+@Component
+@ConditionalOnProperty(name = "sensors.ingest.async.enabled", havingValue = "true")
+public class IngestBuffer implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestBuffer.class);
+
+    static final long MIN_BACKOFF_MILLIS = 10;
+    static final long MAX_BACKOFF_MILLIS = 1000;
+
+    private final BlockingQueue<SensorData> queue;
+    private final BulkSensorWriter bulkWriter;
+    private final int flusherCount;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final long retryTimeoutNanos;
+
+    private final Counter flushed;
+    private final Counter rejected;
+    private final Counter dropped;
+    private final Counter retries;
+    private final Timer flushLatency;
+
+    private final List<Thread> flushers = new ArrayList<>();
+    private volatile boolean running;
+    private volatile boolean stopped; // set by stop(); readings submitted afterwards would never be flushed
+
+    public IngestBuffer(BulkSensorWriter bulkWriter,
+                        MeterRegistry meterRegistry,
+                        @Value("${sensors.ingest.async.capacity:100000}") int capacity,
+                        @Value("${sensors.ingest.async.flushers:2}") int flusherCount,
+                        @Value("${sensors.ingest.async.max-delay:200ms}") Duration maxDelay,
+                        @Value("${sensors.ingest.async.retry-timeout:1m}") Duration retryTimeout) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.bulkWriter = bulkWriter;
+        this.flusherCount = flusherCount;
+        this.maxBatchSize = bulkWriter.getChunkSize();
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.retryTimeoutNanos = retryTimeout.toNanos();
+
+        Gauge.builder("sensors.ingest.buffer.depth", queue, BlockingQueue::size)
+                .description("Readings waiting to be written")
+                .register(meterRegistry);
+        Gauge.builder("sensors.ingest.buffer.capacity", () -> capacity)
+                .description("Maximum readings the buffer can hold")
+                .register(meterRegistry);
+        this.flushed = Counter.builder("sensors.ingest.buffer.flushed")
+                .description("Readings written by the flushers")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("sensors.ingest.buffer.rejected")
+                .description("Readings refused because the buffer was full")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("sensors.ingest.buffer.dropped")
+                .description("Accepted readings that failed to write")
+                .register(meterRegistry);
+        this.retries = Counter.builder("sensors.ingest.buffer.retries")
+                .description("Flushes retried because no ingest permit was available")
+                .register(meterRegistry);
+        this.flushLatency = Timer.builder("sensors.ingest.buffer.flush")
+                .description("Latency of one bulk flush")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * Validates and enqueues a reading.
+     * Throws IngestBufferFullException when there is no room or the buffer has been stopped.
+     *
+     * @return the normalized reading (no id yet; it is assigned when flushed)
+     */
+    public SensorData submit(SensorDataRequest request) {
+        SensorData data = SensorService.toSensorData(request);
+        if (stopped) {
+            throw new IngestBufferFullException("Ingest buffer is shutting down; retry later.");
+        }
+        if (!queue.offer(data)) {
+            rejected.increment();
+            throw new IngestBufferFullException("Ingest buffer is full; retry later.");
+        }
+        // Stopped meanwhile: take it back unless a flusher already has it, as the flushers may be gone
+        if (stopped && queue.remove(data)) {
+            throw new IngestBufferFullException("Ingest buffer is shutting down; retry later.");
+        }
+        return data;
+    }
+
+    @Override
+    public void start() {
+        stopped = false;
+        running = true;
+        for (int i = 0; i < flusherCount; i++) {
+            flushers.add(Thread.ofPlatform()
+                    .name("ingest-flusher-" + i)
+                    .daemon()
+                    .start(this::flushLoop));
+        }
+    }
+
+    @Override
+    public void stop() {
+        // Flushers finish draining what is already queued, then exit
+        stopped = true;
+        running = false;
+        for (Thread t : flushers) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        flushers.clear();
+    }
+
+    @Override
+    public boolean isRunning() { return running; }
+
+    private void flushLoop() {
+        List<SensorData> batch = new ArrayList<>(maxBatchSize);
+        boolean interrupted = false;
+        while (!interrupted && (running || !queue.isEmpty())) {
+            try {
+                fillBatch(batch);
+            } catch (InterruptedException e) {
+                // Only this flusher exits; the others keep draining the queue
+                Thread.currentThread().interrupt();
+                interrupted = true;
+                log.warn("Ingest flusher {} was interrupted and exits", Thread.currentThread().getName());
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch = new ArrayList<>(maxBatchSize);
+            }
+        }
+    }
+
+    // Collects up to maxBatchSize readings, waiting at most max-delay after the first one
+    private void fillBatch(List<SensorData> batch) throws InterruptedException {
+        SensorData first = queue.poll(maxDelayNanos, TimeUnit.NANOSECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + maxDelayNanos;
+        while (batch.size() < maxBatchSize) {
+            if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                continue;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            SensorData next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    // A batch is one bulk chunk; when requests hold every ingest permit, back off and retry rather than drop it
+    private Map<Integer, String> insert(List<SensorData> batch) {
+        long deadline = System.nanoTime() + retryTimeoutNanos;
+        long backoffMillis = MIN_BACKOFF_MILLIS;
+        while (true) {
+            try {
+                return bulkWriter.insert(batch);
+            } catch (BulkheadFullException ex) {
+                if (!running || System.nanoTime() - deadline >= 0) {
+                    throw ex;
+                }
+                retries.increment();
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw ex;
+                }
+                backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    private void flush(List<SensorData> batch) {
+        long start = System.nanoTime();
+        try {
+            Map<Integer, String> failures = insert(batch);
+            flushed.increment(batch.size() - failures.size());
+            if (!failures.isEmpty()) {
+                dropped.increment(failures.size());
+                log.warn("Ingest flush dropped {} of {} readings, first error: {}",
+                        failures.size(), batch.size(), failures.values().iterator().next());
+            }
+        } catch (RuntimeException ex) {
+            dropped.increment(batch.size());
+            log.error("Ingest flush of {} readings failed", batch.size(), ex);
+        } finally {
+            flushLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
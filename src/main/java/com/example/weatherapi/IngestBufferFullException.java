@@ -0,0 +1,11 @@
+package com.example.weatherapi;
+
+/**
+ * Thrown when the asynchronous ingest buffer has no room for another reading.
+ * Mapped to 503 Service Unavailable with a Retry-After header.
+ */
+public class IngestBufferFullException extends RuntimeException {
+    public IngestBufferFullException(String message) {
+        super(message);
+    }
+}
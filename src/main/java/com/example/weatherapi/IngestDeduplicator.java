@@ -0,0 +1,282 @@
+package com.example.weatherapi;
+
+import com.mongodb.bulk.BulkWriteError;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Idempotent ingest (sensors.ingest.dedup.enabled=true): a reading is stored at most once per
+ * (sensorId, metric, timestamp), so readings retried by gateways do not skew SUM/AVG.
+ *
+ * A unique index on that key makes every write insert-if-absent: a reading that is already stored
+ * is a duplicate, not a failure, and ingest listeners (rollups, hot window, cache) never see it.
+ * In front of the index, a sliding-window Bloom filter of the keys written in the last window
+ * screens each chunk. Keys it has certainly not seen are written straight away. Keys it may have
+ * seen are confirmed with one covered lookup per chunk and left out of the write if stored; the
+ * rest are the filter's false positives and are written. With trust-filter=true they are left out
+ * unconfirmed, which saves the lookup but drops new readings at the false-positive rate.
+ *
+ * Needs the raw or compact layout; hour buckets have no per-reading key.
+ */
+@Component
+public class IngestDeduplicator {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestDeduplicator.class);
+
+    static final int DUPLICATE_KEY = 11000;
+    static final String INDEX_SUFFIX = "sensor_metric_time_unique_idx";
+    static final int SLICES = 4;
+
+    private final MongoTemplate mongoTemplate;
+    private final ReadingIndexes indexes;
+    private final boolean enabled;
+    private final boolean trustFilter;
+    private final SlidingBloomFilter filter; // null when disabled
+
+    private final Counter written;
+    private final Counter filtered;
+    private final Counter rejectedByIndex;
+    private final Counter negatives;
+    private final Counter truePositives;
+    private final Counter falsePositives;
+    private final Counter unverified;
+
+    public IngestDeduplicator(MongoTemplate mongoTemplate,
+                              ReadingIndexes indexes,
+                              MeterRegistry meterRegistry,
+                              @Value("${sensors.ingest.dedup.enabled:false}") boolean enabled,
+                              @Value("${sensors.ingest.dedup.window:1h}") Duration window,
+                              @Value("${sensors.ingest.dedup.expected-readings:1000000}") long expectedReadings,
+                              @Value("${sensors.ingest.dedup.false-positive-rate:0.001}") double falsePositiveRate,
+                              @Value("${sensors.ingest.dedup.trust-filter:false}") boolean trustFilter) {
+        if (enabled && indexes.fields() == null) {
+            throw new IllegalStateException("sensors.ingest.dedup needs the raw or compact storage layout");
+        }
+        if (window.compareTo(Duration.ofSeconds(SLICES)) < 0) {
+            throw new IllegalArgumentException("sensors.ingest.dedup.window must be at least " + SLICES + "s");
+        }
+        if (expectedReadings < 1) {
+            throw new IllegalArgumentException("sensors.ingest.dedup.expected-readings must be at least 1");
+        }
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("sensors.ingest.dedup.false-positive-rate must be between 0 and 1");
+        }
+        this.mongoTemplate = mongoTemplate;
+        this.indexes = indexes;
+        this.enabled = enabled;
+        this.trustFilter = trustFilter;
+        this.filter = enabled
+                ? new SlidingBloomFilter(window.toMillis(), SLICES, expectedReadings, falsePositiveRate, System::currentTimeMillis)
+                : null;
+
+        this.written = readings(meterRegistry, "new", "none");
+        this.filtered = readings(meterRegistry, "duplicate", "filter");
+        this.rejectedByIndex = readings(meterRegistry, "duplicate", "index");
+        this.negatives = lookups(meterRegistry, "negative");
+        this.truePositives = lookups(meterRegistry, "true_positive");
+        this.falsePositives = lookups(meterRegistry, "false_positive");
+        this.unverified = lookups(meterRegistry, "unverified");
+        if (enabled) {
+            Gauge.builder("sensors.ingest.dedup.filter.bytes", filter, SlidingBloomFilter::bytes)
+                    .description("Heap held by the recent-keys Bloom filter")
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+            Gauge.builder("sensors.ingest.dedup.filter.expected-fpp", filter, SlidingBloomFilter::expectedFpp)
+                    .description("False-positive rate the filter's current fill implies")
+                    .register(meterRegistry);
+        }
+    }
+
+    public boolean isEnabled() { return enabled; }
+
+    /** Creates the unique key; fails startup if the collection already holds duplicates. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndex() {
+        if (!enabled) {
+            return;
+        }
+        ReadingIndexes.Fields f = indexes.fields();
+        try {
+            mongoTemplate.indexOps(f.collection()).createIndex(new Index()
+                    .on(f.sensor(), Sort.Direction.ASC)
+                    .on(f.metric(), Sort.Direction.ASC)
+                    .on(f.time(), Sort.Direction.ASC)
+                    .unique()
+                    .named(f.indexPrefix() + INDEX_SUFFIX));
+        } catch (DataIntegrityViolationException ex) {
+            throw new IllegalStateException(f.collection() + " already holds readings with the same (sensorId, metric, "
+                    + "timestamp); remove them before enabling sensors.ingest.dedup", ex);
+        }
+        log.info("Ingest is idempotent on (sensorId, metric, timestamp) of {}; recent keys filter takes {} bytes",
+                f.collection(), filter.bytes());
+    }
+
+    /**
+     * Positions in {@code chunk} of readings that are already stored and need not be written.
+     * Empty when dedup is disabled.
+     */
+    public Set<Integer> screen(List<SensorData> chunk) {
+        if (!enabled) {
+            return Set.of();
+        }
+        List<Integer> positives = new ArrayList<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            if (filter.mightContain(key(chunk.get(i)))) {
+                positives.add(i);
+            }
+        }
+        negatives.increment(chunk.size() - positives.size());
+        if (positives.isEmpty()) {
+            return Set.of();
+        }
+        if (trustFilter) {
+            unverified.increment(positives.size());
+            return Set.copyOf(positives);
+        }
+
+        Set<Long> stored = storedKeys(positives.stream().map(chunk::get).toList());
+        Set<Integer> duplicates = new HashSet<>();
+        for (int i : positives) {
+            if (stored.contains(key(chunk.get(i)))) {
+                duplicates.add(i);
+            }
+        }
+        truePositives.increment(duplicates.size());
+        falsePositives.increment(positives.size() - duplicates.size());
+        return duplicates;
+    }
+
+    /**
+     * Records the outcome of writing a screened chunk: adds the keys now stored to the filter and
+     * counts new and duplicate readings. {@code indexDuplicates} are those the unique index refused.
+     */
+    public void recordWrite(List<SensorData> chunk, Set<Integer> screened, Set<Integer> indexDuplicates, Set<Integer> failed) {
+        if (!enabled) {
+            return;
+        }
+        for (int i = 0; i < chunk.size(); i++) {
+            if (!failed.contains(i)) {
+                filter.put(key(chunk.get(i)));
+            }
+        }
+        filtered.increment(screened.size());
+        rejectedByIndex.increment(indexDuplicates.size());
+        written.increment(chunk.size() - screened.size() - indexDuplicates.size() - failed.size());
+    }
+
+    /**
+     * Maps the errors of a partially failed bulk to failures by position. Duplicate keys go to
+     * {@code duplicates} instead, unless it is null (dedup disabled), when they are failures too.
+     */
+    static Map<Integer, String> failures(List<BulkWriteError> errors, Set<Integer> duplicates) {
+        Map<Integer, String> failures = new LinkedHashMap<>();
+        for (BulkWriteError error : errors) {
+            if (duplicates != null && error.getCode() == DUPLICATE_KEY) {
+                duplicates.add(error.getIndex());
+            } else {
+                failures.put(error.getIndex(), error.getMessage());
+            }
+        }
+        return failures;
+    }
+
+    /** Readings of a chunk left to write once the screened ones are taken out. */
+    record Remaining(List<SensorData> readings, int[] positions) {
+
+        /** Position in the chunk of the i-th remaining reading. */
+        int position(int i) {
+            return positions == null ? i : positions[i];
+        }
+    }
+
+    static Remaining remaining(List<SensorData> chunk, Set<Integer> screened) {
+        if (screened.isEmpty()) {
+            return new Remaining(chunk, null);
+        }
+        List<SensorData> readings = new ArrayList<>(chunk.size() - screened.size());
+        int[] positions = new int[chunk.size() - screened.size()];
+        for (int i = 0; i < chunk.size(); i++) {
+            if (!screened.contains(i)) {
+                positions[readings.size()] = i;
+                readings.add(chunk.get(i));
+            }
+        }
+        return new Remaining(readings, positions);
+    }
+
+    /** 64-bit hash of (sensorId, metric, timestamp in ms), the unique key of a stored reading. */
+    static long key(String sensorId, String metric, long timestamp) {
+        long h = 0xcbf29ce484222325L; // FNV-1a
+        for (int i = 0; i < sensorId.length(); i++) {
+            h = (h ^ sensorId.charAt(i)) * 0x100000001b3L;
+        }
+        h = (h ^ 0xffff) * 0x100000001b3L;
+        for (int i = 0; i < metric.length(); i++) {
+            h = (h ^ metric.charAt(i)) * 0x100000001b3L;
+        }
+        return SlidingBloomFilter.mix(h ^ SlidingBloomFilter.mix(timestamp));
+    }
+
+    private static long key(SensorData d) {
+        return key(d.getSensorId(), d.getMetric(), d.getTimestamp().toEpochMilli());
+    }
+
+    // Keys of those readings that are stored; one query, each clause an equality match on the unique key
+    private Set<Long> storedKeys(List<SensorData> readings) {
+        ReadingIndexes.Fields f = indexes.fields();
+        boolean compact = f.collection().equals(CompactReadingStore.COLLECTION);
+        List<Criteria> clauses = readings.stream()
+                .map(d -> Criteria.where(f.sensor()).is(d.getSensorId())
+                        .and(f.metric()).is(compact ? Metric.from(d.getMetric()).code() : d.getMetric())
+                        .and(f.time()).is(Date.from(d.getTimestamp())))
+                .toList();
+        Query query = new Query(new Criteria().orOperator(clauses));
+        query.fields().include(f.sensor(), f.metric(), f.time()).exclude("_id");
+
+        Set<Long> stored = new HashSet<>();
+        for (Document d : mongoTemplate.find(query, Document.class, f.collection())) {
+            Object metric = d.get(f.metric());
+            String name = metric instanceof Number code ? Metric.fromCode(code.intValue()).dbValue() : (String) metric;
+            stored.add(key(d.getString(f.sensor()), name, d.getDate(f.time()).getTime()));
+        }
+        return stored;
+    }
+
+    private static Counter readings(MeterRegistry registry, String outcome, String detectedBy) {
+        return Counter.builder("sensors.ingest.dedup.readings")
+                .description("Readings ingested with dedup enabled, by outcome and what caught duplicates")
+                .tag("outcome", outcome)
+                .tag("detectedBy", detectedBy)
+                .register(registry);
+    }
+
+    private static Counter lookups(MeterRegistry registry, String result) {
+        return Counter.builder("sensors.ingest.dedup.filter.lookups")
+                .description("Recent-keys filter lookups by result; false_positive / (false_positive + negative) is the observed rate")
+                .tag("result", result)
+                .register(registry);
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.weatherapi;
+
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Keeps maintenance that recomputes derived data from the stored readings (a rollup rebuild or
+ * repair) apart from ingest.
+ *
+ * Every ingest path holds the gate from its write until its listeners have run. Maintenance closes
+ * the gate, waits for the writes in flight to finish and then has the readings to itself: a reading
+ * is either stored before it starts or written after it ends, never half-way. While the gate is
+ * closed new ingest is refused with a {@link BulkheadFullException} (503, retry later).
+ *
+ * The gate also holds a floor: readings before it are refused inside the gate (400, or a per-reading
+ * rejection in batches). Tiering raises it before compacting days, so nothing is stored in a day
+ * after its segment was written (see {@link TieredStorage}).
+ */
+@Component
+public class IngestGate {
+
+    private static final int OPEN = Integer.MAX_VALUE;
+
+    private final Semaphore writes = new Semaphore(OPEN);
+    private volatile boolean closed;
+    private volatile String pausedFor = "maintenance";
+    private volatile Instant floor; // null = every timestamp is accepted
+
+    /** Runs an ingest write and its listeners inside the gate. */
+    public <T> T call(Supplier<T> write) {
+        enter();
+        try {
+            return write.get();
+        } finally {
+            exit();
+        }
+    }
+
+    /** Enters the gate; every successful call must be paired with {@link #exit()}. */
+    public void enter() {
+        if (closed || !writes.tryAcquire()) {
+            throw new BulkheadFullException("Ingest is paused for " + pausedFor + "; retry later.");
+        }
+    }
+
+    public void exit() {
+        writes.release();
+    }
+
+    public boolean isClosed() { return closed; }
+
+    /** Readings before this instant are refused; null if there is no floor. */
+    public Instant floor() { return floor; }
+
+    /**
+     * Refuses readings before {@code floor} from now on. Returns once the writes in flight have
+     * finished, so afterwards no reading before it is being stored.
+     */
+    public void raiseFloor(Instant floor) {
+        exclusive("archiving", () -> this.floor = floor);
+    }
+
+    /** Throws an {@link IllegalArgumentException} (400) if the reading is before the floor. */
+    public void checkFloor(SensorData reading) {
+        Instant min = floor;
+        if (min != null && reading.getTimestamp().isBefore(min)) {
+            throw new IllegalArgumentException(belowFloor(reading, min));
+        }
+    }
+
+    /** Positions in {@code chunk} of readings before the floor, with the reason; checked inside the gate. */
+    public Map<Integer, String> belowFloor(List<SensorData> chunk) {
+        Instant min = floor;
+        if (min == null) {
+            return Map.of();
+        }
+        Map<Integer, String> refused = new LinkedHashMap<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            if (chunk.get(i).getTimestamp().isBefore(min)) {
+                refused.put(i, belowFloor(chunk.get(i), min));
+            }
+        }
+        return refused;
+    }
+
+    /**
+     * Closes the gate, waits for the writes in flight, runs {@code maintenance} and opens it again.
+     * {@code reason} names the maintenance in the 503 ingest gets meanwhile.
+     */
+    public synchronized void exclusive(String reason, Runnable maintenance) {
+        pausedFor = reason;
+        closed = true;
+        writes.acquireUninterruptibly(OPEN);
+        try {
+            maintenance.run();
+        } finally {
+            writes.release(OPEN);
+            closed = false;
+        }
+    }
+
+    private static String belowFloor(SensorData reading, Instant floor) {
+        return "Reading at " + reading.getTimestamp() + " is before " + floor
+            + "; days before it are archived and no longer accept readings.";
+    }
+}
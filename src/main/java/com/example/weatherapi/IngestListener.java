@@ -0,0 +1,21 @@
+package com.example.weatherapi;
+
+import java.util.List;
+
+/**
+ * Callback for components that derive state from ingested readings (rollups, caches, ...).
+ *
+ * Invoked after readings have been persisted, on the ingesting thread, with only
+ * the readings that were written successfully. Listeners run in @Order order:
+ * derived storage first, cache invalidation last, so nothing re-caches stale data.
+ */
+public interface IngestListener {
+
+    /** Order for listeners that maintain derived data (rollups, ...). */
+    int ORDER_DERIVED_STORAGE = 0;
+
+    /** Order for listeners that invalidate cached results. */
+    int ORDER_CACHE = 100;
+
+    void onIngest(List<SensorData> readings);
+}
@@ -39,4 +39,27 @@ public enum Metric {
             default: throw new IllegalStateException("Unexpected metric " + this);
         }
     }
+
+    /**
+     * Stable integer code used by the compact storage layout.
+     * Codes are persisted: never reuse or renumber them, only append.
+     */
+    public int code() {
+        switch (this) {
+            case TEMPERATURE: return 1;
+            case HUMIDITY:    return 2;
+            case WIND_SPEED:  return 3;
+            default: throw new IllegalStateException("Unexpected metric " + this);
+        }
+    }
+
+    /** Inverse of {@link #code()}. */
+    public static Metric fromCode(int code) {
+        for (Metric m : values()) {
+            if (m.code() == code) {
+                return m;
+            }
+        }
+        throw new IllegalStateException("Unknown metric code " + code);
+    }
 }
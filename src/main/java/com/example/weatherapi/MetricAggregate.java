@@ -0,0 +1,62 @@
+package com.example.weatherapi;
+
+/**
+ * Mergeable partial aggregate for one metric: count, sum, min and max.
+ *
+ * Any statistic in {@link Statistic} can be derived from it, and two partials over
+ * disjoint sets of readings merge into the partial of their union.
+ */
+public final class MetricAggregate {
+    private long count;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public MetricAggregate() { }
+
+    public MetricAggregate(long count, double sum, double min, double max) {
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+    }
+
+    /** Folds another partial into this one. */
+    public MetricAggregate merge(MetricAggregate other) {
+        if (other.count == 0) {
+            return this;
+        }
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        return this;
+    }
+
+    /** Folds a single reading into this one. */
+    public MetricAggregate add(double value) {
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        return this;
+    }
+
+    /** Value of the requested statistic (callers skip empty partials). */
+    public double value(Statistic statistic) {
+        switch (statistic) {
+            case MIN: return min;
+            case MAX: return max;
+            case SUM: return sum;
+            case AVG: return sum / count;
+            case COUNT: return count;
+            default: throw new IllegalStateException("Unexpected statistic " + statistic);
+        }
+    }
+
+    // Getters
+    public long getCount() { return count; }
+    public double getSum() { return sum; }
+    public double getMin() { return min; }
+    public double getMax() { return max; }
+}
@@ -0,0 +1,144 @@
+package com.example.weatherapi;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Caps how many Mongo operations run at once, separately for ingest and queries.
+ *
+ * With virtual threads every request gets its own thread, so thread count no longer
+ * limits load on the database: without a cap, a burst would pile up in the driver's
+ * connection pool wait queue. Each bulkhead is a fair semaphore; callers over the limit
+ * queue for up to max-wait, then get a {@link BulkheadFullException} (503).
+ *
+ * Keep ingest + query permits below the driver's pool size (100 by default); ingest
+ * listeners (rollups) run under the ingest permit of the write that triggered them.
+ *
+ * Metrics, tagged bulkhead=ingest|query:
+ * - sensors.mongo.bulkhead.limit     permits
+ * - sensors.mongo.bulkhead.active    operations holding a permit
+ * - sensors.mongo.bulkhead.queued    callers waiting for a permit
+ * - sensors.mongo.bulkhead.wait      time spent waiting for a permit
+ * - sensors.mongo.bulkhead.rejected  callers that gave up after max-wait
+ */
+@Component
+public class MongoBulkheads {
+
+    private final Bulkhead ingest;
+    private final Bulkhead query;
+
+    public MongoBulkheads(MeterRegistry meterRegistry,
+                          @Value("${sensors.mongo.bulkhead.ingest.permits:40}") int ingestPermits,
+                          @Value("${sensors.mongo.bulkhead.query.permits:40}") int queryPermits,
+                          @Value("${sensors.mongo.bulkhead.max-wait:5s}") Duration maxWait) {
+        this.ingest = new Bulkhead("ingest", ingestPermits, maxWait, meterRegistry);
+        this.query = new Bulkhead("query", queryPermits, maxWait, meterRegistry);
+    }
+
+    public Bulkhead ingest() { return ingest; }
+    public Bulkhead query() { return query; }
+
+    /**
+     * One named pool of permits. Permits are not reentrant: code running under a permit
+     * must not enter the same bulkhead again.
+     */
+    public static final class Bulkhead {
+        private final String name;
+        private final int limit;
+        private final Semaphore permits;
+        private final long maxWaitNanos;
+        private final Timer waits;
+        private final Counter rejected;
+
+        Bulkhead(String name, int limit, Duration maxWait, MeterRegistry meterRegistry) {
+            if (limit < 1) {
+                throw new IllegalArgumentException("sensors.mongo.bulkhead." + name + ".permits must be at least 1");
+            }
+            this.name = name;
+            this.limit = limit;
+            this.permits = new Semaphore(limit, true);
+            this.maxWaitNanos = maxWait.toNanos();
+
+            Gauge.builder("sensors.mongo.bulkhead.limit", () -> limit)
+                    .tag("bulkhead", name)
+                    .description("Concurrent Mongo operations allowed")
+                    .register(meterRegistry);
+            Gauge.builder("sensors.mongo.bulkhead.active", this, Bulkhead::active)
+                    .tag("bulkhead", name)
+                    .description("Mongo operations currently holding a permit")
+                    .register(meterRegistry);
+            Gauge.builder("sensors.mongo.bulkhead.queued", permits, Semaphore::getQueueLength)
+                    .tag("bulkhead", name)
+                    .description("Callers waiting for a permit")
+                    .register(meterRegistry);
+            this.waits = Timer.builder("sensors.mongo.bulkhead.wait")
+                    .tag("bulkhead", name)
+                    .description("Time spent waiting for a permit")
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+            this.rejected = Counter.builder("sensors.mongo.bulkhead.rejected")
+                    .tag("bulkhead", name)
+                    .description("Callers that gave up waiting for a permit")
+                    .register(meterRegistry);
+        }
+
+        public int active() { return limit - permits.availablePermits(); }
+
+        /** Runs {@code work} while holding a permit. */
+        public <T> T call(Supplier<T> work) {
+            acquire();
+            try {
+                return work.get();
+            } finally {
+                permits.release();
+            }
+        }
+
+        /**
+         * Opens a stream while holding a permit and keeps holding it until the stream is closed,
+         * since an open cursor keeps working against the database as it is read. Closing twice,
+         * e.g. by the response body and by a completion callback, releases the permit once.
+         */
+        public <T> Stream<T> stream(Supplier<Stream<T>> open) {
+            acquire();
+            AtomicBoolean held = new AtomicBoolean(true);
+            try {
+                return open.get().onClose(() -> {
+                    if (held.getAndSet(false)) {
+                        permits.release();
+                    }
+                });
+            } catch (RuntimeException ex) {
+                permits.release();
+                throw ex;
+            }
+        }
+
+        private void acquire() {
+            long start = System.nanoTime();
+            boolean acquired;
+            try {
+                acquired = permits.tryAcquire() || permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new BulkheadFullException("Interrupted while waiting for a " + name + " permit.");
+            }
+            waits.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (!acquired) {
+                rejected.increment();
+                throw new BulkheadFullException("Too many concurrent " + name + " operations; retry later.");
+            }
+        }
+    }
+}
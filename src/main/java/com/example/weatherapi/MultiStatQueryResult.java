@@ -0,0 +1,30 @@
+package com.example.weatherapi;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Query result when several statistics are requested at once (stat=min,max,avg,...).
+ *
+ * Keeps every {@link QueryResult} field: statistic is the comma-joined list and
+ * resultsByMetric holds the first requested statistic, so single-stat clients keep working.
+ * statsByMetric holds all of them: metric -> statistic -> value.
+ */
+public class MultiStatQueryResult extends QueryResult {
+    private List<String> statistics;                      // requested statistics, in request order
+    private Map<String, Map<String, Double>> statsByMetric;
+
+    public MultiStatQueryResult(List<String> sensorIds, List<String> metrics, List<String> statistics,
+                                Instant from, Instant to,
+                                Map<String, Double> resultsByMetric,
+                                Map<String, Map<String, Double>> statsByMetric) {
+        super(sensorIds, metrics, String.join(",", statistics), from, to, resultsByMetric);
+        this.statistics = statistics;
+        this.statsByMetric = statsByMetric;
+    }
+
+    // Getters
+    public List<String> getStatistics() { return statistics; }
+    public Map<String, Map<String, Double>> getStatsByMetric() { return statsByMetric; }
+}
@@ -0,0 +1,84 @@
+package com.example.weatherapi;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+/**
+ * Splits a long sensorIds list into partitions of at most partition-size and runs one aggregation
+ * per partition concurrently (see {@link QueryFanOut}), merging their partials.
+ *
+ * The ids are sorted before they are cut, so each partition's $in covers one contiguous stretch of
+ * the (sensorId, ...) indexes rather than seeks spread over all of them. Partials of disjoint sensor
+ * sets merge exactly. Shorter lists, and "all sensors", go straight to the delegate.
+ */
+public class PartitionedAggregateSource implements AggregateSource {
+
+    private final AggregateSource delegate;
+    private final QueryFanOut fanOut;
+    private final int partitionSize;
+
+    public PartitionedAggregateSource(AggregateSource delegate, QueryFanOut fanOut, int partitionSize) {
+        if (partitionSize < 1) {
+            throw new IllegalArgumentException("sensors.query.sensor-partition-size must be at least 1");
+        }
+        this.delegate = delegate;
+        this.fanOut = fanOut;
+        this.partitionSize = partitionSize;
+    }
+
+    AggregateSource delegate() {
+        return delegate;
+    }
+
+    /**
+     * True when a query over {@code sensorIds} is split rather than sent to the delegate as is:
+     * when it names more distinct sensors than fit in one partition.
+     */
+    boolean splits(List<String> sensorIds) {
+        return sensorIds != null && sensorIds.size() > partitionSize && new HashSet<>(sensorIds).size() > partitionSize;
+    }
+
+    @Override
+    public Map<String, MetricAggregate> aggregate(List<String> sensorIds,
+                                                  List<String> metrics,
+                                                  List<TimeRange> ranges) {
+        if (!splits(sensorIds)) {
+            return delegate.aggregate(sensorIds, metrics, ranges);
+        }
+        List<Supplier<Map<String, MetricAggregate>>> tasks = partition(sensorIds).stream()
+            .<Supplier<Map<String, MetricAggregate>>>map(part -> () -> delegate.aggregate(part, metrics, ranges))
+            .toList();
+        Map<String, MetricAggregate> results = new LinkedHashMap<>();
+        for (Map<String, MetricAggregate> partials : fanOut.invokeAll(tasks)) {
+            partials.forEach((metric, agg) -> results.computeIfAbsent(metric, m -> new MetricAggregate()).merge(agg));
+        }
+        return results;
+    }
+
+    @Override
+    public List<PlannedAggregation> plan(List<String> sensorIds, List<String> metrics, List<TimeRange> ranges) {
+        if (!splits(sensorIds)) {
+            return delegate.plan(sensorIds, metrics, ranges);
+        }
+        List<PlannedAggregation> planned = new ArrayList<>();
+        for (List<String> part : partition(sensorIds)) {
+            planned.addAll(delegate.plan(part, metrics, ranges));
+        }
+        return planned;
+    }
+
+    /** Distinct ids in sorted order, cut into lists of at most partition-size. */
+    List<List<String>> partition(List<String> sensorIds) {
+        List<String> sorted = List.copyOf(new TreeSet<>(sensorIds));
+        List<List<String>> parts = new ArrayList<>();
+        for (int i = 0; i < sorted.size(); i += partitionSize) {
+            parts.add(sorted.subList(i, Math.min(i + partitionSize, sorted.size())));
+        }
+        return parts;
+    }
+}
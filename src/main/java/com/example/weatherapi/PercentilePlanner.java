@@ -0,0 +1,52 @@
+package com.example.weatherapi;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds per-metric quantile sketches for a query window.
+ *
+ * With rollups enabled the window is split exactly as {@link RollupPlanner} does it: whole
+ * day/hour/minute buckets contribute their stored sketches (one $group over bin counts per
+ * resolution) and only the ragged edges are binned from the readings. Without rollups every
+ * reading in the window is binned server-side, which is correct but scans the whole window, as
+ * are stale days and every window while the rollups are rebuilt.
+ */
+public class PercentilePlanner {
+
+    private final RollupStore rollups; // null when rollups are disabled
+    private final SketchSource readings;
+    private final double relativeAccuracy;
+
+    public PercentilePlanner(RollupStore rollups, SketchSource readings, double relativeAccuracy) {
+        this.rollups = rollups;
+        this.readings = readings;
+        this.relativeAccuracy = relativeAccuracy;
+    }
+
+    public double getRelativeAccuracy() { return relativeAccuracy; }
+
+    /**
+     * @return merged sketches keyed by metric; metrics without readings in the window are absent
+     */
+    public Map<String, QuantileSketch> sketches(List<String> sensorIds, List<String> metrics, TimeRange window) {
+        if (rollups == null || rollups.isRebuilding()) {
+            return readings.sketches(sensorIds, metrics, List.of(window), relativeAccuracy);
+        }
+        RollupPlanner.Plan plan = new RollupPlanner.Plan();
+        RollupPlanner.plan(window, rollups.staleDays(), plan);
+
+        Map<String, QuantileSketch> results = new LinkedHashMap<>();
+        plan.rollupStarts.forEach((resolution, starts) ->
+            merge(results, rollups.sketches(resolution, sensorIds, metrics, starts)));
+        if (!plan.rawRanges.isEmpty()) {
+            merge(results, readings.sketches(sensorIds, metrics, plan.rawRanges, relativeAccuracy));
+        }
+        return results;
+    }
+
+    private static void merge(Map<String, QuantileSketch> into, Map<String, QuantileSketch> partials) {
+        partials.forEach((metric, sketch) -> into.merge(metric, sketch, QuantileSketch::merge));
+    }
+}
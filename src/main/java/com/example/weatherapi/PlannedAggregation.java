@@ -0,0 +1,8 @@
+package com.example.weatherapi;
+
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+
+/**
+ * One aggregation an {@link AggregateSource} sends for a query, and the collection it runs on.
+ */
+public record PlannedAggregation(String collection, Aggregation aggregation) { }
@@ -0,0 +1,182 @@
+package com.example.weatherapi;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Mergeable quantile sketch with a relative error guarantee (DDSketch).
+ *
+ * Values are counted in logarithmic bins: bin i holds values in (gamma^(i-1), gamma^i]
+ * with gamma = (1 + a) / (1 - a), and reports 2 * gamma^i / (gamma + 1) for them,
+ * so any quantile comes back within a relative error a of the exact reading at
+ * that rank. Negative values use a mirrored set of bins; values with
+ * |x| < {@link #MIN_INDEXABLE} are counted as zero.
+ *
+ * Two sketches with the same accuracy merge by adding bin counts, which is what
+ * lets rollup buckets hold one each and queries combine them. Bins are persisted
+ * as string keys: "p<i>" (positive), "n<i>" (negative) and "z" (zero).
+ */
+public final class QuantileSketch {
+
+    static final double MIN_INDEXABLE = 1e-9;
+    static final String ZERO_KEY = "z";
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+
+    private final NavigableMap<Integer, Long> positive = new TreeMap<>();
+    private final NavigableMap<Integer, Long> negative = new TreeMap<>();
+    private long zeroCount;
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public QuantileSketch(double relativeAccuracy) {
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+            throw new IllegalArgumentException("Relative accuracy must be between 0 and 1 (exclusive)");
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    public double getRelativeAccuracy() { return relativeAccuracy; }
+    public double getLogGamma() { return logGamma; }
+    public long getCount() { return count; }
+    public boolean isEmpty() { return count == 0; }
+
+    /** Folds a single reading into the sketch. */
+    public QuantileSketch add(double value) {
+        addToBin(binKey(value), 1);
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        return this;
+    }
+
+    /** Adds {@code n} readings to a persisted bin (see {@link #bins()} for the key format). */
+    public QuantileSketch addBin(String key, long n) {
+        addToBin(key, n);
+        return this;
+    }
+
+    /** Widens the known min/max, e.g. from a rollup's exact min and max; quantiles are clamped to them. */
+    public QuantileSketch includeBounds(double lo, double hi) {
+        min = Math.min(min, lo);
+        max = Math.max(max, hi);
+        return this;
+    }
+
+    /** Folds another sketch (same accuracy) into this one. */
+    public QuantileSketch merge(QuantileSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("Cannot merge sketches with different relative accuracy");
+        }
+        other.positive.forEach((i, n) -> positive.merge(i, n, Long::sum));
+        other.negative.forEach((i, n) -> negative.merge(i, n, Long::sum));
+        zeroCount += other.zeroCount;
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        return this;
+    }
+
+    /**
+     * Value at quantile {@code q} (0..1), e.g. 0.95 for p95. Clamped to the known min/max,
+     * and exactly min/max for q = 0 / q = 1 when those are known.
+     */
+    public double quantile(double q) {
+        if (count == 0) {
+            throw new IllegalStateException("Empty sketch");
+        }
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1");
+        }
+        if (q == 0 && Double.isFinite(min)) {
+            return min;
+        }
+        if (q == 1 && Double.isFinite(max)) {
+            return max;
+        }
+        long rank = (long) (q * (count - 1));
+        long seen = 0;
+        double value = Double.NaN;
+        // Most negative first: larger negative bins hold larger magnitudes
+        for (Map.Entry<Integer, Long> bin : negative.descendingMap().entrySet()) {
+            seen += bin.getValue();
+            if (seen > rank) {
+                value = -binValue(bin.getKey());
+                break;
+            }
+        }
+        if (Double.isNaN(value)) {
+            seen += zeroCount;
+            if (seen > rank) {
+                value = 0;
+            }
+        }
+        if (Double.isNaN(value)) {
+            for (Map.Entry<Integer, Long> bin : positive.entrySet()) {
+                seen += bin.getValue();
+                if (seen > rank) {
+                    value = binValue(bin.getKey());
+                    break;
+                }
+            }
+        }
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /** Persisted bin counts, keyed as described on the class. */
+    public Map<String, Long> bins() {
+        Map<String, Long> out = new TreeMap<>();
+        positive.forEach((i, n) -> out.put("p" + i, n));
+        negative.forEach((i, n) -> out.put("n" + i, n));
+        if (zeroCount > 0) {
+            out.put(ZERO_KEY, zeroCount);
+        }
+        return out;
+    }
+
+    /** Key of the bin {@code value} falls into. */
+    public String binKey(double value) {
+        if (value > MIN_INDEXABLE) {
+            return "p" + index(value);
+        }
+        if (value < -MIN_INDEXABLE) {
+            return "n" + index(-value);
+        }
+        return ZERO_KEY;
+    }
+
+    private int index(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) / logGamma);
+    }
+
+    private double binValue(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    private void addToBin(String key, long n) {
+        if (n <= 0) {
+            return;
+        }
+        if (ZERO_KEY.equals(key)) {
+            zeroCount += n;
+        } else {
+            int i;
+            try {
+                i = Integer.parseInt(key.substring(1));
+            } catch (RuntimeException ex) {
+                throw new IllegalArgumentException("Invalid sketch bin: " + key);
+            }
+            switch (key.charAt(0)) {
+                case 'p': positive.merge(i, n, Long::sum); break;
+                case 'n': negative.merge(i, n, Long::sum); break;
+                default: throw new IllegalArgumentException("Invalid sketch bin: " + key);
+            }
+        }
+        count += n;
+    }
+}
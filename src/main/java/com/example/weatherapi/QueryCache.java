@@ -0,0 +1,413 @@
+package com.example.weatherapi;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * In-process cache of per-metric partial aggregates (sensors.query.cache.enabled=true).
+ *
+ * Entries are keyed on the normalized query (sorted sensor/metric sets plus time ranges);
+ * the statistic is not part of the key because every statistic is derived from the same
+ * cached partials.
+ *
+ * - Bounded by entry count (max-size).
+ * - Windows ending within live-window of now expire after ttl; older (historical) windows
+ *   have no time limit and stay until evicted by size or invalidated.
+ * - Concurrent misses on the same key share a single load.
+ * - Ingest invalidates precisely: only entries whose sensor/metric sets and ranges contain
+ *   a newly written reading are dropped. Loads still in flight when a matching reading
+ *   arrives are returned to their callers but not cached.
+ * - Entries are indexed by the sensors and hour/day blocks they cover, so an ingest only
+ *   checks the entries for its own sensors and hours instead of scanning the cache.
+ * - Windows left open (no "to") end at now rounded down to open-window-step, so repeated
+ *   default queries share an entry; see {@link #openWindowEnd()}.
+ *
+ * Metrics: cache.gets/puts/evictions tagged cache=sensorQueryCache, plus
+ * sensors.query.cache.invalidations and sensors.query.cache.coalesced.
+ */
+@Component
+@Order(IngestListener.ORDER_CACHE)
+public class QueryCache implements IngestListener {
+
+    private final boolean enabled;
+    private final Cache<QueryKey, Map<String, MetricAggregate>> cache;
+    private final Map<QueryKey, Load> inFlight = new ConcurrentHashMap<>();
+    private final KeyIndex index = new KeyIndex();
+    private final long openWindowStepMillis;
+    private final Counter invalidations;
+    private final Counter coalesced;
+
+    public QueryCache(MeterRegistry meterRegistry,
+                      @Value("${sensors.query.cache.enabled:false}") boolean enabled,
+                      @Value("${sensors.query.cache.max-size:10000}") long maxSize,
+                      @Value("${sensors.query.cache.ttl:30s}") Duration ttl,
+                      @Value("${sensors.query.cache.live-window:1h}") Duration liveWindow,
+                      @Value("${sensors.query.cache.open-window-step:10s}") Duration openWindowStep) {
+        if (openWindowStep.toMillis() < 1) {
+            throw new IllegalArgumentException("sensors.query.cache.open-window-step must be at least 1ms");
+        }
+        this.enabled = enabled;
+        this.openWindowStepMillis = openWindowStep.toMillis();
+        // Runs atomically with the removal, so a cached key is always indexed
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new WindowExpiry(ttl, liveWindow))
+                .<QueryKey, Map<String, MetricAggregate>>evictionListener((key, value, cause) -> index.remove(key))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "sensorQueryCache");
+        this.invalidations = Counter.builder("sensors.query.cache.invalidations")
+                .description("Cached query results dropped because a matching reading was ingested")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("sensors.query.cache.coalesced")
+                .description("Cache misses that waited on an identical in-flight load")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() { return enabled; }
+
+    /**
+     * End of a window whose "to" was left open. While caching this is now rounded down to
+     * open-window-step, so the default window keeps the same key for that long; readings newer
+     * than the rounded end are left out, as they would be by a cached result anyway.
+     */
+    public Instant openWindowEnd() {
+        Instant now = Instant.now();
+        if (!enabled) {
+            return now;
+        }
+        return Instant.ofEpochMilli(Math.floorDiv(now.toEpochMilli(), openWindowStepMillis) * openWindowStepMillis);
+    }
+
+    /**
+     * Returns the cached partials for {@code key}, loading them once if absent.
+     * Callers get their own copies, so merging into them never touches the cache.
+     */
+    public Map<String, MetricAggregate> get(QueryKey key, Supplier<Map<String, MetricAggregate>> loader) {
+        Map<String, MetricAggregate> cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return copy(cached);
+        }
+
+        Load mine = new Load();
+        Load existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalesced.increment();
+            try {
+                return copy(existing.result.join());
+            } catch (CompletionException ex) {
+                if (ex.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw ex;
+            }
+        }
+        try {
+            Map<String, MetricAggregate> loaded = loader.get();
+            if (!mine.stale) {
+                cache.asMap().compute(key, (k, previous) -> {
+                    index.add(k);
+                    return loaded;
+                });
+                // An ingest may have matched between the check and the put
+                if (mine.stale) {
+                    drop(key);
+                }
+            }
+            mine.result.complete(loaded);
+            return copy(loaded);
+        } catch (RuntimeException ex) {
+            mine.result.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    @Override
+    public void onIngest(List<SensorData> readings) {
+        if (!enabled || readings.isEmpty()) {
+            return;
+        }
+        IngestedSeries series = IngestedSeries.of(readings);
+
+        // Mark matching loads first, then the indexed entries (see get() for the ordering argument)
+        inFlight.forEach((key, load) -> {
+            if (series.touches(key)) {
+                load.stale = true;
+            }
+        });
+        for (QueryKey key : index.candidates(series)) {
+            if (series.touches(key) && drop(key)) {
+                invalidations.increment();
+            }
+        }
+    }
+
+    /** Drops every entry, e.g. after a bulk rebuild that bypassed the ingest path. */
+    public void invalidateAll() {
+        inFlight.values().forEach(load -> load.stale = true);
+        cache.asMap().keySet().forEach(this::drop);
+    }
+
+    // Index registrations held, for tests
+    int indexedBlocks() {
+        return index.size();
+    }
+
+    // Removes the entry and its index registrations in one step
+    private boolean drop(QueryKey key) {
+        boolean[] removed = new boolean[1];
+        cache.asMap().computeIfPresent(key, (k, value) -> {
+            index.remove(k);
+            removed[0] = true;
+            return null;
+        });
+        return removed[0];
+    }
+
+    private static Map<String, MetricAggregate> copy(Map<String, MetricAggregate> partials) {
+        Map<String, MetricAggregate> out = new LinkedHashMap<>();
+        partials.forEach((metric, agg) -> out.put(metric, new MetricAggregate().merge(agg)));
+        return out;
+    }
+
+    /**
+     * Normalized query identity. Null sensor/metric lists mean "all"; otherwise they are sorted and de-duplicated.
+     */
+    public record QueryKey(List<String> sensorIds, List<String> metrics, List<TimeRange> ranges) {
+
+        public static QueryKey of(List<String> sensorIds, List<String> metrics, List<TimeRange> ranges) {
+            return new QueryKey(normalize(sensorIds), normalize(metrics), List.copyOf(ranges));
+        }
+
+        private static List<String> normalize(List<String> values) {
+            return values == null || values.isEmpty() ? null : List.copyOf(new TreeSet<>(values));
+        }
+
+        Instant latestEnd() {
+            return ranges.stream().map(TimeRange::to).max(Instant::compareTo).orElseThrow();
+        }
+    }
+
+    // Single-flight slot for one key
+    private static final class Load {
+        final CompletableFuture<Map<String, MetricAggregate>> result = new CompletableFuture<>();
+        volatile boolean stale;
+    }
+
+    /**
+     * Cached keys by the blocks they cover: a sensor (or null for keys over all sensors) and an
+     * aligned hour or day. Each range is split into the fewest such blocks (whole days in the
+     * middle, hours at the edges), and an ingested reading is looked up by its own sensor and
+     * hour/day, so the exact check only runs on entries that can contain it.
+     */
+    private static final class KeyIndex {
+        private static final long HOUR = Duration.ofHours(1).toMillis();
+        private static final long DAY = Duration.ofDays(1).toMillis();
+        private static final long[] WIDTHS = {DAY, HOUR};
+        // Keys needing more registrations than this are filed under all sensors
+        private static final int MAX_BLOCKS_PER_KEY = 1024;
+
+        private record Block(String sensorId, long width, long index) { }
+
+        private final Map<Block, Set<QueryKey>> keys = new ConcurrentHashMap<>();
+
+        void add(QueryKey key) {
+            for (Block block : blocks(key)) {
+                keys.computeIfAbsent(block, b -> ConcurrentHashMap.newKeySet()).add(key);
+            }
+        }
+
+        void remove(QueryKey key) {
+            for (Block block : blocks(key)) {
+                keys.computeIfPresent(block, (b, set) -> {
+                    set.remove(key);
+                    return set.isEmpty() ? null : set;
+                });
+            }
+        }
+
+        int size() {
+            return keys.values().stream().mapToInt(Set::size).sum();
+        }
+
+        Set<QueryKey> candidates(IngestedSeries series) {
+            Set<QueryKey> out = new HashSet<>();
+            Set<Long> hours = new HashSet<>();
+            series.forEachSensorHour((sensorId, hour) -> {
+                hours.add(hour);
+                collect(sensorId, hour, out);
+            });
+            hours.forEach(hour -> collect(null, hour, out));
+            return out;
+        }
+
+        private void collect(String sensorId, long hourStart, Set<QueryKey> out) {
+            for (long width : WIDTHS) {
+                Set<QueryKey> found = keys.get(new Block(sensorId, width, Math.floorDiv(hourStart, width)));
+                if (found != null) {
+                    out.addAll(found);
+                }
+            }
+        }
+
+        private static List<Block> blocks(QueryKey key) {
+            List<long[]> spans = new ArrayList<>();
+            for (TimeRange range : key.ranges()) {
+                // Whole hours containing [from, to], both ends inclusive at millisecond precision
+                long p = Math.floorDiv(range.from().toEpochMilli(), HOUR) * HOUR;
+                long end = Math.floorDiv(range.to().toEpochMilli(), HOUR) * HOUR + HOUR;
+                while (p < end) {
+                    for (long width : WIDTHS) {
+                        if (Math.floorMod(p, width) == 0 && p + width <= end) {
+                            spans.add(new long[] {width, p / width});
+                            p += width;
+                            break;
+                        }
+                    }
+                }
+            }
+            List<String> sensors = key.sensorIds();
+            if (sensors == null || (long) sensors.size() * spans.size() > MAX_BLOCKS_PER_KEY) {
+                sensors = Collections.singletonList(null);
+            }
+            List<Block> blocks = new ArrayList<>(sensors.size() * spans.size());
+            for (String sensorId : sensors) {
+                for (long[] span : spans) {
+                    blocks.add(new Block(sensorId, span[0], span[1]));
+                }
+            }
+            return blocks;
+        }
+    }
+
+    /**
+     * Ingested readings indexed by (sensorId, metric) with sorted millisecond timestamps,
+     * so each cache key is checked with a binary search per range.
+     */
+    private static final class IngestedSeries {
+        private final Map<String, Map<String, long[]>> byMetricThenSensor;
+
+        private IngestedSeries(Map<String, Map<String, long[]>> byMetricThenSensor) {
+            this.byMetricThenSensor = byMetricThenSensor;
+        }
+
+        static IngestedSeries of(List<SensorData> readings) {
+            Map<String, Map<String, List<Long>>> grouped = new HashMap<>();
+            for (SensorData r : readings) {
+                grouped.computeIfAbsent(r.getMetric(), m -> new HashMap<>())
+                       .computeIfAbsent(r.getSensorId(), s -> new ArrayList<>())
+                       .add(r.getTimestamp().toEpochMilli());
+            }
+            Map<String, Map<String, long[]>> sorted = new HashMap<>();
+            grouped.forEach((metric, bySensor) -> {
+                Map<String, long[]> m = new HashMap<>();
+                bySensor.forEach((sensor, ts) -> {
+                    long[] arr = ts.stream().mapToLong(Long::longValue).toArray();
+                    Arrays.sort(arr);
+                    m.put(sensor, arr);
+                });
+                sorted.put(metric, m);
+            });
+            return new IngestedSeries(sorted);
+        }
+
+        /** Calls {@code action} once per sensor and start of an hour holding one of its readings. */
+        void forEachSensorHour(BiConsumer<String, Long> action) {
+            Map<String, Set<Long>> hours = new HashMap<>();
+            byMetricThenSensor.values().forEach(bySensor -> bySensor.forEach((sensor, millis) -> {
+                Set<Long> seen = hours.computeIfAbsent(sensor, s -> new HashSet<>());
+                for (long t : millis) {
+                    seen.add(Math.floorDiv(t, KeyIndex.HOUR) * KeyIndex.HOUR);
+                }
+            }));
+            hours.forEach((sensor, starts) -> starts.forEach(start -> action.accept(sensor, start)));
+        }
+
+        boolean touches(QueryKey key) {
+            for (Map.Entry<String, Map<String, long[]>> byMetric : byMetricThenSensor.entrySet()) {
+                if (key.metrics() != null && Collections.binarySearch(key.metrics(), byMetric.getKey()) < 0) {
+                    continue;
+                }
+                for (Map.Entry<String, long[]> bySensor : byMetric.getValue().entrySet()) {
+                    if (key.sensorIds() != null && Collections.binarySearch(key.sensorIds(), bySensor.getKey()) < 0) {
+                        continue;
+                    }
+                    for (TimeRange range : key.ranges()) {
+                        if (anyWithin(bySensor.getValue(), range)) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        // Mongo compares at millisecond precision, so the check does too
+        private static boolean anyWithin(long[] sortedMillis, TimeRange range) {
+            long from = range.from().truncatedTo(ChronoUnit.MILLIS).toEpochMilli();
+            long to = range.to().truncatedTo(ChronoUnit.MILLIS).toEpochMilli();
+            int i = Arrays.binarySearch(sortedMillis, from);
+            int firstAtOrAfter = i >= 0 ? i : -i - 1;
+            return firstAtOrAfter < sortedMillis.length && sortedMillis[firstAtOrAfter] <= to;
+        }
+    }
+
+    /**
+     * Live windows get the short TTL; windows that ended more than live-window ago never expire by time.
+     */
+    private static final class WindowExpiry implements Expiry<QueryKey, Map<String, MetricAggregate>> {
+        private final long ttlNanos;
+        private final Duration liveWindow;
+
+        WindowExpiry(Duration ttl, Duration liveWindow) {
+            this.ttlNanos = ttl.toNanos();
+            this.liveWindow = liveWindow;
+        }
+
+        @Override
+        public long expireAfterCreate(QueryKey key, Map<String, MetricAggregate> value, long currentTime) {
+            boolean historical = key.latestEnd().isBefore(Instant.now().minus(liveWindow));
+            return historical ? Long.MAX_VALUE : ttlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(QueryKey key, Map<String, MetricAggregate> value,
+                                      long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(QueryKey key, Map<String, MetricAggregate> value,
+                                    long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.weatherapi;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperationContext;
+import org.springframework.data.mongodb.core.aggregation.FieldLookupPolicy;
+import org.springframework.data.mongodb.core.aggregation.TypeBasedAggregationOperationContext;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Explains the aggregations behind a /sensors/query, and logs queries slower than
+ * sensors.query.slow-threshold together with that explain output.
+ *
+ * Explain runs at executionStats verbosity, so every aggregation runs once more. For slow
+ * queries that happens off the request thread, under a query bulkhead permit, and only one
+ * slow query is explained at a time: the others are logged with their timing alone.
+ */
+@Component
+public class QueryExplainer {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryExplainer.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final AggregateSource aggregateSource;
+    private final MongoBulkheads.Bulkhead queryBulkhead;
+    private final Duration slowThreshold;
+    private final AtomicBoolean explainingSlowQuery = new AtomicBoolean();
+
+    public QueryExplainer(MongoTemplate mongoTemplate,
+                          AggregateSource aggregateSource,
+                          MongoBulkheads bulkheads,
+                          @Value("${sensors.query.slow-threshold:1s}") Duration slowThreshold) {
+        this.mongoTemplate = mongoTemplate;
+        this.aggregateSource = aggregateSource;
+        this.queryBulkhead = bulkheads.query();
+        this.slowThreshold = slowThreshold;
+    }
+
+    /** Explains each aggregation the query sends (for a cached query: what a miss would send). */
+    public List<AggregationExplain> explain(List<String> sensorIds, List<String> metrics, TimeRange window) {
+        return queryBulkhead.call(() -> {
+            List<AggregationExplain> explained = new ArrayList<>();
+            for (PlannedAggregation planned : aggregateSource.plan(sensorIds, metrics, List.of(window))) {
+                explained.add(explain(planned));
+            }
+            return explained;
+        });
+    }
+
+    private AggregationExplain explain(PlannedAggregation planned) {
+        // Map the pipeline the way MongoTemplate does for an untyped aggregation (Instant -> Date, ...)
+        AggregationOperationContext context = new TypeBasedAggregationOperationContext(Object.class,
+                mongoTemplate.getConverter().getMappingContext(), new QueryMapper(mongoTemplate.getConverter()),
+                FieldLookupPolicy.relaxed());
+        Document command = new Document("explain", planned.aggregation().toDocument(planned.collection(), context))
+                .append("verbosity", "executionStats");
+        return AggregationExplain.parse(planned.collection(), mongoTemplate.getDb().runCommand(command));
+    }
+
+    /** Logs the query if it took longer than the threshold; a zero threshold turns this off. */
+    public void checkSlow(List<String> sensorIds, List<String> metrics, TimeRange window, long elapsedNanos) {
+        if (slowThreshold.isZero() || elapsedNanos <= slowThreshold.toNanos()) {
+            return;
+        }
+        String query = "sensorIds=" + sensorIds + " metrics=" + metrics + " from=" + window.from() + " to=" + window.to();
+        log.warn("Slow query ({} ms, threshold {} ms): {}",
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos), slowThreshold.toMillis(), query);
+        if (!explainingSlowQuery.compareAndSet(false, true)) {
+            return;
+        }
+        Thread.ofVirtual().name("slow-query-explain").start(() -> {
+            try {
+                for (AggregationExplain explained : explain(sensorIds, metrics, window)) {
+                    log.warn("Slow query plan for {}: {}", query, explained.summary());
+                }
+            } catch (RuntimeException ex) {
+                log.warn("Could not explain slow query {}", query, ex);
+            } finally {
+                explainingSlowQuery.set(false);
+            }
+        });
+    }
+}
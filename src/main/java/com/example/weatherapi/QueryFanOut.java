@@ -0,0 +1,113 @@
+package com.example.weatherapi;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Splits wide query windows into chunks and runs one aggregation per chunk concurrently
+ * (sensors.query.fan-out.enabled=true).
+ *
+ * Chunks are aligned to multiples of chunk-size since the epoch (UTC days for the default 1d),
+ * so the same day is always the same chunk. Sub-aggregations run on virtual threads, but at
+ * most parallelism of them are in flight at once across all queries. The caller keeps its
+ * query bulkhead permit while it waits, so Mongo sees at most parallelism extra operations.
+ *
+ * Tasks that fan out again (sensor partitions split into chunks) run their inner tasks one after
+ * another on their own thread: waiting for slots held by their own callers could deadlock.
+ */
+@Component
+public class QueryFanOut {
+
+    // Sub-aggregations are I/O-bound; the semaphore is what bounds them
+    private static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Set while a fan-out task runs on this thread
+    private static final ThreadLocal<Boolean> IN_TASK = ThreadLocal.withInitial(() -> false);
+
+    private final boolean enabled;
+    private final long chunkMillis;
+    private final Semaphore slots;
+
+    public QueryFanOut(@Value("${sensors.query.fan-out.enabled:false}") boolean enabled,
+                       @Value("${sensors.query.fan-out.chunk-size:1d}") Duration chunkSize,
+                       @Value("${sensors.query.fan-out.parallelism:4}") int parallelism) {
+        if (chunkSize.toMillis() < 1) {
+            throw new IllegalArgumentException("sensors.query.fan-out.chunk-size must be at least 1ms");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("sensors.query.fan-out.parallelism must be at least 1");
+        }
+        this.enabled = enabled;
+        this.chunkMillis = chunkSize.toMillis();
+        this.slots = new Semaphore(parallelism, true);
+    }
+
+    public boolean isEnabled() { return enabled; }
+
+    /** Cuts each (inclusive) range at chunk boundaries; ranges within one chunk are kept as they are. */
+    public List<TimeRange> split(List<TimeRange> ranges) {
+        List<TimeRange> chunks = new ArrayList<>();
+        for (TimeRange range : ranges) {
+            Instant from = range.from();
+            long boundary = Math.floorDiv(from.toEpochMilli(), chunkMillis) * chunkMillis + chunkMillis;
+            while (boundary <= range.to().toEpochMilli()) {
+                Instant next = Instant.ofEpochMilli(boundary);
+                chunks.add(new TimeRange(from, next.minusMillis(1)));
+                from = next;
+                boundary += chunkMillis;
+            }
+            chunks.add(new TimeRange(from, range.to()));
+        }
+        return chunks;
+    }
+
+    /**
+     * Runs every task, at most parallelism at a time, and returns their results in task order.
+     * The first failure is rethrown once all tasks are done. Called from within a task, the
+     * tasks run in order on the calling thread.
+     */
+    public <T> List<T> invokeAll(List<Supplier<T>> tasks) {
+        if (IN_TASK.get()) {
+            return tasks.stream().map(Supplier::get).toList();
+        }
+        List<CompletableFuture<T>> futures = tasks.stream()
+            .map(task -> CompletableFuture.supplyAsync(() -> bounded(task), EXECUTOR))
+            .toList();
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+        return futures.stream().map(CompletableFuture::join).toList();
+    }
+
+    private <T> T bounded(Supplier<T> task) {
+        try {
+            slots.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a fan-out slot", ex);
+        }
+        IN_TASK.set(true);
+        try {
+            return task.get();
+        } finally {
+            IN_TASK.remove();
+            slots.release();
+        }
+    }
+}
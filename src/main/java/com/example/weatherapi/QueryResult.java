@@ -1,5 +1,7 @@
 package com.example.weatherapi;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.time.Instant;
 import java.util.List;
 import java.util.Map;
@@ -14,6 +16,9 @@ public class QueryResult {
     private Instant from;           // start of query window
     private Instant to;             // end of query window
     private Map<String, Double> resultsByMetric; // metric aggregated value
+    private List<AggregationExplain> explain;    // only with explain=true
+    private String tag;                          // tag expression selecting the sensors, if any
+    private Integer matchedSensors;              // sensors the tag expression matched
 
     /**
      * Constructs a QueryResult response.
@@ -35,4 +40,22 @@ public class QueryResult {
     public Instant getFrom() { return from; }
     public Instant getTo() { return to; }
     public Map<String, Double> getResultsByMetric() { return resultsByMetric; }
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public List<AggregationExplain> getExplain() { return explain; }
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getTag() { return tag; }
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Integer getMatchedSensors() { return matchedSensors; }
+
+    public void setExplain(List<AggregationExplain> explain) { this.explain = explain; }
+
+    /**
+     * Marks the result as selected by a tag expression. The matched sensors are counted, not listed;
+     * sensorIds keeps only the ids the request named.
+     */
+    public void setTag(String tag, List<String> requestedSensorIds, int matchedSensors) {
+        this.tag = tag;
+        this.sensorIds = requestedSensorIds == null || requestedSensorIds.isEmpty() ? null : requestedSensorIds;
+        this.matchedSensors = matchedSensors;
+    }
 }
@@ -0,0 +1,234 @@
+package com.example.weatherapi;
+
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.aggregation.DateOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
+
+/**
+ * Aggregates straight over one-document-per-reading "sensor_data".
+ *
+ * A single $match + $group computes count/sum/min/max per metric, so every
+ * statistic comes out of the same scan. Series add the $dateTrunc bucket to the group key;
+ * breakdowns find a page's sensors in (sensorId, metric, timestamp) index order, then group
+ * only those (see {@link BreakdownRow}).
+ * Sketches bin each value server-side and return only bin counts per metric.
+ * Exports project the four reading fields, which the sensorIds index covers.
+ */
+@Component
+public class RawAggregateSource implements AggregateSource, SeriesSource, BreakdownSource, SketchSource, ExportSource {
+
+    static final String COLLECTION = "sensor_data";
+
+    private final MongoTemplate mongoTemplate;
+    private final ReadingIndexes indexes;
+
+    public RawAggregateSource(MongoTemplate mongoTemplate, ReadingIndexes indexes) {
+        this.mongoTemplate = mongoTemplate;
+        this.indexes = indexes;
+    }
+
+    @Override
+    public Map<String, MetricAggregate> aggregate(List<String> sensorIds,
+                                                  List<String> metrics,
+                                                  List<TimeRange> ranges) {
+        PlannedAggregation planned = plan(sensorIds, metrics, ranges).get(0);
+        AggregationResults<Document> aggResults =
+            mongoTemplate.aggregate(planned.aggregation(), planned.collection(), Document.class);
+
+        Map<String, MetricAggregate> results = new LinkedHashMap<>();
+        for (Document d : aggResults) {
+            collect(d, results);
+        }
+        return results;
+    }
+
+    @Override
+    public List<PlannedAggregation> plan(List<String> sensorIds, List<String> metrics, List<TimeRange> ranges) {
+        return List.of(new PlannedAggregation(COLLECTION, newAggregation(aggregatePipeline(sensorIds, metrics, ranges))
+            .withOptions(indexes.options(COLLECTION, sensorIds, metrics, false))));
+    }
+
+    static List<AggregationOperation> aggregatePipeline(List<String> sensorIds,
+                                                        List<String> metrics,
+                                                        List<TimeRange> ranges) {
+        return List.of(
+            match(matchCriteria(sensorIds, metrics, ranges)),
+            group("metric")
+                .count().as("count")
+                .sum("value").as("sum")
+                .min("value").as("min")
+                .max("value").as("max"),
+            project("count", "sum", "min", "max")
+                .and("_id").as("metric")
+                .andExclude("_id"));
+    }
+
+    /** Adds one {@link #aggregatePipeline} output document to {@code results}. */
+    static void collect(Document d, Map<String, MetricAggregate> results) {
+        String metric = d.getString("metric");
+        Number count = (Number) d.get("count");
+        if (metric != null && count != null && count.longValue() > 0) {
+            results.put(metric, new MetricAggregate(
+                count.longValue(),
+                ((Number) d.get("sum")).doubleValue(),
+                ((Number) d.get("min")).doubleValue(),
+                ((Number) d.get("max")).doubleValue()));
+        }
+    }
+
+    @Override
+    public Stream<SeriesPoint> series(List<String> sensorIds,
+                                      List<String> metrics,
+                                      TimeRange window,
+                                      SeriesInterval interval) {
+        Aggregation agg = newAggregation(seriesPipeline(sensorIds, metrics, window, interval))
+            .withOptions(indexes.options(COLLECTION, sensorIds, metrics, true));
+        return mongoTemplate.aggregateStream(agg, COLLECTION, Document.class)
+            .map(d -> SeriesPoint.of(d, d.get("_id", Document.class).getString("metric")));
+    }
+
+    static List<AggregationOperation> seriesPipeline(List<String> sensorIds,
+                                                     List<String> metrics,
+                                                     TimeRange window,
+                                                     SeriesInterval interval) {
+        List<AggregationOperation> ops = new ArrayList<>();
+        ops.add(match(matchCriteria(sensorIds, metrics, List.of(window))));
+        ops.add(project("metric", "value")
+            .and(DateOperators.dateOf("timestamp").truncate(interval.mongoUnit()).binSize(interval.amount()))
+            .as("start"));
+        ops.addAll(SeriesPoint.groupStages("metric", "value"));
+        return ops;
+    }
+
+    @Override
+    public Stream<BreakdownRow> breakdown(List<String> sensorIds,
+                                          List<String> metrics,
+                                          TimeRange window,
+                                          GroupBy groupBy,
+                                          ContinuationToken after,
+                                          int limit) {
+        Query keys = breakdownKeys(sensorIds, metrics, window, groupBy, after,
+            indexes.hint(COLLECTION, ReadingIndexes.QueryShape.SENSORS));
+        List<String> page = BreakdownRow.pageSensors(mongoTemplate.stream(keys, Document.class, COLLECTION),
+            groupBy, "sensorId", "metric", limit);
+        if (page.isEmpty()) {
+            return Stream.empty();
+        }
+        Aggregation agg = newAggregation(breakdownPipeline(page, metrics, window, groupBy, after, limit))
+            .withOptions(indexes.options(COLLECTION, ReadingIndexes.QueryShape.SENSORS, true));
+        return mongoTemplate.aggregateStream(agg, COLLECTION, Document.class)
+            .map(d -> BreakdownRow.of(d, groupBy, "sensorId", "metric", String::valueOf));
+    }
+
+    // First step of a page: the row keys from its start, in index order
+    static Query breakdownKeys(List<String> sensorIds,
+                               List<String> metrics,
+                               TimeRange window,
+                               GroupBy groupBy,
+                               ContinuationToken after,
+                               String hint) {
+        return BreakdownRow.keysQuery(breakdownCriteria(sensorIds, metrics, window, groupBy, after),
+            "sensorId", "metric", "timestamp", hint);
+    }
+
+    // Second step: pageSensors are the sensors breakdownKeys found
+    static List<AggregationOperation> breakdownPipeline(List<String> pageSensors,
+                                                        List<String> metrics,
+                                                        TimeRange window,
+                                                        GroupBy groupBy,
+                                                        ContinuationToken after,
+                                                        int limit) {
+        List<AggregationOperation> ops = new ArrayList<>();
+        ops.add(match(breakdownCriteria(pageSensors, metrics, window, groupBy, after)));
+        // Same order as the compound index, so Mongo walks the index instead of sorting in memory
+        ops.add(sort(Sort.by("sensorId", "metric", "timestamp")));
+        ops.addAll(BreakdownRow.groupStages(groupBy, "sensorId", "metric", "value", limit));
+        return ops;
+    }
+
+    private static Criteria breakdownCriteria(List<String> sensorIds, List<String> metrics, TimeRange window,
+                                              GroupBy groupBy, ContinuationToken after) {
+        Criteria criteria = matchCriteria(sensorIds, metrics, List.of(window));
+        if (after != null) {
+            criteria = new Criteria().andOperator(criteria, after.after(groupBy, "sensorId", "metric", after.metric()));
+        }
+        return criteria;
+    }
+
+    @Override
+    public Map<String, QuantileSketch> sketches(List<String> sensorIds,
+                                                List<String> metrics,
+                                                List<TimeRange> ranges,
+                                                double relativeAccuracy) {
+        Aggregation agg = newAggregation(sketchPipeline(sensorIds, metrics, ranges, relativeAccuracy))
+            .withOptions(indexes.options(COLLECTION, sensorIds, metrics, true));
+        Map<String, QuantileSketch> results = new LinkedHashMap<>();
+        for (Document d : mongoTemplate.aggregate(agg, COLLECTION, Document.class)) {
+            results.put(d.getString("_id"), SketchStages.read(d, relativeAccuracy));
+        }
+        return results;
+    }
+
+    static List<AggregationOperation> sketchPipeline(List<String> sensorIds,
+                                                     List<String> metrics,
+                                                     List<TimeRange> ranges,
+                                                     double relativeAccuracy) {
+        List<AggregationOperation> ops = new ArrayList<>();
+        ops.add(match(matchCriteria(sensorIds, metrics, ranges)));
+        ops.addAll(SketchStages.readingStages("metric", "value", new QuantileSketch(relativeAccuracy).getLogGamma()));
+        return ops;
+    }
+
+    @Override
+    public Stream<SensorData> export(List<String> sensorIds, List<String> metrics, TimeRange window, int batchSize) {
+        Aggregation agg = newAggregation(exportPipeline(sensorIds, metrics, window))
+            .withOptions(indexes.optionsBuilder(COLLECTION, ReadingIndexes.QueryShape.of(sensorIds, metrics))
+                .cursorBatchSize(batchSize).build());
+        return mongoTemplate.aggregateStream(agg, COLLECTION, Document.class)
+            .map(d -> SensorData.of(d.getString("sensorId"), d.getString("metric"),
+                ((Number) d.get("value")).doubleValue(), d.getDate("timestamp").toInstant()));
+    }
+
+    static List<AggregationOperation> exportPipeline(List<String> sensorIds, List<String> metrics, TimeRange window) {
+        return List.of(
+            match(matchCriteria(sensorIds, metrics, List.of(window))),
+            project("sensorId", "metric", "timestamp", "value").andExclude("_id"));
+    }
+
+    /**
+     * Builds the $match for the given filters; several ranges become an $or of timestamp ranges.
+     */
+    static Criteria matchCriteria(List<String> sensorIds, List<String> metrics, List<TimeRange> ranges) {
+        List<Criteria> and = new ArrayList<>();
+        if (ranges.size() == 1) {
+            and.add(Criteria.where("timestamp").gte(ranges.get(0).from()).lte(ranges.get(0).to()));
+        } else {
+            and.add(new Criteria().orOperator(ranges.stream()
+                .map(r -> Criteria.where("timestamp").gte(r.from()).lte(r.to()))
+                .toArray(Criteria[]::new)));
+        }
+        if (sensorIds != null && !sensorIds.isEmpty()) {
+            and.add(Criteria.where("sensorId").in(sensorIds));
+        }
+        if (metrics != null && !metrics.isEmpty()) {
+            and.add(Criteria.where("metric").in(metrics));
+        }
+        return new Criteria().andOperator(and.toArray(new Criteria[0]));
+    }
+}
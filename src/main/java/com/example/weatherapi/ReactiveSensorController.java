@@ -0,0 +1,300 @@
+package com.example.weatherapi;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Valid;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * WebFlux version of {@link SensorController}, active with the "reactive" profile.
+ *
+ * Same endpoints, parameters and response bodies. Nothing blocks a request thread:
+ * - NDJSON uploads are read a chunk at a time, and the next chunk is only pulled once the previous one is written.
+ * - Series and breakdown responses are written point by point. The Mongo cursor is only advanced as fast as the
+ *   client reads, so a slow client slows the query rather than filling memory.
+ * - Exports read the blocking export cursor on the bounded elastic scheduler, through an output stream that takes
+ *   bytes only as fast as the client reads them.
+ */
+@RestController
+@RequestMapping("/sensors")
+@Profile(ReactiveSensorController.PROFILE)
+public class ReactiveSensorController {
+
+    static final String PROFILE = "reactive";
+
+    private final ReactiveSensorService service;
+    private final IngestBuffer ingestBuffer; // null unless sensors.ingest.async.enabled=true
+    private final SensorCatalog catalog;
+    private final ReadingExporter exporter;
+    private final ObjectMapper objectMapper;
+
+    public ReactiveSensorController(ReactiveSensorService service,
+                                    ObjectProvider<IngestBuffer> ingestBuffer,
+                                    SensorCatalog catalog,
+                                    ReadingExporter exporter,
+                                    ObjectMapper objectMapper) {
+        this.service = service;
+        this.ingestBuffer = ingestBuffer.getIfAvailable();
+        this.catalog = catalog;
+        this.exporter = exporter;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Ingest a new sensor reading.
+     * In async mode the reading is queued and 202 Accepted is returned before it is written.
+     */
+    @PostMapping(value = "/data", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<SensorData>> addSensorData(@Valid @RequestBody SensorDataRequest request) {
+        if (ingestBuffer != null) {
+            return Mono.just(ResponseEntity.accepted().body(ingestBuffer.submit(request)));
+        }
+        return service.saveSensorData(request).map(ResponseEntity::ok);
+    }
+
+    /**
+     * Ingest an array of sensor readings in one call.
+     */
+    @PostMapping("/data/batch")
+    public Mono<ResponseEntity<BatchIngestResult>> addSensorDataBatch(@RequestBody List<SensorDataRequest> requests) {
+        return service.saveSensorDataBatch(requests).map(ResponseEntity::ok);
+    }
+
+    /**
+     * Ingest newline-delimited JSON readings as the upload arrives.
+     */
+    @PostMapping(value = "/data", consumes = SensorController.APPLICATION_NDJSON)
+    public Mono<ResponseEntity<BatchIngestResult>> addSensorDataStream(@RequestBody Flux<String> lines) {
+        return service.ingestStream(lines).map(ResponseEntity::ok);
+    }
+
+    /**
+     * Query sensor data with filters and aggregation (several statistics and percentiles allowed).
+     */
+    @GetMapping("/query")
+    public Mono<ResponseEntity<QueryResult>> query(
+            @RequestParam(required = false) List<String> sensorIds,
+            @RequestParam(required = false) String tag,
+            @RequestParam(required = false) List<String> metrics,
+            @RequestParam(defaultValue = "avg") String stat,
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to,
+            @RequestParam(defaultValue = "false") boolean explain
+    ) {
+        StatSelection selection = StatSelection.from(stat);
+        List<String> normalizedMetrics = SensorController.normalizeMetrics(metrics);
+        if (tag != null) {
+            return service.queryByTag(tag, sensorIds, normalizedMetrics, selection, from, to, explain)
+                    .map(ResponseEntity::ok);
+        }
+        return (explain
+                ? service.explainQuery(sensorIds, normalizedMetrics, selection, from, to)
+                : service.queryData(sensorIds, normalizedMetrics, selection, from, to))
+                .map(ResponseEntity::ok);
+    }
+
+    /**
+     * Query stats broken down per sensor, one page at a time, streamed as rows are produced.
+     */
+    @GetMapping(value = "/query", params = "groupBy")
+    public ResponseEntity<Flux<DataBuffer>> queryBreakdown(
+            @RequestParam String groupBy,
+            @RequestParam(required = false) List<String> sensorIds,
+            @RequestParam(required = false) List<String> metrics,
+            @RequestParam(defaultValue = "avg") String stat,
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "1000") int limit
+    ) {
+        // Validate everything up front so errors still map to 400 before streaming starts
+        GroupBy dimension = GroupBy.from(groupBy);
+        List<Statistic> statistics = Statistic.listFrom(stat);
+        ReactiveSensorService.BreakdownStream result = service.queryBreakdown(
+                sensorIds, SensorController.normalizeMetrics(metrics), statistics, dimension, from, to, after, limit);
+
+        Flux<DataBuffer> body = Flux.using(() -> new JsonChunks(objectMapper), json -> {
+            AtomicInteger written = new AtomicInteger();
+            AtomicReference<BreakdownRow> last = new AtomicReference<>();
+            AtomicBoolean more = new AtomicBoolean();
+            Mono<DataBuffer> header = Mono.fromCallable(() -> json.chunk(gen -> {
+                gen.writeStartObject();
+                gen.writeStringField("groupBy", result.groupBy().label());
+                gen.writeObjectField("sensorIds", result.sensorIds());
+                gen.writeObjectField("metrics", result.metrics());
+                gen.writeStringField("statistic", String.join(",", statistics.stream().map(s -> s.name().toLowerCase()).toList()));
+                gen.writeStringField("from", result.from().toString());
+                gen.writeStringField("to", result.to().toString());
+                gen.writeArrayFieldStart("rows");
+            }));
+            Flux<DataBuffer> rows = result.rows().handle((row, sink) -> {
+                if (written.get() == result.limit()) {
+                    more.set(true); // the extra row: there is a next page
+                    sink.complete();
+                    return;
+                }
+                sink.next(json.chunk(gen -> SensorController.writeBreakdownRow(gen, result.groupBy(), statistics, row)));
+                last.set(row);
+                written.incrementAndGet();
+            });
+            Mono<DataBuffer> footer = Mono.fromCallable(() -> json.chunk(gen -> {
+                gen.writeEndArray();
+                gen.writeStringField("next", more.get() ? last.get().position(result.groupBy()).encode() : null);
+                gen.writeEndObject();
+            }));
+            return Flux.concat(header, rows, footer);
+        }, JsonChunks::close);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    /**
+     * Register sensors, or replace their tags; the catalog write is blocking, so it runs off the event loop.
+     */
+    @PutMapping("/catalog")
+    public Mono<ResponseEntity<List<SensorCatalog.Entry>>> registerSensors(@RequestBody List<SensorCatalog.Registration> registrations) {
+        return Mono.fromCallable(() -> catalog.register(registrations))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(ResponseEntity::ok);
+    }
+
+    /**
+     * A sensor's dense id and tags; 404 if it is not registered.
+     */
+    @GetMapping("/catalog/{sensorId}")
+    public Mono<ResponseEntity<SensorCatalog.Entry>> catalogEntry(@PathVariable String sensorId) {
+        return Mono.just(ResponseEntity.of(catalog.get(sensorId)));
+    }
+
+    /**
+     * Query per-bucket stats over the window, streamed as points are produced.
+     */
+    @GetMapping("/series")
+    public ResponseEntity<Flux<DataBuffer>> series(
+            @RequestParam(required = false) List<String> sensorIds,
+            @RequestParam(required = false) List<String> metrics,
+            @RequestParam(defaultValue = "avg") String stat,
+            @RequestParam(defaultValue = "1h") String interval,
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to
+    ) {
+        // Validate everything up front so errors still map to 400 before streaming starts
+        Statistic statistic = Statistic.from(stat);
+        SeriesInterval seriesInterval = SeriesInterval.from(interval);
+        ReactiveSensorService.SeriesStream result = service.querySeries(
+                sensorIds, SensorController.normalizeMetrics(metrics), statistic, seriesInterval, from, to);
+
+        Flux<DataBuffer> body = Flux.using(() -> new JsonChunks(objectMapper), json -> Flux.concat(
+            Mono.fromCallable(() -> json.chunk(gen -> {
+                gen.writeStartObject();
+                gen.writeObjectField("sensorIds", result.sensorIds());
+                gen.writeObjectField("metrics", result.metrics());
+                gen.writeStringField("statistic", statistic.name().toLowerCase());
+                gen.writeStringField("interval", seriesInterval.toString());
+                gen.writeStringField("from", result.from().toString());
+                gen.writeStringField("to", result.to().toString());
+                gen.writeArrayFieldStart("points");
+            })),
+            result.points().map(p -> json.chunk(gen -> {
+                gen.writeStartObject();
+                gen.writeStringField("metric", p.metric());
+                gen.writeStringField("start", p.start().toString());
+                gen.writeNumberField("value", p.aggregate().value(statistic));
+                gen.writeEndObject();
+            })),
+            Mono.fromCallable(() -> json.chunk(gen -> {
+                gen.writeEndArray();
+                gen.writeEndObject();
+            }))), JsonChunks::close);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    /**
+     * Export the raw readings matching the filters, one line each. The cursor, and the query permit,
+     * are opened on the bounded elastic scheduler once the response is subscribed, and closed when
+     * the export ends or the client goes away.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<Flux<DataBuffer>> export(
+            @RequestParam(required = false) List<String> sensorIds,
+            @RequestParam(required = false) List<String> metrics,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to
+    ) {
+        // Validate everything up front so errors still map to 400 before streaming starts
+        ExportFormat exportFormat = ExportFormat.from(format);
+        List<String> normalizedMetrics = SensorController.normalizeMetrics(metrics);
+        SensorService.resolveWindow(from, to);
+
+        Flux<DataBuffer> body = Flux.from(DataBufferUtils.outputStreamPublisher(out -> {
+            try {
+                exporter.write(exportFormat, exporter.readings(sensorIds, normalizedMetrics, from, to), out);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }, DefaultDataBufferFactory.sharedInstance, Schedulers.boundedElastic()::schedule, ReadingExporter.BUFFER_SIZE));
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.contentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"readings." + exportFormat.extension() + "\"")
+                .body(body);
+    }
+
+    /**
+     * One JSON document written in pieces: a single generator keeps the nesting and commas
+     * right across pieces, and each piece is handed out as its own buffer.
+     */
+    static final class JsonChunks {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final JsonGenerator gen;
+
+        JsonChunks(ObjectMapper objectMapper) throws IOException {
+            this.gen = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+        }
+
+        DataBuffer chunk(JsonWrite write) {
+            try {
+                write.to(gen);
+                gen.flush();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            byte[] bytes = out.toByteArray();
+            out.reset();
+            return DefaultDataBufferFactory.sharedInstance.wrap(bytes);
+        }
+
+        void close() {
+            try {
+                gen.close();
+            } catch (IOException ignored) {
+                // Nothing left to flush that the client still needs
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface JsonWrite {
+        void to(JsonGenerator gen) throws IOException;
+    }
+}
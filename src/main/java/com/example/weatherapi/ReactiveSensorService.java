@@ -0,0 +1,309 @@
+package com.example.weatherapi;
+
+import com.example.weatherapi.ReadingIndexes.QueryShape;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Non-blocking counterpart of {@link SensorService} for the reactive profile, on {@link ReactiveMongoTemplate}.
+ *
+ * Ingest and plain aggregate/series/breakdown queries run the same pipelines as the blocking
+ * stores, but no thread waits on Mongo: results are {@link Mono}/{@link Flux} and cursors are
+ * read as fast as the client consumes them.
+ *
+ * Aggregate queries run natively only while the @Primary {@link AggregateSource} is the bare
+ * layout store. Once anything wraps it (fan-out, tiering, rollups, the hot window, the query
+ * cache), and for percentiles and sensorIds lists long enough to be partitioned, they are
+ * served by the blocking {@link SensorService} through that source, on the bounded elastic
+ * scheduler so they never hold an event-loop thread. Both stacks then give the same answers.
+ */
+@Service
+@Profile(ReactiveSensorController.PROFILE)
+public class ReactiveSensorService {
+
+    private final ReactiveMongoTemplate template;
+    private final ReactiveSensorWriter writer;
+    private final StorageLayout layout;
+    private final ReadingIndexes indexes;
+    private final SensorService blocking;
+    private final boolean derivedSources; // the @Primary source is more than the layout store
+    private final PartitionedAggregateSource partitions; // null unless partitioning is outermost
+    private final QueryCache cache;
+    private final TieredStorage tiers;
+    private final List<IngestListener> listeners;
+    private final IngestGate gate;
+    private final ObjectReader readingReader;
+    private final int maxBatchSize;
+    private final int maxReportedRejections;
+
+    public ReactiveSensorService(ReactiveMongoTemplate template,
+                                 ReactiveSensorWriter writer,
+                                 StorageLayout layout,
+                                 ReadingIndexes indexes,
+                                 SensorService blocking,
+                                 AggregateSource aggregateSource,
+                                 QueryCache cache,
+                                 TieredStorage tiers,
+                                 List<IngestListener> listeners,
+                                 IngestGate gate,
+                                 ObjectMapper objectMapper,
+                                 @Value("${sensors.ingest.batch.max-size:10000}") int maxBatchSize,
+                                 @Value("${sensors.ingest.stream.max-reported-rejections:1000}") int maxReportedRejections) {
+        this.template = template;
+        this.writer = writer;
+        this.layout = layout;
+        this.indexes = indexes;
+        this.blocking = blocking;
+        this.partitions = aggregateSource instanceof PartitionedAggregateSource p ? p : null;
+        this.derivedSources = !StorageConfig.isLayoutStore(partitions != null ? partitions.delegate() : aggregateSource);
+        this.cache = cache;
+        this.tiers = tiers;
+        this.listeners = listeners;
+        this.gate = gate;
+        this.readingReader = objectMapper.readerFor(SensorDataRequest.class);
+        this.maxBatchSize = maxBatchSize;
+        this.maxReportedRejections = maxReportedRejections;
+    }
+
+    // Save a new sensor reading (metric is validated/normalized)
+    public Mono<SensorData> saveSensorData(SensorDataRequest request) {
+        return Mono.fromCallable(() -> SensorService.toSensorData(request)).flatMap(data -> {
+            gate.checkFloor(data);
+            if (layout != StorageLayout.RAW || writer.isDeduplicating()) {
+                // Bucketed/compact readings are not SensorData documents, and an idempotent insert may
+                // not write at all, so no id is returned
+                return writer.insert(List.of(data)).flatMap(failures -> failures.isEmpty()
+                        ? Mono.just(data)
+                        : Mono.error(new IllegalStateException("Failed to store reading: " + failures.get(0))));
+            }
+            return Mono.using(() -> {
+                    gate.enter();
+                    return gate;
+                }, g -> Mono.fromRunnable(() -> gate.checkFloor(data)).then(template.insert(data)).flatMap(saved ->
+                    Mono.fromRunnable(() -> listeners.forEach(l -> l.onIngest(List.of(saved))))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .thenReturn(saved)),
+                IngestGate::exit);
+        });
+    }
+
+    // Save many readings at once; invalid readings are rejected individually
+    public Mono<BatchIngestResult> saveSensorDataBatch(List<SensorDataRequest> requests) {
+        return Mono.fromCallable(() -> SensorService.ValidatedBatch.of(requests, maxBatchSize))
+                .flatMap(batch -> writer.insert(batch.valid()).map(batch::toResult));
+    }
+
+    /**
+     * Ingests NDJSON lines as they arrive, one bulk chunk at a time. A chunk is only requested
+     * from the client once the previous one is written, so memory stays at about one chunk.
+     * Blank lines are skipped; reading indexes count only non-blank lines.
+     */
+    public Mono<BatchIngestResult> ingestStream(Flux<String> lines) {
+        return Mono.defer(() -> {
+            StreamingIngestService.Tally tally = new StreamingIngestService.Tally(maxReportedRejections);
+            AtomicLong received = new AtomicLong();
+            return lines
+                .filter(line -> !line.isBlank())
+                .<IndexedReading>handle((line, sink) -> {
+                    long index = received.getAndIncrement();
+                    try {
+                        sink.next(new IndexedReading(index, SensorService.toSensorData(readingReader.readValue(line))));
+                    } catch (JsonProcessingException ex) {
+                        reject(tally, index, "Malformed reading: " + ex.getOriginalMessage());
+                    } catch (IllegalArgumentException ex) {
+                        reject(tally, index, ex.getMessage());
+                    }
+                })
+                .buffer(writer.getChunkSize())
+                .concatMap(chunk -> writer.insert(chunk.stream().map(IndexedReading::reading).toList())
+                    .doOnNext(failures -> {
+                        synchronized (tally) {
+                            tally.accept(chunk.size() - failures.size());
+                            failures.forEach((i, error) -> tally.reject(chunk.get(i).index(), error));
+                        }
+                    }))
+                .then(Mono.fromSupplier(() -> {
+                    synchronized (tally) {
+                        return tally.toResult(received.get());
+                    }
+                }));
+        });
+    }
+
+    // Parsing and write completions can run on different threads
+    private static void reject(StreamingIngestService.Tally tally, long index, String error) {
+        synchronized (tally) {
+            tally.reject(index, error);
+        }
+    }
+
+    private record IndexedReading(long index, SensorData reading) { }
+
+    // Query statistics and/or percentiles; validation errors are thrown before anything is subscribed
+    public Mono<QueryResult> queryData(List<String> sensorIds,
+                                       List<String> metrics,
+                                       StatSelection selection,
+                                       Instant from,
+                                       Instant to) {
+        TimeRange window = SensorService.resolveWindow(from, to, cache.openWindowEnd());
+        if (derivedSources || selection.hasPercentiles() || (partitions != null && partitions.splits(sensorIds))) {
+            // The decorated source and sketches are blocking: keep them off the event loop
+            return Mono.fromCallable(() -> blocking.queryData(sensorIds, metrics, selection, window.from(), window.to()))
+                    .subscribeOn(Schedulers.boundedElastic());
+        }
+        return aggregate(sensorIds, metrics, window)
+                .map(partials -> SensorService.toQueryResult(sensorIds, metrics, selection.statistics(), window, partials));
+    }
+
+    // Explain uses the blocking driver (explain command, query plan per source)
+    public Mono<QueryResult> explainQuery(List<String> sensorIds,
+                                          List<String> metrics,
+                                          StatSelection selection,
+                                          Instant from,
+                                          Instant to) {
+        TimeRange window = SensorService.resolveWindow(from, to, cache.openWindowEnd());
+        return Mono.fromCallable(() -> blocking.explainQuery(sensorIds, metrics, selection, window.from(), window.to()))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    // Tag queries go through the catalog and partitioned $in of the blocking service
+    public Mono<QueryResult> queryByTag(String tag,
+                                        List<String> sensorIds,
+                                        List<String> metrics,
+                                        StatSelection selection,
+                                        Instant from,
+                                        Instant to,
+                                        boolean explain) {
+        TagExpression.parse(tag); // a malformed expression is a 400 before anything is subscribed
+        TimeRange window = SensorService.resolveWindow(from, to, cache.openWindowEnd());
+        return Mono.fromCallable(() -> blocking.queryByTag(tag, sensorIds, metrics, selection, window.from(), window.to(), explain))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Mono<Map<String, MetricAggregate>> aggregate(List<String> sensorIds, List<String> metrics, TimeRange window) {
+        List<TimeRange> ranges = List.of(window);
+        return switch (layout) {
+            case BUCKETED -> Flux.fromIterable(BucketStore.aggregatePipelines(sensorIds, metrics, window))
+                .concatMap(pipeline -> template.aggregate(Aggregation.newAggregation(pipeline), BucketStore.COLLECTION, Document.class))
+                .<Map<String, MetricAggregate>>collect(LinkedHashMap::new, (m, d) -> BucketStore.collect(d, m));
+            case COMPACT -> template.aggregate(Aggregation.newAggregation(CompactReadingStore.aggregatePipeline(sensorIds, metrics, ranges))
+                        .withOptions(indexes.options(CompactReadingStore.COLLECTION, sensorIds, metrics, false)),
+                    CompactReadingStore.COLLECTION, Document.class)
+                .<Map<String, MetricAggregate>>collect(LinkedHashMap::new, (m, d) -> CompactReadingStore.collect(d, m));
+            default -> template.aggregate(Aggregation.newAggregation(RawAggregateSource.aggregatePipeline(sensorIds, metrics, ranges))
+                        .withOptions(indexes.options(RawAggregateSource.COLLECTION, sensorIds, metrics, false)),
+                    RawAggregateSource.COLLECTION, Document.class)
+                .<Map<String, MetricAggregate>>collect(LinkedHashMap::new, (m, d) -> RawAggregateSource.collect(d, m));
+        };
+    }
+
+    // Query per-bucket values over the window; points are read from the cursor on demand
+    public SeriesStream querySeries(List<String> sensorIds,
+                                    List<String> metrics,
+                                    Statistic statistic,
+                                    SeriesInterval interval,
+                                    Instant from,
+                                    Instant to) {
+        TimeRange window = SensorService.resolveWindow(from, to);
+        SensorService.checkSeriesSize(window, interval);
+        tiers.requireHot(window, "Series");
+
+        QueryShape shape = QueryShape.of(sensorIds, metrics);
+        Flux<SeriesPoint> points = switch (layout) {
+            case BUCKETED -> stream(BucketStore.seriesPipeline(sensorIds, metrics, window, interval), BucketStore.COLLECTION, shape)
+                .map(d -> SeriesPoint.of(d, d.get("_id", Document.class).getString("metric")));
+            case COMPACT -> stream(CompactReadingStore.seriesPipeline(sensorIds, metrics, window, interval), CompactReadingStore.COLLECTION, shape)
+                .map(d -> SeriesPoint.of(d, Metric.fromCode(d.get("_id", Document.class).getInteger(CompactReadingStore.METRIC)).dbValue()));
+            default -> stream(RawAggregateSource.seriesPipeline(sensorIds, metrics, window, interval), RawAggregateSource.COLLECTION, shape)
+                .map(d -> SeriesPoint.of(d, d.get("_id", Document.class).getString("metric")));
+        };
+        return new SeriesStream(
+                (sensorIds == null || sensorIds.isEmpty()) ? null : sensorIds,
+                (metrics == null || metrics.isEmpty()) ? null : metrics,
+                statistic, interval, window.from(), window.to(), points);
+    }
+
+    // Query one page of per-sensor results; holds up to limit + 1 rows, the extra one signalling a next page
+    public BreakdownStream queryBreakdown(List<String> sensorIds,
+                                          List<String> metrics,
+                                          List<Statistic> statistics,
+                                          GroupBy groupBy,
+                                          Instant from,
+                                          Instant to,
+                                          String continuation,
+                                          int limit) {
+        TimeRange window = SensorService.resolveWindow(from, to);
+        SensorService.checkPageLimit(limit);
+        tiers.requireHot(window, "Breakdowns");
+        ContinuationToken after = ContinuationToken.decode(continuation);
+
+        // Same two steps as the blocking stores: find the page's sensors, then aggregate only those
+        Flux<BreakdownRow> rows = switch (layout) {
+            case BUCKETED -> pageSensors(BucketStore.breakdownKeys(sensorIds, metrics, window, groupBy, after),
+                    BucketStore.COLLECTION, groupBy, "sensorId", "metric", limit + 1)
+                .flatMapMany(page -> stream(BucketStore.breakdownPipeline(page, metrics, window, groupBy, after, limit + 1), BucketStore.COLLECTION, QueryShape.SENSORS))
+                .map(d -> BreakdownRow.of(d, groupBy, "sensorId", "metric", String::valueOf));
+            case COMPACT -> pageSensors(CompactReadingStore.breakdownKeys(sensorIds, metrics, window, groupBy, after,
+                        indexes.hint(CompactReadingStore.COLLECTION, QueryShape.SENSORS)),
+                    CompactReadingStore.COLLECTION, groupBy, CompactReadingStore.SENSOR, CompactReadingStore.METRIC, limit + 1)
+                .flatMapMany(page -> stream(CompactReadingStore.breakdownPipeline(page, metrics, window, groupBy, after, limit + 1), CompactReadingStore.COLLECTION, QueryShape.SENSORS))
+                .map(d -> BreakdownRow.of(d, groupBy, CompactReadingStore.SENSOR, CompactReadingStore.METRIC,
+                    code -> Metric.fromCode(((Number) code).intValue()).dbValue()));
+            default -> pageSensors(RawAggregateSource.breakdownKeys(sensorIds, metrics, window, groupBy, after,
+                        indexes.hint(RawAggregateSource.COLLECTION, QueryShape.SENSORS)),
+                    RawAggregateSource.COLLECTION, groupBy, "sensorId", "metric", limit + 1)
+                .flatMapMany(page -> stream(RawAggregateSource.breakdownPipeline(page, metrics, window, groupBy, after, limit + 1), RawAggregateSource.COLLECTION, QueryShape.SENSORS))
+                .map(d -> BreakdownRow.of(d, groupBy, "sensorId", "metric", String::valueOf));
+        };
+        return new BreakdownStream(groupBy,
+                (sensorIds == null || sensorIds.isEmpty()) ? null : sensorIds,
+                (metrics == null || metrics.isEmpty()) ? null : metrics,
+                statistics, window.from(), window.to(), limit, rows);
+    }
+
+    // Sensors of the first limit rows; take() cancels the cursor once the page is known
+    private Mono<List<String>> pageSensors(Query keys, String collection, GroupBy groupBy,
+                                           String sensorField, String metricField, int limit) {
+        return template.find(keys, Document.class, collection)
+            .map(d -> BreakdownRow.key(d, groupBy, sensorField, metricField))
+            .distinct()
+            .take(limit)
+            .map(BreakdownRow.Key::sensorId)
+            .distinct()
+            .collectList()
+            .filter(page -> !page.isEmpty());
+    }
+
+    private Flux<Document> stream(List<AggregationOperation> pipeline, String collection, QueryShape shape) {
+        Aggregation agg = Aggregation.newAggregation(pipeline)
+            .withOptions(indexes.options(collection, shape, true));
+        return template.aggregate(agg, collection, Document.class);
+    }
+
+    /** Header of a series query plus its points, read lazily on subscription. */
+    public record SeriesStream(List<String> sensorIds, List<String> metrics, Statistic statistic,
+                               SeriesInterval interval, Instant from, Instant to, Flux<SeriesPoint> points) { }
+
+    /** Header of a breakdown page plus its rows (up to limit + 1), read lazily on subscription. */
+    public record BreakdownStream(GroupBy groupBy, List<String> sensorIds, List<String> metrics,
+                                  List<Statistic> statistics, Instant from, Instant to, int limit,
+                                  Flux<BreakdownRow> rows) { }
+}
@@ -0,0 +1,196 @@
+package com.example.weatherapi;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Non-blocking counterpart of {@link BulkSensorWriter} for the reactive profile.
+ *
+ * Same chunking, layouts and error mapping, but each chunk is an unordered bulk on the
+ * {@link ReactiveMongoTemplate}, and the next chunk is only sent once the previous one
+ * has been acknowledged. Ingest listeners (rollups, cache) are still blocking, so they are
+ * notified on the bounded elastic scheduler rather than on an event-loop thread, and so is the
+ * {@link IngestDeduplicator} screen, whose confirming lookup uses the blocking template.
+ */
+@Component
+@Profile(ReactiveSensorController.PROFILE)
+public class ReactiveSensorWriter {
+
+    private final ReactiveMongoTemplate template;
+    private final StorageLayout layout;
+    private final IngestDeduplicator deduplicator;
+    private final List<IngestListener> listeners;
+    private final IngestGate gate;
+    private final int chunkSize;
+
+    public ReactiveSensorWriter(ReactiveMongoTemplate template,
+                                StorageLayout layout,
+                                IngestDeduplicator deduplicator,
+                                List<IngestListener> listeners,
+                                IngestGate gate,
+                                @Value("${sensors.ingest.bulk.chunk-size:1000}") int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("sensors.ingest.bulk.chunk-size must be at least 1");
+        }
+        this.template = template;
+        this.layout = layout;
+        this.deduplicator = deduplicator;
+        this.listeners = listeners;
+        this.gate = gate;
+        this.chunkSize = chunkSize;
+    }
+
+    public int getChunkSize() { return chunkSize; }
+
+    /** True when writes are insert-if-absent on (sensorId, metric, timestamp). */
+    public boolean isDeduplicating() { return deduplicator.isEnabled(); }
+
+    /**
+     * Inserts all readings, chunk by chunk, and notifies ingest listeners of what was written.
+     *
+     * @return write errors keyed by the reading's index in {@code readings} (empty = all written)
+     */
+    public Mono<Map<Integer, String>> insert(List<SensorData> readings) {
+        return Flux.range(0, (readings.size() + chunkSize - 1) / chunkSize)
+            .concatMap(n -> {
+                int offset = n * chunkSize;
+                List<SensorData> chunk = readings.subList(offset, Math.min(offset + chunkSize, readings.size()));
+                Set<Integer> duplicates = new HashSet<>();
+                // The gate is held from the write until the listeners have run, like the blocking writer
+                return Mono.using(() -> {
+                        gate.enter();
+                        return gate;
+                    }, g -> writeChunk(chunk, duplicates)
+                        .flatMap(chunkFailures -> notifyListeners(chunk, chunkFailures, duplicates).thenReturn(chunkFailures)),
+                    IngestGate::exit)
+                    .map(chunkFailures -> {
+                        Map<Integer, String> shifted = new LinkedHashMap<>();
+                        chunkFailures.forEach((i, error) -> shifted.put(offset + i, error));
+                        return shifted;
+                    });
+            })
+            .collect(LinkedHashMap::new, Map::putAll);
+    }
+
+    // Writes one chunk; failures, and duplicates skipped or refused, are positions within the chunk
+    private Mono<Map<Integer, String>> writeChunk(List<SensorData> chunk, Set<Integer> duplicates) {
+        Map<Integer, String> archived = gate.belowFloor(chunk);
+        if (!archived.isEmpty()) {
+            // Refused inside the gate, like the blocking writer
+            IngestDeduplicator.Remaining rest = IngestDeduplicator.remaining(chunk, archived.keySet());
+            if (rest.readings().isEmpty()) {
+                return Mono.just(archived);
+            }
+            Set<Integer> restDuplicates = new HashSet<>();
+            return writeChunk(rest.readings(), restDuplicates).map(restFailures -> {
+                Map<Integer, String> failures = new LinkedHashMap<>(archived);
+                restFailures.forEach((i, error) -> failures.put(rest.position(i), error));
+                restDuplicates.forEach(i -> duplicates.add(rest.position(i)));
+                return failures;
+            });
+        }
+        if (!isDeduplicating()) {
+            return write(chunk, null);
+        }
+        return Mono.fromCallable(() -> deduplicator.screen(chunk))
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMap(screened -> {
+                IngestDeduplicator.Remaining rest = IngestDeduplicator.remaining(chunk, screened);
+                Set<Integer> refusedRest = new HashSet<>();
+                Mono<Map<Integer, String>> written = rest.readings().isEmpty()
+                    ? Mono.just(Map.of())
+                    : write(rest.readings(), refusedRest);
+                return written.map(restFailures -> {
+                    Map<Integer, String> failures = new LinkedHashMap<>();
+                    Set<Integer> refused = new HashSet<>();
+                    restFailures.forEach((i, error) -> failures.put(rest.position(i), error));
+                    refusedRest.forEach(i -> refused.add(rest.position(i)));
+                    deduplicator.recordWrite(chunk, screened, refused, failures.keySet());
+                    duplicates.addAll(screened);
+                    duplicates.addAll(refused);
+                    return failures;
+                });
+            });
+    }
+
+    // One unordered bulk; duplicate keys go to refused when it is given, otherwise they are failures
+    private Mono<Map<Integer, String>> write(List<SensorData> chunk, Set<Integer> refused) {
+        if (layout == StorageLayout.BUCKETED) {
+            // One upsert per bucket; a failed upsert rejects every reading folded into it
+            ReactiveBulkOperations ops = template.bulkOps(BulkMode.UNORDERED, SensorBucket.class, BucketStore.COLLECTION);
+            List<List<Integer>> opMembers = new ArrayList<>();
+            BucketStore.groupByBucket(chunk).forEach((key, members) -> {
+                ops.upsert(BucketStore.bucketQuery(key), BucketStore.appendUpdate(chunk, members));
+                opMembers.add(members);
+            });
+            return execute(ops, opMembers, null);
+        }
+        if (layout == StorageLayout.COMPACT) {
+            List<Document> docs = chunk.stream().map(CompactReadingStore::toDocument).toList();
+            return execute(template.bulkOps(BulkMode.UNORDERED, CompactReadingStore.COLLECTION).insert(docs), null, refused);
+        }
+        return execute(template.bulkOps(BulkMode.UNORDERED, SensorData.class).insert(chunk), null, refused);
+    }
+
+    // opMembers maps a failed operation to the chunk positions it covered (null = one reading per operation)
+    private static Mono<Map<Integer, String>> execute(ReactiveBulkOperations ops, List<List<Integer>> opMembers,
+                                                      Set<Integer> refused) {
+        return ops.execute()
+            .<Map<Integer, String>>map(result -> Map.of())
+            .onErrorResume(ex -> writeErrors(ex) != null, ex -> {
+                if (opMembers == null) {
+                    return Mono.just(IngestDeduplicator.failures(writeErrors(ex), refused));
+                }
+                Map<Integer, String> failures = new LinkedHashMap<>();
+                for (BulkWriteError error : writeErrors(ex)) {
+                    opMembers.get(error.getIndex()).forEach(i -> failures.put(i, error.getMessage()));
+                }
+                return Mono.just(failures);
+            });
+    }
+
+    // Per-document errors of a partially failed bulk, whether or not the driver exception was translated
+    private static List<BulkWriteError> writeErrors(Throwable ex) {
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (t instanceof BulkOperationException bulk) {
+                return bulk.getErrors();
+            }
+            if (t instanceof MongoBulkWriteException bulk) {
+                return bulk.getWriteErrors();
+            }
+        }
+        return null;
+    }
+
+    private Mono<Void> notifyListeners(List<SensorData> chunk, Map<Integer, String> chunkFailures, Set<Integer> duplicates) {
+        if (listeners.isEmpty()) {
+            return Mono.empty();
+        }
+        List<SensorData> written = new ArrayList<>(chunk.size() - chunkFailures.size() - duplicates.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            if (!chunkFailures.containsKey(i) && !duplicates.contains(i)) {
+                written.add(chunk.get(i));
+            }
+        }
+        return Mono.<Void>fromRunnable(() -> listeners.forEach(l -> l.onIngest(written)))
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.weatherapi;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Streams raw readings for GET /sensors/export.
+ *
+ * Readings come straight from a Mongo cursor (batch-size documents per round trip) and are
+ * written one line at a time through a fixed-size buffer, so memory use does not grow with
+ * the export. The query bulkhead permit is held until the stream is closed.
+ */
+@Service
+public class ReadingExporter {
+
+    // Large enough that each socket write carries many lines
+    static final int BUFFER_SIZE = 64 * 1024;
+    static final String CSV_HEADER = "sensorId,metric,timestamp,value\n";
+
+    private final ExportSource source;
+    private final MongoBulkheads.Bulkhead queryBulkhead;
+    private final SensorMetrics sensorMetrics;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+
+    public ReadingExporter(@Qualifier(StorageConfig.EXPORT_SOURCE) ExportSource source,
+                           MongoBulkheads bulkheads,
+                           SensorMetrics sensorMetrics,
+                           ObjectMapper objectMapper,
+                           @Value("${sensors.export.batch-size:5000}") int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("sensors.export.batch-size must be at least 1");
+        }
+        this.source = source;
+        this.queryBulkhead = bulkheads.query();
+        this.sensorMetrics = sensorMetrics;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+    }
+
+    // Same filters, defaults and window validation as /sensors/query; the caller must close the stream
+    public Stream<SensorData> readings(List<String> sensorIds, List<String> metrics, Instant from, Instant to) {
+        TimeRange window = SensorService.resolveWindow(from, to);
+        Tags shape = SensorMetrics.shape("export", "none", window, sensorIds, metrics);
+        return sensorMetrics.timeStream(shape,
+                () -> queryBulkhead.stream(() -> source.export(sensorIds, metrics, window, batchSize)));
+    }
+
+    /** Writes every reading to {@code out} in {@code format}, then closes the readings. */
+    public void write(ExportFormat format, Stream<SensorData> readings, OutputStream out) throws IOException {
+        try (readings) {
+            OutputStream buffered = new BufferedOutputStream(out, BUFFER_SIZE);
+            if (format == ExportFormat.CSV) {
+                writeCsv(readings.iterator(), buffered);
+            } else {
+                writeNdjson(readings.iterator(), buffered);
+            }
+            buffered.flush();
+        }
+    }
+
+    // Each line is built in one reused buffer and encoded with a single getBytes
+    private static void writeCsv(Iterator<SensorData> readings, OutputStream out) throws IOException {
+        out.write(CSV_HEADER.getBytes(StandardCharsets.UTF_8));
+        StringBuilder line = new StringBuilder(96);
+        while (readings.hasNext()) {
+            SensorData r = readings.next();
+            line.setLength(0);
+            line.append(csvField(r.getSensorId())).append(',')
+                .append(r.getMetric()).append(',')
+                .append(r.getTimestamp()).append(',')
+                .append(r.getValue()).append('\n');
+            out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void writeNdjson(Iterator<SensorData> readings, OutputStream out) throws IOException {
+        JsonGenerator gen = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+        gen.setRootValueSeparator(null); // lines are separated by the '\n' written after each object
+        while (readings.hasNext()) {
+            SensorData r = readings.next();
+            gen.writeStartObject();
+            gen.writeStringField("sensorId", r.getSensorId());
+            gen.writeStringField("metric", r.getMetric());
+            gen.writeStringField("timestamp", r.getTimestamp().toString());
+            gen.writeNumberField("value", r.getValue());
+            gen.writeEndObject();
+            gen.writeRaw('\n');
+        }
+        gen.flush();
+    }
+
+    // Quotes sensor ids containing a separator, quote or line break (RFC 4180)
+    static String csvField(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return '"' + value.replace("\"", "\"\"") + '"';
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.weatherapi;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Owns the indexes of the per-reading collection of the configured layout ("sensor_data"
+ * or "sensor_readings"): one covering index per query shape, and the hint that sends each
+ * query to the index of its shape.
+ *
+ * A query's $match always has a time range and optionally sensorIds and/or metrics, and the
+ * pipelines after it only read metric and value. So each shape gets an index that starts with its
+ * equality fields, then the range, and carries the remaining fields so the scan is covered:
+ * - SENSORS (sensorIds given):  (sensor, metric, time, value)
+ * - METRICS (metrics only):     (metric, time, value)
+ * - WINDOW  (fleet-wide):       (time, metric, value)
+ *
+ * The (sensor, metric, time) indexes of earlier versions are prefixes of the first and are dropped.
+ * A shape's index is only hinted once it is known to exist, since hinting a missing index fails the query.
+ */
+@Component
+public class ReadingIndexes {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadingIndexes.class);
+
+    /** The filters of a query, which decide the index that serves it. */
+    public enum QueryShape {
+        SENSORS("sensor_metric_time_value_idx"),
+        METRICS("metric_time_value_idx"),
+        WINDOW("time_metric_value_idx");
+
+        private final String indexSuffix;
+
+        QueryShape(String indexSuffix) {
+            this.indexSuffix = indexSuffix;
+        }
+
+        public static QueryShape of(List<String> sensorIds, List<String> metrics) {
+            if (sensorIds != null && !sensorIds.isEmpty()) {
+                return SENSORS;
+            }
+            return metrics != null && !metrics.isEmpty() ? METRICS : WINDOW;
+        }
+    }
+
+    /** Field names and index names of one per-reading collection. */
+    record Fields(String collection, String indexPrefix, String sensor, String metric, String time, String value,
+                  List<String> superseded) {
+
+        String indexName(QueryShape shape) {
+            return indexPrefix + shape.indexSuffix;
+        }
+
+        Index index(QueryShape shape) {
+            List<String> keys = switch (shape) {
+                case SENSORS -> List.of(sensor, metric, time, value);
+                case METRICS -> List.of(metric, time, value);
+                case WINDOW -> List.of(time, metric, value);
+            };
+            Index index = new Index().named(indexName(shape));
+            keys.forEach(key -> index.on(key, Sort.Direction.ASC));
+            return index;
+        }
+    }
+
+    static final Fields RAW = new Fields(RawAggregateSource.COLLECTION, "",
+            "sensorId", "metric", "timestamp", "value",
+            List.of("sensor_metric_time_idx", "idx_sensor_metric_ts"));
+    static final Fields COMPACT = new Fields(CompactReadingStore.COLLECTION, "reading_",
+            CompactReadingStore.SENSOR, CompactReadingStore.METRIC, CompactReadingStore.TIME, CompactReadingStore.VALUE,
+            List.of("reading_s_m_t_idx"));
+
+    private final MongoTemplate mongoTemplate;
+    private final Fields fields; // null for the bucketed layout, which has its own bucket index
+    private final boolean hintsEnabled;
+    private final Set<String> ready = ConcurrentHashMap.newKeySet();
+
+    public ReadingIndexes(MongoTemplate mongoTemplate,
+                          StorageLayout layout,
+                          @Value("${sensors.query.index-hints:true}") boolean hintsEnabled) {
+        this.mongoTemplate = mongoTemplate;
+        this.fields = switch (layout) {
+            case RAW -> RAW;
+            case COMPACT -> COMPACT;
+            case BUCKETED -> null;
+        };
+        this.hintsEnabled = hintsEnabled;
+    }
+
+    /**
+     * Creates the index of every shape and drops superseded ones. Idempotent; runs after the
+     * compact migration so that bulk copy is not slowed down by index maintenance.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        if (fields == null) {
+            return;
+        }
+        var indexOps = mongoTemplate.indexOps(fields.collection());
+        for (QueryShape shape : QueryShape.values()) {
+            indexOps.createIndex(fields.index(shape));
+            ready.add(fields.indexName(shape));
+        }
+        for (IndexInfo existing : indexOps.getIndexInfo()) {
+            if (fields.superseded().contains(existing.getName())) {
+                log.info("Dropping index {} on {}: superseded by {}",
+                        existing.getName(), fields.collection(), fields.indexName(QueryShape.SENSORS));
+                indexOps.dropIndex(existing.getName());
+            }
+        }
+    }
+
+    /** Field names of the per-reading collection, or null for the bucketed layout. */
+    Fields fields() {
+        return fields;
+    }
+
+    /** The index to hint for a query of {@code shape} on {@code collection}, or null for no hint. */
+    public String hint(String collection, QueryShape shape) {
+        if (!hintsEnabled || fields == null || !fields.collection().equals(collection)) {
+            return null;
+        }
+        String name = fields.indexName(shape);
+        return ready.contains(name) ? name : null;
+    }
+
+    /** Aggregation options for a query with these filters: the shape's hint, and allowDiskUse if asked for. */
+    public AggregationOptions options(String collection, List<String> sensorIds, List<String> metrics,
+                                      boolean allowDiskUse) {
+        return options(collection, QueryShape.of(sensorIds, metrics), allowDiskUse);
+    }
+
+    /** Aggregation options hinting the index of {@code shape}, e.g. SENSORS for reads in (sensor, metric, time) order. */
+    public AggregationOptions options(String collection, QueryShape shape, boolean allowDiskUse) {
+        return optionsBuilder(collection, shape).allowDiskUse(allowDiskUse).build();
+    }
+
+    /** Options builder with the hint of {@code shape} set, for callers that need more options. */
+    public AggregationOptions.Builder optionsBuilder(String collection, QueryShape shape) {
+        AggregationOptions.Builder options = AggregationOptions.builder();
+        String hint = hint(collection, shape);
+        if (hint != null) {
+            options.hint(hint);
+        }
+        return options;
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.weatherapi;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+
+/**
+ * Answers aggregate queries from rollups, falling back to finer data only at the ragged edges.
+ *
+ * A window is covered with the largest day buckets that fit; what is left at either
+ * end is covered with hour buckets, then minute buckets, and finally the readings
+ * themselves. Each resolution (and the raw edges) costs one query, however many
+ * pieces it contributes, so a query is at most four round trips.
+ *
+ * Stored timestamps have millisecond precision, so [from, to] is treated as
+ * [floorMs(from), floorMs(to) + 1ms), matching how the raw $match behaves.
+ *
+ * Days whose rollups are stale (a failed update not yet repaired) are read from the readings
+ * whole, and so is every window while a rebuild runs.
+ */
+public class RollupPlanner implements AggregateSource {
+
+    private static final RollupResolution[] COARSEST_FIRST = RollupResolution.values();
+
+    private final RollupStore rollups;
+    private final AggregateSource readings;
+
+    public RollupPlanner(RollupStore rollups, AggregateSource readings) {
+        this.rollups = rollups;
+        this.readings = readings;
+    }
+
+    @Override
+    public Map<String, MetricAggregate> aggregate(List<String> sensorIds,
+                                                  List<String> metrics,
+                                                  List<TimeRange> ranges) {
+        if (rollups.isRebuilding()) {
+            return readings.aggregate(sensorIds, metrics, ranges);
+        }
+        Plan plan = new Plan();
+        for (TimeRange range : ranges) {
+            plan(range, rollups.staleDays(), plan);
+        }
+
+        Map<String, MetricAggregate> results = new LinkedHashMap<>();
+        plan.rollupStarts.forEach((resolution, starts) ->
+            merge(results, rollups.aggregate(resolution, sensorIds, metrics, starts)));
+        if (!plan.rawRanges.isEmpty()) {
+            merge(results, readings.aggregate(sensorIds, metrics, plan.rawRanges));
+        }
+        return results;
+    }
+
+    @Override
+    public List<PlannedAggregation> plan(List<String> sensorIds, List<String> metrics, List<TimeRange> ranges) {
+        if (rollups.isRebuilding()) {
+            return readings.plan(sensorIds, metrics, ranges);
+        }
+        Plan plan = new Plan();
+        for (TimeRange range : ranges) {
+            plan(range, rollups.staleDays(), plan);
+        }
+
+        List<PlannedAggregation> planned = new ArrayList<>();
+        plan.rollupStarts.forEach((resolution, starts) ->
+            planned.add(rollups.plan(resolution, sensorIds, metrics, starts)));
+        if (!plan.rawRanges.isEmpty()) {
+            planned.addAll(readings.plan(sensorIds, metrics, plan.rawRanges));
+        }
+        return planned;
+    }
+
+    /** Adds the pieces covering {@code window} to {@code plan}. */
+    static void plan(TimeRange window, Plan plan) {
+        plan(window, Collections.emptyNavigableSet(), plan);
+    }
+
+    /** Adds the pieces covering {@code window} to {@code plan}, reading {@code staleDays} from the readings. */
+    static void plan(TimeRange window, NavigableSet<Instant> staleDays, Plan plan) {
+        Instant lo = window.from().truncatedTo(ChronoUnit.MILLIS);
+        Instant hi = window.to().truncatedTo(ChronoUnit.MILLIS).plusMillis(1);
+        for (Instant day : staleDays.subSet(RollupResolution.DAY.floor(lo), true, hi, false)) {
+            Instant from = day.isAfter(lo) ? day : lo;
+            Instant end = day.plus(RollupResolution.DAY.span());
+            Instant to = end.isBefore(hi) ? end : hi;
+            cover(lo, from, 0, plan);
+            plan.rawRanges.add(new TimeRange(from, to.minusMillis(1)));
+            lo = to;
+        }
+        cover(lo, hi, 0, plan);
+    }
+
+    // Covers the half-open [lo, hi) starting at resolution COARSEST_FIRST[level]
+    private static void cover(Instant lo, Instant hi, int level, Plan plan) {
+        if (!lo.isBefore(hi)) {
+            return;
+        }
+        if (level == COARSEST_FIRST.length) {
+            plan.rawRanges.add(new TimeRange(lo, hi.minusMillis(1)));
+            return;
+        }
+        RollupResolution r = COARSEST_FIRST[level];
+        Instant firstStart = r.ceil(lo);
+        Instant end = r.floor(hi); // buckets [firstStart, end) fit entirely
+        if (!firstStart.isBefore(end)) {
+            cover(lo, hi, level + 1, plan);
+            return;
+        }
+        cover(lo, firstStart, level + 1, plan);
+        plan.rollupStarts.computeIfAbsent(r, k -> new ArrayList<>())
+            .add(new TimeRange(firstStart, end.minus(r.span())));
+        cover(end, hi, level + 1, plan);
+    }
+
+    private static void merge(Map<String, MetricAggregate> into, Map<String, MetricAggregate> partials) {
+        partials.forEach((metric, agg) -> into.computeIfAbsent(metric, m -> new MetricAggregate()).merge(agg));
+    }
+
+    /**
+     * Pieces of a query: bucket-start ranges per rollup resolution plus raw reading ranges.
+     */
+    static final class Plan {
+        final Map<RollupResolution, List<TimeRange>> rollupStarts = new EnumMap<>(RollupResolution.class);
+        final List<TimeRange> rawRanges = new ArrayList<>();
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.weatherapi;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Rollup granularities, declared coarsest first (the order the planner tries them).
+ */
+public enum RollupResolution {
+    DAY("sensor_rollups_1d", ChronoUnit.DAYS, "day"),
+    HOUR("sensor_rollups_1h", ChronoUnit.HOURS, "hour"),
+    MINUTE("sensor_rollups_1m", ChronoUnit.MINUTES, "minute");
+
+    private final String collection;
+    private final ChronoUnit unit;
+    private final String mongoUnit; // unit name understood by $dateTrunc
+
+    RollupResolution(String collection, ChronoUnit unit, String mongoUnit) {
+        this.collection = collection;
+        this.unit = unit;
+        this.mongoUnit = mongoUnit;
+    }
+
+    public String collection() { return collection; }
+    public Duration span() { return unit.getDuration(); }
+    public String mongoUnit() { return mongoUnit; }
+
+    /** Start of the bucket containing {@code t} (UTC). */
+    public Instant floor(Instant t) {
+        return t.truncatedTo(unit);
+    }
+
+    /** Start of the first bucket that begins at or after {@code t}. */
+    public Instant ceil(Instant t) {
+        Instant floor = floor(t);
+        return floor.equals(t) ? floor : floor.plus(span());
+    }
+}
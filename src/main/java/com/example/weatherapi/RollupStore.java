@@ -0,0 +1,470 @@
+package com.example.weatherapi;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.aggregation.ArrayOperators;
+import org.springframework.data.mongodb.core.aggregation.DateOperators;
+import org.springframework.data.mongodb.core.aggregation.MergeOperation;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
+
+/**
+ * Minute/hour/day rollups of count/sum/min/max per (sensorId, metric, bucket start).
+ * Enabled with sensors.rollups.enabled=true.
+ *
+ * Each bucket also carries the bins of a {@link QuantileSketch} under "sk" (bin key -> count),
+ * so percentiles over a window are answered by adding bin counts instead of reading every value.
+ *
+ * Rollups are updated as readings are ingested, with one $inc/$min/$max upsert per
+ * touched bucket and resolution. Readings stored before rollups were enabled are
+ * only covered after a rebuild (sensors.rollups.rebuild-on-startup=true).
+ *
+ * Rebuilds and repairs recompute buckets from the readings, so they run with ingest paused
+ * (see {@link IngestGate}); queries read the readings until a rebuild has finished. If an
+ * update fails, the days it touched are marked stale (in memory and in "sensor_rollups_stale"):
+ * queries read those days from the readings, and every repair-interval they are recomputed.
+ */
+@Component
+@Order(IngestListener.ORDER_DERIVED_STORAGE)
+public class RollupStore implements IngestListener, SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(RollupStore.class);
+
+    static final String STALE_COLLECTION = "sensor_rollups_stale";
+
+    private final MongoTemplate mongoTemplate;
+    private final StorageLayout layout;
+    private final IngestGate gate;
+    private final boolean enabled;
+    private final boolean rebuildOnStartup;
+    private final double sketchAccuracy;
+    private final Duration repairInterval;
+    private final NavigableSet<Instant> staleDays = new ConcurrentSkipListSet<>();
+    private final Set<Instant> archivedStale = ConcurrentHashMap.newKeySet(); // logged once each
+    private final Counter failures;
+
+    private volatile boolean rebuilding;
+    private ScheduledExecutorService repairer;
+
+    public RollupStore(MongoTemplate mongoTemplate,
+                       StorageLayout layout,
+                       IngestGate gate,
+                       MeterRegistry meterRegistry,
+                       @Value("${sensors.rollups.enabled:false}") boolean enabled,
+                       @Value("${sensors.rollups.rebuild-on-startup:false}") boolean rebuildOnStartup,
+                       @Value("${sensors.rollups.sketch.relative-accuracy:0.01}") double sketchAccuracy,
+                       @Value("${sensors.rollups.repair-interval:1m}") Duration repairInterval) {
+        if (repairInterval.toMillis() < 1) {
+            throw new IllegalArgumentException("sensors.rollups.repair-interval must be positive");
+        }
+        this.mongoTemplate = mongoTemplate;
+        this.layout = layout;
+        this.gate = gate;
+        this.enabled = enabled;
+        this.rebuildOnStartup = rebuildOnStartup;
+        this.sketchAccuracy = sketchAccuracy;
+        this.repairInterval = repairInterval;
+        new QuantileSketch(sketchAccuracy); // fail fast on an out-of-range accuracy
+
+        this.failures = Counter.builder("sensors.rollups.failures")
+            .description("Rollup updates that failed after their readings were stored")
+            .register(meterRegistry);
+        Gauge.builder("sensors.rollups.stale-days", staleDays, Set::size)
+            .description("UTC days read from the readings until their rollups are repaired")
+            .register(meterRegistry);
+    }
+
+    public boolean isEnabled() { return enabled; }
+
+    /** True when every rollup is recomputed from the readings at startup. */
+    public boolean isRebuildOnStartup() { return rebuildOnStartup; }
+    public double getSketchAccuracy() { return sketchAccuracy; }
+
+    /** True while a rebuild runs, or after one failed: no rollup can be trusted. */
+    public boolean isRebuilding() { return rebuilding; }
+
+    /** Starts of the UTC days whose rollups may not match the readings. */
+    public NavigableSet<Instant> staleDays() { return Collections.unmodifiableNavigableSet(staleDays); }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        if (rebuildOnStartup) {
+            rebuild();
+        } else {
+            ensureIndexes();
+            for (Document d : mongoTemplate.findAll(Document.class, STALE_COLLECTION)) {
+                staleDays.add(d.getDate("_id").toInstant());
+            }
+            if (!staleDays.isEmpty()) {
+                log.warn("{} days have stale rollups; reading them from the readings until repaired", staleDays.size());
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        repairer = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("rollup-repair").daemon().factory());
+        long period = repairInterval.toMillis();
+        repairer.scheduleWithFixedDelay(this::repairSafely, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        if (repairer != null) {
+            repairer.shutdownNow();
+            repairer = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() { return repairer != null; }
+
+    /** Unique key per bucket: keeps concurrent upserts from splitting a bucket and lets $merge match. */
+    public void ensureIndexes() {
+        for (RollupResolution r : RollupResolution.values()) {
+            mongoTemplate.indexOps(r.collection()).createIndex(
+                new Index()
+                    .on("sensorId", Sort.Direction.ASC)
+                    .on("metric", Sort.Direction.ASC)
+                    .on("start", Sort.Direction.ASC)
+                    .unique()
+                    .named("rollup_sensor_metric_start_idx"));
+        }
+    }
+
+    @Override
+    public void onIngest(List<SensorData> readings) {
+        if (!enabled || readings.isEmpty()) {
+            return;
+        }
+        for (RollupResolution r : RollupResolution.values()) {
+            // Fold readings into one partial per bucket, then one upsert per bucket
+            Map<RollupKey, MetricAggregate> buckets = new LinkedHashMap<>();
+            Map<RollupKey, QuantileSketch> sketches = new LinkedHashMap<>();
+            for (SensorData d : readings) {
+                RollupKey key = new RollupKey(d.getSensorId(), d.getMetric(), r.floor(d.getTimestamp()));
+                buckets.computeIfAbsent(key, k -> new MetricAggregate()).add(d.getValue());
+                sketches.computeIfAbsent(key, k -> new QuantileSketch(sketchAccuracy)).add(d.getValue());
+            }
+
+            BulkOperations ops = mongoTemplate.bulkOps(BulkMode.UNORDERED, r.collection());
+            buckets.forEach((key, agg) -> {
+                Update update = new Update()
+                    .inc("count", agg.getCount())
+                    .inc("sum", agg.getSum())
+                    .min("min", agg.getMin())
+                    .max("max", agg.getMax());
+                sketches.get(key).bins().forEach((bin, n) -> update.inc("sk." + bin, n));
+                ops.upsert(
+                    Query.query(Criteria.where("sensorId").is(key.sensorId())
+                        .and("metric").is(key.metric())
+                        .and("start").is(key.start())),
+                    update);
+            });
+            try {
+                ops.execute();
+            } catch (RuntimeException ex) {
+                // The readings are stored but some buckets may be partly updated: their days are read
+                // from the readings until the repair pass recomputes them
+                failures.increment();
+                Set<Instant> days = markStale(readings);
+                log.error("Failed to update {} rollups for {} readings; days {} are stale until repaired",
+                    r, readings.size(), days, ex);
+            }
+        }
+    }
+
+    /**
+     * Aggregates rollup buckets whose start falls in any of {@code startRanges} (inclusive).
+     */
+    public Map<String, MetricAggregate> aggregate(RollupResolution resolution,
+                                                  List<String> sensorIds,
+                                                  List<String> metrics,
+                                                  List<TimeRange> startRanges) {
+        PlannedAggregation planned = plan(resolution, sensorIds, metrics, startRanges);
+
+        Map<String, MetricAggregate> results = new LinkedHashMap<>();
+        for (Document d : mongoTemplate.aggregate(planned.aggregation(), planned.collection(), Document.class)) {
+            Number count = (Number) d.get("count");
+            if (d.getString("_id") != null && count != null && count.longValue() > 0) {
+                results.put(d.getString("_id"), new MetricAggregate(
+                    count.longValue(),
+                    ((Number) d.get("sum")).doubleValue(),
+                    ((Number) d.get("min")).doubleValue(),
+                    ((Number) d.get("max")).doubleValue()));
+            }
+        }
+        return results;
+    }
+
+    /** The aggregation {@link #aggregate(RollupResolution, List, List, List)} runs, without running it. */
+    public PlannedAggregation plan(RollupResolution resolution,
+                                   List<String> sensorIds,
+                                   List<String> metrics,
+                                   List<TimeRange> startRanges) {
+        return new PlannedAggregation(resolution.collection(), newAggregation(
+            match(startCriteria(sensorIds, metrics, startRanges)),
+            group("metric")
+                .sum("count").as("count")
+                .sum("sum").as("sum")
+                .min("min").as("min")
+                .max("max").as("max")));
+    }
+
+    /**
+     * Merges the sketches of rollup buckets whose start falls in any of {@code startRanges} (inclusive),
+     * server-side: only the summed bin counts per metric come back.
+     */
+    public Map<String, QuantileSketch> sketches(RollupResolution resolution,
+                                                List<String> sensorIds,
+                                                List<String> metrics,
+                                                List<TimeRange> startRanges) {
+        Aggregation agg = newAggregation(sketchPipeline(sensorIds, metrics, startRanges))
+            .withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+
+        Map<String, QuantileSketch> results = new LinkedHashMap<>();
+        for (Document d : mongoTemplate.aggregate(agg, resolution.collection(), Document.class)) {
+            QuantileSketch sketch = SketchStages.read(d, sketchAccuracy);
+            if (d.getString("_id") != null && !sketch.isEmpty()) {
+                results.put(d.getString("_id"), sketch);
+            }
+        }
+        return results;
+    }
+
+    // Buckets without "sk" (written before sketches existed) drop out at the $unwind
+    static List<AggregationOperation> sketchPipeline(List<String> sensorIds,
+                                                     List<String> metrics,
+                                                     List<TimeRange> startRanges) {
+        List<AggregationOperation> ops = new ArrayList<>();
+        ops.add(match(startCriteria(sensorIds, metrics, startRanges)));
+        ops.add(context -> new Document("$project", new Document("metric", 1)
+            .append("min", 1)
+            .append("max", 1)
+            .append("bins", new Document("$objectToArray", "$sk"))));
+        ops.add(context -> new Document("$unwind", "$bins"));
+        ops.add(context -> new Document("$project", new Document("metric", 1)
+            .append("k", "$bins.k")
+            .append("n", "$bins.v")
+            .append("lo", "$min")
+            .append("hi", "$max")));
+        ops.addAll(SketchStages.mergeStages("metric"));
+        return ops;
+    }
+
+    private static Criteria startCriteria(List<String> sensorIds, List<String> metrics, List<TimeRange> startRanges) {
+        List<Criteria> and = new ArrayList<>();
+        and.add(new Criteria().orOperator(startRanges.stream()
+            .map(r -> Criteria.where("start").gte(r.from()).lte(r.to()))
+            .toArray(Criteria[]::new)));
+        if (sensorIds != null && !sensorIds.isEmpty()) {
+            and.add(Criteria.where("sensorId").in(sensorIds));
+        }
+        if (metrics != null && !metrics.isEmpty()) {
+            and.add(Criteria.where("metric").in(metrics));
+        }
+        return new Criteria().andOperator(and.toArray(new Criteria[0]));
+    }
+
+    /**
+     * Recomputes every rollup collection from the stored readings, server-side via $group + $merge.
+     * Ingest is paused meanwhile, and queries read the readings until it has succeeded.
+     */
+    public void rebuild() {
+        gate.exclusive("a rollup rebuild", () -> {
+            rebuilding = true;
+            for (RollupResolution r : RollupResolution.values()) {
+                mongoTemplate.dropCollection(r.collection());
+            }
+            ensureIndexes();
+
+            for (RollupResolution r : RollupResolution.values()) {
+                long started = System.nanoTime();
+                mongoTemplate.aggregate(newAggregation(rebuildPipeline(r)).withOptions(
+                    AggregationOptions.builder().allowDiskUse(true).build()), sourceCollection(), Document.class);
+                log.info("Rebuilt {} rollups from {} in {} ms", r, sourceCollection(), (System.nanoTime() - started) / 1_000_000);
+            }
+            mongoTemplate.dropCollection(STALE_COLLECTION);
+            staleDays.clear();
+            rebuilding = false;
+        });
+    }
+
+    /**
+     * Recomputes the rollups of every stale day from its readings, one day at a time with ingest
+     * paused, and clears its mark. Days before the ingest floor are archived, so their readings may
+     * have left Mongo: they stay stale and queries keep reading them from the (tiered) readings.
+     */
+    public void repair() {
+        for (Instant day : staleDays) {
+            Instant floor = gate.floor();
+            if (floor != null && day.isBefore(floor)) {
+                if (archivedStale.add(day)) {
+                    log.warn("Rollups of {} are stale but the day is archived; it stays stale and is read from segments", day);
+                }
+                continue;
+            }
+            gate.exclusive("a rollup repair", () -> {
+                List<AggregationOperation> dayMatch = List.of(match(Criteria.where(sourceTimeField())
+                    .gte(Date.from(day)).lt(Date.from(day.plus(RollupResolution.DAY.span())))));
+                for (RollupResolution r : RollupResolution.values()) {
+                    List<AggregationOperation> ops = new ArrayList<>(dayMatch);
+                    ops.addAll(rebuildPipeline(r));
+                    mongoTemplate.aggregate(newAggregation(ops).withOptions(
+                        AggregationOptions.builder().allowDiskUse(true).build()), sourceCollection(), Document.class);
+                }
+                mongoTemplate.remove(Query.query(Criteria.where("_id").is(Date.from(day))), STALE_COLLECTION);
+                staleDays.remove(day);
+            });
+            log.info("Repaired the rollups of {}", day);
+        }
+    }
+
+    // A failed repair leaves the day stale and is retried at the next interval
+    private void repairSafely() {
+        try {
+            repair();
+        } catch (RuntimeException ex) {
+            log.warn("Rollup repair failed; retrying in {}", repairInterval, ex);
+        }
+    }
+
+    // Marks the UTC days of the readings stale, and records them so the marks survive a restart
+    private Set<Instant> markStale(List<SensorData> readings) {
+        Set<Instant> days = new TreeSet<>();
+        for (SensorData d : readings) {
+            days.add(RollupResolution.DAY.floor(d.getTimestamp()));
+        }
+        staleDays.addAll(days);
+        try {
+            BulkOperations ops = mongoTemplate.bulkOps(BulkMode.UNORDERED, STALE_COLLECTION);
+            days.forEach(day -> ops.upsert(Query.query(Criteria.where("_id").is(Date.from(day))),
+                new Update().setOnInsert("_id", Date.from(day))));
+            ops.execute();
+        } catch (RuntimeException ex) {
+            log.error("Could not record stale rollup days {}; they are only known until a restart", days, ex);
+        }
+        return days;
+    }
+
+    private String sourceCollection() {
+        return switch (layout) {
+            case BUCKETED -> BucketStore.COLLECTION;
+            case COMPACT -> CompactReadingStore.COLLECTION;
+            default -> RawAggregateSource.COLLECTION;
+        };
+    }
+
+    // Hour buckets lie within one day, so matching on their start selects whole buckets
+    private String sourceTimeField() {
+        return switch (layout) {
+            case BUCKETED -> "start";
+            case COMPACT -> CompactReadingStore.TIME;
+            default -> "timestamp";
+        };
+    }
+
+    // Normalizes the source to {sensorId, metric, v, start}, groups per bucket and sketch bin,
+    // folds the bins into "sk" and merges into the rollups
+    List<AggregationOperation> rebuildPipeline(RollupResolution r) {
+        List<AggregationOperation> ops = new ArrayList<>();
+        if (layout == StorageLayout.BUCKETED) {
+            ops.add(unwind("timestamps", "i"));
+            ops.add(project("sensorId", "metric")
+                .and(ArrayOperators.ArrayElemAt.arrayOf("values").elementAt("i")).as("v")
+                .and(DateOperators.dateOf("timestamps").truncate(r.mongoUnit())).as("start"));
+        } else if (layout == StorageLayout.COMPACT) {
+            ops.add(project()
+                .and(CompactReadingStore.SENSOR).as("sensorId")
+                .and(CompactReadingStore.metricName(CompactReadingStore.METRIC)).as("metric")
+                .and(CompactReadingStore.VALUE).as("v")
+                .and(DateOperators.dateOf(CompactReadingStore.TIME).truncate(r.mongoUnit())).as("start"));
+        } else {
+            ops.add(project("sensorId", "metric")
+                .and("value").as("v")
+                .and(DateOperators.dateOf("timestamp").truncate(r.mongoUnit())).as("start"));
+        }
+        AggregationExpression binKey = SketchStages.binKeyOf("v", new QuantileSketch(sketchAccuracy).getLogGamma());
+        ops.add(context -> new Document("$set", new Document("k", binKey.toDocument(context))));
+        ops.add(context -> new Document("$group", new Document("_id", new Document("sensorId", "$sensorId")
+                .append("metric", "$metric")
+                .append("start", "$start")
+                .append("k", "$k"))
+            .append("count", new Document("$sum", 1))
+            .append("sum", new Document("$sum", "$v"))
+            .append("min", new Document("$min", "$v"))
+            .append("max", new Document("$max", "$v"))));
+        ops.add(context -> new Document("$group", new Document("_id", new Document("sensorId", "$_id.sensorId")
+                .append("metric", "$_id.metric")
+                .append("start", "$_id.start"))
+            .append("count", new Document("$sum", "$count"))
+            .append("sum", new Document("$sum", "$sum"))
+            .append("min", new Document("$min", "$min"))
+            .append("max", new Document("$max", "$max"))
+            .append("bins", new Document("$push", new Document("k", "$_id.k").append("v", "$count")))));
+        ops.add(context -> new Document("$project", new Document("_id", 0)
+            .append("sensorId", "$_id.sensorId")
+            .append("metric", "$_id.metric")
+            .append("start", "$_id.start")
+            .append("count", 1)
+            .append("sum", 1)
+            .append("min", 1)
+            .append("max", 1)
+            .append("sk", new Document("$arrayToObject", "$bins"))));
+        ops.add(MergeOperation.builder()
+            .intoCollection(r.collection())
+            .on("sensorId", "metric", "start")
+            .whenMatched(MergeOperation.WhenDocumentsMatch.replaceDocument())
+            .whenDocumentsDontMatch(MergeOperation.WhenDocumentsDontMatch.insertNewDocument())
+            .build());
+        return ops;
+    }
+
+    private record RollupKey(String sensorId, String metric, Instant start) { }
+}
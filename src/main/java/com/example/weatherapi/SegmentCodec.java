@@ -0,0 +1,238 @@
+package com.example.weatherapi;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Gorilla-style encoding of one (timestamp, value) series, as used by segment files.
+ *
+ * Points are interleaved so a scan can stop at the end of its range. The first point is
+ * stored raw (64-bit epoch millis, 64-bit double). After that:
+ * - timestamp: delta-of-delta, zigzagged, in a prefix-coded bucket:
+ *   '0' (same spacing), '10'+7 bits, '110'+9 bits, '1110'+12 bits, '1111'+32 bits
+ * - value: XOR with the previous value's bits: '0' (same value), '10' + the meaningful bits
+ *   inside the previous leading/trailing-zero window, or '11' + 5 bits leading zeros +
+ *   6 bits length - 1 + the meaningful bits
+ *
+ * Regular sampling makes most timestamps one bit; slowly changing values a few bits.
+ */
+final class SegmentCodec {
+
+    private SegmentCodec() { }
+
+    /** Receives decoded points without boxing them. */
+    @FunctionalInterface
+    interface PointVisitor {
+        void visit(long timestamp, double value);
+    }
+
+    /**
+     * Encodes the first {@code count} points; timestamps (epoch millis) must be ascending and
+     * consecutive ones less than ~24 days apart.
+     */
+    static byte[] encode(long[] timestamps, double[] values, int count) {
+        BitWriter out = new BitWriter(Math.max(16, count * 2));
+        if (count == 0) {
+            return out.finish();
+        }
+        long prevTime = timestamps[0];
+        long prevBits = Double.doubleToRawLongBits(values[0]);
+        out.write(prevTime, 64);
+        out.write(prevBits, 64);
+
+        long prevDelta = 0;
+        int prevLeading = -1;
+        int prevTrailing = 0;
+        for (int i = 1; i < count; i++) {
+            long delta = timestamps[i] - prevTime;
+            if (delta < 0) {
+                throw new IllegalArgumentException("Timestamps must be ascending at point " + i);
+            }
+            long dod = delta - prevDelta;
+            long zigzag = (dod << 1) ^ (dod >> 63);
+            if (zigzag == 0) {
+                out.write(0b0, 1);
+            } else if (zigzag < 1 << 7) {
+                out.write(0b10, 2);
+                out.write(zigzag, 7);
+            } else if (zigzag < 1 << 9) {
+                out.write(0b110, 3);
+                out.write(zigzag, 9);
+            } else if (zigzag < 1 << 12) {
+                out.write(0b1110, 4);
+                out.write(zigzag, 12);
+            } else if (zigzag < 1L << 32) {
+                out.write(0b1111, 4);
+                out.write(zigzag, 32);
+            } else {
+                throw new IllegalArgumentException("Timestamps too far apart at point " + i);
+            }
+            prevDelta = delta;
+            prevTime = timestamps[i];
+
+            long bits = Double.doubleToRawLongBits(values[i]);
+            long xor = bits ^ prevBits;
+            if (xor == 0) {
+                out.write(0b0, 1);
+            } else {
+                int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                int trailing = Long.numberOfTrailingZeros(xor);
+                if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing) {
+                    out.write(0b10, 2);
+                    out.write(xor >>> prevTrailing, 64 - prevLeading - prevTrailing);
+                } else {
+                    int significant = 64 - leading - trailing;
+                    out.write(0b11, 2);
+                    out.write(leading, 5);
+                    out.write(significant - 1, 6);
+                    out.write(xor >>> trailing, significant);
+                    prevLeading = leading;
+                    prevTrailing = trailing;
+                }
+            }
+            prevBits = bits;
+        }
+        return out.finish();
+    }
+
+    /**
+     * Decodes points straight from {@code buf} (absolute reads, nothing copied) and stops at the
+     * first point after {@code to}.
+     */
+    static void read(ByteBuffer buf, int offset, int length, int count, long to, PointVisitor visitor) {
+        if (count == 0) {
+            return;
+        }
+        BitReader in = new BitReader(buf, offset, offset + length);
+        long time = in.read(64);
+        long bits = in.read(64);
+        if (time > to) {
+            return;
+        }
+        visitor.visit(time, Double.longBitsToDouble(bits));
+
+        long delta = 0;
+        int leading = 0;
+        int trailing = 0;
+        for (int i = 1; i < count; i++) {
+            long zigzag;
+            if (in.read(1) == 0) {
+                zigzag = 0;
+            } else if (in.read(1) == 0) {
+                zigzag = in.read(7);
+            } else if (in.read(1) == 0) {
+                zigzag = in.read(9);
+            } else if (in.read(1) == 0) {
+                zigzag = in.read(12);
+            } else {
+                zigzag = in.read(32);
+            }
+            delta += (zigzag >>> 1) ^ -(zigzag & 1);
+            time += delta;
+            if (time > to) {
+                return;
+            }
+
+            if (in.read(1) == 1) {
+                if (in.read(1) == 1) {
+                    leading = (int) in.read(5);
+                    int significant = (int) in.read(6) + 1;
+                    trailing = 64 - leading - significant;
+                }
+                bits ^= in.read(64 - leading - trailing) << trailing;
+            }
+            visitor.visit(time, Double.longBitsToDouble(bits));
+        }
+    }
+
+    /** Folds the points in [from, to] into {@code into}. */
+    static void aggregate(ByteBuffer buf, int offset, int length, int count, long from, long to, MetricAggregate into) {
+        read(buf, offset, length, count, to, (time, value) -> {
+            if (time >= from) {
+                into.add(value);
+            }
+        });
+    }
+
+    /** Appends bit fields, most significant bit first, to a growing byte array. */
+    static final class BitWriter {
+        private byte[] bytes;
+        private int size;
+        private long pending; // low pendingBits bits not yet written out
+        private int pendingBits;
+
+        BitWriter(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+
+        /** Writes the low {@code n} (1..64) bits of {@code value}. */
+        void write(long value, int n) {
+            if (n > 32) {
+                write(value >>> 32, n - 32);
+                n = 32;
+            }
+            pending = (pending << n) | (value & ((1L << n) - 1));
+            pendingBits += n;
+            while (pendingBits >= 8) {
+                pendingBits -= 8;
+                put((byte) (pending >>> pendingBits));
+            }
+            pending &= (1L << pendingBits) - 1;
+        }
+
+        byte[] finish() {
+            if (pendingBits > 0) {
+                put((byte) (pending << (8 - pendingBits)));
+                pendingBits = 0;
+                pending = 0;
+            }
+            return Arrays.copyOf(bytes, size);
+        }
+
+        private void put(byte b) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[size++] = b;
+        }
+    }
+
+    /** Reads bit fields written by {@link BitWriter} from a buffer region. */
+    static final class BitReader {
+        private final ByteBuffer buf;
+        private final int limit;
+        private int pos;
+        private long cache; // low cached bits are unread
+        private int cached;
+
+        BitReader(ByteBuffer buf, int offset, int limit) {
+            this.buf = buf;
+            this.pos = offset;
+            this.limit = limit;
+        }
+
+        /** Reads {@code n} (0..64) bits as an unsigned value. */
+        long read(int n) {
+            if (n > 32) {
+                long high = read(n - 32);
+                return (high << 32) | read(32);
+            }
+            if (cached < n) {
+                if (pos + 4 <= limit) {
+                    // n <= 32 and cached < n, so 32 more bits always fit
+                    cache = (cache << 32) | (buf.getInt(pos) & 0xFFFFFFFFL);
+                    pos += 4;
+                    cached += 32;
+                } else {
+                    while (cached < n) {
+                        cache = (cache << 8) | (pos < limit ? buf.get(pos) & 0xFF : 0);
+                        pos++;
+                        cached += 8;
+                    }
+                }
+            }
+            cached -= n;
+            return (cache >>> cached) & ((1L << n) - 1);
+        }
+    }
+}
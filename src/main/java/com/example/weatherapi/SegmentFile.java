@@ -0,0 +1,206 @@
+package com.example.weatherapi;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One day of readings in columnar, Gorilla-compressed form: one series per (sensorId, metric),
+ * each encoded by {@link SegmentCodec}.
+ *
+ * Layout (big-endian):
+ * <pre>
+ * header     magic "WSEG" (int), version (int), day start epoch millis (long)
+ * bodies     the encoded series, back to back
+ * directory  per series: sensorId, metric (u16 length + UTF-8 each), count (int),
+ *            first/last timestamp (long), min, max, sum (double), body offset (long), body length (int)
+ * trailer    directory offset (long), series count (int), magic (int)
+ * </pre>
+ * The directory goes last so the writer can stream bodies out without knowing them all first.
+ * Its per-series summaries answer ranges covering a whole series without decoding it.
+ *
+ * Readers map the file read-only and decode straight from the mapping.
+ */
+final class SegmentFile {
+
+    static final int MAGIC = 0x57534547; // "WSEG"
+    static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int TRAILER_BYTES = 16;
+
+    /** Directory entry of one series. */
+    record Series(String sensorId, String metric, int count, long firstTime, long lastTime,
+                  double min, double max, double sum, long offset, int length) { }
+
+    private final Path path;
+    private final long dayStart;
+    private final ByteBuffer data;
+    private final List<Series> series;
+
+    private SegmentFile(Path path, long dayStart, ByteBuffer data, List<Series> series) {
+        this.path = path;
+        this.dayStart = dayStart;
+        this.data = data;
+        this.series = series;
+    }
+
+    /** Maps {@code path} read-only and parses its directory. */
+    static SegmentFile open(Path path) throws IOException {
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Segment " + path + " is larger than 2 GB");
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (data.capacity() < HEADER_BYTES + TRAILER_BYTES
+                || data.getInt(0) != MAGIC || data.getInt(data.capacity() - 4) != MAGIC) {
+            throw new IOException("Not a segment file: " + path);
+        }
+        if (data.getInt(4) != VERSION) {
+            throw new IOException("Unsupported segment version " + data.getInt(4) + " in " + path);
+        }
+        long dayStart = data.getLong(8);
+        int trailer = data.capacity() - TRAILER_BYTES;
+        int count = data.getInt(trailer + 8);
+
+        ByteBuffer dir = data.duplicate().position((int) data.getLong(trailer)).limit(trailer);
+        List<Series> series = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            series.add(new Series(readString(dir), readString(dir), dir.getInt(), dir.getLong(), dir.getLong(),
+                dir.getDouble(), dir.getDouble(), dir.getDouble(), dir.getLong(), dir.getInt()));
+        }
+        return new SegmentFile(path, dayStart, data, List.copyOf(series));
+    }
+
+    Path path() { return path; }
+    long dayStart() { return dayStart; }
+    List<Series> series() { return series; }
+
+    /**
+     * Folds the readings of matching series in [from, to] into {@code into}, keyed by metric.
+     * Null/empty sensorIds or metrics mean "all". Series lying wholly inside the range are
+     * answered from their directory summary.
+     */
+    void aggregate(Collection<String> sensorIds, Collection<String> metrics, long from, long to,
+                   Map<String, MetricAggregate> into) {
+        for (Series s : select(sensorIds, metrics, from, to)) {
+            MetricAggregate agg = into.computeIfAbsent(s.metric(), m -> new MetricAggregate());
+            if (from <= s.firstTime() && s.lastTime() <= to) {
+                agg.merge(new MetricAggregate(s.count(), s.sum(), s.min(), s.max()));
+            } else {
+                SegmentCodec.aggregate(data, (int) s.offset(), s.length(), s.count(), from, to, agg);
+            }
+        }
+        into.values().removeIf(agg -> agg.getCount() == 0);
+    }
+
+    /** Series of the given sensors and metrics with readings in [from, to]; null/empty mean "all". */
+    List<Series> select(Collection<String> sensorIds, Collection<String> metrics, long from, long to) {
+        boolean allSensors = sensorIds == null || sensorIds.isEmpty();
+        boolean allMetrics = metrics == null || metrics.isEmpty();
+        return series.stream()
+            .filter(s -> s.lastTime() >= from && s.firstTime() <= to
+                && (allSensors || sensorIds.contains(s.sensorId()))
+                && (allMetrics || metrics.contains(s.metric())))
+            .toList();
+    }
+
+    /** Number of readings in the file. */
+    long readingCount() {
+        return series.stream().mapToLong(Series::count).sum();
+    }
+
+    /** Visits every reading of one series in time order. */
+    void read(Series s, SegmentCodec.PointVisitor visitor) {
+        SegmentCodec.read(data, (int) s.offset(), s.length(), s.count(), Long.MAX_VALUE, visitor);
+    }
+
+    /** Starts writing a segment for the day starting at {@code dayStart} to {@code path}. */
+    static Writer writer(Path path, long dayStart) throws IOException {
+        return new Writer(path, dayStart);
+    }
+
+    /** Appends series one at a time; {@link #close()} writes the directory. */
+    static final class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final List<Series> written = new ArrayList<>();
+        private long readings;
+
+        private Writer(Path path, long dayStart) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(dayStart);
+        }
+
+        /** Encodes and appends the first {@code count} points, timestamps ascending. */
+        void add(String sensorId, String metric, long[] timestamps, double[] values, int count) throws IOException {
+            if (count == 0) {
+                return;
+            }
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            double sum = 0;
+            for (int i = 0; i < count; i++) {
+                min = Math.min(min, values[i]);
+                max = Math.max(max, values[i]);
+                sum += values[i];
+            }
+            byte[] body = SegmentCodec.encode(timestamps, values, count);
+            written.add(new Series(sensorId, metric, count, timestamps[0], timestamps[count - 1],
+                min, max, sum, out.size(), body.length));
+            out.write(body);
+            readings += count;
+        }
+
+        int seriesCount() { return written.size(); }
+        long readingCount() { return readings; }
+
+        @Override
+        public void close() throws IOException {
+            try (out) {
+                long directory = out.size();
+                for (Series s : written) {
+                    writeString(s.sensorId());
+                    writeString(s.metric());
+                    out.writeInt(s.count());
+                    out.writeLong(s.firstTime());
+                    out.writeLong(s.lastTime());
+                    out.writeDouble(s.min());
+                    out.writeDouble(s.max());
+                    out.writeDouble(s.sum());
+                    out.writeLong(s.offset());
+                    out.writeInt(s.length());
+                }
+                out.writeLong(directory);
+                out.writeInt(written.size());
+                out.writeInt(MAGIC);
+            }
+        }
+
+        private void writeString(String s) throws IOException {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeShort(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(ByteBuffer buf) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buf.getShort())];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
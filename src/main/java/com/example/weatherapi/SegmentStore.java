@@ -0,0 +1,281 @@
+package com.example.weatherapi;
+
+import com.example.weatherapi.ReadingIndexes.QueryShape;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
+
+/**
+ * Cold readings as Gorilla-compressed segment files, one per UTC day, under sensors.segments.dir
+ * (see {@link SegmentFile} for the format).
+ *
+ * {@link #compact} writes a day's segment from the per-reading collection of the layout ("sensor_data"
+ * or "sensor_readings"), reading it in (sensor, metric, time) order off the covering SENSORS index so
+ * one series is in memory at a time. Aggregates, exports and percentile sketches scan the
+ * memory-mapped segments; nothing goes to Mongo.
+ */
+@Component
+public class SegmentStore implements AggregateSource, ExportSource, SketchSource {
+
+    private static final Logger log = LoggerFactory.getLogger(SegmentStore.class);
+
+    private static final String SUFFIX = ".seg";
+
+    /** Outcome of compacting one day. */
+    public record Compaction(LocalDate day, int series, long readings, long bytes) { }
+
+    private final MongoTemplate mongoTemplate;
+    private final ReadingIndexes indexes;
+    private final Path dir;
+    private final int batchSize;
+    private final Map<LocalDate, SegmentFile> open = new ConcurrentHashMap<>();
+
+    public SegmentStore(MongoTemplate mongoTemplate,
+                        ReadingIndexes indexes,
+                        @Value("${sensors.segments.dir:data/segments}") String dir,
+                        @Value("${sensors.segments.batch-size:10000}") int batchSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.indexes = indexes;
+        this.dir = Path.of(dir);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Writes (or rewrites) the segment of {@code day} from the readings stored for it. The file is
+     * written next to its final name and moved into place, so readers see the old or the new one.
+     */
+    public Compaction compact(LocalDate day) {
+        ReadingIndexes.Fields f = indexes.fields();
+        if (f == null) {
+            throw new IllegalStateException("Segments are compacted from the raw or compact layout");
+        }
+        Instant start = day.atStartOfDay(ZoneOffset.UTC).toInstant();
+        Aggregation agg = newAggregation(
+                match(Criteria.where(f.time()).gte(Date.from(start)).lt(Date.from(start.plusSeconds(86_400)))),
+                sort(Sort.by(f.sensor(), f.metric(), f.time())),
+                project(f.sensor(), f.metric(), f.time(), f.value()).andExclude("_id"))
+            .withOptions(indexes.optionsBuilder(f.collection(), QueryShape.SENSORS)
+                .allowDiskUse(true).cursorBatchSize(batchSize).build());
+
+        try {
+            Files.createDirectories(dir);
+            Path target = path(day);
+            Path tmp = dir.resolve(target.getFileName() + ".tmp");
+            SeriesBuffer buffer = new SeriesBuffer();
+            int series;
+            long readings;
+            try (SegmentFile.Writer writer = SegmentFile.writer(tmp, start.toEpochMilli());
+                 Stream<Document> docs = mongoTemplate.aggregateStream(agg, f.collection(), Document.class)) {
+                for (Document d : (Iterable<Document>) docs::iterator) {
+                    String sensorId = d.getString(f.sensor());
+                    String metric = metric(d.get(f.metric()));
+                    if (!buffer.isFor(sensorId, metric)) {
+                        buffer.flush(writer);
+                        buffer.reset(sensorId, metric);
+                    }
+                    buffer.add(d.getDate(f.time()).getTime(), ((Number) d.get(f.value())).doubleValue());
+                }
+                buffer.flush(writer);
+                series = writer.seriesCount();
+                readings = writer.readingCount();
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            // Replaced under the map's lock for the day, so a mapping of the old file cannot be cached after
+            // this; readers still holding it keep a valid view until they drop it and it is unmapped
+            open.compute(day, (d, old) -> openFile(target));
+
+            Compaction result = new Compaction(day, series, readings, Files.size(target));
+            log.info("Compacted {} readings in {} series for {} into {} ({} bytes)",
+                    readings, series, day, target, result.bytes());
+            return result;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not write the segment for " + day, ex);
+        }
+    }
+
+    /** Directory the segment files are kept in. */
+    public Path dir() { return dir; }
+
+    /** Days that have a segment, oldest first. */
+    public List<LocalDate> days() {
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(p -> p.getFileName().toString())
+                .filter(name -> name.endsWith(SUFFIX))
+                .map(name -> LocalDate.parse(name.substring(0, name.length() - SUFFIX.length())))
+                .sorted()
+                .toList();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public Map<String, MetricAggregate> aggregate(List<String> sensorIds, List<String> metrics, List<TimeRange> ranges) {
+        Set<String> sensors = sensorIds == null ? null : new HashSet<>(sensorIds);
+        Set<String> wanted = metrics == null ? null : new HashSet<>(metrics);
+        Map<String, MetricAggregate> results = new LinkedHashMap<>();
+        for (TimeRange range : ranges) {
+            days(range).map(this::segment).filter(Objects::nonNull).forEach(segment ->
+                segment.aggregate(sensors, wanted, range.from().toEpochMilli(), range.to().toEpochMilli(), results));
+        }
+        return results;
+    }
+
+    /** Streams the readings of the window series by series, one decoded series in memory at a time. */
+    @Override
+    public Stream<SensorData> export(List<String> sensorIds, List<String> metrics, TimeRange window, int batchSize) {
+        Set<String> sensors = sensorIds == null ? null : new HashSet<>(sensorIds);
+        Set<String> wanted = metrics == null ? null : new HashSet<>(metrics);
+        long from = window.from().toEpochMilli();
+        long to = window.to().toEpochMilli();
+        // Flat-mapped one series at a time: iterating a flatMap buffers whatever one element expands to
+        return days(window).map(this::segment).filter(Objects::nonNull)
+            .flatMap(segment -> segment.select(sensors, wanted, from, to).stream().map(s -> new SeriesRef(segment, s)))
+            .flatMap(ref -> {
+                SegmentFile.Series s = ref.series();
+                List<SensorData> readings = new ArrayList<>(s.count());
+                ref.segment().read(s, (t, v) -> {
+                    if (t >= from && t <= to) {
+                        readings.add(SensorData.of(s.sensorId(), s.metric(), v, Instant.ofEpochMilli(t)));
+                    }
+                });
+                return readings.stream();
+            });
+    }
+
+    private record SeriesRef(SegmentFile segment, SegmentFile.Series series) { }
+
+    /** Bins every reading of the ranges; segments keep no sketches. */
+    @Override
+    public Map<String, QuantileSketch> sketches(List<String> sensorIds, List<String> metrics,
+                                                List<TimeRange> ranges, double relativeAccuracy) {
+        Set<String> sensors = sensorIds == null ? null : new HashSet<>(sensorIds);
+        Set<String> wanted = metrics == null ? null : new HashSet<>(metrics);
+        Map<String, QuantileSketch> results = new LinkedHashMap<>();
+        for (TimeRange range : ranges) {
+            long from = range.from().toEpochMilli();
+            long to = range.to().toEpochMilli();
+            days(range).map(this::segment).filter(Objects::nonNull).forEach(segment -> {
+                for (SegmentFile.Series s : segment.select(sensors, wanted, from, to)) {
+                    QuantileSketch sketch = results.computeIfAbsent(s.metric(), m -> new QuantileSketch(relativeAccuracy));
+                    segment.read(s, (t, v) -> {
+                        if (t >= from && t <= to) {
+                            sketch.add(v);
+                        }
+                    });
+                }
+            });
+        }
+        results.values().removeIf(QuantileSketch::isEmpty);
+        return results;
+    }
+
+    /** Readings in the segment of {@code day}; -1 if there is none. */
+    public long readingCount(LocalDate day) {
+        SegmentFile segment = segment(day);
+        return segment == null ? -1 : segment.readingCount();
+    }
+
+    /** Segment scans send nothing to Mongo. */
+    @Override
+    public List<PlannedAggregation> plan(List<String> sensorIds, List<String> metrics, List<TimeRange> ranges) {
+        return List.of();
+    }
+
+    /** The mapped segment of {@code day}, or null if there is none. */
+    SegmentFile segment(LocalDate day) {
+        SegmentFile segment = open.get(day);
+        if (segment != null) {
+            return segment;
+        }
+        // Mapped under the map's lock for the day, so it cannot race with compact() replacing the file
+        return open.computeIfAbsent(day, d -> Files.exists(path(d)) ? openFile(path(d)) : null);
+    }
+
+    private static SegmentFile openFile(Path path) {
+        try {
+            return SegmentFile.open(path);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    // UTC days the range touches; its end is inclusive
+    private static Stream<LocalDate> days(TimeRange range) {
+        return LocalDate.ofInstant(range.from(), ZoneOffset.UTC)
+            .datesUntil(LocalDate.ofInstant(range.to(), ZoneOffset.UTC).plusDays(1));
+    }
+
+    private Path path(LocalDate day) {
+        return dir.resolve(day + SUFFIX);
+    }
+
+    /** The compact layout stores metric codes, the raw layout names. */
+    private static String metric(Object stored) {
+        return stored instanceof Number code ? Metric.fromCode(code.intValue()).dbValue() : (String) stored;
+    }
+
+    /** Timestamps and values of the series being read, grown as needed and reused across series. */
+    private static final class SeriesBuffer {
+        private String sensorId;
+        private String metric;
+        private long[] timestamps = new long[1024];
+        private double[] values = new double[1024];
+        private int size;
+
+        boolean isFor(String sensorId, String metric) {
+            return size > 0 && sensorId.equals(this.sensorId) && metric.equals(this.metric);
+        }
+
+        void reset(String sensorId, String metric) {
+            this.sensorId = sensorId;
+            this.metric = metric;
+            this.size = 0;
+        }
+
+        void add(long timestamp, double value) {
+            if (size == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            timestamps[size] = timestamp;
+            values[size++] = value;
+        }
+
+        void flush(SegmentFile.Writer writer) throws IOException {
+            writer.add(sensorId, metric, timestamps, values, size);
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.weatherapi;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * MongoDB document holding one hour of readings for a single (sensorId, metric).
+ * Stored in collection "sensor_buckets" when sensors.storage.layout=bucketed.
+ *
+ * Readings live in two parallel arrays (timestamps[i] pairs with values[i]).
+ * The running count/sum/min/max let whole-bucket queries skip the arrays entirely.
+ */
+@Document(collection = "sensor_buckets")
+@CompoundIndex(name = "bucket_sensor_metric_start_idx",
+               def = "{'sensorId': 1, 'metric': 1, 'start': 1}", unique = true)
+public class SensorBucket {
+    @Id
+    private String id;
+
+    private String sensorId;
+    private String metric;             // normalized, as Metric.dbValue()
+    private Instant start;             // inclusive, truncated to the hour
+    private long count;
+    private double sum;
+    private double min;
+    private double max;
+    private List<Instant> timestamps;  // in append order, not necessarily sorted
+    private List<Double> values;
+
+    // Getters & Setters
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getSensorId() { return sensorId; }
+    public void setSensorId(String sensorId) { this.sensorId = sensorId; }
+
+    public String getMetric() { return metric; }
+    public void setMetric(String metric) { this.metric = metric; }
+
+    public Instant getStart() { return start; }
+    public void setStart(Instant start) { this.start = start; }
+
+    public long getCount() { return count; }
+    public void setCount(long count) { this.count = count; }
+
+    public double getSum() { return sum; }
+    public void setSum(double sum) { this.sum = sum; }
+
+    public double getMin() { return min; }
+    public void setMin(double min) { this.min = min; }
+
+    public double getMax() { return max; }
+    public void setMax(double max) { this.max = max; }
+
+    public List<Instant> getTimestamps() { return timestamps; }
+    public void setTimestamps(List<Instant> timestamps) { this.timestamps = timestamps; }
+
+    public List<Double> getValues() { return values; }
+    public void setValues(List<Double> values) { this.values = values; }
+}
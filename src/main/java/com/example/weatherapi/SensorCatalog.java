@@ -0,0 +1,281 @@
+package com.example.weatherapi;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.Document;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Registered sensors and their tags (site, region, model), for queries over groups of sensors.
+ *
+ * Every sensor gets a dense integer id in registration order. Each tag value keeps a compressed
+ * (Roaring) bitmap of the ids carrying it, so a {@link TagExpression} resolves with a few bitmap
+ * operations; only the matching sensors are turned back into sensorIds.
+ *
+ * The catalog lives in the "sensor_catalog" collection ({_id: sensorId, n: id, tags: {...}}) and is
+ * held in memory, loaded at startup. Registrations are written to Mongo before they are visible here.
+ * Other instances only see them after a restart, so register sensors through one instance.
+ */
+@Component
+public class SensorCatalog {
+
+    private static final Logger log = LoggerFactory.getLogger(SensorCatalog.class);
+
+    static final String COLLECTION = "sensor_catalog";
+    static final List<String> TAGS = List.of("site", "region", "model");
+    static final int MAX_REGISTRATIONS = 10_000;
+
+    private static final Pattern TAG_VALUE = Pattern.compile("[A-Za-z0-9_.\\-]+");
+
+    /** A sensor to register and its tags; absent tags are cleared. */
+    public record Registration(String sensorId, Map<String, String> tags) { }
+
+    /** A registered sensor. */
+    public record Entry(String sensorId, int id, Map<String, String> tags) { }
+
+    private final MongoTemplate mongoTemplate;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // All guarded by lock
+    private final List<Entry> entries = new ArrayList<>();          // by dense id
+    private final Map<String, Integer> ids = new HashMap<>();        // sensorId -> dense id
+    private final Map<String, RoaringBitmap> index = new HashMap<>(); // "name:value" -> dense ids
+    private final RoaringBitmap all = new RoaringBitmap();
+    private int reserved; // ids below it may be stored by a failed registration; guarded by lock
+
+    public SensorCatalog(MongoTemplate mongoTemplate, MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        Gauge.builder("sensors.catalog.sensors", this, SensorCatalog::size)
+                .description("Sensors registered in the catalog")
+                .register(meterRegistry);
+        Gauge.builder("sensors.catalog.bitmap.bytes", this, SensorCatalog::bitmapBytes)
+                .description("Serialized size of the catalog's tag bitmaps")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /** Loads the stored catalog; ids are unique so two registrations can never share one. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long start = System.nanoTime();
+        mongoTemplate.indexOps(COLLECTION).createIndex(
+                new Index().on("n", Sort.Direction.ASC).unique().named("catalog_n_idx"));
+        Query byId = new Query().with(Sort.by("n"));
+        try (Stream<Document> docs = mongoTemplate.stream(byId, Document.class, COLLECTION)) {
+            restore(docs.map(SensorCatalog::toEntry));
+        }
+        log.info("Loaded {} catalog sensors in {} ms", size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /** Adds entries that are already stored. */
+    void restore(Stream<Entry> stored) {
+        lock.writeLock().lock();
+        try {
+            stored.forEach(this::apply);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Registers sensors or replaces their tags. New sensors get the next free ids. Throws
+     * IllegalArgumentException (400) if any registration is invalid; then nothing is written.
+     *
+     * If the write fails part-way, the sensors written before the failure keep their ids: those of
+     * the batch are not handed out again, and what was stored is read back so it is visible here too.
+     */
+    public List<Entry> register(List<Registration> registrations) {
+        if (registrations == null || registrations.isEmpty()) {
+            throw new IllegalArgumentException("At least one sensor is required");
+        }
+        if (registrations.size() > MAX_REGISTRATIONS) {
+            throw new IllegalArgumentException("At most " + MAX_REGISTRATIONS + " sensors per request");
+        }
+        List<Registration> valid = registrations.stream().map(SensorCatalog::validate).toList();
+
+        lock.writeLock().lock();
+        try {
+            List<Entry> updated = new ArrayList<>(valid.size());
+            Map<String, Integer> assigned = new HashMap<>();
+            int next = Math.max(entries.size(), reserved);
+            for (Registration r : valid) {
+                Integer id = ids.get(r.sensorId());
+                if (id == null) {
+                    id = assigned.get(r.sensorId());
+                }
+                if (id == null) {
+                    id = next++;
+                    assigned.put(r.sensorId(), id);
+                }
+                updated.add(new Entry(r.sensorId(), id, r.tags()));
+            }
+
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, COLLECTION);
+            for (Entry e : updated) {
+                bulk.upsert(Query.query(Criteria.where("_id").is(e.sensorId())),
+                        new Update().set("n", e.id()).set("tags", new Document(e.tags())));
+            }
+            try {
+                bulk.execute();
+            } catch (RuntimeException ex) {
+                reserved = next;
+                reloadAfterFailure(updated);
+                throw ex;
+            }
+
+            updated.forEach(this::apply);
+            return updated;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Optional<Entry> get(String sensorId) {
+        lock.readLock().lock();
+        try {
+            Integer id = ids.get(sensorId);
+            return id == null ? Optional.empty() : Optional.of(entries.get(id));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The sensorIds matching {@code expression}, in id order. If {@code sensorIds} is not empty
+     * only those of them that match are returned.
+     */
+    public List<String> select(TagExpression expression, List<String> sensorIds) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap matched = expression.evaluate(this::term, all);
+            if (sensorIds != null && !sensorIds.isEmpty()) {
+                RoaringBitmap requested = new RoaringBitmap();
+                for (String sensorId : sensorIds) {
+                    Integer id = ids.get(sensorId);
+                    if (id != null) {
+                        requested.add(id);
+                    }
+                }
+                matched = RoaringBitmap.and(matched, requested);
+            }
+            List<String> result = new ArrayList<>(matched.getCardinality());
+            matched.forEach((int id) -> result.add(entries.get(id).sensorId()));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return all.getCardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    long bitmapBytes() {
+        lock.readLock().lock();
+        try {
+            long total = all.serializedSizeInBytes();
+            for (RoaringBitmap b : index.values()) {
+                total += b.serializedSizeInBytes();
+            }
+            return total;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Caller holds the write lock; applies the entries of a failed batch that did get stored
+    private void reloadAfterFailure(List<Entry> batch) {
+        Query stored = Query.query(Criteria.where("_id").in(batch.stream().map(Entry::sensorId).toList()));
+        try {
+            mongoTemplate.find(stored, Document.class, COLLECTION).stream()
+                    .map(SensorCatalog::toEntry)
+                    .forEach(this::apply);
+        } catch (RuntimeException ex) {
+            log.warn("Could not read back a failed registration; its sensors are visible after a restart", ex);
+        }
+    }
+
+    // Caller holds the write lock
+    private void apply(Entry entry) {
+        Integer previous = ids.put(entry.sensorId(), entry.id());
+        if (previous != null) {
+            entries.get(previous).tags().forEach((name, value) -> {
+                RoaringBitmap b = index.get(name + ":" + value);
+                b.remove(previous);
+                if (b.isEmpty()) {
+                    index.remove(name + ":" + value);
+                }
+            });
+        }
+        while (entries.size() <= entry.id()) {
+            entries.add(null);
+        }
+        entries.set(entry.id(), entry);
+        all.add(entry.id());
+        entry.tags().forEach((name, value) ->
+                index.computeIfAbsent(name + ":" + value, k -> new RoaringBitmap()).add(entry.id()));
+    }
+
+    // Caller holds the read lock; a value nobody carries matches nothing
+    private RoaringBitmap term(String key) {
+        RoaringBitmap b = index.get(key);
+        return b != null ? b : new RoaringBitmap();
+    }
+
+    private static Entry toEntry(Document d) {
+        Document tags = d.get("tags", Document.class);
+        Map<String, String> values = new LinkedHashMap<>();
+        if (tags != null) {
+            tags.forEach((name, value) -> values.put(name, (String) value));
+        }
+        return new Entry(d.getString("_id"), d.getInteger("n"), Map.copyOf(values));
+    }
+
+    private static Registration validate(Registration r) {
+        if (r == null || r.sensorId() == null || r.sensorId().isBlank()) {
+            throw new IllegalArgumentException("sensorId is required");
+        }
+        Map<String, String> tags = new LinkedHashMap<>();
+        if (r.tags() != null) {
+            r.tags().forEach((name, value) -> {
+                if (!TAGS.contains(name)) {
+                    throw new IllegalArgumentException("Unknown tag '" + name + "' for sensor " + r.sensorId()
+                            + ". Allowed: " + String.join(", ", TAGS));
+                }
+                if (value == null || !TAG_VALUE.matcher(value).matches()) {
+                    throw new IllegalArgumentException("Tag " + name + " of sensor " + r.sensorId()
+                            + " must be letters, digits, '_', '.' or '-'");
+                }
+                tags.put(name, value);
+            });
+        }
+        return new Registration(r.sensorId(), Map.copyOf(tags));
+    }
+}
@@ -1,63 +1,354 @@
 package com.example.weatherapi;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.time.Instant;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
 
 /**
  * REST controller exposing sensor endpoints:
  * - POST /sensors/data : write sensor readings
+ * - POST /sensors/data/batch : write many sensor readings at once
+ * - POST /sensors/data (application/x-ndjson): stream readings line by line
  * - GET  /sensors/query: query aggregated stats
+ * - GET  /sensors/query?groupBy=sensor[,metric]: per-sensor stats, paged and streamed
+ * - GET  /sensors/series: query per-interval stats (streamed)
+ * - GET  /sensors/export: raw readings as CSV or NDJSON (streamed)
+ * - PUT  /sensors/catalog: register sensors and their tags
+ * - GET  /sensors/catalog/{sensorId}: a sensor's catalog entry
  */
 @RestController
 @RequestMapping("/sensors")
+@Profile("!" + ReactiveSensorController.PROFILE)
 public class SensorController {
 
+    static final String APPLICATION_NDJSON = "application/x-ndjson";
+
     private final SensorService service;
+    private final StreamingIngestService streamingIngest;
+    private final IngestBuffer ingestBuffer; // null unless sensors.ingest.async.enabled=true
+    private final ReadingExporter exporter;
+    private final SensorCatalog catalog;
+    private final ObjectMapper objectMapper;
 
-    public SensorController(SensorService service) {
+    public SensorController(SensorService service,
+                            StreamingIngestService streamingIngest,
+                            ObjectProvider<IngestBuffer> ingestBuffer,
+                            ReadingExporter exporter,
+                            SensorCatalog catalog,
+                            ObjectMapper objectMapper) {
         this.service = service;
+        this.streamingIngest = streamingIngest;
+        this.ingestBuffer = ingestBuffer.getIfAvailable();
+        this.exporter = exporter;
+        this.catalog = catalog;
+        this.objectMapper = objectMapper;
     }
 
     /**
      * Ingest a new sensor reading.
+     * In async mode the reading is queued and 202 Accepted is returned before it is written.
      * Example: POST /sensors/data
      */
     @PostMapping("/data")
     public ResponseEntity<SensorData> addSensorData(@Valid @RequestBody SensorDataRequest request) {
+        if (ingestBuffer != null) {
+            SensorData queued = ingestBuffer.submit(request);
+            return ResponseEntity.accepted().body(queued);
+        }
         SensorData saved = service.saveSensorData(request);
         return ResponseEntity.ok(saved);
     }
 
+    /**
+     * Ingest an array of sensor readings in one call.
+     * Each reading is validated on its own; rejected readings are reported by index.
+     * Example: POST /sensors/data/batch
+     */
+    @PostMapping("/data/batch")
+    public ResponseEntity<BatchIngestResult> addSensorDataBatch(@RequestBody List<SensorDataRequest> requests) {
+        BatchIngestResult result = service.saveSensorDataBatch(requests);
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Ingest newline-delimited JSON readings straight from the request stream.
+     * Readings are written in bulk chunks while the upload is still being read.
+     * Example: POST /sensors/data with Content-Type: application/x-ndjson
+     */
+    @PostMapping(value = "/data", consumes = APPLICATION_NDJSON)
+    public ResponseEntity<BatchIngestResult> addSensorDataStream(InputStream body) throws IOException {
+        BatchIngestResult result = streamingIngest.ingest(body);
+        return ResponseEntity.ok(result);
+    }
+
     /**
      * Query sensor data with filters and aggregation.
+     * stat may list several statistics (stat=min,max,avg); they are computed in one pass.
+     * Percentiles (stat=p50,p95,p99.9) are answered from merged quantile sketches.
+     * explain=true adds Mongo's explain output (plan, index, keys/docs examined) for each aggregation.
+     * tag selects the catalog sensors matching a tag expression (tag=region:eu AND model:x2).
      * Example: GET /sensors/query?sensorIds=1&metrics=temperature&stat=avg&from=...&to=...
      */
     @GetMapping("/query")
     public ResponseEntity<QueryResult> query(
             @RequestParam(required = false) List<String> sensorIds, // optional: which sensors
+            @RequestParam(required = false) String tag,             // optional: tag expression over the catalog
             @RequestParam(required = false) List<String> metrics,   // optional: which metrics
-            @RequestParam(defaultValue = "avg") String stat,        // aggregation (default avg)
+            @RequestParam(defaultValue = "avg") String stat,        // aggregation(s) (default avg)
             @RequestParam(required = false) Instant from,           // start of window
-            @RequestParam(required = false) Instant to              // end of window
+            @RequestParam(required = false) Instant to,             // end of window
+            @RequestParam(defaultValue = "false") boolean explain   // add the aggregations' explain output
     ) {
-        // Validate and normalize statistic param
-        Statistic statistic = Statistic.from(stat);
+        // Validate and normalize statistic param (comma list and percentiles allowed)
+        StatSelection selection = StatSelection.from(stat);
 
         // Validate and normalize metrics (null/empty = all)
-        List<String> normalizedMetrics = null;
-        if (metrics != null && !metrics.isEmpty()) {
-            normalizedMetrics = metrics.stream()
-                    .map(Metric::from)       // validate against enum
-                    .map(Metric::dbValue)    // normalize for DB storage/querying
-                    .toList();
-        }
+        List<String> normalizedMetrics = normalizeMetrics(metrics);
 
         // Delegate to service
-        QueryResult result = service.queryData(sensorIds, normalizedMetrics, statistic, from, to);
+        if (tag != null) {
+            return ResponseEntity.ok(service.queryByTag(tag, sensorIds, normalizedMetrics, selection, from, to, explain));
+        }
+        QueryResult result = explain
+                ? service.explainQuery(sensorIds, normalizedMetrics, selection, from, to)
+                : service.queryData(sensorIds, normalizedMetrics, selection, from, to);
         return ResponseEntity.ok(result);
     }
+
+    /**
+     * Query stats broken down per sensor (groupBy=sensor) or per sensor and metric (groupBy=sensor,metric).
+     * Returns at most limit rows; pass the returned "next" token as "after" to get the following page.
+     * Example: GET /sensors/query?groupBy=sensor&metrics=temperature&stat=max&limit=500&after=...
+     */
+    @GetMapping(value = "/query", params = "groupBy")
+    public ResponseEntity<StreamingResponseBody> queryBreakdown(
+            @RequestParam String groupBy,                           // sensor | sensor,metric
+            @RequestParam(required = false) List<String> sensorIds, // optional: which sensors
+            @RequestParam(required = false) List<String> metrics,   // optional: which metrics
+            @RequestParam(defaultValue = "avg") String stat,        // aggregation(s) (default avg)
+            @RequestParam(required = false) Instant from,           // start of window
+            @RequestParam(required = false) Instant to,             // end of window
+            @RequestParam(required = false) String after,           // continuation token from the previous page
+            @RequestParam(defaultValue = "1000") int limit,         // rows per page
+            WebRequest request
+    ) {
+        // Validate everything up front so errors still map to 400 before streaming starts
+        GroupBy dimension = GroupBy.from(groupBy);
+        List<Statistic> statistics = Statistic.listFrom(stat);
+        BreakdownResult result = service.queryBreakdown(
+                sensorIds, normalizeMetrics(metrics), statistics, dimension, from, to, after, limit);
+
+        closeOnCompletion(request, result.getRows());
+        StreamingResponseBody body = out -> writeBreakdown(result, out);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    /**
+     * Query per-bucket stats over the window, one aggregation pass.
+     * Points are written to the response as the database produces them.
+     * Example: GET /sensors/series?metrics=temperature&stat=max&interval=1h&from=...&to=...
+     */
+    @GetMapping("/series")
+    public ResponseEntity<StreamingResponseBody> series(
+            @RequestParam(required = false) List<String> sensorIds, // optional: which sensors
+            @RequestParam(required = false) List<String> metrics,   // optional: which metrics
+            @RequestParam(defaultValue = "avg") String stat,        // aggregation (default avg)
+            @RequestParam(defaultValue = "1h") String interval,     // bucket width: 5m, 1h, 1d, ...
+            @RequestParam(required = false) Instant from,           // start of window
+            @RequestParam(required = false) Instant to,             // end of window
+            WebRequest request
+    ) {
+        // Validate everything up front so errors still map to 400 before streaming starts
+        Statistic statistic = Statistic.from(stat);
+        SeriesInterval seriesInterval = SeriesInterval.from(interval);
+        SeriesResult result = service.querySeries(
+                sensorIds, normalizeMetrics(metrics), statistic, seriesInterval, from, to);
+
+        closeOnCompletion(request, result.getPoints());
+        StreamingResponseBody body = out -> writeSeries(result, out);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    /**
+     * Export the raw readings matching the filters, one line each, straight from the cursor.
+     * Example: GET /sensors/export?metrics=temperature&format=csv&from=...&to=...
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestParam(required = false) List<String> sensorIds, // optional: which sensors
+            @RequestParam(required = false) List<String> metrics,   // optional: which metrics
+            @RequestParam(defaultValue = "csv") String format,      // csv | ndjson
+            @RequestParam(required = false) Instant from,           // start of window
+            @RequestParam(required = false) Instant to,             // end of window
+            WebRequest request
+    ) {
+        // Validate everything up front so errors still map to 400 before streaming starts
+        ExportFormat exportFormat = ExportFormat.from(format);
+        Stream<SensorData> readings = exporter.readings(sensorIds, normalizeMetrics(metrics), from, to);
+        closeOnCompletion(request, readings);
+
+        StreamingResponseBody body = out -> exporter.write(exportFormat, readings, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.contentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"readings." + exportFormat.extension() + "\"")
+                .body(body);
+    }
+
+    /**
+     * Register sensors, or replace their tags (site, region, model).
+     * Example: PUT /sensors/catalog with [{"sensorId":"1","tags":{"region":"eu","model":"x2"}}]
+     */
+    @PutMapping("/catalog")
+    public ResponseEntity<List<SensorCatalog.Entry>> registerSensors(@RequestBody List<SensorCatalog.Registration> registrations) {
+        return ResponseEntity.ok(catalog.register(registrations));
+    }
+
+    /**
+     * A sensor's dense id and tags; 404 if it is not registered.
+     * Example: GET /sensors/catalog/1
+     */
+    @GetMapping("/catalog/{sensorId}")
+    public ResponseEntity<SensorCatalog.Entry> catalogEntry(@PathVariable String sensorId) {
+        return ResponseEntity.of(catalog.get(sensorId));
+    }
+
+    /**
+     * Closes a stream opened for a response body once the async request completes. The body closes
+     * it too, but it never runs if the request times out or fails before the body is started, and
+     * then the cursor and its query permit would stay open.
+     */
+    static void closeOnCompletion(WebRequest request, Stream<?> stream) {
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(stream, new CallableProcessingInterceptor() {
+            @Override
+            public <T> void afterCompletion(NativeWebRequest req, Callable<T> task) {
+                stream.close();
+            }
+        });
+    }
+
+    // Writes the header fields, then one point at a time from the open cursor
+    private void writeSeries(SeriesResult result, OutputStream out) throws IOException {
+        try (var points = result.getPoints();
+             JsonGenerator gen = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            gen.writeStartObject();
+            gen.writeObjectField("sensorIds", result.getSensorIds());
+            gen.writeObjectField("metrics", result.getMetrics());
+            gen.writeStringField("statistic", result.getStatistic().name().toLowerCase());
+            gen.writeStringField("interval", result.getInterval().toString());
+            gen.writeStringField("from", result.getFrom().toString());
+            gen.writeStringField("to", result.getTo().toString());
+            gen.writeArrayFieldStart("points");
+            for (Iterator<SeriesPoint> it = points.iterator(); it.hasNext(); ) {
+                SeriesPoint p = it.next();
+                gen.writeStartObject();
+                gen.writeStringField("metric", p.metric());
+                gen.writeStringField("start", p.start().toString());
+                gen.writeNumberField("value", p.aggregate().value(result.getStatistic()));
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+    }
+
+    // Writes the header, up to limit rows from the open cursor, then the token for the next page (or null)
+    private void writeBreakdown(BreakdownResult result, OutputStream out) throws IOException {
+        List<Statistic> statistics = result.getStatistics();
+        try (var rows = result.getRows();
+             JsonGenerator gen = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            gen.writeStartObject();
+            gen.writeStringField("groupBy", result.getGroupBy().label());
+            gen.writeObjectField("sensorIds", result.getSensorIds());
+            gen.writeObjectField("metrics", result.getMetrics());
+            gen.writeStringField("statistic", String.join(",", statistics.stream().map(s -> s.name().toLowerCase()).toList()));
+            gen.writeStringField("from", result.getFrom().toString());
+            gen.writeStringField("to", result.getTo().toString());
+            gen.writeArrayFieldStart("rows");
+            int written = 0;
+            BreakdownRow last = null;
+            boolean more = false;
+            for (Iterator<BreakdownRow> it = rows.iterator(); it.hasNext(); ) {
+                BreakdownRow row = it.next();
+                if (written == result.getLimit()) {
+                    more = true; // the extra row: there is a next page
+                    break;
+                }
+                writeBreakdownRow(gen, result.getGroupBy(), statistics, row);
+                last = row;
+                written++;
+            }
+            gen.writeEndArray();
+            gen.writeStringField("next", more ? last.position(result.getGroupBy()).encode() : null);
+            gen.writeEndObject();
+        }
+    }
+
+    // One stat: plain numbers; several: a stat -> value object, as in /sensors/query
+    static void writeBreakdownRow(JsonGenerator gen, GroupBy groupBy, List<Statistic> statistics,
+                                          BreakdownRow row) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("sensorId", row.sensorId());
+        if (groupBy == GroupBy.SENSOR_METRIC) {
+            var entry = row.byMetric().entrySet().iterator().next();
+            gen.writeStringField("metric", entry.getKey());
+            if (statistics.size() == 1) {
+                gen.writeNumberField("value", entry.getValue().value(statistics.get(0)));
+            } else {
+                gen.writeFieldName("stats");
+                writeStats(gen, statistics, entry.getValue());
+            }
+        } else {
+            gen.writeObjectFieldStart(statistics.size() == 1 ? "resultsByMetric" : "statsByMetric");
+            for (var entry : row.byMetric().entrySet()) {
+                if (statistics.size() == 1) {
+                    gen.writeNumberField(entry.getKey(), entry.getValue().value(statistics.get(0)));
+                } else {
+                    gen.writeFieldName(entry.getKey());
+                    writeStats(gen, statistics, entry.getValue());
+                }
+            }
+            gen.writeEndObject();
+        }
+        gen.writeEndObject();
+    }
+
+    private static void writeStats(JsonGenerator gen, List<Statistic> statistics, MetricAggregate agg) throws IOException {
+        gen.writeStartObject();
+        for (Statistic s : statistics) {
+            gen.writeNumberField(s.name().toLowerCase(), agg.value(s));
+        }
+        gen.writeEndObject();
+    }
+
+    // Validates metrics against the enum and normalizes them for querying (null/empty = all)
+    static List<String> normalizeMetrics(List<String> metrics) {
+        if (metrics == null || metrics.isEmpty()) {
+            return null;
+        }
+        return metrics.stream()
+                .map(Metric::from)       // validate against enum
+                .map(Metric::dbValue)    // normalize for DB storage/querying
+                .toList();
+    }
 }
@@ -1,7 +1,6 @@
 package com.example.weatherapi;
 
 import org.springframework.data.annotation.Id;
-import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.Instant;
@@ -10,11 +9,9 @@ import java.time.Instant;
  * MongoDB document representing a single sensor reading.
  * Stored in collection "sensor_data".
  *
- * A compound index on (sensorId, metric, timestamp)
- * supports efficient range queries and aggregations.
+ * Query indexes (one per query shape) are created by {@link ReadingIndexes}.
  */
 @Document(collection = "sensor_data")
-@CompoundIndex(name = "sensor_metric_time_idx", def = "{'sensorId': 1, 'metric': 1, 'timestamp': 1}")
 public class SensorData {
     @Id
     private String id;
@@ -24,6 +21,16 @@ public class SensorData {
     private double value;
     private Instant timestamp;
 
+    /** A reading built from stored fields, without an id. */
+    static SensorData of(String sensorId, String metric, double value, Instant timestamp) {
+        SensorData d = new SensorData();
+        d.setSensorId(sensorId);
+        d.setMetric(metric);
+        d.setValue(value);
+        d.setTimestamp(timestamp);
+        return d;
+    }
+
     // Getters & Setters
     public String getId() { return id; }
     public void setId(String id) { this.id = id; }
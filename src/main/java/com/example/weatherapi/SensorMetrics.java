@@ -0,0 +1,182 @@
+package com.example.weatherapi;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Timers and histograms for the query and ingest hot paths, so tail latency can be
+ * watched per query shape. HTTP endpoint latency (http.server.requests) and the Mongo
+ * driver's command and pool metrics (mongodb.driver.*) come from Spring Boot.
+ *
+ * Metrics:
+ * - sensors.query              service time of a query; for series, breakdowns and exports, until the stream is closed
+ * - sensors.query.aggregation  time in the aggregate or sketch source (cache hits included, bulkhead wait not)
+ * - sensors.query.documents    aggregation results read back per query (metrics, points, rows or readings)
+ * - sensors.ingest.write       one write round trip: a single save or one bulk chunk, listeners included
+ *
+ * Query meters are tagged with the query shape: query=aggregate|series|breakdown|export,
+ * statistic (its name, "percentile", "multi" for several, or "none" for exports), window=1d|7d|31d (the smallest
+ * that fits), sensorIds and metrics=true|false (filter given). sensors.query adds
+ * outcome=success|error, the aggregation meters source=partials|sketches. Ingest writes
+ * are tagged kind=single|bulk and layout.
+ */
+@Component
+public class SensorMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    public SensorMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /** Tags describing the shape of a query; every value comes from a small fixed set. */
+    static Tags shape(String query, String statistic, TimeRange window, List<String> sensorIds, List<String> metrics) {
+        return Tags.of(
+                "query", query,
+                "statistic", statistic,
+                "window", windowBucket(window),
+                "sensorIds", String.valueOf(sensorIds != null && !sensorIds.isEmpty()),
+                "metrics", String.valueOf(metrics != null && !metrics.isEmpty()));
+    }
+
+    static String statisticTag(StatSelection selection) {
+        if (selection.labels().size() > 1) {
+            return "multi";
+        }
+        return selection.hasPercentiles() ? "percentile" : selection.labels().get(0);
+    }
+
+    static String statisticTag(List<Statistic> statistics) {
+        return statistics.size() > 1 ? "multi" : statistics.get(0).name().toLowerCase();
+    }
+
+    static String windowBucket(TimeRange window) {
+        Duration length = Duration.between(window.from(), window.to());
+        if (length.compareTo(Duration.ofDays(1)) <= 0) {
+            return "1d";
+        }
+        return length.compareTo(Duration.ofDays(7)) <= 0 ? "7d" : "31d";
+    }
+
+    /** Runs a query and records its time, tagged with whether it threw. */
+    public <T> T timeQuery(Tags shape, Supplier<T> query) {
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            T result = query.get();
+            outcome = "success";
+            return result;
+        } finally {
+            queryTimer(shape, outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /** Runs one aggregate or sketch lookup and records its time and how many per-metric results it gave. */
+    public <V> Map<String, V> timeAggregation(Tags shape, String source, Supplier<Map<String, V>> aggregation) {
+        Tags tags = shape.and("source", source);
+        long start = System.nanoTime();
+        Map<String, V> results = aggregation.get();
+        Timer.builder("sensors.query.aggregation")
+                .tags(tags)
+                .description("Time spent in the aggregate or sketch source")
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        documents(tags).record(results.size());
+        return results;
+    }
+
+    /**
+     * Opens a streamed query and records it when the stream is closed: the time since the
+     * call, the elements read and whether reading them failed.
+     */
+    public <T> Stream<T> timeStream(Tags shape, Supplier<Stream<T>> open) {
+        long start = System.nanoTime();
+        Stream<T> stream;
+        try {
+            stream = open.get();
+        } catch (RuntimeException ex) {
+            queryTimer(shape, "error").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw ex;
+        }
+        CountingSpliterator<T> counting = new CountingSpliterator<>(stream.spliterator());
+        return StreamSupport.stream(counting, false)
+                .onClose(stream::close)
+                .onClose(() -> {
+                    queryTimer(shape, counting.failed ? "error" : "success")
+                            .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    documents(shape.and("source", "stream")).record(counting.count);
+                });
+    }
+
+    /** Runs one ingest write and records its time. */
+    public <T> T timeWrite(String kind, StorageLayout layout, Supplier<T> write) {
+        long start = System.nanoTime();
+        try {
+            return write.get();
+        } finally {
+            Timer.builder("sensors.ingest.write")
+                    .tags("kind", kind, "layout", layout.name().toLowerCase())
+                    .description("Time of one ingest write round trip")
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Timer queryTimer(Tags shape, String outcome) {
+        return Timer.builder("sensors.query")
+                .tags(shape.and("outcome", outcome))
+                .description("Service time of a sensor query")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private DistributionSummary documents(Tags tags) {
+        return DistributionSummary.builder("sensors.query.documents")
+                .tags(tags)
+                .description("Aggregation results read back per query")
+                .publishPercentileHistogram()
+                .maximumExpectedValue((double) SensorService.MAX_SERIES_BUCKETS * Metric.values().length)
+                .register(meterRegistry);
+    }
+
+    // Counts what is read from the cursor and notes whether reading failed; one reader at a time
+    private static final class CountingSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+        private final Spliterator<T> source;
+        long count;
+        boolean failed;
+
+        CountingSpliterator(Spliterator<T> source) {
+            super(source.estimateSize(), source.characteristics() & Spliterator.ORDERED);
+            this.source = source;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            try {
+                return source.tryAdvance(t -> {
+                    count++;
+                    action.accept(t);
+                });
+            } catch (RuntimeException ex) {
+                failed = true;
+                throw ex;
+            }
+        }
+    }
+}
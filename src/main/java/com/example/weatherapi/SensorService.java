@@ -1,16 +1,14 @@
 package com.example.weatherapi;
 
-import org.bson.Document;
-import org.springframework.data.mongodb.core.MongoTemplate;
-import org.springframework.data.mongodb.core.aggregation.*;
-import org.springframework.data.mongodb.core.query.Criteria;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
-
-import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
+import java.util.function.Supplier;
 
 /**
  * Service layer: handles persistence and aggregation queries for sensor data.
@@ -18,18 +16,149 @@ import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
 @Service
 public class SensorService {
 
+    static final long MAX_SERIES_BUCKETS = 10_000;
+    static final int MAX_BREAKDOWN_PAGE = 10_000;
+
     private final SensorDataRepository repository;
-    private final MongoTemplate mongoTemplate;
+    private final BulkSensorWriter bulkWriter;
+    private final StorageLayout layout;
+    private final AggregateSource aggregateSource;
+    private final SeriesSource seriesSource;
+    private final BreakdownSource breakdownSource;
+    private final PercentilePlanner percentiles;
+    private final QueryCache cache;
+    private final List<IngestListener> listeners;
+    private final MongoBulkheads.Bulkhead ingestBulkhead;
+    private final MongoBulkheads.Bulkhead queryBulkhead;
+    private final IngestGate gate;
+    private final SensorMetrics sensorMetrics;
+    private final QueryExplainer explainer;
+    private final SensorCatalog catalog;
+    private final TieredStorage tiers;
+    private final int maxBatchSize;
 
-    public SensorService(SensorDataRepository repository, MongoTemplate mongoTemplate) {
+    public SensorService(SensorDataRepository repository,
+                         BulkSensorWriter bulkWriter,
+                         StorageLayout layout,
+                         AggregateSource aggregateSource,
+                         @Qualifier(StorageConfig.SERIES_SOURCE) SeriesSource seriesSource,
+                         @Qualifier(StorageConfig.BREAKDOWN_SOURCE) BreakdownSource breakdownSource,
+                         PercentilePlanner percentiles,
+                         QueryCache cache,
+                         List<IngestListener> listeners,
+                         MongoBulkheads bulkheads,
+                         IngestGate gate,
+                         SensorMetrics sensorMetrics,
+                         QueryExplainer explainer,
+                         SensorCatalog catalog,
+                         TieredStorage tiers,
+                         @Value("${sensors.ingest.batch.max-size:10000}") int maxBatchSize) {
         this.repository = repository;
-        this.mongoTemplate = mongoTemplate;
+        this.bulkWriter = bulkWriter;
+        this.layout = layout;
+        this.aggregateSource = aggregateSource;
+        this.seriesSource = seriesSource;
+        this.breakdownSource = breakdownSource;
+        this.percentiles = percentiles;
+        this.cache = cache;
+        this.listeners = listeners;
+        this.ingestBulkhead = bulkheads.ingest();
+        this.queryBulkhead = bulkheads.query();
+        this.gate = gate;
+        this.sensorMetrics = sensorMetrics;
+        this.explainer = explainer;
+        this.catalog = catalog;
+        this.tiers = tiers;
+        this.maxBatchSize = maxBatchSize;
     }
 
     // Save a new sensor reading (metric is validated/normalized)
     public SensorData saveSensorData(SensorDataRequest request) {
+        SensorData data = toSensorData(request);
+        gate.checkFloor(data);
+        if (layout != StorageLayout.RAW || bulkWriter.isDeduplicating()) {
+            // Bucketed/compact readings are not SensorData documents, and an idempotent insert may
+            // not write at all, so no id is returned
+            Map<Integer, String> failures = bulkWriter.insert(List.of(data));
+            if (!failures.isEmpty()) {
+                throw new IllegalStateException("Failed to store reading: " + failures.get(0));
+            }
+            return data;
+        }
+        return ingestBulkhead.call(() -> gate.call(() -> sensorMetrics.timeWrite("single", layout, () -> {
+            gate.checkFloor(data);
+            SensorData saved = repository.save(data);
+            listeners.forEach(l -> l.onIngest(List.of(saved)));
+            return saved;
+        })));
+    }
+
+    // Save many readings at once; invalid readings are rejected individually
+    public BatchIngestResult saveSensorDataBatch(List<SensorDataRequest> requests) {
+        ValidatedBatch batch = ValidatedBatch.of(requests, maxBatchSize);
+        return batch.toResult(bulkWriter.insert(batch.valid()));
+    }
+
+    /**
+     * A batch after per-reading validation: the valid readings, the request index of each,
+     * and the readings already rejected.
+     */
+    record ValidatedBatch(int received, List<SensorData> valid, List<Integer> validIndexes,
+                          List<BatchIngestResult.Rejection> rejections) {
+
+        static ValidatedBatch of(List<SensorDataRequest> requests, int maxBatchSize) {
+            if (requests == null || requests.isEmpty()) {
+                throw new IllegalArgumentException("Batch must contain at least one reading.");
+            }
+            if (requests.size() > maxBatchSize) {
+                throw new IllegalArgumentException(
+                    "Batch must contain at most " + maxBatchSize + " readings.");
+            }
+
+            // Validate each reading; keep the request index of every valid one
+            List<BatchIngestResult.Rejection> rejections = new ArrayList<>();
+            List<SensorData> valid = new ArrayList<>(requests.size());
+            List<Integer> validIndexes = new ArrayList<>(requests.size());
+            for (int i = 0; i < requests.size(); i++) {
+                try {
+                    valid.add(toSensorData(requests.get(i)));
+                    validIndexes.add(i);
+                } catch (IllegalArgumentException ex) {
+                    rejections.add(new BatchIngestResult.Rejection(i, ex.getMessage()));
+                }
+            }
+            return new ValidatedBatch(requests.size(), valid, validIndexes, rejections);
+        }
+
+        // Write failures come back indexed into "valid"; map them to request positions
+        BatchIngestResult toResult(Map<Integer, String> writeFailures) {
+            List<BatchIngestResult.Rejection> all = new ArrayList<>(rejections);
+            writeFailures.forEach((i, error) ->
+                    all.add(new BatchIngestResult.Rejection(validIndexes.get(i), error)));
+            all.sort(Comparator.comparingLong(BatchIngestResult.Rejection::index));
+            return new BatchIngestResult(received, received - all.size(), all.size(), all);
+        }
+    }
+
+    /**
+     * Validates a request and maps it to a normalized document.
+     * Throws IllegalArgumentException describing the first problem found.
+     */
+    static SensorData toSensorData(SensorDataRequest request) {
+        if (request == null) {
+            throw new IllegalArgumentException("Reading is required");
+        }
+        if (request.getSensorId() == null || request.getSensorId().isBlank()) {
+            throw new IllegalArgumentException("sensorId is required");
+        }
         // Validate/normalize metric
         Metric metric = Metric.from(request.getMetric());
+        if (request.getValue() == null) {
+            throw new IllegalArgumentException("value is required");
+        }
+        if (request.getTimestamp() == null) {
+            throw new IllegalArgumentException("timestamp is required");
+        }
 
         SensorData data = new SensorData();
         data.setSensorId(request.getSensorId());
@@ -37,81 +166,270 @@ public class SensorService {
         data.setMetric(metric.dbValue());
         data.setValue(request.getValue());
         data.setTimestamp(request.getTimestamp());
-
-        return repository.save(data);
+        return data;
     }
 
-    // Query sensor data with filters and aggregation (min/max/sum/avg)
+    // Query sensor data with filters and aggregation (min/max/sum/avg/count)
     public QueryResult queryData(List<String> sensorIds,
                                  List<String> metrics,
                                  Statistic statistic,
                                  Instant from,
                                  Instant to) {
-        // Default date window: last 24 hours if none provided
-        if (from == null && to == null) {
-            to = Instant.now();
-            from = to.minus(Duration.ofDays(1));
-        } else if (from != null && to == null) {
-            to = from.plus(Duration.ofDays(1));
-        } else if (from == null) { // to != null
-            from = to.minus(Duration.ofDays(1));
-        }
+        return queryData(sensorIds, metrics, List.of(statistic), from, to);
+    }
 
-        // Validate window (1 day to 31 days)
-        long days = Duration.between(from, to).toDays();
-        if (days < 1 || days > 31) {
-            throw new IllegalArgumentException("Date range must be between 1 and 31 days.");
-        }
+    // Query several statistics at once; all of them come from the same per-metric partials (one $group)
+    public QueryResult queryData(List<String> sensorIds,
+                                 List<String> metrics,
+                                 List<Statistic> statistics,
+                                 Instant from,
+                                 Instant to) {
+        TimeRange window = resolveWindow(from, to, cache.openWindowEnd());
+        Tags shape = SensorMetrics.shape("aggregate", SensorMetrics.statisticTag(statistics), window, sensorIds, metrics);
 
-        // Build match criteria dynamically
-        List<Criteria> and = new ArrayList<>();
-        and.add(Criteria.where("timestamp").gte(from).lte(to));
-        if (sensorIds != null && !sensorIds.isEmpty()) {
-            and.add(Criteria.where("sensorId").in(sensorIds));
-        }
-        if (metrics != null && !metrics.isEmpty()) {
-            and.add(Criteria.where("metric").in(metrics));
+        // Partials come from raw readings, buckets or rollups depending on configuration
+        return timed(sensorIds, metrics, window, shape, () ->
+                toQueryResult(sensorIds, metrics, statistics, window, aggregate(sensorIds, metrics, window, shape)));
+    }
+
+    // Records the query's metrics and logs it if it was slow
+    private QueryResult timed(List<String> sensorIds, List<String> metrics, TimeRange window, Tags shape,
+                              Supplier<QueryResult> query) {
+        long start = System.nanoTime();
+        QueryResult result = sensorMetrics.timeQuery(shape, query);
+        explainer.checkSlow(sensorIds, metrics, window, System.nanoTime() - start);
+        return result;
+    }
+
+    // Cache hits take a permit too, but only for as long as the copy takes
+    private Map<String, MetricAggregate> aggregate(List<String> sensorIds, List<String> metrics,
+                                                   TimeRange window, Tags shape) {
+        return queryBulkhead.call(() -> sensorMetrics.timeAggregation(shape, "partials",
+                () -> aggregateSource.aggregate(sensorIds, metrics, window.from(), window.to())));
+    }
+
+    /**
+     * Derives the requested statistics from per-metric partials: a plain {@link QueryResult}
+     * for one statistic, a {@link MultiStatQueryResult} for several. Empty partials give an empty result.
+     */
+    static QueryResult toQueryResult(List<String> sensorIds,
+                                     List<String> metrics,
+                                     List<Statistic> statistics,
+                                     TimeRange window,
+                                     Map<String, MetricAggregate> partials) {
+        List<String> sensors = (sensorIds == null || sensorIds.isEmpty()) ? null : sensorIds;
+        List<String> queried = (metrics == null || metrics.isEmpty()) ? null : metrics;
+        Map<String, Double> resultsByMetric = new LinkedHashMap<>();
+        if (statistics.size() == 1) {
+            partials.forEach((metric, agg) -> resultsByMetric.put(metric, agg.value(statistics.get(0))));
+            return new QueryResult(sensors, queried, statistics.get(0).name().toLowerCase(),
+                    window.from(), window.to(), resultsByMetric);
         }
-        Criteria matchCriteria = new Criteria().andOperator(and.toArray(new Criteria[0]));
 
-        // Build aggregation
-        List<AggregationOperation> ops = new ArrayList<>();
-        ops.add(match(matchCriteria));
+        Map<String, Map<String, Double>> statsByMetric = new LinkedHashMap<>();
+        partials.forEach((metric, agg) -> {
+            Map<String, Double> stats = new LinkedHashMap<>();
+            for (Statistic s : statistics) {
+                stats.put(s.name().toLowerCase(), agg.value(s));
+            }
+            statsByMetric.put(metric, stats);
+            resultsByMetric.put(metric, agg.value(statistics.get(0)));
+        });
+        return new MultiStatQueryResult(sensors, queried,
+                statistics.stream().map(s -> s.name().toLowerCase()).toList(),
+                window.from(), window.to(),
+                resultsByMetric,
+                statsByMetric);
+    }
 
-        GroupOperation group = group("metric");
-        switch (statistic) {
-            case MIN: group = group.min("value").as("value"); break;
-            case MAX: group = group.max("value").as("value"); break;
-            case SUM: group = group.sum("value").as("value"); break;
-            case AVG: group = group.avg("value").as("value"); break;
+    // Query statistics and/or percentiles; percentiles come from merged quantile sketches
+    public QueryResult queryData(List<String> sensorIds,
+                                 List<String> metrics,
+                                 StatSelection selection,
+                                 Instant from,
+                                 Instant to) {
+        if (!selection.hasPercentiles()) {
+            return queryData(sensorIds, metrics, selection.statistics(), from, to);
         }
+        TimeRange window = resolveWindow(from, to, cache.openWindowEnd());
+        Tags shape = SensorMetrics.shape("aggregate", SensorMetrics.statisticTag(selection), window, sensorIds, metrics);
+        return timed(sensorIds, metrics, window, shape, () -> percentileResult(sensorIds, metrics, selection, window, shape));
+    }
 
-        ops.add(group);
-        ops.add(project("value")
-                .and("_id").as("metric")
-                .andExclude("_id"));
+    /**
+     * Runs the query, then explains the aggregations behind its plain statistics: winning plan,
+     * index, keys/docs examined and time, per aggregation. Each aggregation runs once more for this.
+     * Percentile sketches are not explained.
+     */
+    public QueryResult explainQuery(List<String> sensorIds,
+                                    List<String> metrics,
+                                    StatSelection selection,
+                                    Instant from,
+                                    Instant to) {
+        TimeRange window = resolveWindow(from, to, cache.openWindowEnd());
+        QueryResult result = queryData(sensorIds, metrics, selection, window.from(), window.to());
+        result.setExplain(selection.statistics().isEmpty() ? List.of() : explainer.explain(sensorIds, metrics, window));
+        return result;
+    }
+
+    /**
+     * Runs the query over the catalog sensors matching a tag expression (and among sensorIds, if
+     * given). A tag matching no sensor gives an empty result without querying: an empty sensorIds
+     * list would mean all sensors.
+     */
+    public QueryResult queryByTag(String tag,
+                                  List<String> sensorIds,
+                                  List<String> metrics,
+                                  StatSelection selection,
+                                  Instant from,
+                                  Instant to,
+                                  boolean explain) {
+        TagExpression expression = TagExpression.parse(tag);
+        TimeRange window = resolveWindow(from, to, cache.openWindowEnd());
+        List<String> matched = catalog.select(expression, sensorIds);
+        QueryResult result;
+        if (matched.isEmpty()) {
+            List<String> queried = (metrics == null || metrics.isEmpty()) ? null : metrics;
+            result = selection.labels().size() == 1
+                    ? new QueryResult(null, queried, selection.labels().get(0), window.from(), window.to(), Map.of())
+                    : new MultiStatQueryResult(null, queried, selection.labels(), window.from(), window.to(), Map.of(), Map.of());
+            if (explain) {
+                result.setExplain(List.of());
+            }
+        } else if (explain) {
+            result = explainQuery(matched, metrics, selection, window.from(), window.to());
+        } else {
+            result = queryData(matched, metrics, selection, window.from(), window.to());
+        }
+        result.setTag(tag, sensorIds, matched.size());
+        return result;
+    }
 
-        Aggregation agg = newAggregation(ops);
-        AggregationResults<Document> aggResults =
-                mongoTemplate.aggregate(agg, "sensor_data", Document.class);
+    private QueryResult percentileResult(List<String> sensorIds,
+                                         List<String> metrics,
+                                         StatSelection selection,
+                                         TimeRange window,
+                                         Tags shape) {
+        Map<String, MetricAggregate> partials = selection.statistics().isEmpty()
+                ? Map.of()
+                : aggregate(sensorIds, metrics, window, shape);
+        Map<String, QuantileSketch> sketches = queryBulkhead.call(() -> sensorMetrics.timeAggregation(shape, "sketches",
+                () -> percentiles.sketches(sensorIds, metrics, window)));
 
-        // Collect results
+        Set<String> seen = new LinkedHashSet<>(sketches.keySet());
+        seen.addAll(partials.keySet());
         Map<String, Double> resultsByMetric = new LinkedHashMap<>();
-        for (Document d : aggResults) {
-            String metric = d.getString("metric");
-            Number val = (Number) d.get("value");
-            if (metric != null && val != null) {
-                resultsByMetric.put(metric, val.doubleValue());
+        Map<String, Map<String, Double>> statsByMetric = new LinkedHashMap<>();
+        for (String metric : seen) {
+            Map<String, Double> stats = new LinkedHashMap<>();
+            for (String label : selection.labels()) {
+                Double q = selection.percentiles().get(label);
+                if (q != null) {
+                    QuantileSketch sketch = sketches.get(metric);
+                    stats.put(label, sketch == null ? null : sketch.quantile(q));
+                } else {
+                    MetricAggregate agg = partials.get(metric);
+                    stats.put(label, agg == null ? null : agg.value(Statistic.from(label)));
+                }
             }
+            statsByMetric.put(metric, stats);
+            resultsByMetric.put(metric, stats.get(selection.labels().get(0)));
+        }
+
+        List<String> sensors = (sensorIds == null || sensorIds.isEmpty()) ? null : sensorIds;
+        List<String> queried = (metrics == null || metrics.isEmpty()) ? null : metrics;
+        if (selection.labels().size() == 1) {
+            return new QueryResult(sensors, queried, selection.labels().get(0),
+                    window.from(), window.to(), resultsByMetric);
         }
+        return new MultiStatQueryResult(sensors, queried, selection.labels(),
+                window.from(), window.to(), resultsByMetric, statsByMetric);
+    }
+
+    // Query per-bucket values over the window; the points are streamed straight from the cursor
+    public SeriesResult querySeries(List<String> sensorIds,
+                                    List<String> metrics,
+                                    Statistic statistic,
+                                    SeriesInterval interval,
+                                    Instant from,
+                                    Instant to) {
+        TimeRange window = resolveWindow(from, to);
+        checkSeriesSize(window, interval);
+        tiers.requireHot(window, "Series");
+        Tags shape = SensorMetrics.shape("series", SensorMetrics.statisticTag(List.of(statistic)), window, sensorIds, metrics);
 
-        //Return empty result set with 200 OK 
-        return new QueryResult(
+        return new SeriesResult(
                 (sensorIds == null || sensorIds.isEmpty()) ? null : sensorIds,
                 (metrics == null || metrics.isEmpty()) ? null : metrics,
-                statistic.name().toLowerCase(),
-                from, to,
-                resultsByMetric // can be empty
-        );
+                statistic, interval,
+                window.from(), window.to(),
+                sensorMetrics.timeStream(shape,
+                        () -> queryBulkhead.stream(() -> seriesSource.series(sensorIds, metrics, window, interval))));
+    }
+
+    // Query one page of per-sensor results; rows are streamed straight from the cursor
+    public BreakdownResult queryBreakdown(List<String> sensorIds,
+                                          List<String> metrics,
+                                          List<Statistic> statistics,
+                                          GroupBy groupBy,
+                                          Instant from,
+                                          Instant to,
+                                          String continuation,
+                                          int limit) {
+        TimeRange window = resolveWindow(from, to);
+        checkPageLimit(limit);
+        tiers.requireHot(window, "Breakdowns");
+        ContinuationToken after = ContinuationToken.decode(continuation);
+        Tags shape = SensorMetrics.shape("breakdown", SensorMetrics.statisticTag(statistics), window, sensorIds, metrics);
+
+        // One extra row tells the caller whether there is a next page
+        return new BreakdownResult(groupBy,
+                (sensorIds == null || sensorIds.isEmpty()) ? null : sensorIds,
+                (metrics == null || metrics.isEmpty()) ? null : metrics,
+                statistics,
+                window.from(), window.to(),
+                limit,
+                sensorMetrics.timeStream(shape, () -> queryBulkhead.stream(
+                        () -> breakdownSource.breakdown(sensorIds, metrics, window, groupBy, after, limit + 1))));
+    }
+
+    // Bounds the response size before touching the database
+    static void checkSeriesSize(TimeRange window, SeriesInterval interval) {
+        long buckets = Duration.between(window.from(), window.to()).dividedBy(interval.span()) + 1;
+        if (buckets > MAX_SERIES_BUCKETS) {
+            throw new IllegalArgumentException("Interval " + interval + " gives " + buckets
+                + " buckets for this window; at most " + MAX_SERIES_BUCKETS + " are allowed.");
+        }
+    }
+
+    static void checkPageLimit(int limit) {
+        if (limit < 1 || limit > MAX_BREAKDOWN_PAGE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_BREAKDOWN_PAGE + ".");
+        }
+    }
+
+    // Applies the default window (24h) and validates its length (1 to 31 days)
+    static TimeRange resolveWindow(Instant from, Instant to) {
+        return resolveWindow(from, to, Instant.now());
+    }
+
+    // As above, with the end of the default window given (see QueryCache.openWindowEnd)
+    static TimeRange resolveWindow(Instant from, Instant to, Instant openEnd) {
+        // Default date window: last 24 hours if none provided
+        if (from == null && to == null) {
+            to = openEnd;
+            from = to.minus(Duration.ofDays(1));
+        } else if (from != null && to == null) {
+            to = from.plus(Duration.ofDays(1));
+        } else if (from == null) { // to != null
+            from = to.minus(Duration.ofDays(1));
+        }
+
+        // Validate window (1 day to 31 days)
+        long days = Duration.between(from, to).toDays();
+        if (days < 1 || days > 31) {
+            throw new IllegalArgumentException("Date range must be between 1 and 31 days.");
+        }
+        return new TimeRange(from, to);
     }
 }
@@ -0,0 +1,37 @@
+package com.example.weatherapi;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Bucket width for /sensors/series, parsed from "<n>m", "<n>h" or "<n>d" (e.g. 5m, 1h, 1d).
+ *
+ * Buckets are UTC and aligned the way $dateTrunc aligns them: 1h buckets start on the hour,
+ * 5m buckets on :00/:05/..., multi-unit bins are counted from 2000-01-01T00:00Z.
+ */
+public record SeriesInterval(int amount, String mongoUnit, Duration span) {
+
+    private static final Pattern FORMAT = Pattern.compile("(\\d{1,4})([mhd])");
+
+    public static SeriesInterval from(String raw) {
+        Matcher m = raw == null ? null : FORMAT.matcher(raw.trim().toLowerCase(Locale.ROOT));
+        if (m == null || !m.matches() || Integer.parseInt(m.group(1)) < 1) {
+            throw new IllegalArgumentException(
+                "Invalid interval: " + raw + ". Use a positive number followed by m, h or d (e.g. 5m, 1h, 1d)");
+        }
+        int amount = Integer.parseInt(m.group(1));
+        switch (m.group(2)) {
+            case "m": return new SeriesInterval(amount, "minute", Duration.ofMinutes(amount));
+            case "h": return new SeriesInterval(amount, "hour", Duration.ofHours(amount));
+            default:  return new SeriesInterval(amount, "day", Duration.ofDays(amount));
+        }
+    }
+
+    /** Label as accepted by {@link #from(String)}, e.g. "5m". */
+    @Override
+    public String toString() {
+        return amount + mongoUnit.substring(0, 1);
+    }
+}
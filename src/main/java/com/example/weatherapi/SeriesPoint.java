@@ -0,0 +1,40 @@
+package com.example.weatherapi;
+
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
+
+/**
+ * Partial aggregate of one metric over one series bucket starting at {@code start}.
+ */
+public record SeriesPoint(String metric, Instant start, MetricAggregate aggregate) {
+
+    /**
+     * Shared pipeline tail: groups {metric, start, value} rows per (metric, start) and orders them by time.
+     */
+    static List<AggregationOperation> groupStages(String metricField, String valueField) {
+        return List.of(
+            group(metricField, "start")
+                .count().as("count")
+                .sum(valueField).as("sum")
+                .min(valueField).as("min")
+                .max(valueField).as("max"),
+            sort(Sort.by("_id.start", "_id." + metricField)));
+    }
+
+    /** Reads a row produced by {@link #groupStages}; the caller decodes the metric id. */
+    static SeriesPoint of(Document d, String metric) {
+        Document id = d.get("_id", Document.class);
+        return new SeriesPoint(metric, id.get("start", Date.class).toInstant(), new MetricAggregate(
+            ((Number) d.get("count")).longValue(),
+            ((Number) d.get("sum")).doubleValue(),
+            ((Number) d.get("min")).doubleValue(),
+            ((Number) d.get("max")).doubleValue()));
+    }
+}
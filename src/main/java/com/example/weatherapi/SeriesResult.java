@@ -0,0 +1,39 @@
+package com.example.weatherapi;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Result of a time-series query. The header fields mirror {@link QueryResult};
+ * the points are an open cursor that is written out (and closed) as it is read.
+ */
+public class SeriesResult {
+    private final List<String> sensorIds; // sensors included in the query (null = all)
+    private final List<String> metrics;   // metrics included in the query (null = all)
+    private final Statistic statistic;    // value reported per bucket
+    private final SeriesInterval interval;
+    private final Instant from;
+    private final Instant to;
+    private final Stream<SeriesPoint> points;
+
+    public SeriesResult(List<String> sensorIds, List<String> metrics, Statistic statistic,
+                        SeriesInterval interval, Instant from, Instant to, Stream<SeriesPoint> points) {
+        this.sensorIds = sensorIds;
+        this.metrics = metrics;
+        this.statistic = statistic;
+        this.interval = interval;
+        this.from = from;
+        this.to = to;
+        this.points = points;
+    }
+
+    // Getters
+    public List<String> getSensorIds() { return sensorIds; }
+    public List<String> getMetrics() { return metrics; }
+    public Statistic getStatistic() { return statistic; }
+    public SeriesInterval getInterval() { return interval; }
+    public Instant getFrom() { return from; }
+    public Instant getTo() { return to; }
+    public Stream<SeriesPoint> getPoints() { return points; }
+}
@@ -0,0 +1,17 @@
+package com.example.weatherapi;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Something that can compute per-bucket partial aggregates over a window in one pass.
+ * Null/empty sensorIds or metrics mean "all".
+ */
+public interface SeriesSource {
+
+    /**
+     * Streams one point per (bucket, metric) that has readings in {@code window},
+     * ordered by bucket start then metric. Callers must close the stream.
+     */
+    Stream<SeriesPoint> series(List<String> sensorIds, List<String> metrics, TimeRange window, SeriesInterval interval);
+}
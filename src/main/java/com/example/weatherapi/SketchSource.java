@@ -0,0 +1,17 @@
+package com.example.weatherapi;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Something that can build per-metric quantile sketches over time ranges.
+ * Null/empty sensorIds or metrics mean "all".
+ */
+public interface SketchSource {
+
+    /**
+     * @return sketches keyed by metric; metrics without readings are absent
+     */
+    Map<String, QuantileSketch> sketches(List<String> sensorIds, List<String> metrics,
+                                         List<TimeRange> ranges, double relativeAccuracy);
+}
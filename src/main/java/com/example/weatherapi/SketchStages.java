@@ -0,0 +1,84 @@
+package com.example.weatherapi;
+
+import org.bson.Document;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pipeline pieces that build {@link QuantileSketch} bins inside Mongo, so only
+ * per-metric bin counts ever leave the server.
+ */
+final class SketchStages {
+
+    private SketchStages() { }
+
+    /**
+     * Bin key of {@code valueField}, computed the same way as {@link QuantileSketch#binKey(double)}:
+     * "p" + ceil(ln(v) / ln(gamma)) for positives, "n" + ... for negatives, "z" near zero.
+     */
+    static AggregationExpression binKeyOf(String valueField, double logGamma) {
+        String v = "$" + valueField;
+        return context -> new Document("$switch", new Document("branches", List.of(
+                new Document("case", new Document("$gt", List.of(v, QuantileSketch.MIN_INDEXABLE)))
+                    .append("then", prefixedIndex("p", v, logGamma)),
+                new Document("case", new Document("$lt", List.of(v, -QuantileSketch.MIN_INDEXABLE)))
+                    .append("then", prefixedIndex("n", new Document("$multiply", List.of(v, -1)), logGamma))))
+            .append("default", QuantileSketch.ZERO_KEY));
+    }
+
+    private static Document prefixedIndex(String prefix, Object magnitude, double logGamma) {
+        Document index = new Document("$ceil", new Document("$divide", List.of(new Document("$ln", magnitude), logGamma)));
+        return new Document("$concat", List.of(prefix, new Document("$toString", new Document("$toLong", index))));
+    }
+
+    /**
+     * Bins single readings ({metricField, valueField} per document) and merges them per metric,
+     * with the same output as {@link #mergeStages}.
+     */
+    static List<AggregationOperation> readingStages(String metricField, String valueField, double logGamma) {
+        AggregationExpression binKey = binKeyOf(valueField, logGamma);
+        List<AggregationOperation> ops = new ArrayList<>();
+        ops.add(context -> new Document("$project", new Document("_id", 0)
+            .append("metric", "$" + metricField)
+            .append("k", binKey.toDocument(context))
+            .append("n", new Document("$literal", 1))
+            .append("lo", "$" + valueField)
+            .append("hi", "$" + valueField)));
+        ops.addAll(mergeStages("metric"));
+        return ops;
+    }
+
+    /**
+     * Merges rows of {metric, k (bin key), n (count), lo, hi} into one document per metric:
+     * {_id: metric, bins: [{k, n}], min, max}.
+     */
+    static List<AggregationOperation> mergeStages(String metricField) {
+        return List.of(
+            context -> new Document("$group", new Document("_id",
+                    new Document("metric", "$" + metricField).append("k", "$k"))
+                .append("n", new Document("$sum", "$n"))
+                .append("min", new Document("$min", "$lo"))
+                .append("max", new Document("$max", "$hi"))),
+            context -> new Document("$group", new Document("_id", "$_id.metric")
+                .append("bins", new Document("$push", new Document("k", "$_id.k").append("n", "$n")))
+                .append("min", new Document("$min", "$min"))
+                .append("max", new Document("$max", "$max"))));
+    }
+
+    /** Reads one document produced by {@link #mergeStages}. */
+    static QuantileSketch read(Document d, double relativeAccuracy) {
+        QuantileSketch sketch = new QuantileSketch(relativeAccuracy);
+        for (Document bin : d.getList("bins", Document.class)) {
+            sketch.addBin(bin.getString("k"), ((Number) bin.get("n")).longValue());
+        }
+        Number min = (Number) d.get("min");
+        Number max = (Number) d.get("max");
+        if (min != null && max != null) {
+            sketch.includeBounds(min.doubleValue(), max.doubleValue());
+        }
+        return sketch;
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.weatherapi;
+
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * A Bloom filter over the keys added in the last window, built from generations.
+ *
+ * Keys go into the newest generation. Every window/slices the oldest generation is dropped and a
+ * new empty one started; slices + 1 generations are kept, so a key stays for at least one window
+ * and at most window + window/slices. Each generation is sized for its share of the expected keys
+ * at fpp / generations, so a lookup across all of them stays near the target false-positive rate.
+ *
+ * Keys are 64-bit hashes; bit positions come from double hashing. All methods lock the filter.
+ */
+final class SlidingBloomFilter {
+
+    private final long sliceMillis;
+    private final LongSupplier clock;
+    private final int bits;
+    private final int hashes;
+    private final long[][] generations;
+    private final int[] bitsSet;
+    private int newest;
+    private long nextRotation;
+
+    SlidingBloomFilter(long windowMillis, int slices, long expectedKeys, double fpp, LongSupplier clock) {
+        if (slices < 1 || windowMillis < slices) {
+            throw new IllegalArgumentException("Window must cover at least one millisecond per slice");
+        }
+        if (expectedKeys < 1 || !(fpp > 0 && fpp < 1)) {
+            throw new IllegalArgumentException("Expected keys must be positive and fpp in (0, 1)");
+        }
+        int count = slices + 1;
+        long perGeneration = Math.max(1, expectedKeys / slices);
+        double p = fpp / count;
+        long m = (long) Math.ceil(-perGeneration * Math.log(p) / (Math.log(2) * Math.log(2)));
+        // Whole longs, and int-addressable
+        this.bits = (int) Math.min((m + 63) & -64L, 1L << 30);
+        this.hashes = Math.max(1, (int) Math.round((double) bits / perGeneration * Math.log(2)));
+        this.sliceMillis = windowMillis / slices;
+        this.clock = clock;
+        this.generations = new long[count][bits >>> 6];
+        this.bitsSet = new int[count];
+        this.nextRotation = clock.getAsLong() + sliceMillis;
+    }
+
+    /** False if the key was certainly not added within the window. */
+    synchronized boolean mightContain(long key) {
+        rotate();
+        long h2 = step(key);
+        for (int g = 0; g < generations.length; g++) {
+            if (contains(generations[g], key, h2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    synchronized void put(long key) {
+        rotate();
+        long[] words = generations[newest];
+        long h2 = step(key);
+        long h = key;
+        for (int i = 0; i < hashes; i++, h += h2) {
+            int bit = (int) Long.remainderUnsigned(h, bits);
+            long mask = 1L << bit;
+            if ((words[bit >>> 6] & mask) == 0) {
+                words[bit >>> 6] |= mask;
+                bitsSet[newest]++;
+            }
+        }
+    }
+
+    /** Chance that a key not in the window is reported as present, from how full the generations are. */
+    synchronized double expectedFpp() {
+        rotate();
+        double none = 1;
+        for (int count : bitsSet) {
+            none *= 1 - Math.pow((double) count / bits, hashes);
+        }
+        return 1 - none;
+    }
+
+    long bytes() {
+        return (long) generations.length * (bits >>> 3);
+    }
+
+    int hashes() {
+        return hashes;
+    }
+
+    private boolean contains(long[] words, long key, long h2) {
+        long h = key;
+        for (int i = 0; i < hashes; i++, h += h2) {
+            int bit = (int) Long.remainderUnsigned(h, bits);
+            if ((words[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Drops the generations that have aged out; after a long pause that is all of them
+    private void rotate() {
+        long now = clock.getAsLong();
+        for (int n = 0; now >= nextRotation && n < generations.length; n++) {
+            newest = (newest + 1) % generations.length;
+            Arrays.fill(generations[newest], 0);
+            bitsSet[newest] = 0;
+            nextRotation += sliceMillis;
+        }
+        if (now >= nextRotation) {
+            nextRotation = now + sliceMillis;
+        }
+    }
+
+    // Second hash of the probe sequence; odd so it never degenerates to one bit
+    private static long step(long key) {
+        return mix(key) | 1;
+    }
+
+    /** SplitMix64 finalizer. */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
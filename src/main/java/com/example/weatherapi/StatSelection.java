@@ -0,0 +1,56 @@
+package com.example.weatherapi;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * The stat parameter of /sensors/query: plain statistics and percentiles (p50, p95, p99.9, ...).
+ *
+ * labels keeps request order with repeats dropped; statistics holds the plain ones and
+ * percentiles maps each percentile label to its quantile (p95 -> 0.95).
+ */
+public record StatSelection(List<String> labels, List<Statistic> statistics, Map<String, Double> percentiles) {
+
+    private static final Pattern PERCENTILE = Pattern.compile("p\\d{1,3}(\\.\\d+)?");
+
+    /** Parses a comma-separated list; null/blank defaults to avg. */
+    public static StatSelection from(String raw) {
+        if (raw == null || raw.isBlank()) {
+            return new StatSelection(List.of("avg"), List.of(Statistic.AVG), Map.of());
+        }
+        Set<String> labels = new LinkedHashSet<>();
+        Set<Statistic> statistics = new LinkedHashSet<>();
+        Map<String, Double> percentiles = new LinkedHashMap<>();
+        for (String part : raw.split(",")) {
+            String p = part.trim().toLowerCase();
+            if (PERCENTILE.matcher(p).matches()) {
+                BigDecimal pct = new BigDecimal(p.substring(1));
+                if (pct.compareTo(BigDecimal.valueOf(100)) > 0) {
+                    throw new IllegalArgumentException("Invalid percentile: " + part + ". Must be between p0 and p100");
+                }
+                String label = "p" + pct.stripTrailingZeros().toPlainString();
+                labels.add(label);
+                percentiles.put(label, pct.doubleValue() / 100);
+            } else {
+                Statistic s;
+                try {
+                    s = Statistic.from(part);
+                } catch (IllegalArgumentException ex) {
+                    throw new IllegalArgumentException("Invalid statistic: " + part
+                        + ". Must be one of: min, max, sum, avg, count, or a percentile such as p95");
+                }
+                labels.add(s.name().toLowerCase());
+                statistics.add(s);
+            }
+        }
+        return new StatSelection(new ArrayList<>(labels), List.copyOf(statistics), percentiles);
+    }
+
+    public boolean hasPercentiles() { return !percentiles.isEmpty(); }
+}
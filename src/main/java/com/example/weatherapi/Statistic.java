@@ -1,10 +1,14 @@
 package com.example.weatherapi;
 
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
 /**
  * Supported aggregation statistics for queries.
  */
 public enum Statistic {
-    MIN, MAX, SUM, AVG;
+    MIN, MAX, SUM, AVG, COUNT;
 
     public static Statistic from(String raw) {
         if (raw == null) return AVG;
@@ -14,8 +18,22 @@ public enum Statistic {
             case "sum": return SUM;
             case "avg":
             case "average": return AVG;
+            case "count": return COUNT;
             default: throw new IllegalArgumentException(
-                "Invalid statistic: " + raw + ". Must be one of: min, max, sum, avg");
+                "Invalid statistic: " + raw + ". Must be one of: min, max, sum, avg, count");
+        }
+    }
+
+    /**
+     * Parses a comma-separated list (e.g. "min,max,avg"), keeping request order and dropping repeats.
+     * Null/blank defaults to AVG.
+     */
+    public static List<Statistic> listFrom(String raw) {
+        if (raw == null || raw.isBlank()) return List.of(AVG);
+        Set<Statistic> stats = new LinkedHashSet<>();
+        for (String part : raw.split(",")) {
+            stats.add(from(part));
         }
+        return List.copyOf(stats);
     }
 }
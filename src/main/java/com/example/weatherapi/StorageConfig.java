@@ -0,0 +1,143 @@
+package com.example.weatherapi;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * Storage wiring shared by the ingest and query paths.
+ */
+@Configuration
+public class StorageConfig {
+
+    static final String SERIES_SOURCE = "querySeriesSource";
+    static final String BREAKDOWN_SOURCE = "queryBreakdownSource";
+    static final String EXPORT_SOURCE = "exportSource";
+
+    @Bean
+    public StorageLayout storageLayout(@Value("${sensors.storage.layout:raw}") String layout) {
+        return StorageLayout.from(layout);
+    }
+
+    /**
+     * The source queryData reads from: the configured layout, split into concurrent per-chunk
+     * aggregations, with archived days read from segments, fronted by rollups, with long sensorIds
+     * lists split into partitions, and fronted by the in-memory hot window and the result cache
+     * when those are enabled.
+     */
+    @Bean
+    @Primary
+    public AggregateSource queryAggregateSource(StorageLayout layout,
+                                                RawAggregateSource raw,
+                                                BucketStore buckets,
+                                                CompactReadingStore compact,
+                                                RollupStore rollups,
+                                                QueryCache cache,
+                                                QueryFanOut fanOut,
+                                                SegmentStore segments,
+                                                TieredStorage tiers,
+                                                HotWindow hotWindow,
+                                                @Value("${sensors.query.sensor-partition-size:1000}") int partitionSize) {
+        AggregateSource source = switch (layout) {
+            case BUCKETED -> buckets;
+            case COMPACT -> compact;
+            default -> raw;
+        };
+        if (fanOut.isEnabled()) {
+            source = new FanOutAggregateSource(source, fanOut);
+        }
+        if (tiers.isEnabled()) {
+            source = new TieredAggregateSource(source, segments, tiers::boundary);
+        }
+        if (rollups.isEnabled()) {
+            source = new RollupPlanner(rollups, source);
+        }
+        if (partitionSize > 0) {
+            source = new PartitionedAggregateSource(source, fanOut, partitionSize);
+        }
+        if (hotWindow.isEnabled()) {
+            source = new TieredAggregateSource(hotWindow, source, hotWindow::coveredFrom);
+        }
+        if (cache.isEnabled()) {
+            source = new CachingAggregateSource(source, cache);
+        }
+        return source;
+    }
+
+    /** True for the stores of the layouts themselves, as opposed to the decorators queryAggregateSource adds. */
+    static boolean isLayoutStore(AggregateSource source) {
+        return source instanceof RawAggregateSource || source instanceof BucketStore || source instanceof CompactReadingStore;
+    }
+
+    /**
+     * Percentile sketches: merged from the rollups when enabled, otherwise binned from the readings
+     * (of both tiers when tiering is enabled).
+     */
+    @Bean
+    public PercentilePlanner percentilePlanner(StorageLayout layout,
+                                               RawAggregateSource raw,
+                                               BucketStore buckets,
+                                               CompactReadingStore compact,
+                                               RollupStore rollups,
+                                               SegmentStore segments,
+                                               TieredStorage tiers) {
+        SketchSource readings = switch (layout) {
+            case BUCKETED -> buckets;
+            case COMPACT -> compact;
+            default -> raw;
+        };
+        if (tiers.isEnabled()) {
+            readings = TieredAggregateSource.sketches(readings, segments, tiers::boundary);
+        }
+        return new PercentilePlanner(rollups.isEnabled() ? rollups : null, readings, rollups.getSketchAccuracy());
+    }
+
+    /**
+     * The source /sensors/series reads from: always the stored readings of the configured layout.
+     * Injected by name; it is one of the store beans, so it cannot also be @Primary.
+     */
+    @Bean(SERIES_SOURCE)
+    public SeriesSource querySeriesSource(StorageLayout layout,
+                                          RawAggregateSource raw,
+                                          BucketStore buckets,
+                                          CompactReadingStore compact) {
+        return switch (layout) {
+            case BUCKETED -> buckets;
+            case COMPACT -> compact;
+            default -> raw;
+        };
+    }
+
+    /** The source per-sensor breakdowns read from; injected by name for the same reason as the series source. */
+    @Bean(BREAKDOWN_SOURCE)
+    public BreakdownSource queryBreakdownSource(StorageLayout layout,
+                                                RawAggregateSource raw,
+                                                BucketStore buckets,
+                                                CompactReadingStore compact) {
+        return switch (layout) {
+            case BUCKETED -> buckets;
+            case COMPACT -> compact;
+            default -> raw;
+        };
+    }
+
+    /**
+     * The source /sensors/export reads from, segments included when tiering is enabled; injected by
+     * name for the same reason as the series source.
+     */
+    @Bean(EXPORT_SOURCE)
+    public ExportSource exportSource(StorageLayout layout,
+                                     RawAggregateSource raw,
+                                     BucketStore buckets,
+                                     CompactReadingStore compact,
+                                     SegmentStore segments,
+                                     TieredStorage tiers) {
+        ExportSource source = switch (layout) {
+            case BUCKETED -> buckets;
+            case COMPACT -> compact;
+            default -> raw;
+        };
+        return tiers.isEnabled() ? TieredAggregateSource.export(source, segments, tiers::boundary) : source;
+    }
+}
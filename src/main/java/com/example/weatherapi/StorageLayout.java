@@ -0,0 +1,26 @@
+package com.example.weatherapi;
+
+import java.util.Locale;
+
+/**
+ * How readings are persisted in Mongo (sensors.storage.layout).
+ */
+public enum StorageLayout {
+    /** One document per reading in "sensor_data" (default). */
+    RAW,
+    /** One document per (sensorId, metric, hour) in "sensor_buckets"; see {@link BucketStore}. */
+    BUCKETED,
+    /** One short-field document per reading in "sensor_readings"; see {@link CompactReadingStore}. */
+    COMPACT;
+
+    public static StorageLayout from(String raw) {
+        if (raw == null || raw.isBlank()) return RAW;
+        switch (raw.trim().toLowerCase(Locale.ROOT)) {
+            case "raw":      return RAW;
+            case "bucketed": return BUCKETED;
+            case "compact":  return COMPACT;
+            default: throw new IllegalArgumentException(
+                "Invalid storage layout: " + raw + ". Must be one of: raw, bucketed, compact");
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.weatherapi;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Streaming NDJSON ingest: one reading per line, parsed and written while the body is still arriving.
+ *
+ * At most two chunks are held in memory: the one being filled from the request
+ * and the one being written to Mongo. Heap use therefore stays flat no matter
+ * how large the upload is, and a line is never held beyond max-line-length characters.
+ */
+@Service
+public class StreamingIngestService {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamingIngestService.class);
+
+    // Bulk writes are I/O-bound and at most one is in flight per upload
+    private static final ExecutorService WRITE_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final ObjectReader readingReader;
+    private final BulkSensorWriter bulkWriter;
+    private final int maxReportedRejections;
+    private final int maxLineLength;
+
+    public StreamingIngestService(ObjectMapper objectMapper,
+                                  BulkSensorWriter bulkWriter,
+                                  @Value("${sensors.ingest.stream.max-reported-rejections:1000}") int maxReportedRejections,
+                                  @Value("${sensors.ingest.stream.max-line-length:8192}") int maxLineLength) {
+        if (maxLineLength < 1) {
+            throw new IllegalArgumentException("sensors.ingest.stream.max-line-length must be positive");
+        }
+        this.readingReader = objectMapper.readerFor(SensorDataRequest.class);
+        this.bulkWriter = bulkWriter;
+        this.maxReportedRejections = maxReportedRejections;
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * Reads NDJSON readings from {@code body} and writes them in chunks of the bulk writer's size.
+     * Blank lines are skipped; reading indexes count only non-blank lines. A line longer than
+     * max-line-length is rejected without being read into memory.
+     */
+    public BatchIngestResult ingest(InputStream body) throws IOException {
+        Tally tally = new Tally(maxReportedRejections);
+        LineReader reader = new LineReader(new InputStreamReader(body, StandardCharsets.UTF_8), maxLineLength);
+
+        List<SensorData> chunk = new ArrayList<>(bulkWriter.getChunkSize());
+        List<Long> chunkIndexes = new ArrayList<>(bulkWriter.getChunkSize());
+        PendingWrite inFlight = null;
+        long index = 0;
+
+        String line;
+        try {
+            while ((line = reader.next()) != null) {
+                if (reader.oversized()) {
+                    tally.reject(index, "Reading is longer than " + maxLineLength + " characters");
+                } else if (line.isBlank()) {
+                    continue;
+                } else {
+                    try {
+                        chunk.add(SensorService.toSensorData(readingReader.readValue(line)));
+                        chunkIndexes.add(index);
+                    } catch (JsonProcessingException ex) {
+                        tally.reject(index, "Malformed reading: " + ex.getOriginalMessage());
+                    } catch (IllegalArgumentException ex) {
+                        tally.reject(index, ex.getMessage());
+                    }
+                }
+                index++;
+
+                if (chunk.size() == bulkWriter.getChunkSize()) {
+                    // Wait for the previous write before starting the next, so only one is in flight
+                    await(inFlight, tally);
+                    inFlight = submit(chunk, chunkIndexes);
+                    chunk = new ArrayList<>(bulkWriter.getChunkSize());
+                    chunkIndexes = new ArrayList<>(bulkWriter.getChunkSize());
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            settle(inFlight, index, ex);
+            throw ex;
+        }
+
+        await(inFlight, tally);
+        if (!chunk.isEmpty()) {
+            await(submit(chunk, chunkIndexes), tally);
+        }
+        return tally.toResult(index);
+    }
+
+    private PendingWrite submit(List<SensorData> chunk, List<Long> chunkIndexes) {
+        return new PendingWrite(
+                CompletableFuture.supplyAsync(() -> bulkWriter.insert(chunk), WRITE_EXECUTOR),
+                chunk.size(),
+                chunkIndexes);
+    }
+
+    // Blocks until the write completes and records its outcome on the calling thread
+    private static void await(PendingWrite write, Tally tally) {
+        if (write == null) {
+            return;
+        }
+        Map<Integer, String> failures;
+        try {
+            failures = write.result().join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+        tally.accept(write.size() - failures.size());
+        failures.forEach((i, error) -> tally.reject(write.indexes().get(i), error));
+    }
+
+    // The upload failed mid-way: waits for the chunk being written, so nothing is written after the error response
+    private static void settle(PendingWrite write, long received, Exception failure) {
+        if (write == null) {
+            return;
+        }
+        try {
+            Map<Integer, String> failures = write.result().join();
+            log.warn("NDJSON upload failed after {} readings; the chunk being written stored {} of {}",
+                    received, write.size() - failures.size(), write.size(), failure);
+        } catch (CompletionException ex) {
+            if (ex.getCause() != failure) {
+                failure.addSuppressed(ex.getCause());
+            }
+        }
+    }
+
+    private record PendingWrite(CompletableFuture<Map<Integer, String>> result, int size, List<Long> indexes) { }
+
+    /**
+     * Splits a character stream into lines, keeping at most maxLength characters of each; the rest
+     * of a longer line is skipped and the line reported as oversized.
+     */
+    static final class LineReader {
+        private final Reader in;
+        private final int maxLength;
+        private final char[] buffer = new char[8192];
+        private final StringBuilder line = new StringBuilder();
+        private int pos;
+        private int end;
+        private boolean oversized;
+
+        LineReader(Reader in, int maxLength) {
+            this.in = in;
+            this.maxLength = maxLength;
+        }
+
+        /** The next line without its terminator, or null at the end of the input. */
+        String next() throws IOException {
+            line.setLength(0);
+            oversized = false;
+            while (true) {
+                if (pos == end) {
+                    end = Math.max(in.read(buffer), 0);
+                    pos = 0;
+                    if (end == 0) {
+                        return line.isEmpty() && !oversized ? null : line.toString();
+                    }
+                }
+                int start = pos;
+                while (pos < end && buffer[pos] != '\n') {
+                    pos++;
+                }
+                int length = pos - start;
+                if (length > maxLength - line.length()) {
+                    oversized = true;
+                    length = maxLength - line.length();
+                }
+                line.append(buffer, start, length);
+                if (pos < end) {
+                    pos++;
+                    if (!line.isEmpty() && line.charAt(line.length() - 1) == '\r') {
+                        line.setLength(line.length() - 1);
+                    }
+                    return line.toString();
+                }
+            }
+        }
+
+        /** True if the last line returned was cut at maxLength. */
+        boolean oversized() { return oversized; }
+    }
+
+    /**
+     * Running counts for one upload; only the first N rejections are kept for the response.
+     */
+    static final class Tally {
+        private final int maxReported;
+        private final List<BatchIngestResult.Rejection> rejections = new ArrayList<>();
+        private long accepted;
+        private long rejected;
+
+        Tally(int maxReported) {
+            this.maxReported = maxReported;
+        }
+
+        void accept(long n) {
+            accepted += n;
+        }
+
+        void reject(long index, String error) {
+            rejected++;
+            if (rejections.size() < maxReported) {
+                rejections.add(new BatchIngestResult.Rejection(index, error));
+            }
+        }
+
+        BatchIngestResult toResult(long received) {
+            rejections.sort(Comparator.comparingLong(BatchIngestResult.Rejection::index));
+            return new BatchIngestResult(received, accepted, rejected, rejections);
+        }
+    }
+}
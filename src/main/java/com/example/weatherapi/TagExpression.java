@@ -0,0 +1,142 @@
+package com.example.weatherapi;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A boolean expression over catalog tags, e.g. {@code region:eu AND (model:x2 OR model:x3) AND NOT site:lab}.
+ *
+ * Terms are {@code name:value} with name one of {@link SensorCatalog#TAGS}. Operators are AND, OR and
+ * NOT (any case) with the usual precedence NOT > AND > OR, and parentheses. Evaluated over the
+ * catalog's bitmaps, so it costs a few bitmap operations regardless of how many sensors match.
+ */
+public sealed interface TagExpression {
+
+    /** Sensors (dense catalog ids) matching this expression; {@code all} is the universe for NOT. */
+    RoaringBitmap evaluate(Function<String, RoaringBitmap> term, RoaringBitmap all);
+
+    record Term(String name, String value) implements TagExpression {
+        public String key() {
+            return name + ":" + value;
+        }
+
+        @Override
+        public RoaringBitmap evaluate(Function<String, RoaringBitmap> term, RoaringBitmap all) {
+            return term.apply(key());
+        }
+    }
+
+    record And(TagExpression left, TagExpression right) implements TagExpression {
+        @Override
+        public RoaringBitmap evaluate(Function<String, RoaringBitmap> term, RoaringBitmap all) {
+            return RoaringBitmap.and(left.evaluate(term, all), right.evaluate(term, all));
+        }
+    }
+
+    record Or(TagExpression left, TagExpression right) implements TagExpression {
+        @Override
+        public RoaringBitmap evaluate(Function<String, RoaringBitmap> term, RoaringBitmap all) {
+            return RoaringBitmap.or(left.evaluate(term, all), right.evaluate(term, all));
+        }
+    }
+
+    record Not(TagExpression operand) implements TagExpression {
+        @Override
+        public RoaringBitmap evaluate(Function<String, RoaringBitmap> term, RoaringBitmap all) {
+            return RoaringBitmap.andNot(all, operand.evaluate(term, all));
+        }
+    }
+
+    /** Parses an expression; throws IllegalArgumentException (400) with the position of the problem. */
+    static TagExpression parse(String raw) {
+        if (raw == null || raw.isBlank()) {
+            throw new IllegalArgumentException("Tag expression is empty");
+        }
+        Parser parser = new Parser(raw);
+        TagExpression expr = parser.or();
+        if (parser.pos < parser.tokens.size()) {
+            throw parser.error("Unexpected '" + parser.tokens.get(parser.pos) + "'");
+        }
+        return expr;
+    }
+
+    /** Recursive descent over whitespace/parenthesis-separated tokens. */
+    final class Parser {
+        private static final Pattern TOKEN = Pattern.compile("\\s*(\\(|\\)|[^\\s()]+)");
+        private static final Pattern TERM = Pattern.compile("([A-Za-z]+):([A-Za-z0-9_.\\-]+)");
+
+        private final String raw;
+        private final List<String> tokens = new ArrayList<>();
+        private int pos;
+
+        private Parser(String raw) {
+            this.raw = raw;
+            Matcher m = TOKEN.matcher(raw);
+            while (m.lookingAt()) {
+                tokens.add(m.group(1));
+                m.region(m.end(), raw.length());
+            }
+        }
+
+        private TagExpression or() {
+            TagExpression left = and();
+            while (accept("OR")) {
+                left = new Or(left, and());
+            }
+            return left;
+        }
+
+        private TagExpression and() {
+            TagExpression left = unary();
+            while (accept("AND")) {
+                left = new And(left, unary());
+            }
+            return left;
+        }
+
+        private TagExpression unary() {
+            if (accept("NOT")) {
+                return new Not(unary());
+            }
+            if (accept("(")) {
+                TagExpression inner = or();
+                if (!accept(")")) {
+                    throw error("Missing ')'");
+                }
+                return inner;
+            }
+            if (pos == tokens.size()) {
+                throw error("Expected a name:value term");
+            }
+            String token = tokens.get(pos);
+            Matcher m = TERM.matcher(token);
+            if (!m.matches()) {
+                throw error("Expected a name:value term but got '" + token + "'");
+            }
+            String name = m.group(1).toLowerCase(Locale.ROOT);
+            if (!SensorCatalog.TAGS.contains(name)) {
+                throw error("Unknown tag '" + m.group(1) + "'. Allowed: " + String.join(", ", SensorCatalog.TAGS));
+            }
+            pos++;
+            return new Term(name, m.group(2));
+        }
+
+        private boolean accept(String token) {
+            if (pos < tokens.size() && tokens.get(pos).equalsIgnoreCase(token)) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at token " + (pos + 1) + " of tag expression '" + raw + "'");
+        }
+    }
+}
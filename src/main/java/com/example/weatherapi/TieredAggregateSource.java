@@ -0,0 +1,134 @@
+package com.example.weatherapi;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Splits each range at a tier boundary: the part before it goes to the cold source, the rest to the
+ * hot one. When a window straddles the boundary both run at once, the cold part on a virtual thread,
+ * and their partials are merged. Used for Mongo over segment files (see {@link TieredStorage}, boundary
+ * null until a day is archived) and for the in-memory {@link HotWindow} over Mongo.
+ *
+ * {@link #export} and {@link #sketches} split exports and percentile sketches the same way.
+ */
+public class TieredAggregateSource implements AggregateSource {
+
+    private static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final AggregateSource hot;
+    private final AggregateSource cold;
+    private final Supplier<Instant> boundary;
+
+    public TieredAggregateSource(AggregateSource hot, AggregateSource cold, Supplier<Instant> boundary) {
+        this.hot = hot;
+        this.cold = cold;
+        this.boundary = boundary;
+    }
+
+    @Override
+    public Map<String, MetricAggregate> aggregate(List<String> sensorIds,
+                                                  List<String> metrics,
+                                                  List<TimeRange> ranges) {
+        List<TimeRange> coldRanges = new ArrayList<>();
+        List<TimeRange> hotRanges = new ArrayList<>();
+        split(ranges, boundary.get(), coldRanges, hotRanges);
+        if (coldRanges.isEmpty()) {
+            return hot.aggregate(sensorIds, metrics, hotRanges);
+        }
+        if (hotRanges.isEmpty()) {
+            return cold.aggregate(sensorIds, metrics, coldRanges);
+        }
+
+        CompletableFuture<Map<String, MetricAggregate>> coldPartials =
+            CompletableFuture.supplyAsync(() -> cold.aggregate(sensorIds, metrics, coldRanges), EXECUTOR);
+        Map<String, MetricAggregate> results = new LinkedHashMap<>(hot.aggregate(sensorIds, metrics, hotRanges));
+        try {
+            coldPartials.join().forEach((metric, agg) ->
+                results.computeIfAbsent(metric, m -> new MetricAggregate()).merge(agg));
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+        return results;
+    }
+
+    /** The Mongo aggregations of both parts; segment and in-memory parts have none. */
+    @Override
+    public List<PlannedAggregation> plan(List<String> sensorIds, List<String> metrics, List<TimeRange> ranges) {
+        List<TimeRange> coldRanges = new ArrayList<>();
+        List<TimeRange> hotRanges = new ArrayList<>();
+        split(ranges, boundary.get(), coldRanges, hotRanges);
+        List<PlannedAggregation> planned = new ArrayList<>();
+        if (!coldRanges.isEmpty()) {
+            planned.addAll(cold.plan(sensorIds, metrics, coldRanges));
+        }
+        if (!hotRanges.isEmpty()) {
+            planned.addAll(hot.plan(sensorIds, metrics, hotRanges));
+        }
+        return planned;
+    }
+
+    /**
+     * An export that streams the hot part of the window, then the cold part. The Mongo cursor goes
+     * first so it is never left idle while segments are read.
+     */
+    static ExportSource export(ExportSource hot, ExportSource cold, Supplier<Instant> boundary) {
+        return (sensorIds, metrics, window, batchSize) -> {
+            List<TimeRange> coldRanges = new ArrayList<>();
+            List<TimeRange> hotRanges = new ArrayList<>();
+            split(List.of(window), boundary.get(), coldRanges, hotRanges);
+            if (coldRanges.isEmpty()) {
+                return hot.export(sensorIds, metrics, window, batchSize);
+            }
+            Stream<SensorData> coldPart = cold.export(sensorIds, metrics, coldRanges.get(0), batchSize);
+            if (hotRanges.isEmpty()) {
+                return coldPart;
+            }
+            // Closing the concatenation closes both
+            return Stream.concat(hot.export(sensorIds, metrics, hotRanges.get(0), batchSize), coldPart);
+        };
+    }
+
+    /** Percentile sketches of both parts, merged. */
+    static SketchSource sketches(SketchSource hot, SketchSource cold, Supplier<Instant> boundary) {
+        return (sensorIds, metrics, ranges, relativeAccuracy) -> {
+            List<TimeRange> coldRanges = new ArrayList<>();
+            List<TimeRange> hotRanges = new ArrayList<>();
+            split(ranges, boundary.get(), coldRanges, hotRanges);
+            Map<String, QuantileSketch> results = new LinkedHashMap<>();
+            if (!hotRanges.isEmpty()) {
+                results.putAll(hot.sketches(sensorIds, metrics, hotRanges, relativeAccuracy));
+            }
+            if (!coldRanges.isEmpty()) {
+                cold.sketches(sensorIds, metrics, coldRanges, relativeAccuracy)
+                    .forEach((metric, sketch) -> results.merge(metric, sketch, QuantileSketch::merge));
+            }
+            return results;
+        };
+    }
+
+    // Ranges are inclusive, so the cold part ends 1ms before the boundary
+    static void split(List<TimeRange> ranges, Instant boundary, List<TimeRange> coldRanges, List<TimeRange> hotRanges) {
+        for (TimeRange range : ranges) {
+            if (boundary == null || !range.from().isBefore(boundary)) {
+                hotRanges.add(range);
+            } else if (range.to().isBefore(boundary)) {
+                coldRanges.add(range);
+            } else {
+                coldRanges.add(new TimeRange(range.from(), boundary.minusMillis(1)));
+                hotRanges.add(new TimeRange(boundary, range.to()));
+            }
+        }
+    }
+}
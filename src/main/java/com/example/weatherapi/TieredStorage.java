@@ -0,0 +1,309 @@
+package com.example.weatherapi;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hot/cold tiering (sensors.tiering.enabled=true): readings older than hot-age move from the
+ * per-reading collection into day segments (see {@link SegmentStore}).
+ *
+ * Every archive-interval a pass compacts each whole UTC day older than hot-age and then moves the
+ * boundary past it: reads take [.., boundary) from segments and [boundary, ..) from Mongo. Before
+ * compacting, the pass raises the {@link IngestGate} floor to the end of those days, so late readings
+ * for them are refused from then on and each segment holds everything Mongo has for its day. Archived
+ * readings are deleted from Mongo at the next pass, so queries that were already running when the
+ * boundary moved still find them, and only for days whose segment holds as many readings as Mongo
+ * (a day that gained readings is compacted again first). The boundary is the day after the newest
+ * segment, so it survives restarts.
+ *
+ * Segments are local files, so tiering is single-instance: the archiver holds a lease in
+ * "tiering_lease" for its host and segment directory plus a lock on the directory, and startup fails
+ * while another instance holds either. Other instances writing the same database must not run.
+ */
+@Component
+public class TieredStorage implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(TieredStorage.class);
+
+    static final String LEASE_COLLECTION = "tiering_lease";
+    static final String LEASE_ID = "archiver";
+    private static final String LOCK_FILE = ".lock";
+
+    private final SegmentStore segments;
+    private final MongoTemplate mongoTemplate;
+    private final ReadingIndexes indexes;
+    private final IngestGate gate;
+    private final boolean enabled;
+    private final Duration hotAge;
+    private final Duration archiveInterval;
+    private final Duration leaseTtl;
+    private final String owner;
+
+    private volatile Instant boundary; // null until a day has been archived
+    private ScheduledExecutorService archiver;
+    private FileChannel lockChannel;
+    private FileLock lock;
+
+    public TieredStorage(SegmentStore segments,
+                         MongoTemplate mongoTemplate,
+                         ReadingIndexes indexes,
+                         IngestGate gate,
+                         RollupStore rollups,
+                         @Value("${sensors.tiering.enabled:false}") boolean enabled,
+                         @Value("${sensors.tiering.hot-age:7d}") Duration hotAge,
+                         @Value("${sensors.tiering.archive-interval:1h}") Duration archiveInterval,
+                         @Value("${sensors.tiering.lease-ttl:1m}") Duration leaseTtl) {
+        if (enabled && indexes.fields() == null) {
+            throw new IllegalStateException("sensors.tiering needs the raw or compact storage layout");
+        }
+        if (enabled && rollups.isEnabled() && rollups.isRebuildOnStartup()) {
+            throw new IllegalStateException("sensors.rollups.rebuild-on-startup recomputes rollups from Mongo only "
+                    + "and would drop those of archived days; it cannot be combined with sensors.tiering");
+        }
+        if (hotAge.compareTo(Duration.ofDays(1)) < 0) {
+            throw new IllegalArgumentException("sensors.tiering.hot-age must be at least 1d");
+        }
+        if (archiveInterval.toMillis() < 1) {
+            throw new IllegalArgumentException("sensors.tiering.archive-interval must be positive");
+        }
+        if (leaseTtl.compareTo(Duration.ofSeconds(3)) < 0) {
+            throw new IllegalArgumentException("sensors.tiering.lease-ttl must be at least 3s");
+        }
+        this.segments = segments;
+        this.mongoTemplate = mongoTemplate;
+        this.indexes = indexes;
+        this.gate = gate;
+        this.enabled = enabled;
+        this.hotAge = hotAge;
+        this.archiveInterval = archiveInterval;
+        this.leaseTtl = leaseTtl;
+        this.owner = hostName() + ":" + segments.dir().toAbsolutePath().normalize();
+        if (enabled) {
+            List<LocalDate> days = segments.days();
+            if (!days.isEmpty()) {
+                boundary = startOf(days.get(days.size() - 1).plusDays(1));
+                gate.raiseFloor(boundary);
+            }
+        }
+    }
+
+    public boolean isEnabled() { return enabled; }
+
+    /** Readings before this instant are read from segments; null if nothing is archived. */
+    public Instant boundary() { return boundary; }
+
+    /**
+     * Throws an {@link IllegalArgumentException} (400) if {@code window} reaches before the boundary:
+     * for reads that only Mongo serves, which would silently miss the archived readings.
+     */
+    public void requireHot(TimeRange window, String what) {
+        Instant archived = boundary;
+        if (archived != null && window.from().isBefore(archived)) {
+            throw new IllegalArgumentException(what + " read only readings from " + archived
+                    + " on; older ones are archived. Use /sensors/query or /sensors/export for them.");
+        }
+    }
+
+    /**
+     * One archive pass at {@code now}: deletes readings archived by earlier passes from Mongo,
+     * then compacts every day older than hot-age that is not archived yet.
+     *
+     * @return the days compacted
+     */
+    synchronized List<LocalDate> archive(Instant now) {
+        if (!holdLease(Instant.now())) {
+            throw new IllegalStateException("Another instance holds the tiering lease; not archiving");
+        }
+        ReadingIndexes.Fields f = indexes.fields();
+        Instant archived = boundary;
+        if (archived != null) {
+            deleteArchived(f, archived);
+        }
+
+        LocalDate cutoff = LocalDate.ofInstant(now.minus(hotAge), ZoneOffset.UTC);
+        LocalDate day = archived != null ? LocalDate.ofInstant(archived, ZoneOffset.UTC) : oldestDay(f);
+        if (day == null || !day.isBefore(cutoff)) {
+            return List.of();
+        }
+        List<LocalDate> compacted = day.datesUntil(cutoff).toList();
+        gate.raiseFloor(startOf(cutoff));
+        for (LocalDate d : compacted) {
+            segments.compact(d);
+            boundary = startOf(d.plusDays(1));
+        }
+        log.info("Archived {} to {} into segments; tier boundary is now {}",
+                compacted.get(0), compacted.get(compacted.size() - 1), boundary);
+        return compacted;
+    }
+
+    // Deletes the readings of each day before archived, once its segment is known to hold all of them
+    private void deleteArchived(ReadingIndexes.Fields f, Instant archived) {
+        long deleted = 0;
+        for (LocalDate day = oldestDay(f); day != null && startOf(day).isBefore(archived); day = day.plusDays(1)) {
+            Query inDay = Query.query(Criteria.where(f.time())
+                    .gte(Date.from(startOf(day))).lt(Date.from(startOf(day.plusDays(1)))));
+            long stored = mongoTemplate.count(inDay, f.collection());
+            if (stored == 0) {
+                continue;
+            }
+            if (stored != segments.readingCount(day)) {
+                // Written around the floor, e.g. by another instance; the gate keeps this one's out
+                log.warn("{} holds {} readings of {} but its segment does not; compacting it again", f.collection(), stored, day);
+                long compacted = segments.compact(day).readings();
+                if (compacted != mongoTemplate.count(inDay, f.collection())) {
+                    log.warn("Readings of {} are still changing; not deleting them this pass", day);
+                    continue;
+                }
+            }
+            deleted += mongoTemplate.remove(inDay, f.collection()).getDeletedCount();
+        }
+        if (deleted > 0) {
+            log.info("Deleted {} readings before {} from {}: they are in segments", deleted, archived, f.collection());
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        lockSegmentDir();
+        if (!holdLease(Instant.now())) {
+            unlockSegmentDir();
+            throw new IllegalStateException("Another instance holds the tiering lease in " + LEASE_COLLECTION
+                    + "; tiering runs on a single instance");
+        }
+        archiver = Executors.newScheduledThreadPool(2, Thread.ofPlatform().name("segment-archiver-", 0).daemon().factory());
+        long period = archiveInterval.toMillis();
+        archiver.scheduleWithFixedDelay(this::archiveSafely, period, period, TimeUnit.MILLISECONDS);
+        long renewal = leaseTtl.toMillis() / 3;
+        archiver.scheduleWithFixedDelay(this::renewLease, renewal, renewal, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        if (archiver != null) {
+            archiver.shutdownNow();
+            archiver = null;
+            try {
+                mongoTemplate.remove(Query.query(Criteria.where("_id").is(LEASE_ID).and("owner").is(owner)), LEASE_COLLECTION);
+            } catch (RuntimeException ex) {
+                log.warn("Could not release the tiering lease; it expires in {}", leaseTtl, ex);
+            }
+            unlockSegmentDir();
+        }
+    }
+
+    @Override
+    public boolean isRunning() { return archiver != null; }
+
+    /**
+     * Takes or renews the archiver lease until {@code now} + lease-ttl.
+     *
+     * @return false if another instance holds a lease that has not expired
+     */
+    boolean holdLease(Instant now) {
+        Query mine = Query.query(Criteria.where("_id").is(LEASE_ID).orOperator(
+                Criteria.where("owner").is(owner), Criteria.where("expiresAt").lt(Date.from(now))));
+        try {
+            mongoTemplate.upsert(mine, new Update().set("owner", owner).set("expiresAt", Date.from(now.plus(leaseTtl))),
+                    LEASE_COLLECTION);
+            return true;
+        } catch (DuplicateKeyException ex) {
+            return false; // no match, and the insert hit the live lease of another owner
+        }
+    }
+
+    private void renewLease() {
+        try {
+            if (!holdLease(Instant.now())) {
+                log.error("Another instance took the tiering lease; archive passes stop until it expires");
+            }
+        } catch (RuntimeException ex) {
+            log.warn("Could not renew the tiering lease", ex);
+        }
+    }
+
+    // A failed pass is retried from the same boundary at the next interval
+    private void archiveSafely() {
+        try {
+            archive(Instant.now());
+        } catch (RuntimeException ex) {
+            log.warn("Archive pass failed; retrying in {}", archiveInterval, ex);
+        }
+    }
+
+    // Keeps a second process on this host off the same segment files
+    private void lockSegmentDir() {
+        try {
+            Files.createDirectories(segments.dir());
+            lockChannel = FileChannel.open(segments.dir().resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            lock = lockChannel.tryLock();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not lock " + segments.dir(), ex);
+        }
+        if (lock == null) {
+            unlockSegmentDir();
+            throw new IllegalStateException("Another process uses the segments in " + segments.dir());
+        }
+    }
+
+    private void unlockSegmentDir() {
+        try {
+            if (lockChannel != null) {
+                lockChannel.close(); // releases the lock too
+            }
+        } catch (IOException ex) {
+            log.warn("Could not unlock {}", segments.dir(), ex);
+        }
+        lockChannel = null;
+        lock = null;
+    }
+
+    private LocalDate oldestDay(ReadingIndexes.Fields f) {
+        Query oldest = new Query().with(Sort.by(f.time())).limit(1);
+        oldest.fields().include(f.time()).exclude("_id");
+        Document first = mongoTemplate.findOne(oldest, Document.class, f.collection());
+        return first == null ? null : LocalDate.ofInstant(first.getDate(f.time()).toInstant(), ZoneOffset.UTC);
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException ex) {
+            return System.getenv().getOrDefault("HOSTNAME", "localhost");
+        }
+    }
+
+    private static Instant startOf(LocalDate day) {
+        return day.atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+}
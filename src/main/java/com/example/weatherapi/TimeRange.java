@@ -0,0 +1,15 @@
+package com.example.weatherapi;
+
+import java.time.Instant;
+
+/**
+ * A closed time interval [from, to]; both ends are inclusive.
+ */
+public record TimeRange(Instant from, Instant to) {
+
+    public TimeRange {
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("Range start " + from + " is after its end " + to);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.weatherapi;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for hour-bucketed storage using a mocked MongoTemplate.
+ */
+class BucketStoreTest {
+
+    private MongoTemplate mongoTemplate;
+    private BucketStore store;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        store = new BucketStore(mongoTemplate, StorageLayout.BUCKETED);
+    }
+
+    @Test
+    void firstFullBucket_roundsUpToTheNextHourUnlessAligned() {
+        assertEquals(Instant.parse("2025-08-01T13:00:00Z"),
+            BucketStore.firstFullBucket(Instant.parse("2025-08-01T12:00:01Z")));
+        assertEquals(Instant.parse("2025-08-01T12:00:00Z"),
+            BucketStore.firstFullBucket(Instant.parse("2025-08-01T12:00:00Z")));
+    }
+
+    @Test
+    void append_issuesOneUpsertPerSensorMetricHour() {
+        BulkOperations bulkOps = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(BulkMode.UNORDERED, SensorBucket.class, "sensor_buckets")).thenReturn(bulkOps);
+
+        // Two readings share a bucket; the third is in the next hour
+        Map<Integer, String> failures = store.append(List.of(
+            reading("1", "temperature", 20.0, "2025-08-01T12:05:00Z"),
+            reading("1", "temperature", 22.0, "2025-08-01T12:55:00Z"),
+            reading("1", "temperature", 24.0, "2025-08-01T13:00:00Z")));
+
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        verify(bulkOps, times(2)).upsert(any(Query.class), updates.capture());
+        verify(bulkOps).execute();
+        assertTrue(failures.isEmpty());
+
+        Document first = updates.getAllValues().get(0).getUpdateObject();
+        assertEquals(2L, first.get("$inc", Document.class).get("count"));
+        assertEquals(42.0, first.get("$inc", Document.class).get("sum"));
+        assertEquals(20.0, first.get("$min", Document.class).get("min"));
+        assertEquals(22.0, first.get("$max", Document.class).get("max"));
+    }
+
+    @Test
+    void aggregate_mergesFullBucketSummariesWithEdgeReadings() {
+        // First call = whole-bucket summaries, second = unwound edge readings
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq("sensor_buckets"), eq(Document.class)))
+            .thenReturn(TestAggResults.docs(List.of(
+                summary("temperature", 10, 200.0, 15.0, 25.0))))
+            .thenReturn(TestAggResults.docs(List.of(
+                summary("temperature", 2, 60.0, 28.0, 32.0),
+                summary("humidity", 1, 50.0, 50.0, 50.0))));
+
+        Map<String, MetricAggregate> out = store.aggregate(null, null,
+            Instant.parse("2025-08-01T00:30:00Z"), Instant.parse("2025-08-02T00:30:00Z"));
+
+        MetricAggregate temp = out.get("temperature");
+        assertEquals(12, temp.getCount());
+        assertEquals(260.0, temp.getSum());
+        assertEquals(15.0, temp.getMin());
+        assertEquals(32.0, temp.getMax());
+        assertEquals(50.0, out.get("humidity").value(Statistic.AVG));
+        verify(mongoTemplate, times(2)).aggregate(any(Aggregation.class), eq("sensor_buckets"), eq(Document.class));
+    }
+
+    // Helpers
+    private static SensorData reading(String sensorId, String metric, double value, String iso) {
+        SensorData d = new SensorData();
+        d.setSensorId(sensorId);
+        d.setMetric(metric);
+        d.setValue(value);
+        d.setTimestamp(Instant.parse(iso));
+        return d;
+    }
+
+    private static Document summary(String metric, long count, double sum, double min, double max) {
+        return new Document("_id", metric)
+            .append("count", count).append("sum", sum).append("min", min).append("max", max);
+    }
+}
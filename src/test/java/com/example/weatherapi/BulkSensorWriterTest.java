@@ -0,0 +1,183 @@
+package com.example.weatherapi;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for BulkSensorWriter chunking and error mapping.
+ */
+class BulkSensorWriterTest {
+
+    private static final MongoBulkheads BULKHEADS =
+        new MongoBulkheads(new SimpleMeterRegistry(), 1, 1, Duration.ofMillis(20));
+    private static final SensorMetrics METRICS = new SensorMetrics(new SimpleMeterRegistry());
+
+    private MongoTemplate mongoTemplate;
+    private BulkOperations bulkOps;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        bulkOps = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(eq(BulkMode.UNORDERED), eq(SensorData.class))).thenReturn(bulkOps);
+        when(bulkOps.insert(anyList())).thenReturn(bulkOps);
+    }
+
+    @Test
+    void insert_splitsIntoChunksOfConfiguredSize() {
+        BulkSensorWriter writer = new BulkSensorWriter(mongoTemplate, StorageLayout.RAW, null, null, null, List.of(), BULKHEADS, new IngestGate(), METRICS, 2);
+
+        Map<Integer, String> failures = writer.insert(readings(5));
+
+        // 5 readings / chunk size 2 = 3 round trips
+        verify(mongoTemplate, times(3)).bulkOps(BulkMode.UNORDERED, SensorData.class);
+        verify(bulkOps, times(3)).execute();
+        assertTrue(failures.isEmpty());
+    }
+
+    @Test
+    void insert_mapsChunkErrorIndexesToInputPositions() {
+        BulkSensorWriter writer = new BulkSensorWriter(mongoTemplate, StorageLayout.RAW, null, null, null, List.of(), BULKHEADS, new IngestGate(), METRICS, 2);
+
+        // First chunk succeeds, second chunk reports its element 1 as failed
+        BulkWriteError error = new BulkWriteError(11000, "duplicate key", new BsonDocument(), 1);
+        MongoBulkWriteException source = new MongoBulkWriteException(
+            BulkWriteResult.unacknowledged(), List.of(error), null, new ServerAddress(), Set.of());
+        when(bulkOps.execute())
+            .thenReturn(null)
+            .thenThrow(new BulkOperationException("bulk failed", source))
+            .thenReturn(null);
+
+        Map<Integer, String> failures = writer.insert(readings(5));
+
+        assertEquals(Map.of(3, "duplicate key"), failures);
+    }
+
+    @Test
+    void insert_notifiesListenersWithWrittenReadingsOnly() {
+        IngestListener listener = mock(IngestListener.class);
+        BulkSensorWriter writer = new BulkSensorWriter(mongoTemplate, StorageLayout.RAW, null, null, null, List.of(listener), BULKHEADS, new IngestGate(), METRICS, 10);
+
+        BulkWriteError error = new BulkWriteError(11000, "duplicate key", new BsonDocument(), 0);
+        MongoBulkWriteException source = new MongoBulkWriteException(
+            BulkWriteResult.unacknowledged(), List.of(error), null, new ServerAddress(), Set.of());
+        when(bulkOps.execute()).thenThrow(new BulkOperationException("bulk failed", source));
+
+        List<SensorData> readings = readings(3);
+        writer.insert(readings);
+
+        verify(listener).onIngest(List.of(readings.get(1), readings.get(2)));
+    }
+
+    @Test
+    void constructor_rejectsNonPositiveChunkSize() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new BulkSensorWriter(mongoTemplate, StorageLayout.RAW, null, null, null, List.of(), BULKHEADS, new IngestGate(), METRICS, 0));
+    }
+
+    @Test
+    void insert_bucketedLayoutDelegatesChunksToBucketStore() {
+        BucketStore bucketStore = mock(BucketStore.class);
+        when(bucketStore.append(anyList())).thenReturn(Map.of()).thenReturn(Map.of(0, "boom"));
+        BulkSensorWriter writer = new BulkSensorWriter(mongoTemplate, StorageLayout.BUCKETED, bucketStore, null, null, List.of(), BULKHEADS, new IngestGate(), METRICS, 2);
+
+        Map<Integer, String> failures = writer.insert(readings(3));
+
+        verify(bucketStore, times(2)).append(anyList());
+        verify(mongoTemplate, never()).bulkOps(any(BulkMode.class), eq(SensorData.class));
+        assertEquals(Map.of(2, "boom"), failures);
+    }
+
+    @Test
+    void insert_withDedupSkipsStoredReadingsAndCountsDuplicateKeysAsWritten() {
+        // Arrange: a concurrent writer stored reading 1 first, so the unique key refuses it
+        IngestListener listener = mock(IngestListener.class);
+        IngestDeduplicator dedup = new IngestDeduplicator(mongoTemplate, new ReadingIndexes(mongoTemplate, StorageLayout.RAW, true),
+            new SimpleMeterRegistry(), true, Duration.ofHours(1), 1000, 0.001, false);
+        BulkSensorWriter writer = new BulkSensorWriter(mongoTemplate, StorageLayout.RAW, null, null, dedup, List.of(listener), BULKHEADS, new IngestGate(), METRICS, 10);
+        BulkWriteError error = new BulkWriteError(11000, "duplicate key", new BsonDocument(), 1);
+        MongoBulkWriteException source = new MongoBulkWriteException(
+            BulkWriteResult.unacknowledged(), List.of(error), null, new ServerAddress(), Set.of());
+        when(bulkOps.execute()).thenThrow(new BulkOperationException("bulk failed", source));
+        List<SensorData> readings = readings(3);
+
+        // Act
+        Map<Integer, String> failures = writer.insert(readings);
+
+        // Assert
+        assertTrue(failures.isEmpty());
+        verify(listener).onIngest(List.of(readings.get(0), readings.get(2)));
+
+        // Arrange: the client retries the whole batch; all three are now stored
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq("sensor_data"))).thenReturn(readings.stream()
+            .map(d -> new Document("sensorId", d.getSensorId()).append("metric", d.getMetric())
+                .append("timestamp", Date.from(d.getTimestamp())))
+            .toList());
+
+        // Act
+        Map<Integer, String> retried = writer.insert(readings(3));
+
+        // Assert: nothing was sent again and the listeners saw nothing new
+        assertTrue(retried.isEmpty());
+        verify(bulkOps, times(1)).insert(anyList());
+        verify(listener).onIngest(List.of());
+    }
+
+    @Test
+    void insert_refusesReadingsBeforeTheGateFloor() {
+        // Arrange: the first two readings fall in an archived day
+        IngestListener listener = mock(IngestListener.class);
+        IngestGate gate = new IngestGate();
+        gate.raiseFloor(Instant.parse("2025-08-01T00:00:02Z"));
+        BulkSensorWriter writer = new BulkSensorWriter(mongoTemplate, StorageLayout.RAW, null, null, null, List.of(listener), BULKHEADS, gate, METRICS, 10);
+        List<SensorData> readings = readings(4);
+
+        // Act
+        Map<Integer, String> failures = writer.insert(readings);
+
+        // Assert
+        assertEquals(Set.of(0, 1), failures.keySet());
+        verify(bulkOps).insert(readings.subList(2, 4));
+        verify(listener).onIngest(readings.subList(2, 4));
+    }
+
+    // Helper to build n simple readings
+    private static List<SensorData> readings(int n) {
+        List<SensorData> out = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            SensorData d = new SensorData();
+            d.setSensorId("1");
+            d.setMetric("temperature");
+            d.setValue(i);
+            d.setTimestamp(Instant.parse("2025-08-01T00:00:00Z").plusSeconds(i));
+            out.add(d);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.weatherapi;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the compact reading layout using a mocked MongoTemplate.
+ */
+class CompactReadingStoreTest {
+
+    private MongoTemplate mongoTemplate;
+    private CompactReadingStore store;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        store = new CompactReadingStore(mongoTemplate, StorageLayout.COMPACT,
+            new ReadingIndexes(mongoTemplate, StorageLayout.COMPACT, true), false);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void insert_writesShortFieldsAndMetricCodesWithoutClass() {
+        BulkOperations bulkOps = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(BulkMode.UNORDERED, "sensor_readings")).thenReturn(bulkOps);
+        when(bulkOps.insert(anyList())).thenReturn(bulkOps);
+
+        Map<Integer, String> failures = store.insert(List.of(
+            reading("1", "wind_speed", 7.5, "2025-08-01T12:00:00Z")));
+
+        ArgumentCaptor<List<Document>> docs = ArgumentCaptor.forClass(List.class);
+        verify(bulkOps).insert(docs.capture());
+        assertTrue(failures.isEmpty());
+        assertEquals(new Document("s", "1").append("m", 3)
+                .append("t", Date.from(Instant.parse("2025-08-01T12:00:00Z"))).append("v", 7.5),
+            docs.getValue().get(0));
+    }
+
+    @Test
+    void aggregate_filtersByCodeAndDecodesMetricNames() {
+        ArgumentCaptor<Aggregation> agg = ArgumentCaptor.forClass(Aggregation.class);
+        when(mongoTemplate.aggregate(agg.capture(), eq("sensor_readings"), eq(Document.class)))
+            .thenReturn(TestAggResults.docs(List.of(
+                new Document("_id", 2).append("count", 2).append("sum", 120.0).append("min", 55.0).append("max", 65.0))));
+
+        Map<String, MetricAggregate> out = store.aggregate(List.of("1"), List.of("humidity"),
+            Instant.parse("2025-08-01T00:00:00Z"), Instant.parse("2025-08-02T00:00:00Z"));
+
+        assertEquals(60.0, out.get("humidity").value(Statistic.AVG));
+        List<?> and = agg.getValue().toPipeline(Aggregation.DEFAULT_CONTEXT).get(0)
+            .get("$match", Document.class).getList("$and", Object.class);
+        assertEquals(new Document("s", new Document("$in", List.of("1"))), and.get(1));
+        assertEquals(new Document("m", new Document("$in", List.of(2))), and.get(2));
+    }
+
+    @Test
+    void migrationPipeline_mapsRawFieldsAndMergesOnId() {
+        List<Document> pipeline = Aggregation.newAggregation(store.migrationPipeline())
+            .toPipeline(Aggregation.DEFAULT_CONTEXT);
+
+        Document project = pipeline.get(1).get("$project", Document.class);
+        assertEquals("$sensorId", project.get("s"));
+        assertEquals("$timestamp", project.get("t"));
+        assertEquals("$value", project.get("v"));
+        assertTrue(project.containsKey("m"));
+        Document merge = pipeline.get(2).get("$merge", Document.class);
+        assertEquals("sensor_readings", merge.get("into"));
+        assertFalse(merge.containsKey("on")); // defaults to _id, so re-runs overwrite instead of duplicating
+    }
+
+    @Test
+    void compactDocument_isLessThanHalfTheMappedSensorDataSize() {
+        SensorData d = reading("sensor-0001", "temperature", 21.5, "2025-08-01T12:00:00Z");
+        d.setId(new ObjectId().toHexString());
+
+        // What Spring Data writes for the raw layout (field names, metric string, _class)
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext context = new MongoMappingContext();
+        context.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, context);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        Document mapped = new Document();
+        converter.write(d, mapped);
+
+        Document compact = CompactReadingStore.toDocument(d).append("_id", new ObjectId());
+
+        int before = bsonSize(mapped);
+        int after = bsonSize(compact);
+        assertTrue(mapped.containsKey("_class"));
+        assertTrue(after * 2 < before, "compact=" + after + " raw=" + before);
+    }
+
+    // Helpers
+    private static int bsonSize(Document d) {
+        return new RawBsonDocument(d, new DocumentCodec()).getByteBuffer().remaining();
+    }
+
+    private static SensorData reading(String sensorId, String metric, double value, String iso) {
+        SensorData d = new SensorData();
+        d.setSensorId(sensorId);
+        d.setMetric(metric);
+        d.setValue(value);
+        d.setTimestamp(Instant.parse(iso));
+        return d;
+    }
+}
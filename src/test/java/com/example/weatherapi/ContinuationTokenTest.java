@@ -0,0 +1,56 @@
+package com.example.weatherapi;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for breakdown continuation tokens and groupBy parsing.
+ */
+class ContinuationTokenTest {
+
+    @Test
+    void encode_roundTripsSensorAndMetric() {
+        // Sensor ids may hold any characters; the token stays URL-safe
+        ContinuationToken token = new ContinuationToken("site/7|a b", "wind_speed");
+        String encoded = token.encode();
+
+        assertTrue(encoded.matches("[A-Za-z0-9_-]+"), encoded);
+        assertEquals(token, ContinuationToken.decode(encoded));
+        assertEquals(new ContinuationToken("9", null), ContinuationToken.decode(new ContinuationToken("9", null).encode()));
+    }
+
+    @Test
+    void decode_blankMeansFirstPage() {
+        assertNull(ContinuationToken.decode(null));
+        assertNull(ContinuationToken.decode(" "));
+    }
+
+    @Test
+    void decode_throwsOnGarbage() {
+        // Invalid input exception with helpful message
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> ContinuationToken.decode("not-a-token"));
+        assertTrue(ex.getMessage().contains("Invalid continuation token"));
+    }
+
+    @Test
+    void after_resumesStrictlyAfterTheLastKey() {
+        ContinuationToken token = new ContinuationToken("7", "humidity");
+
+        // Per sensor: next sensor; per sensor+metric: same sensor's later metrics, then later sensors
+        assertEquals(new Document("sensorId", new Document("$gt", "7")),
+            token.after(GroupBy.SENSOR, "sensorId", "metric", "humidity").getCriteriaObject());
+        assertEquals(2, token.after(GroupBy.SENSOR_METRIC, "sensorId", "metric", "humidity")
+            .getCriteriaObject().getList("$or", Document.class).size());
+    }
+
+    @Test
+    void groupBy_parsesBothDimensions() {
+        assertEquals(GroupBy.SENSOR, GroupBy.from("Sensor"));
+        assertEquals(GroupBy.SENSOR_METRIC, GroupBy.from("sensor, metric"));
+        assertEquals(GroupBy.SENSOR_METRIC, GroupBy.from("metric,sensor"));
+        assertThrows(IllegalArgumentException.class, () -> GroupBy.from("hour"));
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.weatherapi;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the in-memory hot window and its ring-buffered series.
+ */
+class HotWindowTest {
+
+    private ExportSource exportSource;
+    private SimpleMeterRegistry registry;
+    private HotWindow window;
+    private Instant now;
+
+    @BeforeEach
+    void setUp() {
+        exportSource = mock(ExportSource.class);
+        registry = new SimpleMeterRegistry();
+        window = new HotWindow(exportSource, registry, true, Duration.ofHours(25), 1000);
+        now = Instant.now();
+    }
+
+    @Test
+    void series_matchesAFullScanWithLateReadingsGrowthAndEviction() {
+        // Arrange: mostly in-order readings with some late ones, enough to grow and wrap the ring
+        Random random = new Random(3);
+        HotSeries series = new HotSeries();
+        List<long[]> held = new ArrayList<>();
+        long t = 1_000_000;
+        for (int i = 0; i < 3000; i++) {
+            t += 1000;
+            long ts = random.nextInt(10) == 0 ? t - random.nextInt(200_000) : t;
+            double v = random.nextInt(1000) / 10.0;
+            series.add(ts, v);
+            held.add(new long[]{ts, Double.doubleToLongBits(v)});
+            if (i % 500 == 499) {
+                long cutoff = t - 600_000;
+                series.evictBefore(cutoff);
+                held.removeIf(r -> r[0] < cutoff);
+            }
+        }
+
+        for (int q = 0; q < 200; q++) {
+            long from = t - random.nextInt(700_000);
+            long to = from + random.nextInt(700_000);
+
+            // Act
+            MetricAggregate actual = new MetricAggregate();
+            series.aggregate(from, to, actual);
+
+            // Assert
+            MetricAggregate expected = new MetricAggregate();
+            held.stream().filter(r -> r[0] >= from && r[0] <= to)
+                .forEach(r -> expected.add(Double.longBitsToDouble(r[1])));
+            assertEquals(expected.getCount(), actual.getCount(), "count in [" + from + ", " + to + "]");
+            assertEquals(expected.getSum(), actual.getSum(), 1e-6);
+            assertEquals(expected.getMin(), actual.getMin());
+            assertEquals(expected.getMax(), actual.getMax());
+        }
+        assertEquals(held.size(), series.size());
+    }
+
+    @Test
+    void coveredFrom_isMaxUntilWarmedUpThenTheWindowStart() {
+        // Arrange
+        when(exportSource.export(isNull(), isNull(), any(), anyInt())).thenReturn(Stream.empty());
+        assertEquals(Instant.MAX, window.coveredFrom());
+
+        // Act
+        window.warmUp();
+
+        // Assert
+        Instant coveredFrom = window.coveredFrom();
+        assertFalse(coveredFrom.isAfter(Instant.now().minus(Duration.ofHours(25))));
+        assertTrue(coveredFrom.isAfter(now.minus(Duration.ofHours(25)).minusSeconds(60)));
+    }
+
+    @Test
+    void warmUp_loadsStoredReadingsAndAppliesIngestFromMeanwhileOnce() {
+        // Arrange: one reading is both stored and ingested while warming up
+        SensorData stored = SensorData.of("1", "temperature", 20.0, now.minusSeconds(600));
+        SensorData ingested = SensorData.of("1", "temperature", 22.0, now.minusSeconds(60));
+        when(exportSource.export(isNull(), isNull(), any(), anyInt())).thenAnswer(inv -> {
+            window.onIngest(List.of(stored, ingested));
+            return Stream.of(stored);
+        });
+
+        // Act
+        window.warmUp();
+        window.onIngest(List.of(SensorData.of("1", "humidity", 50.0, now)));
+
+        // Assert
+        Map<String, MetricAggregate> out = window.aggregate(List.of("1"), null, now.minus(Duration.ofHours(24)), now);
+        assertEquals(2, out.get("temperature").getCount());
+        assertEquals(42.0, out.get("temperature").getSum());
+        assertEquals(1, out.get("humidity").getCount());
+        assertEquals(3.0, registry.get("sensors.hot-window.readings").gauge().value());
+    }
+
+    @Test
+    void warmUp_keepsRepeatedReadingsIngestedMeanwhile() {
+        // Arrange: the same reading is sent three times; the export saw only the first copy
+        SensorData repeat = SensorData.of("1", "temperature", 20.0, now.minusSeconds(60));
+        when(exportSource.export(isNull(), isNull(), any(), anyInt())).thenAnswer(inv -> {
+            window.onIngest(List.of(repeat, repeat));
+            window.onIngest(List.of(repeat));
+            return Stream.of(repeat);
+        });
+
+        // Act
+        window.warmUp();
+
+        // Assert: the exported copy absorbs one ingested copy, the other two are real repeats
+        Map<String, MetricAggregate> out = window.aggregate(List.of("1"), null, now.minus(Duration.ofHours(24)), now);
+        assertEquals(3, out.get("temperature").getCount());
+        assertEquals(60.0, out.get("temperature").getSum());
+    }
+
+    @Test
+    void aggregate_filtersBySensorsAndMetricsAndIgnoresReadingsOutsideTheWindow() {
+        // Arrange
+        when(exportSource.export(isNull(), isNull(), any(), anyInt())).thenReturn(Stream.empty());
+        window.warmUp();
+        window.onIngest(List.of(
+            SensorData.of("1", "temperature", 10.0, now.minusSeconds(120)),
+            SensorData.of("2", "temperature", 30.0, now.minusSeconds(60)),
+            SensorData.of("2", "wind_speed", 4.0, now.minusSeconds(60)),
+            SensorData.of("3", "temperature", 99.0, now.minus(Duration.ofHours(26)))));
+
+        // Act
+        Map<String, MetricAggregate> fleet = window.aggregate(null, List.of("temperature"), now.minusSeconds(3600), now);
+        Map<String, MetricAggregate> one = window.aggregate(List.of("2", "missing"), null, now.minusSeconds(3600), now);
+
+        // Assert
+        assertEquals(List.of("temperature"), List.copyOf(fleet.keySet()));
+        assertEquals(2, fleet.get("temperature").getCount());
+        assertEquals(30.0, fleet.get("temperature").getMax());
+        assertEquals(30.0, one.get("temperature").getSum());
+        assertEquals(4.0, one.get("wind_speed").getSum());
+    }
+
+    @Test
+    void aggregate_countsASensorListedTwiceOnce() {
+        // Arrange
+        when(exportSource.export(isNull(), isNull(), any(), anyInt())).thenReturn(Stream.empty());
+        window.warmUp();
+        window.onIngest(List.of(SensorData.of("1", "temperature", 10.0, now.minusSeconds(60))));
+
+        // Act
+        Map<String, MetricAggregate> out = window.aggregate(List.of("1", "1"), null, now.minusSeconds(3600), now);
+
+        // Assert
+        assertEquals(1, out.get("temperature").getCount());
+    }
+
+    @Test
+    void aggregate_keepsTheStartOfARangeSplitBeforeTheWindowMoved() {
+        // Arrange: a reading that left the window moments ago, queried by a split made before that
+        when(exportSource.export(isNull(), isNull(), any(), anyInt())).thenReturn(Stream.empty());
+        window.warmUp();
+        Instant justOut = now.minus(Duration.ofHours(25)).minusSeconds(20);
+        window.onIngest(List.of(SensorData.of("1", "temperature", 10.0, justOut)));
+
+        // Act
+        Map<String, MetricAggregate> out = window.aggregate(null, null, justOut.minusSeconds(10), now);
+
+        // Assert
+        assertEquals(1, out.get("temperature").getCount());
+        assertTrue(window.coveredFrom().isAfter(justOut));
+    }
+
+    @Test
+    void tieredSource_answersTheHotPartFromMemoryAndTheRestFromTheDelegate() {
+        // Arrange
+        when(exportSource.export(isNull(), isNull(), any(), anyInt())).thenReturn(Stream.empty());
+        window.warmUp();
+        window.onIngest(List.of(SensorData.of("1", "temperature", 10.0, now.minusSeconds(60))));
+        AggregateSource mongo = mock(AggregateSource.class);
+        when(mongo.aggregate(any(), any(), anyList()))
+            .thenReturn(Map.of("temperature", new MetricAggregate(1, 5.0, 5.0, 5.0)));
+        AggregateSource source = new TieredAggregateSource(window, mongo, window::coveredFrom);
+
+        // Act
+        Map<String, MetricAggregate> recent = source.aggregate(null, null, now.minus(Duration.ofHours(24)), now);
+        Map<String, MetricAggregate> week = source.aggregate(null, null, now.minus(Duration.ofDays(7)), now);
+
+        // Assert: only the week's part before the window goes to Mongo
+        assertEquals(1, recent.get("temperature").getCount());
+        assertEquals(2, week.get("temperature").getCount());
+        assertEquals(15.0, week.get("temperature").getSum());
+        verify(mongo, times(1)).aggregate(any(), any(), anyList());
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.weatherapi;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the write-behind ingest buffer.
+ */
+class IngestBufferTest {
+
+    private BulkSensorWriter bulkWriter;
+    private SimpleMeterRegistry registry;
+    private IngestBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        bulkWriter = mock(BulkSensorWriter.class);
+        when(bulkWriter.getChunkSize()).thenReturn(10);
+        when(bulkWriter.insert(anyList())).thenReturn(Map.of());
+        registry = new SimpleMeterRegistry();
+        buffer = new IngestBuffer(bulkWriter, registry, 2, 1, Duration.ofMillis(20), Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        buffer.stop();
+    }
+
+    @Test
+    void submit_rejectsWhenFullInsteadOfGrowing() {
+        // Flushers not started: capacity 2 fills up
+        buffer.submit(request(1.0));
+        buffer.submit(request(2.0));
+
+        assertThrows(IngestBufferFullException.class, () -> buffer.submit(request(3.0)));
+        assertEquals(1.0, registry.get("sensors.ingest.buffer.rejected").counter().count());
+        assertEquals(2.0, registry.get("sensors.ingest.buffer.depth").gauge().value());
+    }
+
+    @Test
+    void submit_validatesBeforeQueueing() {
+        SensorDataRequest bad = request(1.0);
+        bad.setMetric("pressure");
+
+        assertThrows(IllegalArgumentException.class, () -> buffer.submit(bad));
+        assertEquals(0.0, registry.get("sensors.ingest.buffer.depth").gauge().value());
+    }
+
+    @Test
+    void flushers_drainQueueIntoBulkWrites() {
+        buffer.submit(request(1.0));
+        buffer.submit(request(2.0));
+        buffer.start();
+
+        // Both readings arrive in a single time-bounded flush
+        ArgumentCaptor<List<SensorData>> captor = ArgumentCaptor.forClass(List.class);
+        verify(bulkWriter, timeout(2000)).insert(captor.capture());
+        assertEquals(2, captor.getValue().size());
+
+        buffer.stop();
+        assertEquals(2.0, registry.get("sensors.ingest.buffer.flushed").counter().count());
+        assertEquals(1, registry.get("sensors.ingest.buffer.flush").timer().count());
+    }
+
+    @Test
+    void stop_drainsQueuedReadings() {
+        buffer.start();
+        buffer.submit(request(1.0));
+        buffer.stop();
+
+        verify(bulkWriter).insert(anyList());
+        assertEquals(0.0, registry.get("sensors.ingest.buffer.depth").gauge().value());
+    }
+
+    @Test
+    void submit_rejectsOnceStoppedInsteadOfLosingTheReading() {
+        buffer.start();
+        buffer.stop();
+
+        assertThrows(IngestBufferFullException.class, () -> buffer.submit(request(1.0)));
+        assertEquals(0.0, registry.get("sensors.ingest.buffer.depth").gauge().value());
+    }
+
+    @Test
+    void interruptedFlusher_exitsAloneWhileTheOthersKeepFlushing() throws Exception {
+        // Arrange
+        IngestBuffer two = new IngestBuffer(bulkWriter, registry, 10, 2, Duration.ofMillis(20), Duration.ofSeconds(5));
+        two.start();
+        Thread first = Thread.getAllStackTraces().keySet().stream()
+            .filter(t -> t.getName().equals("ingest-flusher-0")).findFirst().orElseThrow();
+
+        // Act
+        first.interrupt();
+        first.join(2000);
+        two.submit(request(1.0));
+
+        // Assert
+        assertFalse(first.isAlive());
+        assertTrue(two.isRunning());
+        verify(bulkWriter, timeout(2000)).insert(anyList());
+        two.stop();
+    }
+
+    @Test
+    void flushers_waitForIngestPermitInsteadOfDropping() {
+        // First attempt finds every ingest permit taken by requests
+        when(bulkWriter.insert(anyList()))
+            .thenThrow(new BulkheadFullException("Too many concurrent ingest operations; retry later."))
+            .thenReturn(Map.of());
+        buffer.submit(request(1.0));
+        buffer.start();
+
+        verify(bulkWriter, timeout(2000).times(2)).insert(anyList());
+        buffer.stop();
+        assertEquals(1.0, registry.get("sensors.ingest.buffer.flushed").counter().count());
+        assertEquals(0.0, registry.get("sensors.ingest.buffer.dropped").counter().count());
+        assertEquals(1.0, registry.get("sensors.ingest.buffer.retries").counter().count());
+    }
+
+    @Test
+    void flushers_giveUpAfterTheRetryTimeoutAndWhenStopping() {
+        // Arrange: permits never come back
+        when(bulkWriter.insert(anyList()))
+            .thenThrow(new BulkheadFullException("Too many concurrent ingest operations; retry later."));
+        IngestBuffer bounded = new IngestBuffer(bulkWriter, registry, 10, 1, Duration.ofMillis(20), Duration.ofMillis(100));
+        bounded.submit(request(1.0));
+        bounded.start();
+
+        // Act: the first batch runs out of retry time; the second is queued while stopping
+        verify(bulkWriter, timeout(2000).atLeast(3)).insert(anyList());
+        long start = System.nanoTime();
+        bounded.submit(request(2.0));
+        bounded.stop();
+
+        // Assert: both are dropped, and stopping does not wait out another retry timeout
+        assertEquals(2.0, registry.get("sensors.ingest.buffer.dropped").counter().count(), 0.0);
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(1)) < 0);
+    }
+
+    // Helper to build a valid request
+    private static SensorDataRequest request(double value) {
+        SensorDataRequest req = new SensorDataRequest();
+        req.setSensorId("1");
+        req.setMetric("temperature");
+        req.setValue(value);
+        req.setTimestamp(Instant.parse("2025-08-20T10:00:00Z"));
+        return req;
+    }
+}
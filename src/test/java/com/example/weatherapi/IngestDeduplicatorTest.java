@@ -0,0 +1,188 @@
+package com.example.weatherapi;
+
+import com.mongodb.bulk.BulkWriteError;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the sliding recent-keys filter and ingest dedup screening.
+ */
+class IngestDeduplicatorTest {
+
+    private MongoTemplate mongoTemplate;
+    private MeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        registry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void filter_keepsKeysForTheWindowThenDropsThem() {
+        // Arrange: 60s window in 4 slices, so a key lasts 60-75s
+        AtomicLong now = new AtomicLong(0);
+        SlidingBloomFilter filter = new SlidingBloomFilter(60_000, 4, 1000, 0.001, now::get);
+        filter.put(42);
+
+        // Act + Assert
+        now.set(60_000);
+        assertTrue(filter.mightContain(42));
+        now.set(74_999);
+        assertTrue(filter.mightContain(42));
+        now.set(75_000);
+        assertFalse(filter.mightContain(42));
+    }
+
+    @Test
+    void filter_hasNoFalseNegativesAndStaysNearTheTargetRate() {
+        // Arrange: a full window of keys, one slice at a time
+        AtomicLong now = new AtomicLong(0);
+        SlidingBloomFilter filter = new SlidingBloomFilter(60_000, 4, 100_000, 0.01, now::get);
+        for (int slice = 0; slice < 4; slice++) {
+            now.set(slice * 15_000L);
+            for (int i = slice * 25_000; i < (slice + 1) * 25_000; i++) {
+                filter.put(IngestDeduplicator.key("s" + i, "temperature", i));
+            }
+        }
+
+        // Act
+        int misses = 0;
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (!filter.mightContain(IngestDeduplicator.key("s" + i, "temperature", i))) {
+                misses++;
+            }
+            if (filter.mightContain(IngestDeduplicator.key("s" + i, "humidity", i))) {
+                falsePositives++;
+            }
+        }
+
+        // Assert
+        assertEquals(0, misses);
+        assertTrue(falsePositives < 1_500, "false positives: " + falsePositives);
+        assertTrue(filter.expectedFpp() < 0.015, "expected fpp: " + filter.expectedFpp());
+    }
+
+    @Test
+    void screen_confirmsPositivesWithOneLookupAndSkipsStoredReadings() {
+        // Arrange: the first three readings were written before, the fourth is new
+        IngestDeduplicator dedup = deduplicator(StorageLayout.RAW, false);
+        List<SensorData> first = readings(3);
+        assertEquals(Set.of(), dedup.screen(first));
+        dedup.recordWrite(first, Set.of(), Set.of(), Set.of());
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq("sensor_data"))).thenReturn(first.stream()
+            .map(d -> new Document("sensorId", d.getSensorId()).append("metric", d.getMetric())
+                .append("timestamp", Date.from(d.getTimestamp())))
+            .toList());
+
+        // Act
+        Set<Integer> screened = dedup.screen(readings(4));
+
+        // Assert
+        assertEquals(Set.of(0, 1, 2), screened);
+        verify(mongoTemplate, times(1)).find(any(Query.class), eq(Document.class), eq("sensor_data"));
+        assertEquals(3, lookups("true_positive"));
+        assertEquals(4, lookups("negative"));
+        assertEquals(3, registry.get("sensors.ingest.dedup.readings").tag("outcome", "new").counter().count());
+    }
+
+    @Test
+    void screen_writesPositivesTheStoreDoesNotHold() {
+        // Arrange: a compact reading the filter has seen but that is no longer stored
+        IngestDeduplicator dedup = deduplicator(StorageLayout.COMPACT, false);
+        List<SensorData> chunk = readings(2);
+        dedup.recordWrite(chunk, Set.of(), Set.of(), Set.of());
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq(CompactReadingStore.COLLECTION))).thenReturn(List.of(
+            new Document("s", "1").append("m", Metric.TEMPERATURE.code()).append("t", Date.from(chunk.get(1).getTimestamp()))));
+
+        // Act
+        Set<Integer> screened = dedup.screen(chunk);
+
+        // Assert: the metric code maps back to the same key
+        assertEquals(Set.of(1), screened);
+        assertEquals(1, lookups("false_positive"));
+        assertEquals(1, lookups("true_positive"));
+    }
+
+    @Test
+    void screen_trustingTheFilterSkipsTheLookup() {
+        // Arrange: a failed reading is not remembered
+        IngestDeduplicator dedup = deduplicator(StorageLayout.RAW, true);
+        List<SensorData> chunk = readings(3);
+        dedup.recordWrite(chunk, Set.of(), Set.of(), Set.of(2));
+
+        // Act
+        Set<Integer> screened = dedup.screen(chunk);
+
+        // Assert
+        assertEquals(Set.of(0, 1), screened);
+        verify(mongoTemplate, never()).find(any(Query.class), eq(Document.class), any(String.class));
+        assertEquals(2, lookups("unverified"));
+    }
+
+    @Test
+    void failures_classifiesDuplicateKeysOnlyWhenDeduplicating() {
+        // Arrange
+        List<BulkWriteError> errors = List.of(
+            new BulkWriteError(11000, "duplicate key", new BsonDocument(), 0),
+            new BulkWriteError(121, "validation failed", new BsonDocument(), 2));
+        Set<Integer> duplicates = new HashSet<>();
+
+        // Act + Assert
+        assertEquals(Map.of(2, "validation failed"), IngestDeduplicator.failures(errors, duplicates));
+        assertEquals(Set.of(0), duplicates);
+        assertEquals(Map.of(0, "duplicate key", 2, "validation failed"), IngestDeduplicator.failures(errors, null));
+    }
+
+    @Test
+    void constructor_rejectsTheBucketedLayout() {
+        assertThrows(IllegalStateException.class, () -> deduplicator(StorageLayout.BUCKETED, false));
+        assertFalse(new IngestDeduplicator(mongoTemplate, new ReadingIndexes(mongoTemplate, StorageLayout.BUCKETED, true),
+            registry, false, Duration.ofHours(1), 1000, 0.001, false).isEnabled());
+    }
+
+    private IngestDeduplicator deduplicator(StorageLayout layout, boolean trustFilter) {
+        return new IngestDeduplicator(mongoTemplate, new ReadingIndexes(mongoTemplate, layout, true), registry,
+            true, Duration.ofHours(1), 1000, 0.001, trustFilter);
+    }
+
+    private double lookups(String result) {
+        return registry.get("sensors.ingest.dedup.filter.lookups").tag("result", result).counter().count();
+    }
+
+    // Helper to build n simple readings
+    private static List<SensorData> readings(int n) {
+        List<SensorData> out = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            SensorData d = new SensorData();
+            d.setSensorId("1");
+            d.setMetric("temperature");
+            d.setValue(i);
+            d.setTimestamp(Instant.parse("2025-08-01T00:00:00Z").plusSeconds(i));
+            out.add(d);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.weatherapi;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the ingest/query Mongo bulkheads.
+ */
+class MongoBulkheadsTest {
+
+    private SimpleMeterRegistry registry;
+    private MongoBulkheads bulkheads;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        bulkheads = new MongoBulkheads(registry, 2, 1, Duration.ofSeconds(5));
+    }
+
+    @Test
+    void call_capsConcurrencyAcrossManyVirtualThreads() throws Exception {
+        // Arrange: 200 virtual threads all hitting a 2-permit bulkhead
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        List<Future<?>> tasks = new ArrayList<>();
+
+        // Act
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 200; i++) {
+                tasks.add(executor.submit(() -> bulkheads.ingest().call(() -> {
+                    peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.onSpinWait();
+                    return running.decrementAndGet();
+                })));
+            }
+            for (Future<?> task : tasks) {
+                task.get(10, TimeUnit.SECONDS);
+            }
+        }
+
+        // Assert: never more than the limit, every caller served, all permits back
+        assertTrue(peak.get() <= 2, "peak " + peak.get());
+        assertEquals(0, bulkheads.ingest().active());
+        assertEquals(200, registry.get("sensors.mongo.bulkhead.wait").tag("bulkhead", "ingest").timer().count());
+        assertEquals(2.0, registry.get("sensors.mongo.bulkhead.limit").tag("bulkhead", "ingest").gauge().value());
+    }
+
+    @Test
+    void call_rejectsAfterMaxWaitAndCountsIt() throws Exception {
+        // Arrange: the single query permit is held by another thread
+        MongoBulkheads tight = new MongoBulkheads(registry, 1, 1, Duration.ofMillis(20));
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = Thread.ofVirtual().start(() -> tight.query().call(() -> {
+            holding.countDown();
+            try {
+                return release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }));
+        holding.await();
+
+        // Act + Assert
+        BulkheadFullException ex = assertThrows(BulkheadFullException.class, () -> tight.query().call(() -> 1));
+        assertTrue(ex.getMessage().contains("query"));
+        assertEquals(1.0, registry.get("sensors.mongo.bulkhead.rejected").tag("bulkhead", "query").counter().count());
+        // Ingest has its own permits
+        assertEquals(1, tight.ingest().call(() -> 1));
+
+        release.countDown();
+        holder.join();
+        assertEquals(0, tight.query().active());
+    }
+
+    @Test
+    void stream_keepsPermitUntilClosedAndReleasesWhenOpenFails() {
+        Stream<Integer> open = bulkheads.query().stream(() -> Stream.of(1, 2));
+        assertEquals(1, bulkheads.query().active());
+        open.close();
+        assertEquals(0, bulkheads.query().active());
+
+        assertThrows(IllegalStateException.class, () -> bulkheads.query().stream(() -> {
+            throw new IllegalStateException("cursor failed");
+        }));
+        assertEquals(0, bulkheads.query().active());
+    }
+
+    @Test
+    void stream_closedByBodyAndCompletionCallbackReleasesOnce() {
+        // Arrange
+        Stream<Integer> open = bulkheads.query().stream(() -> Stream.of(1, 2));
+
+        // Act: closed through the body's wrapper, then again by the completion callback
+        Stream.of(1).onClose(open::close).close();
+        open.close();
+
+        // Assert: a second release would show as -1 active
+        assertEquals(0, bulkheads.query().active());
+    }
+
+    @Test
+    void constructor_rejectsNonPositivePermits() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new MongoBulkheads(new SimpleMeterRegistry(), 0, 1, Duration.ofSeconds(1)));
+    }
+}
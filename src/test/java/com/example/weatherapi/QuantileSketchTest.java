@@ -0,0 +1,88 @@
+package com.example.weatherapi;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the DDSketch quantile sketch.
+ */
+class QuantileSketchTest {
+
+    @Test
+    void quantile_staysWithinRelativeAccuracyOfExactRank() {
+        // Arrange: skewed readings with an exact sorted copy
+        Random random = new Random(42);
+        double[] values = new double[20_000];
+        QuantileSketch sketch = new QuantileSketch(0.01);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.exp(random.nextGaussian() * 2);
+            sketch.add(values[i]);
+        }
+        Arrays.sort(values);
+
+        // Act + Assert: every quantile is within 1% of the reading at the same rank
+        for (double q : new double[] {0, 0.5, 0.9, 0.95, 0.99, 0.999, 1}) {
+            double exact = values[(int) (q * (values.length - 1))];
+            assertEquals(exact, sketch.quantile(q), exact * 0.01, "q=" + q);
+        }
+    }
+
+    @Test
+    void merge_equalsSketchOfTheUnion() {
+        QuantileSketch a = new QuantileSketch(0.02);
+        QuantileSketch b = new QuantileSketch(0.02);
+        QuantileSketch all = new QuantileSketch(0.02);
+        for (int i = 1; i <= 1000; i++) {
+            (i % 3 == 0 ? a : b).add(i * 0.5);
+            all.add(i * 0.5);
+        }
+
+        a.merge(b);
+
+        assertEquals(all.bins(), a.bins());
+        assertEquals(all.getCount(), a.getCount());
+        assertEquals(all.quantile(0.95), a.quantile(0.95));
+    }
+
+    @Test
+    void quantile_ordersNegativesZeroAndPositives() {
+        QuantileSketch sketch = new QuantileSketch(0.01);
+        for (double v : new double[] {-40, -5, 0, 0, 3, 30}) {
+            sketch.add(v);
+        }
+
+        assertEquals(-40, sketch.quantile(0), 0.4);
+        assertEquals(-5, sketch.quantile(0.2), 0.05);
+        assertEquals(0, sketch.quantile(0.5));
+        assertEquals(3, sketch.quantile(0.8), 0.03);
+        assertEquals(30, sketch.quantile(1), 0.3);
+    }
+
+    @Test
+    void bins_roundTripThroughPersistedKeys() {
+        QuantileSketch original = new QuantileSketch(0.01).add(-2.5).add(0).add(0.001).add(18.2).add(18.3);
+        QuantileSketch restored = new QuantileSketch(0.01);
+
+        // Persisted form: key -> count, plus the exact min/max kept by the rollup
+        original.bins().forEach(restored::addBin);
+        restored.includeBounds(-2.5, 18.3);
+
+        assertEquals(original.getCount(), restored.getCount());
+        for (double q : new double[] {0, 0.25, 0.5, 0.75, 1}) {
+            assertEquals(original.quantile(q), restored.quantile(q));
+        }
+    }
+
+    @Test
+    void rejectsInvalidInput() {
+        assertThrows(IllegalArgumentException.class, () -> new QuantileSketch(0));
+        assertThrows(IllegalArgumentException.class, () -> new QuantileSketch(0.01).addBin("x3", 1));
+        assertThrows(IllegalArgumentException.class,
+            () -> new QuantileSketch(0.01).merge(new QuantileSketch(0.02)));
+        assertThrows(IllegalStateException.class, () -> new QuantileSketch(0.01).quantile(0.5));
+    }
+}
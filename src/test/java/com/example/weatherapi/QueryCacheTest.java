@@ -0,0 +1,191 @@
+package com.example.weatherapi;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the query result cache: hits, precise invalidation and single-flight loads.
+ */
+class QueryCacheTest {
+
+    private static final TimeRange AUG_1_TO_3 = new TimeRange(
+        Instant.parse("2025-08-01T00:00:00Z"), Instant.parse("2025-08-03T00:00:00Z"));
+
+    private SimpleMeterRegistry registry;
+    private QueryCache cache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        cache = new QueryCache(registry, true, 100, Duration.ofSeconds(30), Duration.ofHours(1), Duration.ofSeconds(10));
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    void get_servesRepeatsFromCacheRegardlessOfListOrder() {
+        cache.get(QueryCache.QueryKey.of(List.of("2", "1"), null, List.of(AUG_1_TO_3)), this::load);
+        Map<String, MetricAggregate> again =
+            cache.get(QueryCache.QueryKey.of(List.of("1", "2"), null, List.of(AUG_1_TO_3)), this::load);
+
+        assertEquals(1, loads.get());
+        assertEquals(22.0, again.get("temperature").value(Statistic.AVG));
+        assertEquals(1.0, registry.get("cache.gets").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void onIngest_evictsOnlyEntriesContainingTheReading() {
+        QueryCache.QueryKey sensor1 = QueryCache.QueryKey.of(List.of("1"), List.of("temperature"), List.of(AUG_1_TO_3));
+        QueryCache.QueryKey sensor2 = QueryCache.QueryKey.of(List.of("2"), List.of("temperature"), List.of(AUG_1_TO_3));
+        cache.get(sensor1, this::load);
+        cache.get(sensor2, this::load);
+
+        // Sensor 1 reading inside the window; another sensor-1 reading far outside it
+        cache.onIngest(List.of(
+            reading("1", "temperature", "2025-08-02T12:00:00Z"),
+            reading("1", "temperature", "2025-09-15T00:00:00Z")));
+
+        cache.get(sensor1, this::load);
+        cache.get(sensor2, this::load);
+        assertEquals(3, loads.get()); // sensor1 reloaded, sensor2 still cached
+        assertEquals(1.0, registry.get("sensors.query.cache.invalidations").counter().count());
+    }
+
+    @Test
+    void onIngest_ignoresOtherMetrics() {
+        QueryCache.QueryKey key = QueryCache.QueryKey.of(null, List.of("humidity"), List.of(AUG_1_TO_3));
+        cache.get(key, this::load);
+
+        cache.onIngest(List.of(reading("1", "temperature", "2025-08-02T12:00:00Z")));
+
+        cache.get(key, this::load);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void get_concurrentMissesShareOneLoad() throws Exception {
+        QueryCache.QueryKey key = QueryCache.QueryKey.of(null, null, List.of(AUG_1_TO_3));
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Map<String, MetricAggregate>>> results = pool.invokeAll(List.of(
+                () -> cache.get(key, () -> blockingLoad(release)),
+                () -> cache.get(key, () -> blockingLoad(release)),
+                () -> cache.get(key, () -> blockingLoad(release)),
+                () -> { Thread.sleep(100); release.countDown(); return Map.of(); }));
+            for (int i = 0; i < 3; i++) {
+                assertEquals(22.0, results.get(i).get().get("temperature").value(Statistic.AVG));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void get_doesNotCacheLoadInvalidatedWhileInFlight() {
+        QueryCache.QueryKey key = QueryCache.QueryKey.of(List.of("1"), null, List.of(AUG_1_TO_3));
+
+        // The reading lands while the load is running
+        cache.get(key, () -> {
+            cache.onIngest(List.of(reading("1", "temperature", "2025-08-02T00:00:00Z")));
+            return load();
+        });
+        cache.get(key, this::load);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void onIngest_findsEntriesThroughTheirWholeDaysAndEdgeHours() {
+        // Arrange: a window from mid-morning Aug 1 to just after midnight Aug 4, for one sensor and for all
+        TimeRange window = new TimeRange(Instant.parse("2025-08-01T09:30:00Z"), Instant.parse("2025-08-04T00:00:00Z"));
+        QueryCache.QueryKey one = QueryCache.QueryKey.of(List.of("1"), null, List.of(window));
+        QueryCache.QueryKey all = QueryCache.QueryKey.of(null, null, List.of(window));
+        cache.get(one, this::load);
+        cache.get(all, this::load);
+
+        // Act: a reading in a whole day, one at each edge, and one just outside
+        cache.onIngest(List.of(reading("1", "temperature", "2025-08-02T15:00:00Z")));
+        cache.get(one, this::load);
+        cache.get(all, this::load);
+        cache.onIngest(List.of(reading("2", "temperature", "2025-08-01T09:30:00Z")));
+        cache.get(one, this::load);
+        cache.get(all, this::load);
+        cache.onIngest(List.of(reading("1", "temperature", "2025-08-04T00:00:00.001Z")));
+        cache.get(one, this::load);
+        cache.get(all, this::load);
+
+        // Assert: both reloaded after the first, only "all" after the second, neither after the third
+        assertEquals(5, loads.get());
+        assertEquals(3.0, registry.get("sensors.query.cache.invalidations").counter().count());
+    }
+
+    @Test
+    void drop_removesTheIndexRegistrations() {
+        // Arrange: hours 09-23 of Aug 1 plus the hour "to" falls in, per sensor
+        QueryCache.QueryKey key = QueryCache.QueryKey.of(List.of("1", "2"), null, List.of(
+            new TimeRange(Instant.parse("2025-08-01T09:30:00Z"), Instant.parse("2025-08-02T00:00:00Z"))));
+        cache.get(key, this::load);
+        assertEquals(2 * 16, cache.indexedBlocks());
+
+        // Act
+        cache.onIngest(List.of(reading("2", "temperature", "2025-08-01T23:59:00Z")));
+        cache.invalidateAll();
+
+        // Assert
+        assertEquals(0, cache.indexedBlocks());
+    }
+
+    @Test
+    void openWindowEnd_roundsDownToTheStepWhileCaching() {
+        // Act
+        Instant end = cache.openWindowEnd();
+        Instant uncached = new QueryCache(registry, false, 100, Duration.ofSeconds(30), Duration.ofHours(1),
+            Duration.ofSeconds(10)).openWindowEnd();
+
+        // Assert: repeated default windows share a key for up to 10s
+        assertEquals(0, end.toEpochMilli() % 10_000);
+        assertFalse(end.isAfter(Instant.now()));
+        assertTrue(end.isAfter(Instant.now().minusSeconds(11)));
+        assertFalse(uncached.isAfter(Instant.now()));
+        assertTrue(uncached.isAfter(end.minusMillis(1)));
+    }
+
+    // Helpers
+    private Map<String, MetricAggregate> load() {
+        loads.incrementAndGet();
+        return Map.of("temperature", new MetricAggregate(3, 66.0, 20.0, 24.0));
+    }
+
+    private Map<String, MetricAggregate> blockingLoad(CountDownLatch release) {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+        return load();
+    }
+
+    private static SensorData reading(String sensorId, String metric, String iso) {
+        SensorData d = new SensorData();
+        d.setSensorId(sensorId);
+        d.setMetric(metric);
+        d.setValue(1.0);
+        d.setTimestamp(Instant.parse(iso));
+        return d;
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.weatherapi;
+
+import com.mongodb.client.MongoDatabase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for explain output parsing and the slow-query log.
+ */
+class QueryExplainerTest {
+
+    private static final TimeRange WINDOW =
+        new TimeRange(Instant.parse("2025-08-01T00:00:00Z"), Instant.parse("2025-08-02T00:00:00Z"));
+
+    private MongoTemplate mongoTemplate;
+    private MongoDatabase db;
+    private MongoBulkheads bulkheads;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        db = mock(MongoDatabase.class);
+        when(mongoTemplate.getDb()).thenReturn(db);
+        when(mongoTemplate.getConverter())
+            .thenReturn(new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext()));
+        bulkheads = new MongoBulkheads(new SimpleMeterRegistry(), 1, 1, Duration.ofSeconds(1));
+    }
+
+    @Test
+    void parse_readsClassicPlanUnderCursorStage() {
+        // Arrange: classic engine, $match part under stages[0].$cursor
+        Document explain = new Document("stages", List.of(
+            new Document("$cursor", new Document()
+                .append("queryPlanner", new Document("winningPlan",
+                    new Document("stage", "PROJECTION_COVERED").append("inputStage",
+                        new Document("stage", "IXSCAN").append("indexName", "sensor_metric_time_idx"))))
+                .append("executionStats", new Document("nReturned", 120).append("executionTimeMillis", 3)
+                    .append("totalKeysExamined", 121).append("totalDocsExamined", 0))),
+            new Document("$group", new Document())));
+
+        // Act
+        AggregationExplain parsed = AggregationExplain.parse("sensor_data", explain);
+
+        // Assert
+        assertEquals("PROJECTION_COVERED <- IXSCAN[sensor_metric_time_idx]", parsed.plan());
+        assertEquals(List.of("sensor_metric_time_idx"), parsed.indexes());
+        assertEquals(121L, parsed.keysExamined());
+        assertEquals(0L, parsed.docsExamined());
+        assertEquals(120L, parsed.returned());
+        assertEquals(3L, parsed.executionTimeMillis());
+    }
+
+    @Test
+    void parse_readsSlotBasedPlanAndFlagsCollectionScans() {
+        // Arrange: SBE engine reports at the top level and wraps the plan in queryPlan
+        Document explain = new Document("queryPlanner", new Document("winningPlan", new Document("queryPlan",
+                new Document("stage", "GROUP").append("inputStage", new Document("stage", "COLLSCAN")))))
+            .append("executionStats", new Document("nReturned", 2).append("executionTimeMillis", 950L)
+                .append("totalKeysExamined", 0).append("totalDocsExamined", 2_000_000));
+
+        // Act
+        AggregationExplain parsed = AggregationExplain.parse("sensor_data", explain);
+
+        // Assert
+        assertEquals("GROUP <- COLLSCAN", parsed.plan());
+        assertTrue(parsed.indexes().isEmpty());
+        assertEquals(2_000_000L, parsed.docsExamined());
+        assertTrue(parsed.summary().contains("no index"), parsed.summary());
+    }
+
+    @Test
+    void explain_sendsEachPlannedAggregationAsExplainCommand() {
+        // Arrange
+        QueryExplainer explainer = new QueryExplainer(mongoTemplate, raw(), bulkheads, Duration.ZERO);
+        when(db.runCommand(any(Document.class))).thenReturn(new Document("queryPlanner",
+            new Document("winningPlan", new Document("stage", "IXSCAN").append("indexName", "sensor_metric_time_idx"))));
+
+        // Act
+        List<AggregationExplain> explained = explainer.explain(List.of("1"), List.of("temperature"), WINDOW);
+
+        // Assert: executionStats verbosity, pipeline mapped like MongoTemplate maps it (Instant -> Date)
+        ArgumentCaptor<Document> command = ArgumentCaptor.forClass(Document.class);
+        verify(db).runCommand(command.capture());
+        assertEquals("executionStats", command.getValue().getString("verbosity"));
+        Document aggregate = command.getValue().get("explain", Document.class);
+        assertEquals("sensor_data", aggregate.getString("aggregate"));
+        Document match = aggregate.getList("pipeline", Document.class).get(0).get("$match", Document.class);
+        Document timestamp = match.getList("$and", Document.class).get(0).get("timestamp", Document.class);
+        assertEquals(Date.from(WINDOW.from()), timestamp.get("$gte"));
+        assertEquals(1, explained.size());
+        assertEquals(List.of("sensor_metric_time_idx"), explained.get(0).indexes());
+        assertEquals(0, bulkheads.query().active());
+    }
+
+    @Test
+    void checkSlow_explainsOnlyQueriesOverThreshold() {
+        // Arrange
+        QueryExplainer explainer = new QueryExplainer(mongoTemplate, raw(), bulkheads, Duration.ofMillis(500));
+        when(db.runCommand(any(Document.class))).thenReturn(new Document());
+
+        // Act
+        explainer.checkSlow(null, null, WINDOW, Duration.ofMillis(499).toNanos());
+        explainer.checkSlow(null, null, WINDOW, Duration.ofMillis(501).toNanos());
+
+        // Assert: one explain, in the background
+        verify(db, timeout(5_000).times(1)).runCommand(any(Document.class));
+    }
+
+    @Test
+    void checkSlow_zeroThresholdTurnsTheLogOff() {
+        // Arrange
+        QueryExplainer explainer = new QueryExplainer(mongoTemplate, raw(), bulkheads, Duration.ZERO);
+
+        // Act
+        explainer.checkSlow(null, null, WINDOW, Duration.ofMinutes(1).toNanos());
+
+        // Assert
+        verifyNoInteractions(db);
+    }
+
+    private RawAggregateSource raw() {
+        return new RawAggregateSource(mongoTemplate, new ReadingIndexes(mongoTemplate, StorageLayout.RAW, true));
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.weatherapi;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for splitting wide windows into concurrent per-chunk aggregations.
+ */
+class QueryFanOutTest {
+
+    private final QueryFanOut fanOut = new QueryFanOut(true, Duration.ofDays(1), 2);
+
+    @Test
+    void split_cutsAtDayBoundariesKeepingInclusiveEnds() {
+        // Act
+        List<TimeRange> chunks = fanOut.split(List.of(range("2025-08-01T10:00:00Z", "2025-08-03T00:00:00Z")));
+
+        // Assert: the end instant itself is the last chunk, like the raw $match's $lte
+        assertEquals(List.of(
+                range("2025-08-01T10:00:00Z", "2025-08-01T23:59:59.999Z"),
+                range("2025-08-02T00:00:00Z", "2025-08-02T23:59:59.999Z"),
+                range("2025-08-03T00:00:00Z", "2025-08-03T00:00:00Z")),
+            chunks);
+    }
+
+    @Test
+    void split_keepsRangesWithinOneChunk() {
+        List<TimeRange> ranges = List.of(
+            range("2025-08-01T10:00:00Z", "2025-08-01T10:00:59.999Z"),
+            range("2025-08-02T23:00:00Z", "2025-08-02T23:59:59.999Z"));
+
+        assertEquals(ranges, fanOut.split(ranges));
+    }
+
+    @Test
+    void aggregate_mergesChunkPartialsIntoTheWholeWindow() {
+        // Arrange: every chunk sees the same two readings
+        AggregateSource readings = mock(AggregateSource.class);
+        when(readings.aggregate(any(), any(), anyList()))
+            .thenAnswer(inv -> Map.of("temperature", new MetricAggregate(2, 30.0, 10.0, 20.0)));
+
+        // Act: 7 days plus the end instant
+        Map<String, MetricAggregate> out = new FanOutAggregateSource(readings, fanOut).aggregate(
+            List.of("1"), null, Instant.parse("2025-08-01T00:00:00Z"), Instant.parse("2025-08-08T00:00:00Z"));
+
+        // Assert
+        MetricAggregate temp = out.get("temperature");
+        assertEquals(16, temp.getCount());
+        assertEquals(15.0, temp.value(Statistic.AVG));
+        assertEquals(10.0, temp.value(Statistic.MIN));
+        assertEquals(20.0, temp.value(Statistic.MAX));
+        verify(readings, times(8)).aggregate(eq(List.of("1")), isNull(), anyList());
+    }
+
+    @Test
+    void aggregate_shortWindowIsOneDelegateCall() {
+        // Arrange
+        AggregateSource readings = mock(AggregateSource.class);
+        List<TimeRange> ranges = List.of(range("2025-08-01T10:00:00Z", "2025-08-01T12:00:00Z"));
+
+        // Act
+        new FanOutAggregateSource(readings, fanOut).aggregate(null, null, ranges);
+
+        // Assert
+        verify(readings).aggregate(null, null, ranges);
+        verifyNoMoreInteractions(readings);
+    }
+
+    @Test
+    void plan_listsOneAggregationPerChunkForExplain() {
+        // Arrange
+        AggregateSource readings = mock(AggregateSource.class);
+        when(readings.plan(any(), any(), anyList()))
+            .thenAnswer(inv -> List.of(new PlannedAggregation("sensor_data", null)));
+
+        // Act
+        List<PlannedAggregation> planned = new FanOutAggregateSource(readings, fanOut)
+            .plan(null, null, List.of(range("2025-08-01T00:00:00Z", "2025-08-02T12:00:00Z")));
+
+        // Assert
+        assertEquals(2, planned.size());
+        verify(readings).plan(null, null, List.of(range("2025-08-01T00:00:00Z", "2025-08-01T23:59:59.999Z")));
+        verify(readings).plan(null, null, List.of(range("2025-08-02T00:00:00Z", "2025-08-02T12:00:00Z")));
+    }
+
+    @Test
+    void invokeAll_runsAtMostParallelismTasksAtOnce() {
+        // Arrange
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        List<Supplier<Integer>> tasks = IntStream.range(0, 8).<Supplier<Integer>>mapToObj(i -> () -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            sleep(20);
+            running.decrementAndGet();
+            return i;
+        }).toList();
+
+        // Act
+        List<Integer> results = fanOut.invokeAll(tasks);
+
+        // Assert: results stay in task order
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7), results);
+        assertTrue(peak.get() <= 2, "peak " + peak.get());
+    }
+
+    @Test
+    void invokeAll_rethrowsTheTaskFailure() {
+        List<Supplier<Integer>> tasks = List.of(() -> 1, () -> {
+            throw new BulkheadFullException("busy");
+        });
+
+        assertThrows(BulkheadFullException.class, () -> fanOut.invokeAll(tasks));
+    }
+
+    @Test
+    void invokeAll_runsNestedTasksInlineInsteadOfWaitingForSlots() {
+        // Arrange: 4 outer tasks each fan out again; with 2 slots, waiting for more would deadlock
+        List<Supplier<Integer>> tasks = IntStream.range(0, 4).<Supplier<Integer>>mapToObj(i -> () ->
+            fanOut.invokeAll(List.<Supplier<Integer>>of(() -> i, () -> i)).stream().mapToInt(Integer::intValue).sum()
+        ).toList();
+
+        // Act
+        List<Integer> results = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> fanOut.invokeAll(tasks));
+
+        // Assert
+        assertEquals(List.of(0, 2, 4, 6), results);
+    }
+
+    @Test
+    void partitioned_splitsSortedSensorIdsAndMergesPartials() {
+        // Arrange: every partition sees one reading per sensor
+        AggregateSource readings = mock(AggregateSource.class);
+        when(readings.aggregate(anyList(), any(), anyList()))
+            .thenAnswer(inv -> {
+                int sensors = inv.<List<String>>getArgument(0).size();
+                return Map.of("temperature", new MetricAggregate(sensors, sensors * 10.0, 10.0, 10.0));
+            });
+        List<TimeRange> ranges = List.of(range("2025-08-01T00:00:00Z", "2025-08-01T12:00:00Z"));
+
+        // Act
+        Map<String, MetricAggregate> out = new PartitionedAggregateSource(readings, fanOut, 2)
+            .aggregate(List.of("e", "a", "d", "c", "b", "a"), null, ranges);
+
+        // Assert: duplicates dropped, contiguous sorted partitions
+        assertEquals(5, out.get("temperature").getCount());
+        verify(readings).aggregate(List.of("a", "b"), null, ranges);
+        verify(readings).aggregate(List.of("c", "d"), null, ranges);
+        verify(readings).aggregate(List.of("e"), null, ranges);
+    }
+
+    @Test
+    void partitioned_shortListsAndAllSensorsAreOneDelegateCall() {
+        // Arrange
+        AggregateSource readings = mock(AggregateSource.class);
+        PartitionedAggregateSource partitioned = new PartitionedAggregateSource(readings, fanOut, 2);
+        List<TimeRange> ranges = List.of(range("2025-08-01T00:00:00Z", "2025-08-01T12:00:00Z"));
+
+        // Act
+        partitioned.aggregate(List.of("b", "a"), null, ranges);
+        partitioned.aggregate(null, null, ranges);
+        partitioned.aggregate(List.of("a", "b", "a"), null, ranges);
+
+        // Assert: repeated ids do not make a list long enough to split
+        verify(readings).aggregate(List.of("b", "a"), null, ranges);
+        verify(readings).aggregate(null, null, ranges);
+        verify(readings).aggregate(List.of("a", "b", "a"), null, ranges);
+        verifyNoMoreInteractions(readings);
+        assertFalse(partitioned.splits(List.of("a", "b", "a")));
+        assertTrue(partitioned.splits(List.of("a", "b", "c")));
+    }
+
+    @Test
+    void constructor_rejectsNonPositiveSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new QueryFanOut(true, Duration.ZERO, 4));
+        assertThrows(IllegalArgumentException.class, () -> new QueryFanOut(true, Duration.ofDays(1), 0));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static TimeRange range(String from, String to) {
+        return new TimeRange(Instant.parse(from), Instant.parse(to));
+    }
+}
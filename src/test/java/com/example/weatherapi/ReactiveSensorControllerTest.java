@@ -0,0 +1,85 @@
+package com.example.weatherapi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the reactive export endpoint.
+ */
+class ReactiveSensorControllerTest {
+
+    private static final Instant FROM = Instant.parse("2025-08-01T00:00:00Z");
+    private static final Instant TO = Instant.parse("2025-08-03T00:00:00Z");
+
+    private ExportSource source;
+    private MongoBulkheads bulkheads;
+    private ReactiveSensorController controller;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        source = mock(ExportSource.class);
+        bulkheads = new MongoBulkheads(new SimpleMeterRegistry(), 1, 1, Duration.ofMillis(20));
+        ReadingExporter exporter = new ReadingExporter(source, bulkheads, new SensorMetrics(new SimpleMeterRegistry()),
+            new ObjectMapper(), 1000);
+        controller = new ReactiveSensorController(mock(ReactiveSensorService.class), mock(ObjectProvider.class),
+            mock(SensorCatalog.class), exporter, new ObjectMapper());
+    }
+
+    @Test
+    void export_streamsTheCursorOffTheEventLoopAndReleasesThePermit() {
+        // Arrange
+        AtomicReference<String> thread = new AtomicReference<>();
+        when(source.export(eq(null), eq(List.of("temperature")), eq(new TimeRange(FROM, TO)), anyInt())).thenAnswer(inv -> {
+            thread.set(Thread.currentThread().getName());
+            return Stream.of(SensorData.of("1", "temperature", 20.5, FROM));
+        });
+
+        // Act
+        ResponseEntity<Flux<DataBuffer>> response = controller.export(null, List.of("temperature"), "csv", FROM, TO);
+
+        // Assert: nothing is opened before the body is subscribed
+        verifyNoInteractions(source);
+        assertEquals("attachment; filename=\"readings.csv\"", response.getHeaders().getFirst(HttpHeaders.CONTENT_DISPOSITION));
+        StepVerifier.create(DataBufferUtils.join(response.getBody()).map(ReactiveSensorControllerTest::text))
+            .expectNext("sensorId,metric,timestamp,value\n1,temperature,2025-08-01T00:00:00Z,20.5\n")
+            .verifyComplete();
+        assertTrue(thread.get().startsWith("boundedElastic"), thread.get());
+        assertEquals(0, bulkheads.query().active());
+    }
+
+    @Test
+    void export_rejectsBadParametersBeforeStreaming() {
+        assertThrows(IllegalArgumentException.class, () -> controller.export(null, null, "xml", FROM, TO));
+        assertThrows(IllegalArgumentException.class, () -> controller.export(null, null, "csv", FROM, FROM.plusSeconds(60)));
+        verify(source, never()).export(any(), any(), any(), anyInt());
+    }
+
+    private static String text(DataBuffer buffer) {
+        String s = buffer.toString(StandardCharsets.UTF_8);
+        DataBufferUtils.release(buffer);
+        return s;
+    }
+}
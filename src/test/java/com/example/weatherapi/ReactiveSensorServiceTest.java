@@ -0,0 +1,205 @@
+package com.example.weatherapi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the reactive service using a mocked ReactiveMongoTemplate and writer.
+ */
+class ReactiveSensorServiceTest {
+
+    private static final Instant FROM = Instant.parse("2025-08-01T00:00:00Z");
+    private static final Instant TO = Instant.parse("2025-08-02T00:00:00Z");
+
+    private ReactiveMongoTemplate template;
+    private ReactiveSensorWriter writer;
+    private SensorService blocking;
+    private QueryCache cache;
+    private ReactiveSensorService service;
+
+    @BeforeEach
+    void setUp() {
+        template = mock(ReactiveMongoTemplate.class);
+        writer = mock(ReactiveSensorWriter.class);
+        when(writer.getChunkSize()).thenReturn(2);
+        when(writer.insert(anyList())).thenReturn(Mono.just(Map.of()));
+        blocking = mock(SensorService.class);
+        cache = mock(QueryCache.class);
+        when(cache.openWindowEnd()).thenAnswer(inv -> Instant.now());
+        service = service(mock(RawAggregateSource.class));
+    }
+
+    private ReactiveSensorService service(AggregateSource primary) {
+        ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        return new ReactiveSensorService(template, writer, StorageLayout.RAW,
+                new ReadingIndexes(mock(MongoTemplate.class), StorageLayout.RAW, true), blocking, primary, cache,
+                mock(TieredStorage.class), List.of(), new IngestGate(), mapper, 10, 10);
+    }
+
+    @Test
+    void ingestStream_writesChunksAndReportsBadLines() {
+        // Arrange: 3 valid lines, 1 malformed, 1 blank (ignored)
+        Flux<String> lines = Flux.just(
+            line("1", "temperature", 20.0),
+            "{not json",
+            line("1", "humidity", 60.0),
+            "",
+            line("2", "windSpeed", 5.0));
+
+        // Act + Assert
+        StepVerifier.create(service.ingestStream(lines))
+            .assertNext(result -> {
+                assertEquals(4, result.getReceived());
+                assertEquals(3, result.getAccepted());
+                assertEquals(1, result.getRejected());
+                assertEquals(1, result.getRejections().get(0).index());
+            })
+            .verifyComplete();
+
+        // Chunk size 2 -> writes of 2 and 1
+        ArgumentCaptor<List<SensorData>> captor = ArgumentCaptor.forClass(List.class);
+        verify(writer, times(2)).insert(captor.capture());
+        assertEquals(List.of(2, 1), captor.getAllValues().stream().map(List::size).toList());
+        assertEquals("wind_speed", captor.getAllValues().get(1).get(0).getMetric());
+    }
+
+    @Test
+    void ingestStream_countsWriteFailuresAgainstTheirLine() {
+        // Arrange: the second reading of the first chunk fails to write
+        when(writer.insert(anyList())).thenReturn(Mono.just(Map.of(1, "duplicate key")), Mono.just(Map.of()));
+        Flux<String> lines = Flux.just(
+            line("1", "temperature", 20.0),
+            line("1", "humidity", 60.0),
+            line("2", "temperature", 21.0));
+
+        // Act + Assert
+        StepVerifier.create(service.ingestStream(lines))
+            .assertNext(result -> {
+                assertEquals(3, result.getReceived());
+                assertEquals(2, result.getAccepted());
+                assertEquals(1, result.getRejections().get(0).index());
+                assertEquals("duplicate key", result.getRejections().get(0).error());
+            })
+            .verifyComplete();
+    }
+
+    @Test
+    void queryData_runsRawAggregationReactively() {
+        // Arrange
+        Document doc = new Document("metric", "temperature")
+            .append("count", 3).append("sum", 66.0).append("min", 20.0).append("max", 24.0);
+        when(template.aggregate(any(Aggregation.class), eq("sensor_data"), eq(Document.class)))
+            .thenReturn(Flux.just(doc));
+
+        // Act + Assert
+        StepVerifier.create(service.queryData(List.of("1"), List.of("temperature"),
+                StatSelection.from("avg,max"), FROM, TO))
+            .assertNext(qr -> {
+                MultiStatQueryResult multi = assertInstanceOf(MultiStatQueryResult.class, qr);
+                assertEquals(22.0, multi.getStatsByMetric().get("temperature").get("avg"));
+                assertEquals(24.0, multi.getStatsByMetric().get("temperature").get("max"));
+            })
+            .verifyComplete();
+        verifyNoInteractions(blocking);
+    }
+
+    @Test
+    void queryData_percentilesAreServedByBlockingServiceOffTheCallerThread() {
+        // Arrange
+        StatSelection selection = StatSelection.from("p95");
+        QueryResult expected = new QueryResult(null, List.of("temperature"), "p95", FROM, TO, Map.of("temperature", 30.0));
+        AtomicReference<String> thread = new AtomicReference<>();
+        when(blocking.queryData(any(), any(), eq(selection), eq(FROM), eq(TO))).thenAnswer(inv -> {
+            thread.set(Thread.currentThread().getName());
+            return expected;
+        });
+
+        // Act + Assert
+        StepVerifier.create(service.queryData(null, List.of("temperature"), selection, FROM, TO))
+            .expectNext(expected)
+            .verifyComplete();
+        assertTrue(thread.get().startsWith("boundedElastic"), thread.get());
+        verifyNoInteractions(template);
+    }
+
+    @Test
+    void queryData_decoratedOrSplitSourcesAreServedByBlockingService() {
+        // Arrange: a fan-out source, and partitions of 2 over the bare store
+        StatSelection selection = StatSelection.from("avg");
+        QueryResult expected = new QueryResult(null, List.of("temperature"), "avg", FROM, TO, Map.of("temperature", 22.0));
+        when(blocking.queryData(any(), any(), eq(selection), eq(FROM), eq(TO))).thenReturn(expected);
+        RawAggregateSource raw = mock(RawAggregateSource.class);
+        ReactiveSensorService fannedOut = service(new FanOutAggregateSource(raw, mock(QueryFanOut.class)));
+        ReactiveSensorService partitioned = service(new PartitionedAggregateSource(raw, mock(QueryFanOut.class), 2));
+        when(template.aggregate(any(Aggregation.class), eq("sensor_data"), eq(Document.class))).thenReturn(Flux.empty());
+
+        // Act + Assert
+        StepVerifier.create(fannedOut.queryData(List.of("1"), List.of("temperature"), selection, FROM, TO))
+            .expectNext(expected)
+            .verifyComplete();
+        StepVerifier.create(partitioned.queryData(List.of("1", "2", "3"), List.of("temperature"), selection, FROM, TO))
+            .expectNext(expected)
+            .verifyComplete();
+        StepVerifier.create(partitioned.queryData(List.of("1", "2"), List.of("temperature"), selection, FROM, TO))
+            .assertNext(qr -> assertNotSame(expected, qr))
+            .verifyComplete();
+        verify(blocking, times(2)).queryData(any(), any(), eq(selection), eq(FROM), eq(TO));
+    }
+
+    @Test
+    void querySeries_readsCursorOnlyAsFastAsItIsConsumed() {
+        // Arrange: an unbounded cursor that records how many documents were requested from it
+        AtomicLong requested = new AtomicLong();
+        Flux<Document> cursor = Flux.<Document, Long>generate(() -> 0L, (i, sink) -> {
+            sink.next(new Document("_id", new Document("metric", "temperature").append("start", Date.from(FROM.plusSeconds(3600 * i))))
+                .append("count", 1).append("sum", 20.0).append("min", 20.0).append("max", 20.0));
+            return i + 1;
+        }).doOnRequest(requested::addAndGet);
+        when(template.aggregate(any(Aggregation.class), eq("sensor_data"), eq(Document.class))).thenReturn(cursor);
+
+        // Act
+        ReactiveSensorService.SeriesStream series = service.querySeries(null, List.of("temperature"),
+                Statistic.AVG, SeriesInterval.from("1h"), FROM, TO);
+
+        // Assert: two points consumed, two requested
+        StepVerifier.create(series.points(), 2)
+            .assertNext(p -> assertEquals(FROM, p.start()))
+            .assertNext(p -> assertEquals(20.0, p.aggregate().value(Statistic.AVG)))
+            .thenCancel()
+            .verify();
+        assertEquals(2, requested.get());
+    }
+
+    @Test
+    void querySeries_rejectsTooManyBucketsBeforeQuerying() {
+        assertThrows(IllegalArgumentException.class, () -> service.querySeries(null, null, Statistic.AVG,
+                SeriesInterval.from("1s"), Instant.parse("2020-01-01T00:00:00Z"), TO));
+        verifyNoInteractions(template);
+    }
+
+    private static String line(String sensorId, String metric, double value) {
+        return "{\"sensorId\":\"" + sensorId + "\",\"metric\":\"" + metric + "\",\"value\":" + value
+            + ",\"timestamp\":\"2025-08-01T10:00:00Z\"}";
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.weatherapi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the streaming raw-reading export.
+ */
+class ReadingExporterTest {
+
+    private static final Instant FROM = Instant.parse("2025-08-01T00:00:00Z");
+
+    private ExportSource source;
+    private MongoBulkheads bulkheads;
+    private SimpleMeterRegistry registry;
+    private ReadingExporter exporter;
+
+    @BeforeEach
+    void setUp() {
+        source = mock(ExportSource.class);
+        bulkheads = new MongoBulkheads(new SimpleMeterRegistry(), 1, 1, Duration.ofMillis(20));
+        registry = new SimpleMeterRegistry();
+        exporter = new ReadingExporter(source, bulkheads, new SensorMetrics(registry), new ObjectMapper(), 1000);
+    }
+
+    @Test
+    void write_csvHasHeaderAndQuotesSensorIdsWithSeparators() throws Exception {
+        // Arrange
+        Stream<SensorData> readings = Stream.of(
+            SensorData.of("1", "temperature", 20.5, FROM),
+            SensorData.of("roof,north", "humidity", 60.0, FROM.plusSeconds(60)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        exporter.write(ExportFormat.CSV, readings, out);
+
+        // Assert
+        assertEquals("""
+            sensorId,metric,timestamp,value
+            1,temperature,2025-08-01T00:00:00Z,20.5
+            "roof,north",humidity,2025-08-01T00:01:00Z,60.0
+            """, out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void write_ndjsonWritesOneObjectPerLine() throws Exception {
+        // Arrange
+        Stream<SensorData> readings = Stream.of(
+            SensorData.of("1", "temperature", 20.5, FROM),
+            SensorData.of("2", "wind_speed", 4.0, FROM));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        exporter.write(ExportFormat.NDJSON, readings, out);
+
+        // Assert
+        assertEquals("""
+            {"sensorId":"1","metric":"temperature","timestamp":"2025-08-01T00:00:00Z","value":20.5}
+            {"sensorId":"2","metric":"wind_speed","timestamp":"2025-08-01T00:00:00Z","value":4.0}
+            """, out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void readings_holdThePermitAndRecordTheCountUntilClosed() throws Exception {
+        // Arrange
+        when(source.export(any(), any(), any(), anyInt()))
+            .thenReturn(Stream.of(SensorData.of("1", "temperature", 20.0, FROM)));
+
+        // Act
+        Stream<SensorData> readings = exporter.readings(List.of("1"), null, FROM, FROM.plus(Duration.ofDays(1)));
+        int activeWhileOpen = bulkheads.query().active();
+        exporter.write(ExportFormat.CSV, readings, new ByteArrayOutputStream());
+
+        // Assert
+        assertEquals(1, activeWhileOpen);
+        assertEquals(0, bulkheads.query().active());
+        assertEquals(1.0, registry.get("sensors.query.documents").tag("query", "export").summary().totalAmount());
+        verify(source).export(eq(List.of("1")), isNull(), eq(new TimeRange(FROM, FROM.plus(Duration.ofDays(1)))), eq(1000));
+    }
+
+    @Test
+    void readings_rejectWindowsLikeQuery() {
+        assertThrows(IllegalArgumentException.class,
+            () -> exporter.readings(null, null, FROM, FROM.plus(Duration.ofDays(32))));
+        verifyNoInteractions(source);
+    }
+
+    @Test
+    void format_acceptsCsvAndNdjsonOnly() {
+        assertEquals(ExportFormat.CSV, ExportFormat.from(" CSV "));
+        assertEquals(ExportFormat.NDJSON, ExportFormat.from("ndjson"));
+        assertThrows(IllegalArgumentException.class, () -> ExportFormat.from("xlsx"));
+    }
+
+    @Test
+    void rawExport_projectsReadingFieldsAndSetsTheCursorBatchSize() {
+        // Arrange
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        ArgumentCaptor<Aggregation> agg = ArgumentCaptor.forClass(Aggregation.class);
+        when(mongoTemplate.aggregateStream(agg.capture(), eq("sensor_data"), eq(Document.class)))
+            .thenReturn(Stream.of(new Document("sensorId", "1").append("metric", "temperature")
+                .append("timestamp", Date.from(FROM)).append("value", 20)));
+        RawAggregateSource raw = new RawAggregateSource(mongoTemplate, new ReadingIndexes(mongoTemplate, StorageLayout.RAW, true));
+
+        // Act
+        List<SensorData> exported = raw.export(null, List.of("temperature"), new TimeRange(FROM, FROM.plusSeconds(60)), 5000)
+            .toList();
+
+        // Assert: only the four reading fields, so the sensorIds index can cover the read
+        assertEquals(20.0, exported.get(0).getValue());
+        assertEquals(FROM, exported.get(0).getTimestamp());
+        List<Document> pipeline = agg.getValue().toPipeline(Aggregation.DEFAULT_CONTEXT);
+        assertEquals(new Document("sensorId", 1).append("metric", 1).append("timestamp", 1).append("value", 1).append("_id", 0),
+            pipeline.get(1).get("$project"));
+        assertEquals(5000, agg.getValue().getOptions().getCursorBatchSize());
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.weatherapi;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the per-shape reading indexes and query hints.
+ */
+class ReadingIndexesTest {
+
+    private static final TimeRange WINDOW =
+        new TimeRange(Instant.parse("2025-08-01T00:00:00Z"), Instant.parse("2025-08-02T00:00:00Z"));
+
+    private MongoTemplate mongoTemplate;
+    private IndexOperations indexOps;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        indexOps = mock(IndexOperations.class);
+        when(mongoTemplate.indexOps(anyString())).thenReturn(indexOps);
+    }
+
+    @Test
+    void shape_followsTheGivenFilters() {
+        assertEquals(ReadingIndexes.QueryShape.SENSORS, ReadingIndexes.QueryShape.of(List.of("1"), List.of("temperature")));
+        assertEquals(ReadingIndexes.QueryShape.METRICS, ReadingIndexes.QueryShape.of(List.of(), List.of("temperature")));
+        assertEquals(ReadingIndexes.QueryShape.WINDOW, ReadingIndexes.QueryShape.of(null, null));
+    }
+
+    @Test
+    void ensureIndexes_createsCoveringIndexPerShapeAndDropsSupersededOnes() {
+        // Arrange: an index from an earlier version is still there
+        IndexInfo old = mock(IndexInfo.class);
+        when(old.getName()).thenReturn("sensor_metric_time_idx");
+        IndexInfo id = mock(IndexInfo.class);
+        when(id.getName()).thenReturn("_id_");
+        when(indexOps.getIndexInfo()).thenReturn(List.of(id, old));
+
+        // Act
+        new ReadingIndexes(mongoTemplate, StorageLayout.RAW, true).ensureIndexes();
+
+        // Assert: equality fields first, then the range, value last so the scan is covered
+        ArgumentCaptor<IndexDefinition> created = ArgumentCaptor.forClass(IndexDefinition.class);
+        verify(indexOps, times(3)).createIndex(created.capture());
+        assertEquals(List.of(
+                new Document("sensorId", 1).append("metric", 1).append("timestamp", 1).append("value", 1),
+                new Document("metric", 1).append("timestamp", 1).append("value", 1),
+                new Document("timestamp", 1).append("metric", 1).append("value", 1)),
+            created.getAllValues().stream().map(IndexDefinition::getIndexKeys).toList());
+        assertEquals("time_metric_value_idx", created.getAllValues().get(2).getIndexOptions().getString("name"));
+        verify(indexOps).dropIndex("sensor_metric_time_idx");
+        verify(indexOps, never()).dropIndex("_id_");
+    }
+
+    @Test
+    void hint_onlyOnceTheIndexExists() {
+        // Arrange
+        ReadingIndexes indexes = new ReadingIndexes(mongoTemplate, StorageLayout.COMPACT, true);
+
+        // Act + Assert: hinting a missing index would fail the query
+        assertNull(indexes.hint(CompactReadingStore.COLLECTION, ReadingIndexes.QueryShape.METRICS));
+        indexes.ensureIndexes();
+        assertEquals("reading_metric_time_value_idx", indexes.hint(CompactReadingStore.COLLECTION, ReadingIndexes.QueryShape.METRICS));
+        assertNull(indexes.hint(RawAggregateSource.COLLECTION, ReadingIndexes.QueryShape.METRICS));
+    }
+
+    @Test
+    void hint_offWhenDisabledOrBucketed() {
+        // Arrange
+        ReadingIndexes disabled = new ReadingIndexes(mongoTemplate, StorageLayout.RAW, false);
+        ReadingIndexes bucketed = new ReadingIndexes(mongoTemplate, StorageLayout.BUCKETED, true);
+
+        // Act
+        disabled.ensureIndexes();
+        bucketed.ensureIndexes();
+
+        // Assert: disabled still creates the indexes, bucketed leaves its collections alone
+        assertNull(disabled.hint(RawAggregateSource.COLLECTION, ReadingIndexes.QueryShape.WINDOW));
+        assertNull(bucketed.hint(RawAggregateSource.COLLECTION, ReadingIndexes.QueryShape.WINDOW));
+        verify(mongoTemplate, times(1)).indexOps(anyString());
+    }
+
+    @Test
+    void rawAggregate_hintsTheIndexOfItsShape() {
+        // Arrange
+        ReadingIndexes indexes = new ReadingIndexes(mongoTemplate, StorageLayout.RAW, true);
+        indexes.ensureIndexes();
+        ArgumentCaptor<Aggregation> agg = ArgumentCaptor.forClass(Aggregation.class);
+        when(mongoTemplate.aggregate(agg.capture(), eq("sensor_data"), eq(Document.class)))
+            .thenReturn(new AggregationResults<>(List.of(), new Document()));
+
+        // Act: no sensorIds, so the fleet-wide index
+        new RawAggregateSource(mongoTemplate, indexes).aggregate(null, null, List.of(WINDOW));
+
+        // Assert
+        assertEquals(Optional.of("time_metric_value_idx"), agg.getValue().getOptions().getHintObject());
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.weatherapi;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for rollup query planning and partial merging.
+ */
+class RollupPlannerTest {
+
+    @Test
+    void plan_usesCoarsestBucketsAndFinerOnesAtTheEdges() {
+        RollupPlanner.Plan plan = new RollupPlanner.Plan();
+        RollupPlanner.plan(range("2025-08-01T10:30:15.250Z", "2025-08-04T02:00:00Z"), plan);
+
+        assertEquals(List.of(range("2025-08-02T00:00:00Z", "2025-08-03T00:00:00Z")),
+            plan.rollupStarts.get(RollupResolution.DAY));
+        assertEquals(List.of(
+                range("2025-08-01T11:00:00Z", "2025-08-01T23:00:00Z"),
+                range("2025-08-04T00:00:00Z", "2025-08-04T01:00:00Z")),
+            plan.rollupStarts.get(RollupResolution.HOUR));
+        assertEquals(List.of(range("2025-08-01T10:31:00Z", "2025-08-01T10:59:00Z")),
+            plan.rollupStarts.get(RollupResolution.MINUTE));
+        // Sub-minute head, and the inclusive end instant itself
+        assertEquals(List.of(
+                range("2025-08-01T10:30:15.250Z", "2025-08-01T10:30:59.999Z"),
+                range("2025-08-04T02:00:00Z", "2025-08-04T02:00:00Z")),
+            plan.rawRanges);
+    }
+
+    @Test
+    void plan_alignedWindowNeedsOnlyWholeDaysPlusEndInstant() {
+        RollupPlanner.Plan plan = new RollupPlanner.Plan();
+        RollupPlanner.plan(range("2025-08-01T00:00:00Z", "2025-08-03T00:00:00Z"), plan);
+
+        assertEquals(List.of(range("2025-08-01T00:00:00Z", "2025-08-02T00:00:00Z")),
+            plan.rollupStarts.get(RollupResolution.DAY));
+        assertNull(plan.rollupStarts.get(RollupResolution.HOUR));
+        assertNull(plan.rollupStarts.get(RollupResolution.MINUTE));
+        assertEquals(List.of(range("2025-08-03T00:00:00Z", "2025-08-03T00:00:00Z")), plan.rawRanges);
+    }
+
+    @Test
+    void plan_readsStaleDaysWholeFromTheReadings() {
+        // Arrange: Aug 2 has a failed rollup update
+        RollupPlanner.Plan plan = new RollupPlanner.Plan();
+        NavigableSet<Instant> stale = new TreeSet<>(List.of(Instant.parse("2025-08-02T00:00:00Z")));
+
+        // Act
+        RollupPlanner.plan(range("2025-08-01T00:00:00Z", "2025-08-04T00:00:00Z"), stale, plan);
+
+        // Assert: Aug 1 and 3 still come from the day rollups
+        assertEquals(List.of(
+                range("2025-08-01T00:00:00Z", "2025-08-01T00:00:00Z"),
+                range("2025-08-03T00:00:00Z", "2025-08-03T00:00:00Z")),
+            plan.rollupStarts.get(RollupResolution.DAY));
+        assertEquals(List.of(
+                range("2025-08-02T00:00:00Z", "2025-08-02T23:59:59.999Z"),
+                range("2025-08-04T00:00:00Z", "2025-08-04T00:00:00Z")),
+            plan.rawRanges);
+    }
+
+    @Test
+    void aggregate_readsTheReadingsWhileRollupsAreRebuilt() {
+        // Arrange
+        RollupStore rollups = mock(RollupStore.class);
+        AggregateSource readings = mock(AggregateSource.class);
+        when(rollups.isRebuilding()).thenReturn(true);
+        List<TimeRange> window = List.of(range("2025-08-01T00:00:00Z", "2025-08-03T00:00:00Z"));
+
+        // Act
+        new RollupPlanner(rollups, readings).aggregate(null, null, window);
+
+        // Assert
+        verify(readings).aggregate(null, null, window);
+        verify(rollups, never()).aggregate(any(), any(), any(), anyList());
+    }
+
+    @Test
+    void aggregate_mergesRollupAndRawPartials() {
+        RollupStore rollups = mock(RollupStore.class);
+        when(rollups.staleDays()).thenReturn(Collections.emptyNavigableSet());
+        AggregateSource readings = mock(AggregateSource.class);
+        when(rollups.aggregate(eq(RollupResolution.DAY), any(), any(), anyList()))
+            .thenReturn(Map.of("temperature", new MetricAggregate(10, 200.0, 12.0, 28.0)));
+        when(readings.aggregate(any(), any(), anyList()))
+            .thenReturn(Map.of("temperature", new MetricAggregate(2, 70.0, 30.0, 40.0)));
+
+        Map<String, MetricAggregate> out = new RollupPlanner(rollups, readings).aggregate(
+            List.of("1"), List.of("temperature"),
+            Instant.parse("2025-08-01T00:00:00Z"), Instant.parse("2025-08-03T00:00:00Z"));
+
+        MetricAggregate temp = out.get("temperature");
+        assertEquals(12, temp.getCount());
+        assertEquals(270.0 / 12, temp.value(Statistic.AVG));
+        assertEquals(12.0, temp.value(Statistic.MIN));
+        assertEquals(40.0, temp.value(Statistic.MAX));
+        verify(rollups, never()).aggregate(eq(RollupResolution.HOUR), any(), any(), anyList());
+    }
+
+    @Test
+    void plan_listsRollupThenRawAggregationsForExplain() {
+        RollupStore rollups = mock(RollupStore.class);
+        when(rollups.staleDays()).thenReturn(Collections.emptyNavigableSet());
+        AggregateSource readings = mock(AggregateSource.class);
+        when(rollups.plan(eq(RollupResolution.DAY), any(), any(), anyList()))
+            .thenReturn(new PlannedAggregation(RollupResolution.DAY.collection(), mock(Aggregation.class)));
+        when(readings.plan(any(), any(), anyList()))
+            .thenReturn(List.of(new PlannedAggregation("sensor_data", mock(Aggregation.class))));
+
+        List<PlannedAggregation> planned = new RollupPlanner(rollups, readings).plan(
+            null, null, List.of(range("2025-08-01T00:00:00Z", "2025-08-03T00:00:00Z")));
+
+        assertEquals(List.of(RollupResolution.DAY.collection(), "sensor_data"),
+            planned.stream().map(PlannedAggregation::collection).toList());
+        verify(readings).plan(null, null, List.of(range("2025-08-03T00:00:00Z", "2025-08-03T00:00:00Z")));
+    }
+
+    @Test
+    void percentilePlanner_mergesRollupSketchesWithRawEdges() {
+        RollupStore rollups = mock(RollupStore.class);
+        when(rollups.staleDays()).thenReturn(Collections.emptyNavigableSet());
+        SketchSource readings = mock(SketchSource.class);
+        when(rollups.sketches(eq(RollupResolution.DAY), any(), any(), anyList()))
+            .thenReturn(Map.of("temperature", new QuantileSketch(0.01).add(10).add(20)));
+        when(readings.sketches(any(), any(), anyList(), eq(0.01)))
+            .thenReturn(Map.of("temperature", new QuantileSketch(0.01).add(30)));
+
+        // Whole day plus 1ms at the end: one day bucket, one raw edge
+        Map<String, QuantileSketch> out = new PercentilePlanner(rollups, readings, 0.01).sketches(
+            null, List.of("temperature"), range("2025-08-01T00:00:00Z", "2025-08-02T00:00:00Z"));
+
+        QuantileSketch temp = out.get("temperature");
+        assertEquals(3, temp.getCount());
+        assertEquals(30.0, temp.quantile(1), 0.3);
+        verify(readings).sketches(null, List.of("temperature"),
+            List.of(range("2025-08-02T00:00:00Z", "2025-08-02T00:00:00Z")), 0.01);
+    }
+
+    @Test
+    void percentilePlanner_withoutRollupsBinsTheWholeWindow() {
+        SketchSource readings = mock(SketchSource.class);
+        TimeRange window = range("2025-08-01T00:00:00Z", "2025-08-02T00:00:00Z");
+
+        new PercentilePlanner(null, readings, 0.01).sketches(List.of("1"), null, window);
+
+        verify(readings).sketches(List.of("1"), null, List.of(window), 0.01);
+    }
+
+    private static TimeRange range(String from, String to) {
+        return new TimeRange(Instant.parse(from), Instant.parse(to));
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.weatherapi;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for incremental rollup maintenance.
+ */
+class RollupStoreTest {
+
+    @Test
+    void onIngest_upsertsOneBucketPerResolutionAndKey() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        BulkOperations day = mock(BulkOperations.class);
+        BulkOperations hour = mock(BulkOperations.class);
+        BulkOperations minute = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(BulkMode.UNORDERED, "sensor_rollups_1d")).thenReturn(day);
+        when(mongoTemplate.bulkOps(BulkMode.UNORDERED, "sensor_rollups_1h")).thenReturn(hour);
+        when(mongoTemplate.bulkOps(BulkMode.UNORDERED, "sensor_rollups_1m")).thenReturn(minute);
+
+        RollupStore store = new RollupStore(mongoTemplate, StorageLayout.RAW, new IngestGate(), new SimpleMeterRegistry(), true, false, 0.01, Duration.ofMinutes(1));
+        store.onIngest(List.of(
+            reading(20.0, "2025-08-01T10:00:10Z"),
+            reading(22.0, "2025-08-01T10:00:50Z"),
+            reading(24.0, "2025-08-01T11:30:00Z")));
+
+        // Same day; two hours; two minutes
+        verify(day, times(1)).upsert(any(Query.class), any(Update.class));
+        verify(hour, times(2)).upsert(any(Query.class), any(Update.class));
+        verify(minute, times(2)).upsert(any(Query.class), any(Update.class));
+        verify(day).execute();
+    }
+
+    @Test
+    void onIngest_isNoOpWhenDisabled() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        new RollupStore(mongoTemplate, StorageLayout.RAW, new IngestGate(), new SimpleMeterRegistry(), false, false, 0.01, Duration.ofMinutes(1))
+            .onIngest(List.of(reading(1.0, "2025-08-01T10:00:00Z")));
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void rebuildPipeline_groupsPerBucketAndMergesOnTheRollupKey() {
+        RollupStore store = new RollupStore(mock(MongoTemplate.class), StorageLayout.RAW, new IngestGate(), new SimpleMeterRegistry(), true, false, 0.01, Duration.ofMinutes(1));
+
+        List<Document> pipeline = Aggregation.newAggregation(store.rebuildPipeline(RollupResolution.HOUR))
+            .toPipeline(Aggregation.DEFAULT_CONTEXT);
+
+        Document trunc = pipeline.get(0).get("$project", Document.class).get("start", Document.class);
+        assertEquals("hour", trunc.get("$dateTrunc", Document.class).get("unit"));
+        assertTrue(pipeline.get(1).get("$set", Document.class).containsKey("k"));
+        Document project = pipeline.get(4).get("$project", Document.class);
+        assertEquals("$_id.sensorId", project.get("sensorId"));
+        assertEquals(new Document("$arrayToObject", "$bins"), project.get("sk"));
+        Document merge = pipeline.get(5).get("$merge", Document.class);
+        assertEquals("sensor_rollups_1h", merge.get("into"));
+        assertEquals(List.of("sensorId", "metric", "start"), merge.get("on"));
+    }
+
+    @Test
+    void onIngest_incrementsSketchBinsAlongsideTheSummary() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        BulkOperations ops = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(eq(BulkMode.UNORDERED), anyString())).thenReturn(ops);
+
+        RollupStore store = new RollupStore(mongoTemplate, StorageLayout.RAW, new IngestGate(), new SimpleMeterRegistry(), true, false, 0.01, Duration.ofMinutes(1));
+        store.onIngest(List.of(
+            reading(20.0, "2025-08-01T10:00:10Z"),
+            reading(20.0, "2025-08-01T10:00:20Z"),
+            reading(-3.0, "2025-08-01T10:00:30Z")));
+
+        // One minute bucket: both 20.0 readings share a bin
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(ops, times(3)).upsert(any(Query.class), update.capture());
+        QuantileSketch sketch = new QuantileSketch(0.01);
+        Document inc = update.getValue().getUpdateObject().get("$inc", Document.class);
+        assertEquals(2L, inc.get("sk." + sketch.binKey(20.0)));
+        assertEquals(1L, inc.get("sk." + sketch.binKey(-3.0)));
+        assertEquals(3L, inc.get("count"));
+    }
+
+    @Test
+    void sketchPipeline_unwindsStoredBinsAndMergesPerMetric() {
+        List<Document> pipeline = Aggregation.newAggregation(RollupStore.sketchPipeline(
+                null, List.of("temperature"),
+                List.of(new TimeRange(Instant.parse("2025-08-01T00:00:00Z"), Instant.parse("2025-08-02T00:00:00Z")))))
+            .toPipeline(Aggregation.DEFAULT_CONTEXT);
+
+        assertEquals(new Document("$objectToArray", "$sk"),
+            pipeline.get(1).get("$project", Document.class).get("bins"));
+        assertEquals("$bins", pipeline.get(2).get("$unwind"));
+        assertEquals("$_id.metric", pipeline.get(5).get("$group", Document.class).get("_id"));
+    }
+
+    @Test
+    void onIngest_failureMarksTheDaysStaleUntilRepairedWithIngestPaused() {
+        // Arrange: the hour rollup update fails after the readings were stored
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        BulkOperations ops = mock(BulkOperations.class);
+        BulkOperations failing = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(eq(BulkMode.UNORDERED), anyString())).thenReturn(ops);
+        when(mongoTemplate.bulkOps(BulkMode.UNORDERED, "sensor_rollups_1h")).thenReturn(failing);
+        when(failing.execute()).thenThrow(new IllegalStateException("connection reset"));
+        IngestGate gate = new IngestGate();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RollupStore store = new RollupStore(mongoTemplate, StorageLayout.RAW, gate, registry, true, false, 0.01, Duration.ofMinutes(1));
+
+        // Act
+        store.onIngest(List.of(reading(20.0, "2025-08-01T10:00:10Z"), reading(21.0, "2025-08-02T23:59:59Z")));
+
+        // Assert: both days are stale, and the mark was recorded
+        Instant day1 = Instant.parse("2025-08-01T00:00:00Z");
+        Instant day2 = Instant.parse("2025-08-02T00:00:00Z");
+        assertEquals(List.of(day1, day2), List.copyOf(store.staleDays()));
+        assertEquals(1.0, registry.get("sensors.rollups.failures").counter().count());
+        verify(mongoTemplate).bulkOps(BulkMode.UNORDERED, RollupStore.STALE_COLLECTION);
+
+        // Arrange: each resolution is recomputed from that day's readings while ingest is refused
+        List<Document> matches = new ArrayList<>();
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq("sensor_data"), eq(Document.class))).thenAnswer(inv -> {
+            assertThrows(BulkheadFullException.class, gate::enter);
+            matches.add(inv.getArgument(0, Aggregation.class).toPipeline(Aggregation.DEFAULT_CONTEXT).get(0));
+            return null;
+        });
+
+        // Act
+        store.repair();
+
+        // Assert
+        assertEquals(6, matches.size());
+        assertTrue(matches.get(0).toJson().contains("timestamp"), matches.get(0).toJson());
+        assertTrue(store.staleDays().isEmpty());
+        verify(mongoTemplate, times(2)).remove(any(Query.class), eq(RollupStore.STALE_COLLECTION));
+        assertDoesNotThrow(() -> gate.call(() -> true));
+    }
+
+    @Test
+    void repair_leavesArchivedDaysStale() {
+        // Arrange: the first day is below the floor, so its readings may already be in segments only
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        BulkOperations ops = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(eq(BulkMode.UNORDERED), anyString())).thenReturn(ops);
+        when(ops.execute()).thenThrow(new IllegalStateException("connection reset"));
+        IngestGate gate = new IngestGate();
+        RollupStore store = new RollupStore(mongoTemplate, StorageLayout.RAW, gate, new SimpleMeterRegistry(), true, false, 0.01, Duration.ofMinutes(1));
+        store.onIngest(List.of(reading(20.0, "2025-08-01T10:00:10Z"), reading(21.0, "2025-08-02T10:00:00Z")));
+        gate.raiseFloor(Instant.parse("2025-08-02T00:00:00Z"));
+
+        // Act
+        store.repair();
+
+        // Assert: only the hot day was recomputed and cleared
+        assertEquals(List.of(Instant.parse("2025-08-01T00:00:00Z")), List.copyOf(store.staleDays()));
+        verify(mongoTemplate, times(3)).aggregate(any(Aggregation.class), eq("sensor_data"), eq(Document.class));
+        verify(mongoTemplate).remove(any(Query.class), eq(RollupStore.STALE_COLLECTION));
+    }
+
+    @Test
+    void rebuild_pausesIngestAndHandsQueriesToTheReadingsMeanwhile() {
+        // Arrange
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.indexOps(anyString())).thenReturn(mock(IndexOperations.class));
+        IngestGate gate = new IngestGate();
+        RollupStore store = new RollupStore(mongoTemplate, StorageLayout.RAW, gate, new SimpleMeterRegistry(), true, true, 0.01, Duration.ofMinutes(1));
+        List<Boolean> seen = new ArrayList<>();
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq("sensor_data"), eq(Document.class))).thenAnswer(inv -> {
+            seen.add(store.isRebuilding() && gate.isClosed());
+            return null;
+        });
+
+        // Act
+        store.init();
+
+        // Assert
+        assertEquals(List.of(true, true, true), seen);
+        assertFalse(store.isRebuilding());
+        assertFalse(gate.isClosed());
+        verify(mongoTemplate).dropCollection(RollupStore.STALE_COLLECTION);
+    }
+
+    private static SensorData reading(double value, String iso) {
+        SensorData d = new SensorData();
+        d.setSensorId("1");
+        d.setMetric("temperature");
+        d.setValue(value);
+        d.setTimestamp(Instant.parse(iso));
+        return d;
+    }
+}
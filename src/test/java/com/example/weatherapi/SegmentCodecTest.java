@@ -0,0 +1,102 @@
+package com.example.weatherapi;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the Gorilla timestamp/value encoding of segment series.
+ */
+class SegmentCodecTest {
+
+    private static final long START = 1_754_006_400_000L; // 2025-08-01T00:00:00Z
+
+    @Test
+    void encode_roundTripsIrregularTimestampsAndAnyDoubles() {
+        // Arrange: every timestamp bucket (same spacing, small/medium/large jitter, gaps, duplicates)
+        // and values that exercise each XOR case
+        Random random = new Random(42);
+        int n = 5000;
+        long[] ts = new long[n];
+        double[] vs = new double[n];
+        long t = START;
+        for (int i = 0; i < n; i++) {
+            t += switch (i % 7) {
+                case 0 -> 60_000;
+                case 1 -> 60_000 + random.nextInt(100);
+                case 2 -> 60_000 - random.nextInt(1000);
+                case 3 -> random.nextInt(3_600_000);
+                case 4 -> 0;
+                default -> 60_000;
+            };
+            ts[i] = t;
+            vs[i] = switch (i % 5) {
+                case 0 -> vs[Math.max(0, i - 1)];
+                case 1 -> Math.round(random.nextGaussian() * 100) / 10.0;
+                case 2 -> -random.nextDouble() * 1e9;
+                case 3 -> Double.NaN;
+                default -> i == 0 ? 0.0 : vs[i - 1] + 0.1;
+            };
+        }
+
+        // Act
+        byte[] encoded = SegmentCodec.encode(ts, vs, n);
+        List<long[]> decoded = new ArrayList<>();
+        SegmentCodec.read(ByteBuffer.wrap(encoded), 0, encoded.length, n, Long.MAX_VALUE,
+            (time, value) -> decoded.add(new long[]{time, Double.doubleToRawLongBits(value)}));
+
+        // Assert
+        assertEquals(n, decoded.size());
+        for (int i = 0; i < n; i++) {
+            assertEquals(ts[i], decoded.get(i)[0], "timestamp " + i);
+            assertEquals(Double.doubleToRawLongBits(vs[i]), decoded.get(i)[1], "value " + i);
+        }
+    }
+
+    @Test
+    void encode_regularSmoothSeriesTakesAFewBitsPerReading() {
+        // Arrange: a day of minute temperatures with 0.1 resolution
+        int n = 1440;
+        long[] ts = new long[n];
+        double[] vs = new double[n];
+        for (int i = 0; i < n; i++) {
+            ts[i] = START + i * 60_000L;
+            vs[i] = Math.round((20 + 5 * Math.sin(i / 240.0)) * 10) / 10.0;
+        }
+
+        // Act
+        byte[] encoded = SegmentCodec.encode(ts, vs, n);
+
+        // Assert: a raw sensor_data document is ~150 bytes
+        assertTrue(encoded.length < n * 4, encoded.length + " bytes");
+    }
+
+    @Test
+    void aggregate_foldsOnlyPointsInsideTheRange() {
+        // Arrange
+        long[] ts = {START, START + 1000, START + 2000, START + 3000};
+        double[] vs = {1.0, 2.0, 3.0, 4.0};
+        byte[] encoded = SegmentCodec.encode(ts, vs, 4);
+        MetricAggregate agg = new MetricAggregate();
+
+        // Act: both ends inclusive
+        SegmentCodec.aggregate(ByteBuffer.wrap(encoded), 0, encoded.length, 4, START + 1000, START + 2000, agg);
+
+        // Assert
+        assertEquals(2, agg.getCount());
+        assertEquals(5.0, agg.getSum());
+        assertEquals(2.0, agg.getMin());
+        assertEquals(3.0, agg.getMax());
+    }
+
+    @Test
+    void encode_rejectsDescendingTimestamps() {
+        assertThrows(IllegalArgumentException.class,
+            () -> SegmentCodec.encode(new long[]{START, START - 1}, new double[]{1, 2}, 2));
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.weatherapi;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for compacting readings into day segments and aggregating over them.
+ */
+class SegmentStoreTest {
+
+    private static final LocalDate DAY = LocalDate.parse("2025-08-01");
+    private static final Instant START = Instant.parse("2025-08-01T00:00:00Z");
+
+    @TempDir
+    Path dir;
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+
+    @Test
+    void compact_writesOneSeriesPerSensorAndMetricInIndexOrder() throws Exception {
+        // Arrange: (sensor, metric, time) order, as the SENSORS index returns it
+        ArgumentCaptor<Aggregation> agg = ArgumentCaptor.forClass(Aggregation.class);
+        when(mongoTemplate.aggregateStream(agg.capture(), eq("sensor_data"), eq(Document.class)))
+            .thenReturn(Stream.of(
+                raw("1", "humidity", 0, 60.0),
+                raw("1", "temperature", 0, 20.0),
+                raw("1", "temperature", 60, 21.0),
+                raw("2", "temperature", 30, 25.0)));
+        SegmentStore store = store(StorageLayout.RAW);
+
+        // Act
+        SegmentStore.Compaction result = store.compact(DAY);
+
+        // Assert
+        assertEquals(new SegmentStore.Compaction(DAY, 3, 4, result.bytes()), result);
+        assertEquals(List.of(DAY), store.days());
+        List<SegmentFile.Series> series = store.segment(DAY).series();
+        assertEquals(List.of("1/humidity", "1/temperature", "2/temperature"),
+            series.stream().map(s -> s.sensorId() + "/" + s.metric()).toList());
+        assertEquals(41.0, series.get(1).sum());
+        assertEquals(START.plusSeconds(60).toEpochMilli(), series.get(1).lastTime());
+
+        List<Document> pipeline = agg.getValue().toPipeline(Aggregation.DEFAULT_CONTEXT);
+        assertEquals(new Document("sensorId", 1).append("metric", 1).append("timestamp", 1), pipeline.get(1).get("$sort"));
+        assertTrue(agg.getValue().getOptions().isAllowDiskUse());
+    }
+
+    @Test
+    void aggregate_usesSummariesForWholeSeriesAndDecodesPartialOnes() {
+        // Arrange
+        when(mongoTemplate.aggregateStream(any(Aggregation.class), eq("sensor_data"), eq(Document.class)))
+            .thenReturn(Stream.of(
+                raw("1", "temperature", 0, 10.0),
+                raw("1", "temperature", 60, 20.0),
+                raw("1", "temperature", 120, 30.0),
+                raw("2", "temperature", 0, 40.0),
+                raw("2", "wind_speed", 0, 5.0)));
+        SegmentStore store = store(StorageLayout.RAW);
+        store.compact(DAY);
+
+        // Act
+        Map<String, MetricAggregate> whole = store.aggregate(null, List.of("temperature"),
+            START, START.plusSeconds(86_399));
+        Map<String, MetricAggregate> partial = store.aggregate(List.of("1"), null,
+            START.plusSeconds(60), START.plusSeconds(120));
+
+        // Assert
+        assertEquals(List.of("temperature"), List.copyOf(whole.keySet()));
+        assertEquals(4, whole.get("temperature").getCount());
+        assertEquals(100.0, whole.get("temperature").getSum());
+        assertEquals(40.0, whole.get("temperature").getMax());
+        assertEquals(2, partial.get("temperature").getCount());
+        assertEquals(20.0, partial.get("temperature").getMin());
+        assertEquals(50.0, partial.get("temperature").getSum());
+    }
+
+    @Test
+    void exportAndSketches_readTheReadingsOfTheWindow() {
+        // Arrange
+        when(mongoTemplate.aggregateStream(any(Aggregation.class), eq("sensor_data"), eq(Document.class)))
+            .thenReturn(Stream.of(
+                raw("1", "temperature", 0, 10.0),
+                raw("1", "temperature", 60, 20.0),
+                raw("1", "temperature", 120, 30.0),
+                raw("2", "humidity", 60, 50.0)));
+        SegmentStore store = store(StorageLayout.RAW);
+        store.compact(DAY);
+        TimeRange window = new TimeRange(START.plusSeconds(60), START.plusSeconds(120));
+
+        // Act
+        List<SensorData> exported;
+        try (Stream<SensorData> readings = store.export(null, List.of("temperature"), window, 1000)) {
+            exported = readings.toList();
+        }
+        Map<String, QuantileSketch> sketches = store.sketches(List.of("1", "2"), null, List.of(window), 0.01);
+
+        // Assert
+        assertEquals(List.of(START.plusSeconds(60), START.plusSeconds(120)), exported.stream().map(SensorData::getTimestamp).toList());
+        assertEquals(List.of(20.0, 30.0), exported.stream().map(SensorData::getValue).toList());
+        assertEquals(2, sketches.get("temperature").getCount());
+        assertEquals(30.0, sketches.get("temperature").quantile(1.0));
+        assertEquals(1, sketches.get("humidity").getCount());
+        assertEquals(4, store.readingCount(DAY));
+        assertEquals(-1, store.readingCount(DAY.plusDays(1)));
+    }
+
+    @Test
+    void compact_decodesMetricCodesOfTheCompactLayoutAndReplacesTheOldSegment() {
+        // Arrange: a first compaction is mapped, then the day is compacted again
+        when(mongoTemplate.aggregateStream(any(Aggregation.class), eq("sensor_readings"), eq(Document.class)))
+            .thenReturn(Stream.of(compact("1", Metric.TEMPERATURE, 0, 20.0)))
+            .thenReturn(Stream.of(compact("1", Metric.TEMPERATURE, 0, 20.0), compact("1", Metric.TEMPERATURE, 60, 22.0)));
+        SegmentStore store = store(StorageLayout.COMPACT);
+        store.compact(DAY);
+        assertEquals(1, store.aggregate(null, null, START, START.plusSeconds(3600)).get("temperature").getCount());
+
+        // Act
+        store.compact(DAY);
+
+        // Assert
+        assertEquals(2, store.aggregate(null, null, START, START.plusSeconds(3600)).get("temperature").getCount());
+    }
+
+    @Test
+    void segment_neverKeepsTheMappingOfAReplacedFileWhileReadersRace() throws Exception {
+        // Arrange: compaction n stores n + 1 readings, while a reader keeps mapping the day
+        AtomicInteger compactions = new AtomicInteger();
+        when(mongoTemplate.aggregateStream(any(Aggregation.class), eq("sensor_data"), eq(Document.class)))
+            .thenAnswer(inv -> IntStream.rangeClosed(0, compactions.getAndIncrement())
+                .mapToObj(i -> raw("1", "temperature", i, i)));
+        SegmentStore store = store(StorageLayout.RAW);
+        store.compact(DAY);
+        AtomicBoolean done = new AtomicBoolean();
+        Thread reader = Thread.ofPlatform().start(() -> {
+            while (!done.get()) {
+                store.segment(DAY);
+            }
+        });
+
+        // Act
+        for (int i = 0; i < 200; i++) {
+            store.compact(DAY);
+        }
+        done.set(true);
+        reader.join();
+
+        // Assert: the cached mapping is the last file written
+        assertEquals(201, store.readingCount(DAY));
+        assertEquals(201, store.segment(DAY).readingCount());
+    }
+
+    @Test
+    void aggregate_daysWithoutSegmentsContributeNothing() {
+        SegmentStore store = store(StorageLayout.RAW);
+
+        assertTrue(store.aggregate(null, null, START, START.plusSeconds(3 * 86_400)).isEmpty());
+        assertTrue(store.plan(null, null, List.of(new TimeRange(START, START))).isEmpty());
+        assertEquals(List.of(), store.days());
+    }
+
+    @Test
+    void compact_rejectsTheBucketedLayout() {
+        assertThrows(IllegalStateException.class, () -> store(StorageLayout.BUCKETED).compact(DAY));
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    private SegmentStore store(StorageLayout layout) {
+        return new SegmentStore(mongoTemplate, new ReadingIndexes(mongoTemplate, layout, true), dir.toString(), 1000);
+    }
+
+    private static Document raw(String sensorId, String metric, int second, double value) {
+        return new Document("sensorId", sensorId).append("metric", metric)
+            .append("timestamp", Date.from(START.plusSeconds(second))).append("value", value);
+    }
+
+    private static Document compact(String sensorId, Metric metric, int second, double value) {
+        return new Document("s", sensorId).append("m", metric.code())
+            .append("t", Date.from(START.plusSeconds(second))).append("v", value);
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.weatherapi;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the sensor catalog and tag expressions over its bitmaps.
+ */
+class SensorCatalogTest {
+
+    private MongoTemplate mongoTemplate;
+    private BulkOperations bulk;
+    private SensorCatalog catalog;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        bulk = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), anyString())).thenReturn(bulk);
+        catalog = new SensorCatalog(mongoTemplate, new SimpleMeterRegistry());
+        catalog.register(List.of(
+            sensor("a", "eu", "x2", "lab"),
+            sensor("b", "eu", "x3", "roof"),
+            sensor("c", "us", "x2", "roof"),
+            sensor("d", "eu", "x2", "roof")));
+    }
+
+    @Test
+    void register_assignsDenseIdsInOrderAndStoresEachSensor() {
+        // Act
+        List<SensorCatalog.Entry> added = catalog.register(List.of(sensor("e", "us", "x3", "lab"), sensor("a", "us", "x2", "lab")));
+
+        // Assert: new sensors take the next id, known ones keep theirs
+        assertEquals(4, added.get(0).id());
+        assertEquals(0, added.get(1).id());
+        assertEquals(5, catalog.size());
+        verify(bulk, times(6)).upsert(any(Query.class), any(Update.class));
+        verify(bulk, times(2)).execute();
+    }
+
+    @Test
+    void select_evaluatesAndOrNotWithPrecedence() {
+        // NOT binds tighter than AND, AND tighter than OR
+        assertEquals(List.of("a", "d"), select("region:eu AND model:x2"));
+        assertEquals(List.of("a", "c", "d"), select("model:x2 or region:eu and site:lab"));
+        assertEquals(List.of("d"), select("region:eu AND NOT site:lab AND NOT model:x3"));
+        assertEquals(List.of("a", "b", "d"), select("(model:x3 OR site:lab) OR region:eu AND model:x2"));
+        assertEquals(List.of(), select("region:apac"));
+    }
+
+    @Test
+    void select_intersectsWithRequestedSensorIds() {
+        // Act: "zzz" is not in the catalog
+        List<String> out = catalog.select(TagExpression.parse("region:eu"), List.of("d", "c", "zzz"));
+
+        // Assert
+        assertEquals(List.of("d"), out);
+    }
+
+    @Test
+    void register_retaggingMovesTheSensorBetweenBitmaps() {
+        // Act
+        catalog.register(List.of(new SensorCatalog.Registration("a", Map.of("region", "us"))));
+
+        // Assert: model and site were cleared, region replaced
+        assertEquals(List.of("c"), select("model:x2 AND region:us"));
+        assertEquals(List.of("a", "c"), select("region:us"));
+        assertEquals(List.of(), select("site:lab"));
+        assertEquals(Map.of("region", "us"), catalog.get("a").orElseThrow().tags());
+    }
+
+    @Test
+    void register_rejectsUnknownTagsBeforeWritingAnything() {
+        // Arrange
+        List<SensorCatalog.Registration> bad = List.of(
+            sensor("e", "eu", "x2", "lab"),
+            new SensorCatalog.Registration("f", Map.of("colour", "red")));
+        clearInvocations(bulk);
+
+        // Act + Assert
+        assertThrows(IllegalArgumentException.class, () -> catalog.register(bad));
+        assertThrows(IllegalArgumentException.class,
+            () -> catalog.register(List.of(new SensorCatalog.Registration("f", Map.of("region", "eu west")))));
+        verifyNoInteractions(bulk);
+        assertTrue(catalog.get("e").isEmpty());
+    }
+
+    @Test
+    void register_partiallyFailedWriteKeepsTheStoredIdsTaken() {
+        // Arrange: the ordered bulk stored "e" (id 4) and failed at "f" (id 5)
+        when(bulk.execute()).thenThrow(new DataAccessResourceFailureException("connection reset"));
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq(SensorCatalog.COLLECTION))).thenReturn(List.of(
+            new Document("_id", "e").append("n", 4).append("tags", new Document("region", "us"))));
+
+        // Act
+        assertThrows(DataAccessResourceFailureException.class,
+            () -> catalog.register(List.of(sensor("e", "us", "x3", "lab"), sensor("f", "us", "x3", "lab"))));
+        reset(bulk);
+        List<SensorCatalog.Entry> added = catalog.register(List.of(new SensorCatalog.Registration("g", Map.of())));
+
+        // Assert: what was stored is visible, and no id of the failed batch is handed out again
+        assertEquals(4, catalog.get("e").orElseThrow().id());
+        assertTrue(catalog.get("f").isEmpty());
+        assertEquals(6, added.get(0).id());
+        assertEquals(List.of("c", "e"), catalog.select(TagExpression.parse("region:us"), null));
+    }
+
+    @Test
+    void load_restoresStoredIdsAndTags() {
+        // Arrange: ids as stored, so the next registration continues after them
+        when(mongoTemplate.indexOps(SensorCatalog.COLLECTION)).thenReturn(mock(IndexOperations.class));
+        when(mongoTemplate.stream(any(Query.class), eq(Document.class), eq(SensorCatalog.COLLECTION))).thenReturn(Stream.of(
+            new Document("_id", "s1").append("n", 0).append("tags", new Document("region", "eu")),
+            new Document("_id", "s2").append("n", 1).append("tags", new Document("region", "us").append("model", "x2"))));
+        SensorCatalog loaded = new SensorCatalog(mongoTemplate, new SimpleMeterRegistry());
+
+        // Act
+        loaded.load();
+        List<SensorCatalog.Entry> added = loaded.register(List.of(new SensorCatalog.Registration("s3", Map.of())));
+
+        // Assert
+        assertEquals(List.of("s2"), loaded.select(TagExpression.parse("region:us AND model:x2"), null));
+        assertEquals(2, added.get(0).id());
+        assertEquals(List.of("s3"), loaded.select(TagExpression.parse("NOT region:eu AND NOT region:us"), null));
+    }
+
+    @Test
+    void parse_rejectsMalformedExpressions() {
+        assertThrows(IllegalArgumentException.class, () -> TagExpression.parse(" "));
+        assertThrows(IllegalArgumentException.class, () -> TagExpression.parse("region:eu AND"));
+        assertThrows(IllegalArgumentException.class, () -> TagExpression.parse("(region:eu OR model:x2"));
+        assertThrows(IllegalArgumentException.class, () -> TagExpression.parse("region:eu model:x2"));
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> TagExpression.parse("colour:red"));
+        assertTrue(ex.getMessage().contains("Unknown tag 'colour'"), ex.getMessage());
+    }
+
+    private List<String> select(String expression) {
+        return catalog.select(TagExpression.parse(expression), null);
+    }
+
+    private static SensorCatalog.Registration sensor(String sensorId, String region, String model, String site) {
+        return new SensorCatalog.Registration(sensorId, Map.of("region", region, "model", model, "site", site));
+    }
+}
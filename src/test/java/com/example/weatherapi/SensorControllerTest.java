@@ -16,6 +16,8 @@ import java.time.Instant;
 
 import static org.hamcrest.Matchers.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 /**
@@ -119,4 +121,74 @@ class SensorControllerTest {
             .andExpect(jsonPath("$.resultsByMetric").isMap())
             .andExpect(jsonPath("$.resultsByMetric", anEmptyMap()));
   }
+
+  @Test
+  void batchIngest_acceptsValidAndReportsRejectedByIndex() throws Exception {
+    // Second reading has an unknown metric; the other two must still be written
+    String body = """
+        [
+          {"sensorId":"7","metric":"temperature","value":18.5,"timestamp":"2025-08-05T00:00:00Z"},
+          {"sensorId":"7","metric":"pressure","value":1013.0,"timestamp":"2025-08-05T00:00:00Z"},
+          {"sensorId":"7","metric":"Wind-Speed","value":4.2,"timestamp":"2025-08-05T00:00:00Z"}
+        ]
+        """;
+
+    mockMvc.perform(post("/sensors/data/batch")
+                      .contentType(MediaType.APPLICATION_JSON)
+                      .content(body))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.received", is(3)))
+            .andExpect(jsonPath("$.accepted", is(2)))
+            .andExpect(jsonPath("$.rejected", is(1)))
+            .andExpect(jsonPath("$.rejections[0].index", is(1)))
+            .andExpect(jsonPath("$.rejections[0].error", containsStringIgnoringCase("invalid metric")));
+
+    mockMvc.perform(get("/sensors/query")
+                      .param("sensorIds", "7")
+                      .param("stat", "max")
+                      .param("from", "2025-08-04T00:00:00Z")
+                      .param("to",   "2025-08-06T00:00:00Z"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.resultsByMetric.temperature", is(closeTo(18.5, 1e-4))))
+            .andExpect(jsonPath("$.resultsByMetric.wind_speed",  is(closeTo(4.2, 1e-4))));
+  }
+
+  @Test
+  void queryByTag_aggregatesTheMatchingCatalogSensors() throws Exception {
+    // Sensor 1 is in eu/x2, sensor 2 (not seeded with readings) in eu/x3
+    repository.save(doc("3", "temperature", 40.0, "2025-08-02T12:00:00Z"));
+    mockMvc.perform(put("/sensors/catalog")
+                      .contentType(MediaType.APPLICATION_JSON)
+                      .content("""
+                          [
+                            {"sensorId":"1","tags":{"region":"eu","model":"x2"}},
+                            {"sensorId":"2","tags":{"region":"eu","model":"x3"}},
+                            {"sensorId":"3","tags":{"region":"us","model":"x2"}}
+                          ]
+                          """))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$", hasSize(3)));
+
+    mockMvc.perform(get("/sensors/query")
+                      .param("tag", "region:eu AND model:x2")
+                      .param("metrics", "temperature")
+                      .param("stat", "max")
+                      .param("from", "2025-08-01T00:00:00Z")
+                      .param("to",   "2025-08-03T23:59:59Z"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.tag", is("region:eu AND model:x2")))
+            .andExpect(jsonPath("$.matchedSensors", is(1)))
+            .andExpect(jsonPath("$.resultsByMetric.temperature", is(closeTo(24.0, 1e-4))));
+
+    mockMvc.perform(get("/sensors/query")
+                      .param("tag", "region:apac")
+                      .param("from", "2025-08-01T00:00:00Z")
+                      .param("to",   "2025-08-03T23:59:59Z"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.matchedSensors", is(0)))
+            .andExpect(jsonPath("$.resultsByMetric", anEmptyMap()));
+
+    mockMvc.perform(get("/sensors/query").param("tag", "colour:red"))
+            .andExpect(status().isBadRequest());
+  }
 }
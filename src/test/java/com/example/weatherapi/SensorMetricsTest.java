@@ -0,0 +1,98 @@
+package com.example.weatherapi;
+
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the query/ingest hot-path metrics.
+ */
+class SensorMetricsTest {
+
+    private static final Instant FROM = Instant.parse("2025-08-01T00:00:00Z");
+
+    private SimpleMeterRegistry registry;
+    private SensorMetrics metrics;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        metrics = new SensorMetrics(registry);
+    }
+
+    @Test
+    void shape_bucketsWindowsAndKeepsStatisticTagsBounded() {
+        // Act + Assert: window buckets are inclusive upper bounds
+        assertEquals("1d", SensorMetrics.windowBucket(new TimeRange(FROM, FROM.plusSeconds(86_400))));
+        assertEquals("7d", SensorMetrics.windowBucket(new TimeRange(FROM, FROM.plusSeconds(86_401))));
+        assertEquals("31d", SensorMetrics.windowBucket(new TimeRange(FROM, FROM.plusSeconds(8 * 86_400))));
+
+        // Arbitrary percentiles and stat lists collapse to one value each
+        assertEquals("avg", SensorMetrics.statisticTag(StatSelection.from("avg")));
+        assertEquals("percentile", SensorMetrics.statisticTag(StatSelection.from("p99.123")));
+        assertEquals("multi", SensorMetrics.statisticTag(StatSelection.from("min,p95")));
+        assertEquals("multi", SensorMetrics.statisticTag(List.of(Statistic.MIN, Statistic.MAX)));
+
+        // Empty filters count as not given
+        Tags shape = SensorMetrics.shape("aggregate", "avg", new TimeRange(FROM, FROM.plusSeconds(86_400)), List.of("1"), List.of());
+        assertEquals(Tags.of("query", "aggregate", "statistic", "avg", "window", "1d", "sensorIds", "true", "metrics", "false"), shape);
+    }
+
+    @Test
+    void timeQuery_tagsFailuresAsErrors() {
+        // Arrange
+        Tags shape = SensorMetrics.shape("aggregate", "avg", new TimeRange(FROM, FROM.plusSeconds(86_400)), null, null);
+
+        // Act
+        assertThrows(IllegalStateException.class, () -> metrics.timeQuery(shape, () -> {
+            throw new IllegalStateException("boom");
+        }));
+
+        // Assert
+        assertEquals(1, registry.get("sensors.query").tag("outcome", "error").timer().count());
+        assertNull(registry.find("sensors.query").tag("outcome", "success").timer());
+    }
+
+    @Test
+    void timeStream_recordsErrorWhenReadingFails() {
+        // Arrange: the cursor breaks after one element
+        Tags shape = SensorMetrics.shape("series", "avg", new TimeRange(FROM, FROM.plusSeconds(86_400)), null, null);
+        Iterator<Integer> cursor = List.of(1, 2).iterator();
+        Stream<Integer> failing = Stream.generate(() -> {
+            int next = cursor.next();
+            if (next == 2) {
+                throw new IllegalStateException("cursor lost");
+            }
+            return next;
+        });
+        boolean[] sourceClosed = {false};
+
+        // Act
+        Stream<Integer> stream = metrics.timeStream(shape, () -> failing.onClose(() -> sourceClosed[0] = true));
+        assertThrows(IllegalStateException.class, () -> stream.forEach(i -> { }));
+        stream.close();
+
+        // Assert: recorded once on close, with the element that made it through
+        assertTrue(sourceClosed[0]);
+        assertEquals(1, registry.get("sensors.query").tag("outcome", "error").timer().count());
+        assertEquals(1.0, registry.get("sensors.query.documents").tag("source", "stream").summary().totalAmount());
+    }
+
+    @Test
+    void timeWrite_tagsKindAndLayout() {
+        // Act
+        int written = metrics.timeWrite("bulk", StorageLayout.BUCKETED, () -> 3);
+
+        // Assert
+        assertEquals(3, written);
+        assertEquals(1, registry.get("sensors.ingest.write").tags("kind", "bulk", "layout", "bucketed").timer().count());
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.weatherapi;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.bson.Document;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -7,14 +8,22 @@ import org.mockito.ArgumentCaptor;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.Aggregation;
 import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.query.Query;
 
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -25,13 +34,30 @@ class SensorServiceTest {
 
     private SensorDataRepository repository;
     private MongoTemplate mongoTemplate;
+    private BulkSensorWriter bulkWriter;
+    private PercentilePlanner percentiles;
+    private MongoBulkheads bulkheads;
+    private SimpleMeterRegistry meterRegistry;
+    private SensorMetrics sensorMetrics;
+    private QueryExplainer explainer;
+    private SensorCatalog catalog;
+    private QueryCache cache;
     private SensorService service;
 
     @BeforeEach
     void setUp() {
         repository = mock(SensorDataRepository.class);
         mongoTemplate = mock(MongoTemplate.class);
-        service = new SensorService(repository, mongoTemplate);
+        bulkWriter = mock(BulkSensorWriter.class);
+        RawAggregateSource raw = new RawAggregateSource(mongoTemplate, new ReadingIndexes(mongoTemplate, StorageLayout.RAW, true));
+        percentiles = mock(PercentilePlanner.class);
+        bulkheads = new MongoBulkheads(new SimpleMeterRegistry(), 2, 2, Duration.ofMillis(20));
+        meterRegistry = new SimpleMeterRegistry();
+        sensorMetrics = new SensorMetrics(meterRegistry);
+        explainer = mock(QueryExplainer.class);
+        catalog = mock(SensorCatalog.class);
+        cache = new QueryCache(meterRegistry, false, 10, Duration.ofSeconds(30), Duration.ofHours(1), Duration.ofSeconds(10));
+        service = new SensorService(repository, bulkWriter, StorageLayout.RAW, raw, raw, raw, percentiles, cache, List.of(), bulkheads, new IngestGate(), sensorMetrics, explainer, catalog, mock(TieredStorage.class), 3);
     }
 
     @Test
@@ -66,8 +92,10 @@ class SensorServiceTest {
     void queryData_returnsAggValuesFromMongoTemplate() {
         // Arrange: fake aggregation result
         List<Document> docs = Arrays.asList(
-            new Document("metric", "temperature").append("value", 22.0),
-            new Document("metric", "humidity").append("value", 60.0)
+            new Document("metric", "temperature")
+                .append("count", 3).append("sum", 66.0).append("min", 20.0).append("max", 24.0),
+            new Document("metric", "humidity")
+                .append("count", 1).append("sum", 60.0).append("min", 60.0).append("max", 60.0)
         );
         AggregationResults<Document> results = TestAggResults.docs(docs);
 
@@ -93,6 +121,46 @@ class SensorServiceTest {
         verify(mongoTemplate).aggregate(any(Aggregation.class), eq("sensor_data"), eq(Document.class));
     }
 
+    @Test
+    void queryData_multipleStatisticsShareOneAggregation() {
+        // Arrange: one $group result carries everything the stats need
+        List<Document> docs = List.of(
+            new Document("metric", "temperature")
+                .append("count", 3).append("sum", 66.0).append("min", 20.0).append("max", 24.0));
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq("sensor_data"), eq(Document.class)))
+            .thenReturn(TestAggResults.docs(docs));
+
+        Instant from = Instant.parse("2025-08-01T00:00:00Z");
+        Instant to   = Instant.parse("2025-08-03T00:00:00Z");
+
+        // Act
+        QueryResult qr = service.queryData(null, List.of("temperature"),
+            List.of(Statistic.MIN, Statistic.MAX, Statistic.AVG, Statistic.SUM, Statistic.COUNT), from, to);
+
+        // Assert: nested stats, first stat mirrored in resultsByMetric, single round trip
+        MultiStatQueryResult multi = assertInstanceOf(MultiStatQueryResult.class, qr);
+        assertEquals("min,max,avg,sum,count", multi.getStatistic());
+        assertEquals(20.0, multi.getResultsByMetric().get("temperature"));
+        Map<String, Double> stats = multi.getStatsByMetric().get("temperature");
+        assertEquals(List.of("min", "max", "avg", "sum", "count"), List.copyOf(stats.keySet()));
+        assertEquals(24.0, stats.get("max"));
+        assertEquals(22.0, stats.get("avg"));
+        assertEquals(3.0, stats.get("count"));
+        verify(mongoTemplate, times(1)).aggregate(any(Aggregation.class), eq("sensor_data"), eq(Document.class));
+    }
+
+    @Test
+    void queryData_singleStatisticListKeepsPlainShape() {
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq("sensor_data"), eq(Document.class)))
+            .thenReturn(TestAggResults.docs(List.of()));
+
+        Instant from = Instant.parse("2025-08-01T00:00:00Z");
+        QueryResult qr = service.queryData(null, null, List.of(Statistic.MAX), from, from.plus(Duration.ofDays(2)));
+
+        assertEquals(QueryResult.class, qr.getClass());
+        assertEquals("max", qr.getStatistic());
+    }
+
     @Test
     void queryData_throwsWhenRangeTooShort() {
         Instant from = Instant.parse("2025-08-01T00:00:00Z");
@@ -141,4 +209,355 @@ class SensorServiceTest {
         assertEquals("wind_speed", written.getMetric());
         assertEquals("wind_speed", out.getMetric());
     }
+
+    @Test
+    void saveSensorDataBatch_rejectsInvalidItemsAndWritesTheRest() {
+        // Arrange: item 1 has a bad metric, item 2 fails in Mongo
+        SensorDataRequest ok = request("1", "temperature", 20.0);
+        SensorDataRequest badMetric = request("1", "pressure", 1013.0);
+        SensorDataRequest writeFails = request("2", "humidity", 55.0);
+
+        // Writer sees only the 2 valid readings; index 1 there = request index 2
+        when(bulkWriter.insert(anyList())).thenReturn(Map.of(1, "duplicate key"));
+
+        // Act
+        BatchIngestResult out = service.saveSensorDataBatch(List.of(ok, badMetric, writeFails));
+
+        // Assert
+        ArgumentCaptor<List<SensorData>> captor = ArgumentCaptor.forClass(List.class);
+        verify(bulkWriter).insert(captor.capture());
+        assertEquals(2, captor.getValue().size());
+        assertEquals("humidity", captor.getValue().get(1).getMetric());
+
+        assertEquals(3, out.getReceived());
+        assertEquals(1, out.getAccepted());
+        assertEquals(2, out.getRejected());
+        assertEquals(1, out.getRejections().get(0).index());
+        assertTrue(out.getRejections().get(0).error().toLowerCase().contains("invalid metric"));
+        assertEquals(2, out.getRejections().get(1).index());
+        assertEquals("duplicate key", out.getRejections().get(1).error());
+    }
+
+    @Test
+    void saveSensorDataBatch_throwsWhenOverMaxSize() {
+        List<SensorDataRequest> tooMany = List.of(
+            request("1", "temperature", 1.0), request("1", "temperature", 2.0),
+            request("1", "temperature", 3.0), request("1", "temperature", 4.0));
+
+        IllegalArgumentException ex = assertThrows(
+            IllegalArgumentException.class, () -> service.saveSensorDataBatch(tooMany));
+        assertTrue(ex.getMessage().contains("at most 3"));
+        verifyNoInteractions(bulkWriter);
+    }
+
+    @Test
+    void queryData_bucketedLayoutUsesBucketSummaries() {
+        BucketStore bucketStore = mock(BucketStore.class);
+        SensorService bucketed = new SensorService(
+            repository, bulkWriter, StorageLayout.BUCKETED, bucketStore, bucketStore, bucketStore, percentiles, cache, List.of(), bulkheads, new IngestGate(), sensorMetrics, explainer, catalog, mock(TieredStorage.class), 3);
+
+        Instant from = Instant.parse("2025-08-01T00:00:00Z");
+        Instant to   = Instant.parse("2025-08-03T00:00:00Z");
+        when(bucketStore.aggregate(null, List.of("temperature"), from, to))
+            .thenReturn(Map.of("temperature", new MetricAggregate(4, 88.0, 20.0, 24.0)));
+
+        QueryResult qr = bucketed.queryData(null, List.of("temperature"), Statistic.AVG, from, to);
+
+        assertEquals(22.0, qr.getResultsByMetric().get("temperature"));
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void queryData_percentilesComeFromMergedSketches() {
+        // Arrange: a sketch for temperature, plain stats from the raw $group
+        Instant from = Instant.parse("2025-08-01T00:00:00Z");
+        Instant to   = Instant.parse("2025-08-02T00:00:00Z");
+        QuantileSketch sketch = new QuantileSketch(0.01);
+        for (int i = 1; i <= 100; i++) {
+            sketch.add(i);
+        }
+        when(percentiles.sketches(null, List.of("temperature"), new TimeRange(from, to)))
+            .thenReturn(Map.of("temperature", sketch));
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq("sensor_data"), eq(Document.class)))
+            .thenReturn(TestAggResults.docs(List.of(new Document("metric", "temperature")
+                .append("count", 100L).append("sum", 5050.0).append("min", 1.0).append("max", 100.0))));
+
+        // Act
+        QueryResult qr = service.queryData(null, List.of("temperature"), StatSelection.from("p50,max,p99"), from, to);
+
+        // Assert: request order kept, values within the sketch's 1% bound
+        MultiStatQueryResult multi = assertInstanceOf(MultiStatQueryResult.class, qr);
+        assertEquals("p50,max,p99", multi.getStatistic());
+        Map<String, Double> stats = multi.getStatsByMetric().get("temperature");
+        assertEquals(List.of("p50", "max", "p99"), List.copyOf(stats.keySet()));
+        assertEquals(50.0, stats.get("p50"), 0.5);
+        assertEquals(100.0, stats.get("max"));
+        assertEquals(99.0, stats.get("p99"), 0.99);
+    }
+
+    @Test
+    void queryData_singlePercentileSkipsTheAggregatePass() {
+        Instant from = Instant.parse("2025-08-01T00:00:00Z");
+        Instant to   = Instant.parse("2025-08-02T00:00:00Z");
+        when(percentiles.sketches(any(), any(), any()))
+            .thenReturn(Map.of("humidity", new QuantileSketch(0.01).add(40).add(60)));
+
+        QueryResult qr = service.queryData(null, null, StatSelection.from("p100"), from, to);
+
+        assertEquals("p100", qr.getStatistic());
+        assertEquals(60.0, qr.getResultsByMetric().get("humidity"));
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void querySeries_streamsOnePointPerMetricAndBucket() {
+        // Arrange: rows as produced by the $dateTrunc + $group stages
+        ArgumentCaptor<Aggregation> agg = ArgumentCaptor.forClass(Aggregation.class);
+        when(mongoTemplate.aggregateStream(agg.capture(), eq("sensor_data"), eq(Document.class)))
+            .thenReturn(Stream.of(
+                seriesRow("temperature", "2025-08-01T00:00:00Z", 2, 40.0, 19.0, 21.0),
+                seriesRow("temperature", "2025-08-01T01:00:00Z", 1, 23.0, 23.0, 23.0)));
+
+        Instant from = Instant.parse("2025-08-01T00:00:00Z");
+        Instant to   = Instant.parse("2025-08-02T00:00:00Z");
+
+        // Act
+        SeriesResult result = service.querySeries(
+            List.of("1"), List.of("temperature"), Statistic.AVG, SeriesInterval.from("1h"), from, to);
+        List<SeriesPoint> points = result.getPoints().toList();
+
+        // Assert: one pass, bucketed by hour, values keep their bucket start
+        assertEquals(2, points.size());
+        assertEquals(Instant.parse("2025-08-01T01:00:00Z"), points.get(1).start());
+        assertEquals(20.0, points.get(0).aggregate().value(Statistic.AVG));
+        Document trunc = agg.getValue().toPipeline(Aggregation.DEFAULT_CONTEXT).get(1)
+            .get("$project", Document.class).get("start", Document.class).get("$dateTrunc", Document.class);
+        assertEquals("hour", trunc.get("unit"));
+        assertEquals(1, trunc.get("binSize"));
+    }
+
+    @Test
+    void querySeries_holdsQueryPermitUntilStreamIsClosed() {
+        // Arrange
+        when(mongoTemplate.aggregateStream(any(Aggregation.class), eq("sensor_data"), eq(Document.class)))
+            .thenReturn(Stream.of(seriesRow("temperature", "2025-08-01T00:00:00Z", 1, 20.0, 20.0, 20.0)));
+        Instant from = Instant.parse("2025-08-01T00:00:00Z");
+        Instant to   = Instant.parse("2025-08-02T00:00:00Z");
+
+        // Act
+        SeriesResult result = service.querySeries(
+            null, List.of("temperature"), Statistic.AVG, SeriesInterval.from("1h"), from, to);
+
+        // Assert: the open cursor counts against the query bulkhead until the response is done
+        assertEquals(1, bulkheads.query().active());
+        result.getPoints().close();
+        assertEquals(0, bulkheads.query().active());
+    }
+
+    @Test
+    void queryData_recordsLatencyAndDocumentsByQueryShape() {
+        // Arrange: two metrics come back for a 3-day window filtered by sensor
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq("sensor_data"), eq(Document.class)))
+            .thenReturn(TestAggResults.docs(List.of(
+                new Document("metric", "temperature").append("count", 1).append("sum", 20.0).append("min", 20.0).append("max", 20.0),
+                new Document("metric", "humidity").append("count", 1).append("sum", 60.0).append("min", 60.0).append("max", 60.0))));
+        Instant from = Instant.parse("2025-08-01T00:00:00Z");
+        Instant to   = Instant.parse("2025-08-04T00:00:00Z");
+
+        // Act
+        service.queryData(List.of("1"), null, Statistic.MAX, from, to);
+
+        // Assert: shape tags on the query timer, aggregation timer and document histogram
+        assertEquals(1, meterRegistry.get("sensors.query")
+            .tags("query", "aggregate", "statistic", "max", "window", "7d", "sensorIds", "true", "metrics", "false")
+            .tag("outcome", "success")
+            .timer().count());
+        assertEquals(1, meterRegistry.get("sensors.query.aggregation").tag("source", "partials").timer().count());
+        assertEquals(2.0, meterRegistry.get("sensors.query.documents").tag("source", "partials").summary().totalAmount());
+    }
+
+    @Test
+    void querySeries_recordsQueryWhenStreamIsClosed() {
+        // Arrange
+        when(mongoTemplate.aggregateStream(any(Aggregation.class), eq("sensor_data"), eq(Document.class)))
+            .thenReturn(Stream.of(
+                seriesRow("temperature", "2025-08-01T00:00:00Z", 1, 20.0, 20.0, 20.0),
+                seriesRow("temperature", "2025-08-01T01:00:00Z", 1, 21.0, 21.0, 21.0)));
+        Instant from = Instant.parse("2025-08-01T00:00:00Z");
+        Instant to   = Instant.parse("2025-08-02T00:00:00Z");
+
+        // Act
+        SeriesResult result = service.querySeries(
+            null, List.of("temperature"), Statistic.AVG, SeriesInterval.from("1h"), from, to);
+        assertNull(meterRegistry.find("sensors.query").timer());
+        try (Stream<SeriesPoint> points = result.getPoints()) {
+            points.forEach(p -> { });
+        }
+
+        // Assert: the timer covers reading the cursor, and every point read counts
+        assertEquals(1, meterRegistry.get("sensors.query")
+            .tags("query", "series", "window", "1d", "outcome", "success").timer().count());
+        assertEquals(2.0, meterRegistry.get("sensors.query.documents").tag("source", "stream").summary().totalAmount());
+        assertEquals(0, bulkheads.query().active());
+    }
+
+    @Test
+    void explainQuery_attachesExplainForTheResolvedWindow() {
+        // Arrange
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq("sensor_data"), eq(Document.class)))
+            .thenReturn(TestAggResults.docs(List.of(
+                new Document("metric", "temperature").append("count", 1).append("sum", 20.0).append("min", 20.0).append("max", 20.0))));
+        Instant from = Instant.parse("2025-08-01T00:00:00Z");
+        TimeRange window = new TimeRange(from, from.plus(Duration.ofDays(1)));
+        AggregationExplain plan = new AggregationExplain("sensor_data", "IXSCAN[sensor_metric_time_idx]",
+            List.of("sensor_metric_time_idx"), 1L, 1L, 1L, 0L, new Document());
+        when(explainer.explain(null, List.of("temperature"), window)).thenReturn(List.of(plan));
+
+        // Act: only "from" given, so the window defaults to one day
+        QueryResult qr = service.explainQuery(null, List.of("temperature"), StatSelection.from("avg"), from, null);
+
+        // Assert: the normal result plus one explain entry per aggregation
+        assertEquals(20.0, qr.getResultsByMetric().get("temperature"));
+        assertEquals(List.of(plan), qr.getExplain());
+        verify(explainer).checkSlow(eq(null), eq(List.of("temperature")), eq(window), anyLong());
+    }
+
+    @Test
+    void queryByTag_queriesTheMatchedSensorsAndCountsThem() {
+        // Arrange
+        when(catalog.select(any(TagExpression.class), eq(null))).thenReturn(List.of("1", "2"));
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq("sensor_data"), eq(Document.class)))
+            .thenReturn(TestAggResults.docs(List.of(
+                new Document("metric", "temperature").append("count", 2).append("sum", 40.0).append("min", 18.0).append("max", 22.0))));
+        Instant from = Instant.parse("2025-08-01T00:00:00Z");
+
+        // Act
+        QueryResult qr = service.queryByTag("region:eu AND model:x2", null, List.of("temperature"),
+            StatSelection.from("max"), from, from.plus(Duration.ofDays(1)), false);
+
+        // Assert: the matched ids went to Mongo but are only counted in the result
+        ArgumentCaptor<Aggregation> agg = ArgumentCaptor.forClass(Aggregation.class);
+        verify(mongoTemplate).aggregate(agg.capture(), eq("sensor_data"), eq(Document.class));
+        String match = agg.getValue().toPipeline(Aggregation.DEFAULT_CONTEXT).get(0).toString();
+        assertTrue(match.contains("$in=[1, 2]"), match);
+        assertEquals(22.0, qr.getResultsByMetric().get("temperature"));
+        assertEquals("region:eu AND model:x2", qr.getTag());
+        assertEquals(2, qr.getMatchedSensors());
+        assertNull(qr.getSensorIds());
+    }
+
+    @Test
+    void queryByTag_noMatchIsEmptyWithoutQuerying() {
+        // Arrange: an empty sensorIds list would mean "all sensors"
+        when(catalog.select(any(TagExpression.class), any())).thenReturn(List.of());
+        Instant from = Instant.parse("2025-08-01T00:00:00Z");
+
+        // Act
+        QueryResult qr = service.queryByTag("region:apac", List.of("9"), null,
+            StatSelection.from("min,max"), from, from.plus(Duration.ofDays(1)), false);
+
+        // Assert
+        assertInstanceOf(MultiStatQueryResult.class, qr);
+        assertTrue(qr.getResultsByMetric().isEmpty());
+        assertEquals(0, qr.getMatchedSensors());
+        assertEquals(List.of("9"), qr.getSensorIds());
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void queryData_failsFastWhenQueryBulkheadIsFull() {
+        // Arrange: both query permits held by open series cursors
+        when(mongoTemplate.aggregateStream(any(Aggregation.class), eq("sensor_data"), eq(Document.class)))
+            .thenAnswer(inv -> Stream.empty());
+        Instant from = Instant.parse("2025-08-01T00:00:00Z");
+        Instant to   = Instant.parse("2025-08-02T00:00:00Z");
+        service.querySeries(null, null, Statistic.AVG, SeriesInterval.from("1h"), from, to);
+        service.querySeries(null, null, Statistic.AVG, SeriesInterval.from("1h"), from, to);
+
+        // Act + Assert: no aggregation is sent once max-wait runs out
+        assertThrows(BulkheadFullException.class,
+            () -> service.queryData(null, null, Statistic.AVG, from, to));
+        verify(mongoTemplate, never()).aggregate(any(Aggregation.class), anyString(), eq(Document.class));
+    }
+
+    @Test
+    void querySeries_rejectsTooManyBuckets() {
+        Instant from = Instant.parse("2025-08-01T00:00:00Z");
+        Instant to   = Instant.parse("2025-08-31T00:00:00Z");
+
+        // 30 days of 1-minute buckets = 43201 points
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> service.querySeries(null, null, Statistic.AVG, SeriesInterval.from("1m"), from, to));
+        assertTrue(ex.getMessage().contains("at most 10000"));
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void querySeries_reusesWindowValidation() {
+        Instant from = Instant.parse("2025-08-01T00:00:00Z");
+        assertThrows(IllegalArgumentException.class,
+            () -> service.querySeries(null, null, Statistic.AVG, SeriesInterval.from("1h"), from, from.plusSeconds(60)));
+    }
+
+    @Test
+    void queryBreakdown_readsInIndexOrderAndFetchesOneExtraRow() {
+        // Arrange: the keys from the token on, then two per-sensor rows from the $group/$push stages
+        ArgumentCaptor<Query> keys = ArgumentCaptor.forClass(Query.class);
+        AtomicInteger keysRead = new AtomicInteger();
+        when(mongoTemplate.stream(keys.capture(), eq(Document.class), eq("sensor_data")))
+            .thenReturn(Stream.of("10", "10", "11", "12", "13")
+                .map(s -> new Document("sensorId", s).append("metric", "temperature"))
+                .peek(d -> keysRead.incrementAndGet()));
+        ArgumentCaptor<Aggregation> agg = ArgumentCaptor.forClass(Aggregation.class);
+        when(mongoTemplate.aggregateStream(agg.capture(), eq("sensor_data"), eq(Document.class)))
+            .thenReturn(Stream.of(
+                new Document("_id", "10").append("metrics", List.of(
+                    new Document("metric", "temperature").append("count", 2).append("sum", 40.0).append("min", 19.0).append("max", 21.0))),
+                new Document("_id", "11").append("metrics", List.of())));
+
+        Instant from = Instant.parse("2025-08-01T00:00:00Z");
+        String after = new ContinuationToken("09", null).encode();
+
+        // Act
+        BreakdownResult result = service.queryBreakdown(null, List.of("temperature"), List.of(Statistic.AVG),
+            GroupBy.SENSOR, from, from.plus(Duration.ofDays(2)), after, 1);
+        List<BreakdownRow> rows = result.getRows().toList();
+
+        // Assert: resumes after the token, sorts like the index, asks for limit + 1 rows
+        assertEquals(20.0, rows.get(0).byMetric().get("temperature").value(Statistic.AVG));
+        assertEquals(new ContinuationToken("10", null), rows.get(0).position(GroupBy.SENSOR));
+        assertTrue(keys.getValue().getQueryObject().toString().contains("$gt=09"), keys.getValue().toString());
+        assertEquals(new Document("sensorId", 1).append("metric", 1).append("timestamp", 1), keys.getValue().getSortObject());
+        assertEquals(3, keysRead.get()); // stops at the first key of the second row
+        List<Document> pipeline = agg.getValue().toPipeline(Aggregation.DEFAULT_CONTEXT);
+        assertTrue(pipeline.get(0).toString().contains("$in=[10, 11]"), pipeline.get(0).toString());
+        assertTrue(pipeline.get(0).toString().contains("$gt=09"), pipeline.get(0).toString());
+        assertEquals(new Document("sensorId", 1).append("metric", 1).append("timestamp", 1), pipeline.get(1).get("$sort"));
+        assertEquals(2L, ((Number) pipeline.get(pipeline.size() - 1).get("$limit")).longValue());
+    }
+
+    @Test
+    void queryBreakdown_rejectsOutOfRangeLimit() {
+        Instant from = Instant.parse("2025-08-01T00:00:00Z");
+        assertThrows(IllegalArgumentException.class, () -> service.queryBreakdown(null, null, List.of(Statistic.AVG),
+            GroupBy.SENSOR, from, from.plus(Duration.ofDays(2)), null, 0));
+        assertThrows(IllegalArgumentException.class, () -> service.queryBreakdown(null, null, List.of(Statistic.AVG),
+            GroupBy.SENSOR, from, from.plus(Duration.ofDays(2)), null, 10_001));
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    private static Document seriesRow(String metric, String start, long count, double sum, double min, double max) {
+        return new Document("_id", new Document("metric", metric).append("start", Date.from(Instant.parse(start))))
+            .append("count", count).append("sum", sum).append("min", min).append("max", max);
+    }
+
+    // Helper to build a valid request
+    private static SensorDataRequest request(String sensorId, String metric, double value) {
+        SensorDataRequest req = new SensorDataRequest();
+        req.setSensorId(sensorId);
+        req.setMetric(metric);
+        req.setValue(value);
+        req.setTimestamp(Instant.parse("2025-08-20T10:00:00Z"));
+        return req;
+    }
 }
@@ -0,0 +1,34 @@
+package com.example.weatherapi;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SeriesInterval parsing.
+ */
+class SeriesIntervalTest {
+
+    @Test
+    void from_parsesMinutesHoursAndDays() {
+        // Unit maps onto the $dateTrunc unit; the number becomes binSize
+        SeriesInterval fiveMin = SeriesInterval.from("5m");
+        assertEquals("minute", fiveMin.mongoUnit());
+        assertEquals(5, fiveMin.amount());
+        assertEquals(Duration.ofMinutes(5), fiveMin.span());
+        assertEquals(Duration.ofHours(1), SeriesInterval.from("1H").span());
+        assertEquals(Duration.ofDays(1), SeriesInterval.from(" 1d ").span());
+        assertEquals("1d", SeriesInterval.from("1d").toString());
+    }
+
+    @Test
+    void from_throwsOnInvalid() {
+        // Unknown units, zero and missing values are rejected with a helpful message
+        for (String bad : new String[] {"0m", "5", "1w", "m", "", null}) {
+            IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> SeriesInterval.from(bad));
+            assertTrue(ex.getMessage().toLowerCase().contains("invalid interval"));
+        }
+    }
+}
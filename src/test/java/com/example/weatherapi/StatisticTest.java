@@ -1,6 +1,9 @@
 package com.example.weatherapi;
 
 import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -16,6 +19,15 @@ class StatisticTest {
         assertEquals(Statistic.SUM, Statistic.from("Sum"));
         assertEquals(Statistic.AVG, Statistic.from("avg"));
         assertEquals(Statistic.AVG, Statistic.from("average"));
+        assertEquals(Statistic.COUNT, Statistic.from("Count"));
+    }
+
+    @Test
+    void listFrom_parsesCommaListInOrderWithoutRepeats() {
+        // Request order is kept; blanks around commas are ignored; null defaults to AVG
+        assertEquals(List.of(Statistic.MAX, Statistic.MIN, Statistic.COUNT), Statistic.listFrom("max, min,count,max"));
+        assertEquals(List.of(Statistic.AVG), Statistic.listFrom(null));
+        assertThrows(IllegalArgumentException.class, () -> Statistic.listFrom("min,median"));
     }
 
     @Test
@@ -33,4 +45,24 @@ class StatisticTest {
         );
         assertTrue(ex.getMessage().toLowerCase().contains("invalid statistic"));
     }
+
+    @Test
+    void statSelection_mixesStatisticsAndPercentilesInRequestOrder() {
+        // Percentile labels are normalized (p95.0 -> p95) and repeats dropped
+        StatSelection selection = StatSelection.from("p95, avg,P99.9,p95.0,average");
+
+        assertEquals(List.of("p95", "avg", "p99.9"), selection.labels());
+        assertEquals(List.of(Statistic.AVG), selection.statistics());
+        assertEquals(0.95, selection.percentiles().get("p95"));
+        assertEquals(0.999, selection.percentiles().get("p99.9"), 1e-12);
+        assertFalse(StatSelection.from(null).hasPercentiles());
+    }
+
+    @Test
+    void statSelection_rejectsUnknownStatsAndOutOfRangePercentiles() {
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> StatSelection.from("median"));
+        assertTrue(ex.getMessage().contains("percentile such as p95"));
+        assertThrows(IllegalArgumentException.class, () -> StatSelection.from("p101"));
+        assertThrows(IllegalArgumentException.class, () -> StatSelection.from("p"));
+    }
 }
@@ -0,0 +1,157 @@
+package com.example.weatherapi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for NDJSON streaming ingest using a mocked bulk writer.
+ */
+class StreamingIngestServiceTest {
+
+    private BulkSensorWriter bulkWriter;
+    private StreamingIngestService service;
+
+    @BeforeEach
+    void setUp() {
+        bulkWriter = mock(BulkSensorWriter.class);
+        when(bulkWriter.getChunkSize()).thenReturn(2);
+        when(bulkWriter.insert(anyList())).thenReturn(Map.of());
+        ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        service = new StreamingIngestService(mapper, bulkWriter, 10, 200);
+    }
+
+    @Test
+    void ingest_flushesFixedSizeChunksWhileReading() throws Exception {
+        // 5 valid lines with chunk size 2 -> writes of 2, 2, 1
+        String body = String.join("\n",
+            line("1", "temperature", 20.0),
+            line("1", "humidity", 60.0),
+            line("2", "temperature", 21.0),
+            line("2", "humidity", 61.0),
+            line("3", "windSpeed", 5.0));
+
+        BatchIngestResult out = service.ingest(stream(body));
+
+        ArgumentCaptor<List<SensorData>> captor = ArgumentCaptor.forClass(List.class);
+        verify(bulkWriter, times(3)).insert(captor.capture());
+        assertEquals(List.of(2, 2, 1), captor.getAllValues().stream().map(List::size).toList());
+        assertEquals("wind_speed", captor.getAllValues().get(2).get(0).getMetric());
+
+        assertEquals(5, out.getReceived());
+        assertEquals(5, out.getAccepted());
+        assertEquals(0, out.getRejected());
+    }
+
+    @Test
+    void ingest_reportsMalformedAndInvalidLinesWithoutStopping() throws Exception {
+        // Line 1 is not JSON, line 2 has a bad metric, blank lines are ignored
+        String body = String.join("\n",
+            line("1", "temperature", 20.0),
+            "{not json",
+            "",
+            line("1", "pressure", 1000.0),
+            line("1", "humidity", 55.0));
+
+        BatchIngestResult out = service.ingest(stream(body));
+
+        assertEquals(4, out.getReceived());
+        assertEquals(2, out.getAccepted());
+        assertEquals(2, out.getRejected());
+        assertEquals(1, out.getRejections().get(0).index());
+        assertTrue(out.getRejections().get(0).error().startsWith("Malformed reading"));
+        assertEquals(2, out.getRejections().get(1).index());
+        assertTrue(out.getRejections().get(1).error().toLowerCase().contains("invalid metric"));
+    }
+
+    @Test
+    void ingest_mapsWriteFailuresBackToLineIndexes() throws Exception {
+        // Second chunk's element 0 fails in Mongo -> reading index 2
+        when(bulkWriter.insert(anyList()))
+            .thenReturn(Map.of())
+            .thenReturn(Map.of(0, "duplicate key"));
+
+        String body = String.join("\n",
+            line("1", "temperature", 1.0),
+            line("1", "temperature", 2.0),
+            line("1", "temperature", 3.0));
+
+        BatchIngestResult out = service.ingest(stream(body));
+
+        assertEquals(2, out.getAccepted());
+        assertEquals(1, out.getRejected());
+        assertEquals(2, out.getRejections().get(0).index());
+        assertEquals("duplicate key", out.getRejections().get(0).error());
+    }
+
+    @Test
+    void ingest_rejectsOversizedLinesWithoutReadingThemWhole() throws Exception {
+        // Line 1 is far over the 200-character limit; CRLF line ends are accepted
+        String body = line("1", "temperature", 20.0) + "\r\n"
+            + "{\"sensorId\":\"" + "x".repeat(100_000) + "\"}\r\n"
+            + line("1", "humidity", 55.0);
+
+        BatchIngestResult out = service.ingest(stream(body));
+
+        assertEquals(3, out.getReceived());
+        assertEquals(2, out.getAccepted());
+        assertEquals(1, out.getRejected());
+        assertEquals(1, out.getRejections().get(0).index());
+        assertEquals("Reading is longer than 200 characters", out.getRejections().get(0).error());
+    }
+
+    @Test
+    void ingest_waitsForTheChunkInFlightWhenTheBodyFails() throws Exception {
+        // The first chunk is being written when the connection drops
+        CountDownLatch writing = new CountDownLatch(1);
+        AtomicBoolean written = new AtomicBoolean();
+        when(bulkWriter.insert(anyList())).thenAnswer(inv -> {
+            writing.countDown();
+            Thread.sleep(100);
+            written.set(true);
+            return Map.of();
+        });
+        byte[] lines = (line("1", "temperature", 1.0) + "\n" + line("1", "temperature", 2.0) + "\n")
+            .getBytes(StandardCharsets.UTF_8);
+        InputStream body = new SequenceInputStream(new ByteArrayInputStream(lines), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                try {
+                    writing.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IOException("connection reset");
+            }
+        });
+
+        assertThrows(IOException.class, () -> service.ingest(body));
+        assertTrue(written.get());
+    }
+
+    // Helpers
+    private static String line(String sensorId, String metric, double value) {
+        return "{\"sensorId\":\"" + sensorId + "\",\"metric\":\"" + metric + "\",\"value\":" + value
+            + ",\"timestamp\":\"2025-08-01T12:00:00Z\"}";
+    }
+
+    private static ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,250 @@
+package com.example.weatherapi;
+
+import com.mongodb.client.result.DeleteResult;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for archiving cold days into segments and querying across the tier boundary.
+ */
+class TieredStorageTest {
+
+    private static final Instant NOW = Instant.parse("2025-08-10T12:00:00Z");
+    private static final Instant BOUNDARY = Instant.parse("2025-08-03T00:00:00Z");
+
+    @TempDir
+    Path dir;
+
+    private SegmentStore segments;
+    private MongoTemplate mongoTemplate;
+    private ReadingIndexes indexes;
+    private IngestGate gate;
+    private RollupStore rollups;
+
+    @BeforeEach
+    void setUp() {
+        segments = mock(SegmentStore.class);
+        when(segments.dir()).thenReturn(dir);
+        mongoTemplate = mock(MongoTemplate.class);
+        indexes = new ReadingIndexes(mongoTemplate, StorageLayout.RAW, true);
+        gate = new IngestGate();
+        rollups = mock(RollupStore.class);
+    }
+
+    @Test
+    void archive_compactsWholeDaysOlderThanHotAgeAndMovesTheBoundary() {
+        // Arrange: the oldest reading is on Aug 1; with a 7d hot age Aug 3 is the first hot day
+        when(mongoTemplate.findOne(any(Query.class), eq(Document.class), eq("sensor_data")))
+            .thenReturn(new Document("timestamp", Date.from(Instant.parse("2025-08-01T06:00:00Z"))));
+        TieredStorage tiers = tiers(true);
+
+        // Act
+        List<LocalDate> days = tiers.archive(NOW);
+
+        // Assert: nothing is deleted until the next pass
+        assertEquals(List.of(LocalDate.parse("2025-08-01"), LocalDate.parse("2025-08-02")), days);
+        verify(segments).compact(LocalDate.parse("2025-08-01"));
+        verify(segments).compact(LocalDate.parse("2025-08-02"));
+        assertEquals(BOUNDARY, tiers.boundary());
+        verify(mongoTemplate, never()).remove(any(Query.class), any(String.class));
+        // Readings for the archived days are refused from before their compaction on
+        assertEquals(BOUNDARY, gate.floor());
+        assertThrows(IllegalArgumentException.class,
+            () -> gate.checkFloor(SensorData.of("1", "temperature", 20.0, BOUNDARY.minusSeconds(1))));
+        assertEquals(Map.of(), gate.belowFloor(List.of(SensorData.of("1", "temperature", 20.0, BOUNDARY))));
+    }
+
+    @Test
+    void archive_nextPassDeletesWhatEarlierPassesArchived() {
+        // Arrange: segments up to Aug 2 exist from before a restart and hold what Mongo holds
+        when(segments.days()).thenReturn(List.of(LocalDate.parse("2025-08-01"), LocalDate.parse("2025-08-02")));
+        when(mongoTemplate.findOne(any(Query.class), eq(Document.class), eq("sensor_data")))
+            .thenReturn(new Document("timestamp", Date.from(Instant.parse("2025-08-01T06:00:00Z"))));
+        when(mongoTemplate.count(any(Query.class), eq("sensor_data"))).thenReturn(500L, 300L);
+        when(segments.readingCount(LocalDate.parse("2025-08-01"))).thenReturn(500L);
+        when(segments.readingCount(LocalDate.parse("2025-08-02"))).thenReturn(300L);
+        when(mongoTemplate.remove(any(Query.class), eq("sensor_data"))).thenReturn(DeleteResult.acknowledged(500));
+        TieredStorage tiers = tiers(true);
+        ArgumentCaptor<Query> deleted = ArgumentCaptor.forClass(Query.class);
+
+        // Act: a day later
+        List<LocalDate> days = tiers.archive(NOW.plus(Duration.ofDays(1)));
+
+        // Assert: one delete per archived day
+        verify(mongoTemplate, times(2)).remove(deleted.capture(), eq("sensor_data"));
+        assertEquals(day("2025-08-01"), deleted.getAllValues().get(0).getQueryObject());
+        assertEquals(day("2025-08-02"), deleted.getAllValues().get(1).getQueryObject());
+        verify(segments, never()).compact(LocalDate.parse("2025-08-01"));
+        assertEquals(List.of(LocalDate.parse("2025-08-03")), days);
+        assertEquals(BOUNDARY.plus(Duration.ofDays(1)), tiers.boundary());
+    }
+
+    @Test
+    void archive_compactsDaysThatGainedReadingsAgainBeforeDeletingThem() {
+        // Arrange: Mongo holds one reading of Aug 2 that its segment lacks
+        when(segments.days()).thenReturn(List.of(LocalDate.parse("2025-08-02")));
+        when(mongoTemplate.findOne(any(Query.class), eq(Document.class), eq("sensor_data")))
+            .thenReturn(new Document("timestamp", Date.from(Instant.parse("2025-08-02T06:00:00Z"))));
+        when(mongoTemplate.count(any(Query.class), eq("sensor_data"))).thenReturn(301L);
+        when(segments.readingCount(LocalDate.parse("2025-08-02"))).thenReturn(300L);
+        when(segments.compact(LocalDate.parse("2025-08-02")))
+            .thenReturn(new SegmentStore.Compaction(LocalDate.parse("2025-08-02"), 3, 301, 1000));
+        when(mongoTemplate.remove(any(Query.class), eq("sensor_data"))).thenReturn(DeleteResult.acknowledged(301));
+        TieredStorage tiers = tiers(true);
+
+        // Act
+        tiers.archive(NOW);
+
+        // Assert
+        var order = inOrder(segments, mongoTemplate);
+        order.verify(segments).compact(LocalDate.parse("2025-08-02"));
+        order.verify(mongoTemplate).remove(any(Query.class), eq("sensor_data"));
+    }
+
+    @Test
+    void archive_refusesWhileAnotherInstanceHoldsTheLease() {
+        // Arrange
+        when(mongoTemplate.upsert(any(Query.class), any(Update.class), eq(TieredStorage.LEASE_COLLECTION)))
+            .thenThrow(new DuplicateKeyException("E11000"));
+        TieredStorage tiers = tiers(true);
+
+        // Act + Assert
+        assertThrows(IllegalStateException.class, () -> tiers.archive(NOW));
+        assertThrows(IllegalStateException.class, tiers::start);
+        assertFalse(tiers.isRunning());
+        verify(segments, never()).compact(any());
+        verify(mongoTemplate, never()).remove(any(Query.class), eq("sensor_data"));
+    }
+
+    @Test
+    void requireHot_rejectsWindowsReachingIntoArchivedDays() {
+        // Arrange
+        when(segments.days()).thenReturn(List.of(LocalDate.parse("2025-08-02")));
+        TieredStorage tiers = tiers(true);
+
+        // Act + Assert
+        assertThrows(IllegalArgumentException.class,
+            () -> tiers.requireHot(new TimeRange(BOUNDARY.minusSeconds(1), NOW), "Series"));
+        assertDoesNotThrow(() -> tiers.requireHot(new TimeRange(BOUNDARY, NOW), "Series"));
+        assertDoesNotThrow(() -> tiers(false).requireHot(new TimeRange(BOUNDARY.minusSeconds(1), NOW), "Series"));
+    }
+
+    @Test
+    void export_streamsTheHotPartThenTheColdPart() {
+        // Arrange
+        ExportSource hot = mock(ExportSource.class);
+        ExportSource cold = mock(ExportSource.class);
+        TimeRange window = new TimeRange(Instant.parse("2025-08-01T00:00:00Z"), NOW);
+        when(hot.export(null, null, new TimeRange(BOUNDARY, NOW), 100))
+            .thenReturn(Stream.of(SensorData.of("1", "temperature", 2.0, BOUNDARY)));
+        when(cold.export(null, null, new TimeRange(window.from(), BOUNDARY.minusMillis(1)), 100))
+            .thenReturn(Stream.of(SensorData.of("1", "temperature", 1.0, window.from())));
+
+        // Act
+        List<Double> values;
+        try (Stream<SensorData> readings = TieredAggregateSource.export(hot, cold, () -> BOUNDARY).export(null, null, window, 100)) {
+            values = readings.map(SensorData::getValue).toList();
+        }
+
+        // Assert
+        assertEquals(List.of(2.0, 1.0), values);
+    }
+
+    @Test
+    void aggregate_splitsStraddlingWindowsAndMergesBothTiers() {
+        // Arrange
+        when(segments.days()).thenReturn(List.of(LocalDate.parse("2025-08-02")));
+        AggregateSource hot = mock(AggregateSource.class);
+        when(hot.aggregate(any(), any(), anyList()))
+            .thenReturn(Map.of("temperature", new MetricAggregate(2, 50.0, 20.0, 30.0)));
+        when(segments.aggregate(any(), any(), anyList()))
+            .thenReturn(Map.of("temperature", new MetricAggregate(3, 30.0, 5.0, 15.0),
+                "humidity", new MetricAggregate(1, 60.0, 60.0, 60.0)));
+        TieredAggregateSource source = new TieredAggregateSource(hot, segments, tiers(true)::boundary);
+
+        // Act
+        Map<String, MetricAggregate> out = source.aggregate(List.of("1"), null,
+            Instant.parse("2025-08-01T00:00:00Z"), Instant.parse("2025-08-05T00:00:00Z"));
+
+        // Assert
+        assertEquals(5, out.get("temperature").getCount());
+        assertEquals(5.0, out.get("temperature").getMin());
+        assertEquals(30.0, out.get("temperature").getMax());
+        assertEquals(1, out.get("humidity").getCount());
+        verify(segments).aggregate(List.of("1"), null,
+            List.of(new TimeRange(Instant.parse("2025-08-01T00:00:00Z"), BOUNDARY.minusMillis(1))));
+        verify(hot).aggregate(List.of("1"), null,
+            List.of(new TimeRange(BOUNDARY, Instant.parse("2025-08-05T00:00:00Z"))));
+    }
+
+    @Test
+    void aggregate_windowsOnOneSideTouchOnlyThatTier() {
+        // Arrange
+        when(segments.days()).thenReturn(List.of(LocalDate.parse("2025-08-02")));
+        AggregateSource hot = mock(AggregateSource.class);
+        TieredAggregateSource source = new TieredAggregateSource(hot, segments, tiers(true)::boundary);
+        TimeRange recent = new TimeRange(BOUNDARY, BOUNDARY.plusSeconds(3600));
+        TimeRange old = new TimeRange(BOUNDARY.minusSeconds(3600), BOUNDARY.minusMillis(1));
+
+        // Act
+        source.aggregate(null, null, List.of(recent));
+        source.aggregate(null, null, List.of(old));
+
+        // Assert: explain only lists the Mongo part
+        verify(hot).aggregate(null, null, List.of(recent));
+        verify(segments).aggregate(null, null, List.of(old));
+        assertTrue(source.plan(null, null, List.of(old)).isEmpty());
+        verifyNoMoreInteractions(hot);
+    }
+
+    @Test
+    void constructor_rejectsTheBucketedLayoutWhenEnabled() {
+        ReadingIndexes bucketed = new ReadingIndexes(mongoTemplate, StorageLayout.BUCKETED, true);
+
+        assertThrows(IllegalStateException.class, () -> new TieredStorage(segments, mongoTemplate, bucketed, gate,
+            rollups, true, Duration.ofDays(7), Duration.ofHours(1), Duration.ofMinutes(1)));
+        assertDoesNotThrow(() -> new TieredStorage(segments, mongoTemplate, bucketed, gate,
+            rollups, false, Duration.ofDays(7), Duration.ofHours(1), Duration.ofMinutes(1)));
+    }
+
+    @Test
+    void constructor_rejectsRollupRebuildsOnStartup() {
+        when(rollups.isEnabled()).thenReturn(true);
+        when(rollups.isRebuildOnStartup()).thenReturn(true);
+
+        assertThrows(IllegalStateException.class, () -> tiers(true));
+        assertDoesNotThrow(() -> tiers(false));
+    }
+
+    private TieredStorage tiers(boolean enabled) {
+        return new TieredStorage(segments, mongoTemplate, indexes, gate, rollups, enabled,
+            Duration.ofDays(7), Duration.ofHours(1), Duration.ofMinutes(1));
+    }
+
+    private static Document day(String day) {
+        Instant start = Instant.parse(day + "T00:00:00Z");
+        return new Document("timestamp", new Document("$gte", Date.from(start)).append("$lt", Date.from(start.plus(Duration.ofDays(1)))));
+    }
+}